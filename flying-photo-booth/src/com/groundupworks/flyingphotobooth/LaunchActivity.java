@@ -26,6 +26,7 @@ import android.view.KeyEvent;
 import com.groundupworks.flyingphotobooth.fragments.CaptureFragment;
 import com.groundupworks.flyingphotobooth.fragments.ErrorDialogFragment;
 import com.groundupworks.lib.photobooth.framework.BaseFragmentActivity;
+import com.groundupworks.lib.photobooth.framework.WorkerScheduler;
 import com.groundupworks.lib.photobooth.helpers.StorageHelper;
 
 import java.lang.ref.WeakReference;
@@ -62,7 +63,7 @@ public class LaunchActivity extends BaseFragmentActivity {
         super.onCreate(savedInstanceState);
 
         // Create worker handler.
-        mWorkerHandler = new Handler(MyApplication.getWorkerLooper());
+        mWorkerHandler = MyApplication.getScheduler().newHandler(WorkerScheduler.Lane.IO);
 
         // Get last used camera preference.
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
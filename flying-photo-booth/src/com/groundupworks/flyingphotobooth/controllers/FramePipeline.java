@@ -0,0 +1,320 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.flyingphotobooth.controllers;
+
+import android.graphics.Bitmap;
+
+import com.groundupworks.lib.photobooth.helpers.BitmapPool;
+import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.lib.photobooth.helpers.ImageHelper.ImageFilter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Processes captured frames in the background while the rest of the capture sequence is running, so that only the
+ * composition of the photo strip remains after the last frame. Frames are decoded, transformed and filtered one at a
+ * time on a serial {@link Executor} in the order they are submitted. The capture ui publishes its pipeline when the
+ * capture sequence completes, and the {@link ShareController} claims it.
+ *
+ * @author Benedict Lau
+ */
+public class FramePipeline {
+
+    /**
+     * The pipeline published by the capture sequence and not yet claimed.
+     */
+    private static FramePipeline sPublished = null;
+
+    private final Executor mExecutor;
+
+    private final float mRotation;
+
+    private final boolean mReflection;
+
+    private final String mFilterPref;
+
+    private final String mArrangementPref;
+
+    private final ImageFilter[] mFilters;
+
+    private final BitmapPool mPool;
+
+    /**
+     * The data submitted for each frame.
+     */
+    private final byte[][] mFrameData;
+
+    /**
+     * The pending or processed frames.
+     */
+    private final Future<Bitmap>[] mFrames;
+
+    /**
+     * Whether the pipeline has been cancelled. Guarded by the lock.
+     */
+    private boolean mIsCancelled = false;
+
+    /**
+     * Constructor.
+     *
+     * @param numFrames       the number of frames in the capture sequence.
+     * @param rotation        clockwise rotation applied to frames in degrees.
+     * @param reflection      horizontal reflection applied to frames.
+     * @param filterPref      the filter preference.
+     * @param arrangementPref the arrangement preference.
+     * @param filters         the filter for each frame. Entries may be null.
+     * @param pool            an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @param executor        a serial {@link Executor} to process frames on, such as one on the cpu lane.
+     */
+    @SuppressWarnings("unchecked")
+    public FramePipeline(int numFrames, float rotation, boolean reflection, String filterPref, String arrangementPref,
+                         ImageFilter[] filters, BitmapPool pool, Executor executor) {
+        mRotation = rotation;
+        mReflection = reflection;
+        mFilterPref = filterPref;
+        mArrangementPref = arrangementPref;
+        mFilters = filters;
+        mPool = pool;
+        mFrameData = new byte[numFrames][];
+        mFrames = new Future[numFrames];
+        mExecutor = executor;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Releases a frame once it has been processed, unless it can be cancelled before processing starts. This method
+     * must be called while holding the lock.
+     *
+     * @param index the index of the frame.
+     */
+    private void releaseFrame(int index) {
+        final Future<Bitmap> frame = mFrames[index];
+        mFrames[index] = null;
+        mFrameData[index] = null;
+
+        if (frame != null && !frame.cancel(false)) {
+            // The frame is processing or processed. Release it after, on the same executor.
+            mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    Bitmap bitmap = getQuietly(frame);
+                    if (bitmap != null && mPool != null) {
+                        mPool.put(bitmap);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the filter for a frame.
+     *
+     * @param index the index of the frame.
+     * @return the filter; or null if none.
+     */
+    private ImageFilter getFilter(int index) {
+        return index < mFilters.length ? mFilters[index] : null;
+    }
+
+    /**
+     * Waits for a frame to be processed.
+     *
+     * @param frame the frame.
+     * @return the processed frame; or null if unsuccessful.
+     */
+    private static Bitmap getQuietly(Future<Bitmap> frame) {
+        Bitmap bitmap = null;
+        try {
+            bitmap = frame.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Do nothing.
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Gets an entry of an optional array of preview frame sizes.
+     *
+     * @param sizes the sizes; or null.
+     * @param index the index of the frame.
+     * @return the size; or 0 if none.
+     */
+    private static int getSize(int[] sizes, int index) {
+        return sizes != null && index < sizes.length ? sizes[index] : 0;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Creates a processed frame from captured data. Jpeg data is decoded by the platform, and NV21 preview frames are
+     * converted without a Jpeg round trip.
+     *
+     * @param data          byte array of Jpeg data, or of an NV21 preview frame.
+     * @param previewWidth  the width of the NV21 preview frame; or 0 if the data is Jpeg.
+     * @param previewHeight the height of the NV21 preview frame; or 0 if the data is Jpeg.
+     * @param rotation      clockwise rotation applied to the frame in degrees.
+     * @param reflection    horizontal reflection applied to the frame.
+     * @param filter        the filter; or null if none.
+     * @param pool          an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @return the processed frame; or null if unsuccessful.
+     */
+    public static Bitmap createFrame(byte[] data, int previewWidth, int previewHeight, float rotation,
+                                     boolean reflection, ImageFilter filter, BitmapPool pool) {
+        if (previewWidth > 0 && previewHeight > 0) {
+            return ImageHelper.createImageFromPreview(data, previewWidth, previewHeight, ImageHelper.IMAGE_SIZE,
+                    rotation, reflection, filter, pool);
+        }
+
+        return ImageHelper.createImage(data, rotation, reflection, filter, pool);
+    }
+
+    /**
+     * Publishes a pipeline for the {@link ShareController} to claim. A previously published pipeline that has not been
+     * claimed is cancelled.
+     *
+     * @param pipeline the pipeline.
+     */
+    public static synchronized void publish(FramePipeline pipeline) {
+        if (sPublished != null && sPublished != pipeline) {
+            sPublished.cancel();
+        }
+        sPublished = pipeline;
+    }
+
+    /**
+     * Claims the published pipeline.
+     *
+     * @return the pipeline; or null if none is published.
+     */
+    public static synchronized FramePipeline claim() {
+        FramePipeline pipeline = sPublished;
+        sPublished = null;
+        return pipeline;
+    }
+
+    /**
+     * Submits a captured frame for processing. A frame previously submitted at the same index is discarded.
+     *
+     * @param index         the index of the frame.
+     * @param data          byte array of Jpeg data, or of an NV21 preview frame.
+     * @param previewWidth  the width of the NV21 preview frame; or 0 if the data is Jpeg.
+     * @param previewHeight the height of the NV21 preview frame; or 0 if the data is Jpeg.
+     */
+    public synchronized void submit(final int index, final byte[] data, final int previewWidth,
+                                    final int previewHeight) {
+        if (index < 0 || index >= mFrames.length || mIsCancelled) {
+            return;
+        }
+
+        releaseFrame(index);
+        FutureTask<Bitmap> frame = new FutureTask<Bitmap>(new Callable<Bitmap>() {
+
+            @Override
+            public Bitmap call() throws Exception {
+                return createFrame(data, previewWidth, previewHeight, mRotation, mReflection, getFilter(index),
+                        mPool);
+            }
+        });
+        mFrameData[index] = data;
+        mFrames[index] = frame;
+        mExecutor.execute(frame);
+    }
+
+    /**
+     * Discards a frame removed from the capture sequence.
+     *
+     * @param index the index of the frame.
+     */
+    public synchronized void discard(int index) {
+        if (index >= 0 && index < mFrames.length && !mIsCancelled) {
+            releaseFrame(index);
+        }
+    }
+
+    /**
+     * Checks whether the pipeline processes frames with the given parameters.
+     *
+     * @param rotation        clockwise rotation applied to frames in degrees.
+     * @param reflection      horizontal reflection applied to frames.
+     * @param filterPref      the filter preference.
+     * @param arrangementPref the arrangement preference.
+     * @return true if the parameters match; false otherwise.
+     */
+    public boolean matches(float rotation, boolean reflection, String filterPref, String arrangementPref) {
+        return mRotation == rotation && mReflection == reflection && mFilterPref.equals(filterPref)
+                && mArrangementPref.equals(arrangementPref);
+    }
+
+    /**
+     * Waits for the frames to be processed and cancels the pipeline. Frames that were not submitted with the same
+     * data are processed on the calling thread.
+     *
+     * @param frameData      the data of each frame, Jpeg or an NV21 preview frame.
+     * @param previewWidths  the width of each NV21 preview frame, 0 for Jpeg data; or null if all frames are Jpeg.
+     * @param previewHeights the height of each NV21 preview frame, 0 for Jpeg data; or null if all frames are Jpeg.
+     * @return the processed frames. An entry is null if the frame could not be processed.
+     */
+    public Bitmap[] await(byte[][] frameData, int[] previewWidths, int[] previewHeights) {
+        Bitmap[] bitmaps = new Bitmap[frameData.length];
+        for (int i = 0; i < frameData.length; i++) {
+            Future<Bitmap> frame = null;
+            synchronized (this) {
+                if (i < mFrames.length && mFrameData[i] == frameData[i]) {
+                    frame = mFrames[i];
+                    mFrames[i] = null;
+                    mFrameData[i] = null;
+                }
+            }
+
+            if (frame != null) {
+                bitmaps[i] = getQuietly(frame);
+            } else {
+                bitmaps[i] = createFrame(frameData[i], getSize(previewWidths, i), getSize(previewHeights, i), mRotation,
+                        mReflection, getFilter(i), mPool);
+            }
+        }
+
+        cancel();
+
+        return bitmaps;
+    }
+
+    /**
+     * Cancels the pipeline and releases all frames that have not been claimed.
+     */
+    public synchronized void cancel() {
+        if (!mIsCancelled) {
+            for (int i = 0; i < mFrames.length; i++) {
+                releaseFrame(i);
+            }
+            mIsCancelled = true;
+        }
+    }
+}
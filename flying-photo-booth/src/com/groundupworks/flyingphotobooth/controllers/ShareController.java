@@ -25,27 +25,32 @@ import android.os.Message;
 import com.groundupworks.flyingphotobooth.MyApplication;
 import com.groundupworks.flyingphotobooth.R;
 import com.groundupworks.flyingphotobooth.fragments.ShareFragment;
+import com.groundupworks.lib.photobooth.arrangements.BaseArrangement;
 import com.groundupworks.lib.photobooth.arrangements.BoxArrangement;
 import com.groundupworks.lib.photobooth.arrangements.HorizontalArrangement;
 import com.groundupworks.lib.photobooth.arrangements.VerticalArrangement;
 import com.groundupworks.lib.photobooth.filters.BlackAndWhiteFilter;
 import com.groundupworks.lib.photobooth.filters.LineArtFilter;
 import com.groundupworks.lib.photobooth.filters.SepiaFilter;
+import com.groundupworks.lib.photobooth.framework.BaseApplication;
 import com.groundupworks.lib.photobooth.framework.BaseController;
+import com.groundupworks.lib.photobooth.helpers.BitmapPool;
+import com.groundupworks.lib.photobooth.helpers.ImageDerivative;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper;
-import com.groundupworks.lib.photobooth.helpers.ImageHelper.Arrangement;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper.ImageFilter;
-import com.groundupworks.wings.Wings;
+import com.groundupworks.lib.photobooth.helpers.WingsShareSender;
+import com.groundupworks.wings.WingsEndpoint;
 import com.groundupworks.wings.dropbox.DropboxEndpoint;
 import com.groundupworks.wings.facebook.FacebookEndpoint;
 import com.groundupworks.wings.gcp.GoogleCloudPrintEndpoint;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.EnumMap;
 
 /**
  * Controller class for the {@link ShareFragment}.
@@ -70,8 +75,16 @@ public class ShareController extends BaseController {
 
     public static final int DROPBOX_SHARE_MARKED = 4;
 
+    /**
+     * The separator between the arrangement and filter preferences in Jpeg quality cache keys.
+     */
+    private static final String QUALITY_KEY_SEPARATOR = "/";
+
     private String mJpegPath = null;
 
+    private EnumMap<ImageDerivative, String> mDerivativePaths = new EnumMap<ImageDerivative, String>(
+            ImageDerivative.class);
+
     private Bitmap mThumb = null;
 
     private boolean mIsGcpShareActive = true;
@@ -87,11 +100,12 @@ public class ShareController extends BaseController {
     @Override
     protected void handleEvent(Message msg) {
         final Context context = MyApplication.getContext();
+        final BitmapPool pool = MyApplication.getBitmapPool();
         switch (msg.what) {
             case ShareFragment.IMAGE_VIEW_READY:
 
                 /*
-                 * Create an image bitmap from Jpeg data.
+                 * Create an image bitmap from Jpeg data or NV21 preview frames.
                  */
                 Bundle bundle = msg.getData();
 
@@ -109,6 +123,8 @@ public class ShareController extends BaseController {
                     jpegData[i] = bundle.getByteArray(ShareFragment.MESSAGE_BUNDLE_KEY_JPEG_DATA[i]);
                 }
 
+                int[] previewWidths = bundle.getIntArray(ShareFragment.MESSAGE_BUNDLE_KEY_PREVIEW_WIDTHS);
+                int[] previewHeights = bundle.getIntArray(ShareFragment.MESSAGE_BUNDLE_KEY_PREVIEW_HEIGHTS);
                 float rotation = bundle.getFloat(ShareFragment.MESSAGE_BUNDLE_KEY_ROTATION);
                 boolean reflection = bundle.getBoolean(ShareFragment.MESSAGE_BUNDLE_KEY_REFLECTION);
                 String filterPref = bundle.getString(ShareFragment.MESSAGE_BUNDLE_KEY_FILTER);
@@ -117,44 +133,10 @@ public class ShareController extends BaseController {
                 int thumbMaxHeight = bundle.getInt(ShareFragment.MESSAGE_BUNDLE_KEY_MAX_THUMB_HEIGHT);
 
                 // Select filter.
-                ImageFilter[] filters = new ImageFilter[ShareFragment.MESSAGE_BUNDLE_KEY_JPEG_DATA.length];
-                if (filterPref.equals(context.getString(R.string.pref__filter_bw))) {
-                    filters[0] = new BlackAndWhiteFilter();
-                    filters[1] = new BlackAndWhiteFilter();
-                    filters[2] = new BlackAndWhiteFilter();
-                    filters[3] = new BlackAndWhiteFilter();
-                } else if (filterPref.equals(context.getString(R.string.pref__filter_bw_mixed))) {
-                    if (arrangementPref.equals(context.getString(R.string.pref__arrangement_box))) {
-                        filters[0] = new BlackAndWhiteFilter();
-                        filters[3] = new BlackAndWhiteFilter();
-                    } else {
-                        filters[0] = new BlackAndWhiteFilter();
-                        filters[2] = new BlackAndWhiteFilter();
-                    }
-                } else if (filterPref.equals(context.getString(R.string.pref__filter_sepia))) {
-                    filters[0] = new SepiaFilter();
-                    filters[1] = new SepiaFilter();
-                    filters[2] = new SepiaFilter();
-                    filters[3] = new SepiaFilter();
-                } else if (filterPref.equals(context.getString(R.string.pref__filter_sepia_mixed))) {
-                    if (arrangementPref.equals(context.getString(R.string.pref__arrangement_box))) {
-                        filters[0] = new SepiaFilter();
-                        filters[3] = new SepiaFilter();
-                    } else {
-                        filters[0] = new SepiaFilter();
-                        filters[2] = new SepiaFilter();
-                    }
-                } else if (filterPref.equals(context.getString(R.string.pref__filter_line_art))) {
-                    filters[0] = new LineArtFilter();
-                    filters[1] = new LineArtFilter();
-                    filters[2] = new LineArtFilter();
-                    filters[3] = new LineArtFilter();
-                } else {
-                    // No filter. Keep filter as null.
-                }
+                ImageFilter[] filters = createFilters(context, filterPref, arrangementPref);
 
                 // Select arrangement.
-                Arrangement arrangement = null;
+                BaseArrangement arrangement = null;
                 if (arrangementPref.equals(context.getString(R.string.pref__arrangement_horizontal))) {
                     arrangement = new HorizontalArrangement();
                 } else if (arrangementPref.equals(context.getString(R.string.pref__arrangement_box))) {
@@ -162,18 +144,31 @@ public class ShareController extends BaseController {
                 } else {
                     arrangement = new VerticalArrangement();
                 }
+                arrangement.setBitmapPool(pool);
 
-                // Do the image processing.
-                Bitmap[] bitmaps = new Bitmap[jpegDataLength];
-                boolean isFramesValid = true;
-                for (int i = 0; i < jpegDataLength; i++) {
-                    // Create frame.
-                    Bitmap frame = ImageHelper.createImage(jpegData[i], rotation, reflection, filters[i]);
+                // Do the image processing, using the frames processed during capture if available.
+                Bitmap[] bitmaps;
+                FramePipeline pipeline = FramePipeline.claim();
+                if (pipeline != null && pipeline.matches(rotation, reflection, filterPref, arrangementPref)) {
+                    bitmaps = pipeline.await(jpegData, previewWidths, previewHeights);
+                } else {
+                    if (pipeline != null) {
+                        pipeline.cancel();
+                    }
 
-                    // Ensure frame is non-null.
-                    if (frame != null) {
-                        bitmaps[i] = frame;
-                    } else {
+                    bitmaps = new Bitmap[jpegDataLength];
+                    for (int i = 0; i < jpegDataLength; i++) {
+                        int previewWidth = previewWidths != null ? previewWidths[i] : 0;
+                        int previewHeight = previewHeights != null ? previewHeights[i] : 0;
+                        bitmaps[i] = FramePipeline.createFrame(jpegData[i], previewWidth, previewHeight, rotation,
+                                reflection, filters[i], pool);
+                    }
+                }
+
+                // Ensure all frames are non-null.
+                boolean isFramesValid = true;
+                for (Bitmap bitmap : bitmaps) {
+                    if (bitmap == null) {
                         isFramesValid = false;
                         break;
                     }
@@ -185,11 +180,9 @@ public class ShareController extends BaseController {
                     photoStrip = ImageHelper.createPhotoStrip(bitmaps, arrangement);
                 }
 
-                // Recycle original bitmaps.
+                // Return original bitmaps to the pool.
                 for (Bitmap bitmap : bitmaps) {
-                    if (bitmap != null) {
-                        bitmap.recycle();
-                    }
+                    pool.put(bitmap);
                 }
                 bitmaps = null;
 
@@ -198,7 +191,7 @@ public class ShareController extends BaseController {
                     // Create thumbnail.
                     Point fittedSize = ImageHelper.getAspectFitSize(thumbMaxWidth, thumbMaxHeight,
                             photoStrip.getWidth(), photoStrip.getHeight());
-                    mThumb = Bitmap.createScaledBitmap(photoStrip, fittedSize.x, fittedSize.y, true);
+                    mThumb = ImageHelper.createScaledBitmap(photoStrip, fittedSize.x, fittedSize.y, pool);
                     if (mThumb != null) {
                         // Thumbnail bitmap is ready.
                         Message uiMsg = Message.obtain();
@@ -217,54 +210,66 @@ public class ShareController extends BaseController {
                 /*
                  * Save image bitmap as Jpeg.
                  */
-                try {
-                    String imageDirectory = ImageHelper.getCapturedImageDirectory(context
-                            .getString(R.string.image_helper__image_folder_name));
-                    if (imageDirectory != null) {
-                        String imageName = ImageHelper.generateCapturedImageName(context
-                                .getString(R.string.image_helper__image_filename_prefix));
-                        File file = new File(imageDirectory, imageName);
-                        final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
-
-                        // Convert to Jpeg and writes to file.
-                        boolean isSuccessful = ImageHelper.writeJpeg(photoStrip, outputStream);
-                        outputStream.flush();
-                        outputStream.close();
-
-                        if (isSuccessful) {
-                            mJpegPath = file.getPath();
-
-                            // Notify ui the Jpeg is saved.
-                            Message uiMsg = Message.obtain();
-                            uiMsg.what = JPEG_SAVED;
-                            uiMsg.obj = mJpegPath;
-                            sendUiUpdate(uiMsg);
-                        } else {
-                            reportError();
+                String imageDirectory = ImageHelper.getCapturedImageDirectory(context
+                        .getString(R.string.image_helper__image_folder_name));
+                if (imageDirectory != null) {
+                    String imageName = ImageHelper.generateCapturedImageName(context
+                            .getString(R.string.image_helper__image_filename_prefix));
+                    File file = new File(imageDirectory, imageName);
+
+                    // Convert to Jpeg derivatives and write the master to file.
+                    EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData = null;
+                    if (photoStrip != null) {
+                        jpegData = ImageDerivative.encodeAll(photoStrip, pool, MyApplication.getJpegEncoder(),
+                                arrangementPref + QUALITY_KEY_SEPARATOR + filterPref);
+                    }
+
+                    boolean isSuccessful = false;
+                    if (jpegData != null) {
+                        isSuccessful = writeFile(jpegData.get(ImageDerivative.PRINT), file);
+                    }
+
+                    if (isSuccessful) {
+                        mJpegPath = file.getPath();
+
+                        // Write the smaller derivatives. Shares fall back to the master for any that fail.
+                        for (ImageDerivative derivative : jpegData.keySet()) {
+                            if (derivative != ImageDerivative.PRINT) {
+                                File derivativeFile = derivative.getFile(context, file);
+                                File derivativeDirectory = derivativeFile.getParentFile();
+                                if ((derivativeDirectory.isDirectory() || derivativeDirectory.mkdirs())
+                                        && writeFile(jpegData.get(derivative), derivativeFile)) {
+                                    mDerivativePaths.put(derivative, derivativeFile.getPath());
+                                }
+                            }
                         }
+
+                        // Notify ui the Jpeg is saved.
+                        Message uiMsg = Message.obtain();
+                        uiMsg.what = JPEG_SAVED;
+                        uiMsg.obj = mJpegPath;
+                        sendUiUpdate(uiMsg);
                     } else {
-                        // Invalid external storage state or failed directory creation.
                         reportError();
                     }
-                } catch (FileNotFoundException e) {
-                    reportError();
-                } catch (IOException e) {
+                } else {
+                    // Invalid external storage state or failed directory creation.
                     reportError();
                 }
 
                 /*
-                 * Recycle photo strip bitmap if it is not the same object referenced by mThumb.
+                 * Return photo strip bitmap to the pool if it is not the same object referenced by mThumb.
                  */
-                if (photoStrip != null && photoStrip != mThumb) {
-                    photoStrip.recycle();
+                if (photoStrip != mThumb) {
+                    pool.put(photoStrip);
                 }
                 photoStrip = null;
 
                 break;
             case ShareFragment.GCP_SHARE_REQUESTED:
-                // Create record in Wings.
+                // Enqueue share in the outbox.
                 if (mIsGcpShareActive) {
-                    if (mJpegPath != null && Wings.share(mJpegPath, GoogleCloudPrintEndpoint.class)) {
+                    if (mJpegPath != null && enqueueShare(GoogleCloudPrintEndpoint.class)) {
                         // Disable to ensure we only make one share request.
                         mIsGcpShareActive = false;
 
@@ -278,9 +283,9 @@ public class ShareController extends BaseController {
                 }
                 break;
             case ShareFragment.FACEBOOK_SHARE_REQUESTED:
-                // Create record in Wings.
+                // Enqueue share in the outbox.
                 if (mIsFacebookShareActive) {
-                    if (mJpegPath != null && Wings.share(mJpegPath, FacebookEndpoint.class)) {
+                    if (mJpegPath != null && enqueueShare(FacebookEndpoint.class)) {
                         // Disable to ensure we only make one share request.
                         mIsFacebookShareActive = false;
 
@@ -294,9 +299,9 @@ public class ShareController extends BaseController {
                 }
                 break;
             case ShareFragment.DROPBOX_SHARE_REQUESTED:
-                // Create record in Wings.
+                // Enqueue share in the outbox.
                 if (mIsDropboxShareActive) {
-                    if (mJpegPath != null && Wings.share(mJpegPath, DropboxEndpoint.class)) {
+                    if (mJpegPath != null && enqueueShare(DropboxEndpoint.class)) {
                         // Disable to ensure we only make one share request.
                         mIsDropboxShareActive = false;
 
@@ -311,10 +316,10 @@ public class ShareController extends BaseController {
                 break;
             case ShareFragment.FRAGMENT_DESTROYED:
                 /*
-                 * Recycle thumb bitmap.
+                 * Return thumb bitmap to the pool.
                  */
                 if (mThumb != null) {
-                    mThumb.recycle();
+                    pool.put(mThumb);
                     mThumb = null;
                 }
                 break;
@@ -323,10 +328,108 @@ public class ShareController extends BaseController {
         }
     }
 
+    //
+    // Public methods.
+    //
+
+    /**
+     * Creates the filter for each frame from the preferences.
+     *
+     * @param context         the {@link Context}.
+     * @param filterPref      the filter preference.
+     * @param arrangementPref the arrangement preference.
+     * @return the filter for each frame. Entries are null for frames without a filter.
+     */
+    public static ImageFilter[] createFilters(Context context, String filterPref, String arrangementPref) {
+        ImageFilter[] filters = new ImageFilter[ShareFragment.MESSAGE_BUNDLE_KEY_JPEG_DATA.length];
+        if (filterPref.equals(context.getString(R.string.pref__filter_bw))) {
+            filters[0] = new BlackAndWhiteFilter();
+            filters[1] = new BlackAndWhiteFilter();
+            filters[2] = new BlackAndWhiteFilter();
+            filters[3] = new BlackAndWhiteFilter();
+        } else if (filterPref.equals(context.getString(R.string.pref__filter_bw_mixed))) {
+            if (arrangementPref.equals(context.getString(R.string.pref__arrangement_box))) {
+                filters[0] = new BlackAndWhiteFilter();
+                filters[3] = new BlackAndWhiteFilter();
+            } else {
+                filters[0] = new BlackAndWhiteFilter();
+                filters[2] = new BlackAndWhiteFilter();
+            }
+        } else if (filterPref.equals(context.getString(R.string.pref__filter_sepia))) {
+            filters[0] = new SepiaFilter();
+            filters[1] = new SepiaFilter();
+            filters[2] = new SepiaFilter();
+            filters[3] = new SepiaFilter();
+        } else if (filterPref.equals(context.getString(R.string.pref__filter_sepia_mixed))) {
+            if (arrangementPref.equals(context.getString(R.string.pref__arrangement_box))) {
+                filters[0] = new SepiaFilter();
+                filters[3] = new SepiaFilter();
+            } else {
+                filters[0] = new SepiaFilter();
+                filters[2] = new SepiaFilter();
+            }
+        } else if (filterPref.equals(context.getString(R.string.pref__filter_line_art))) {
+            filters[0] = new LineArtFilter();
+            filters[1] = new LineArtFilter();
+            filters[2] = new LineArtFilter();
+            filters[3] = new LineArtFilter();
+        } else {
+            // No filter. Keep filter as null.
+        }
+
+        return filters;
+    }
+
     //
     // Private methods.
     //
 
+    /**
+     * Writes Jpeg data to a file.
+     *
+     * @param jpegData the Jpeg data.
+     * @param file     the file to write to.
+     * @return true if successful; false otherwise.
+     */
+    private static boolean writeFile(ByteArrayOutputStream jpegData, File file) {
+        boolean isSuccessful = false;
+        OutputStream outputStream = null;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(file));
+            jpegData.writeTo(outputStream);
+            outputStream.flush();
+            isSuccessful = true;
+        } catch (IOException e) {
+            // Do nothing.
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    isSuccessful = false;
+                }
+            }
+        }
+
+        return isSuccessful;
+    }
+
+    /**
+     * Enqueues a share of the Jpeg in the outbox, using the derivative routed to the endpoint if it is written, or the
+     * master otherwise.
+     *
+     * @param endpointClazz the {@link WingsEndpoint} to share to.
+     * @return true if the share is persisted in the outbox; false otherwise.
+     */
+    private boolean enqueueShare(Class<? extends WingsEndpoint> endpointClazz) {
+        String path = mDerivativePaths.get(ImageDerivative.forEndpoint(endpointClazz));
+        if (path == null) {
+            path = mJpegPath;
+        }
+
+        return BaseApplication.getShareOutbox().enqueue(path, WingsShareSender.getEndpointName(endpointClazz));
+    }
+
     /**
      * Reports an error event to ui.
      */
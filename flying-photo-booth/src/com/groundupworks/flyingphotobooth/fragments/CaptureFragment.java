@@ -28,6 +28,7 @@ import android.hardware.Camera.Parameters;
 import android.hardware.Camera.Size;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
 import android.view.KeyEvent;
@@ -49,10 +50,15 @@ import android.widget.Toast;
 import com.groundupworks.flyingphotobooth.LaunchActivity;
 import com.groundupworks.flyingphotobooth.MyPreferenceActivity;
 import com.groundupworks.flyingphotobooth.R;
+import com.groundupworks.flyingphotobooth.controllers.FramePipeline;
+import com.groundupworks.flyingphotobooth.controllers.ShareController;
 import com.groundupworks.lib.photobooth.framework.BaseApplication;
+import com.groundupworks.lib.photobooth.framework.WorkerScheduler;
 import com.groundupworks.lib.photobooth.helpers.CameraAudioHelper;
 import com.groundupworks.lib.photobooth.helpers.CameraHelper;
+import com.groundupworks.lib.photobooth.helpers.CaptureLatencyStats;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.lib.photobooth.helpers.PreviewFrameRing;
 import com.groundupworks.lib.photobooth.views.CenteredPreview;
 
 import java.util.List;
@@ -190,10 +196,30 @@ public class CaptureFragment extends Fragment {
     private int mFrameIndex = 0;
 
     /**
-     * Jpeg frames in byte arrays. The first index is the frame count.
+     * Jpeg frames or NV21 preview frames in byte arrays. The first index is the frame count.
      */
     private byte[][] mFramesData = null;
 
+    /**
+     * The width of each NV21 preview frame, or 0 if the frame is Jpeg.
+     */
+    private int[] mFramesPreviewWidths = null;
+
+    /**
+     * The height of each NV21 preview frame, or 0 if the frame is Jpeg.
+     */
+    private int[] mFramesPreviewHeights = null;
+
+    /**
+     * The pipeline processing frames while the capture sequence is running.
+     */
+    private FramePipeline mFramePipeline = null;
+
+    /**
+     * The ring of buffered preview frames to capture from without shutter lag; or null if disabled.
+     */
+    private PreviewFrameRing mFrameRing = null;
+
     //
     // Key event handlers.
     //
@@ -234,7 +260,7 @@ public class CaptureFragment extends Fragment {
     public void onAttach(Activity activity) {
         super.onAttach(activity);
 
-        final Handler handler = new Handler(BaseApplication.getWorkerLooper());
+        final Handler handler = BaseApplication.getScheduler().newHandler(WorkerScheduler.Lane.HIGH_PRIORITY);
         mCameraAudioHelper = new CameraAudioHelper(activity, R.raw.beep_once, handler);
     }
 
@@ -317,6 +343,8 @@ public class CaptureFragment extends Fragment {
         mFramesTotal = Integer.parseInt(numPhotosPref);
         mFrameIndex = 0;
         mFramesData = new byte[mFramesTotal][];
+        mFramesPreviewWidths = new int[mFramesTotal];
+        mFramesPreviewHeights = new int[mFramesTotal];
 
         /*
          * Initialize and set key event handlers.
@@ -392,6 +420,27 @@ public class CaptureFragment extends Fragment {
             mTriggerMode = TRIGGER_MODE_MANUAL;
         }
 
+        // Buffer preview frames to capture from if zero shutter lag is enabled.
+        if (preferences.getBoolean(getString(R.string.pref__zero_shutter_lag_key), false)) {
+            mFrameRing = new PreviewFrameRing(PreviewFrameRing.DEFAULT_NUM_BUFFERS);
+            mPreview.setOnPreviewListener(new CenteredPreview.OnPreviewListener() {
+                @Override
+                public void onStarted() {
+                    if (mFrameRing != null && mCamera != null && !mFrameRing.start(mCamera, ImageHelper.IMAGE_SIZE)) {
+                        // Fall back to capturing with the shutter, such as when preview frames are too small.
+                        mFrameRing = null;
+                    }
+                }
+
+                @Override
+                public void onStopped() {
+                    if (mFrameRing != null) {
+                        mFrameRing.stop();
+                    }
+                }
+            });
+        }
+
         // Configure title and start button text.
         mTitle.setText(String.format(getString(R.string.capture__title_frame), mFrameIndex + 1, mFramesTotal));
         if (mTriggerMode == TRIGGER_MODE_MANUAL) {
@@ -518,11 +567,20 @@ public class CaptureFragment extends Fragment {
         }
 
         if (mCamera != null) {
+            if (mFrameRing != null) {
+                mFrameRing.stop();
+            }
             mPreview.stop();
             mCamera.release();
             mCamera = null;
         }
 
+        // Cancel frame processing since the fragment is relaunched on resume.
+        if (mFramePipeline != null) {
+            mFramePipeline.cancel();
+            mFramePipeline = null;
+        }
+
         mOnPauseCalled = true;
 
         // Save the camera preference.
@@ -562,54 +620,7 @@ public class CaptureFragment extends Fragment {
 
         @Override
         public void onPictureTaken(byte[] data, Camera camera) {
-            if (isActivityAlive()) {
-                // Save Jpeg frame in memory.
-                mFramesData[mFrameIndex] = data;
-
-                // Setup review overlay for user to review captured frame.
-                mReviewStatus.setText(getString(R.string.capture__review_instructions));
-                mReviewStatus.setTextColor(getResources().getColor(R.color.text_color));
-                Bitmap bitmap = ImageHelper.createImage(data, mPreviewDisplayOrientation, mIsReflected, null);
-                mReviewImage.setImageBitmap(bitmap);
-
-                // Setup task to clear the review overlay after a frame removal event or after timeout.
-                final int timeout;
-                if (mTriggerMode == TRIGGER_MODE_BURST) {
-                    timeout = REVIEW_OVERLAY_WAIT_DURATION_BURST;
-                } else {
-                    timeout = REVIEW_OVERLAY_WAIT_DURATION;
-                }
-
-                final CountDownLatch latch = new CountDownLatch(1);
-                if (mTimer != null) {
-                    mTimer.schedule(new TimerTask() {
-
-                        @Override
-                        public void run() {
-                            try {
-                                // Wait for user input or a fixed timeout.
-                                latch.await(timeout, TimeUnit.MILLISECONDS);
-
-                                // Post task to ui thread to prepare for next capture.
-                                final Activity activity = getActivity();
-                                if (activity != null && !activity.isFinishing()) {
-                                    activity.runOnUiThread(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            prepareNextCapture();
-                                        }
-                                    });
-                                }
-                            } catch (InterruptedException e) {
-                                // Do nothing.
-                            }
-                        }
-                    }, 0);
-                }
-
-                mReviewOverlay.setOnTouchListener(new ReviewOverlayOnTouchListener(latch));
-                mReviewOverlay.setVisibility(View.VISIBLE);
-            }
+            onFrameCaptured(data, 0, 0);
         }
     }
 
@@ -657,6 +668,9 @@ public class CaptureFragment extends Fragment {
                             isEnabled = false;
 
                             // Remove frame by decrementing index.
+                            if (mFramePipeline != null) {
+                                mFramePipeline.discard(mFrameIndex);
+                            }
                             mFrameIndex--;
 
                             // Indicate removed status.
@@ -704,6 +718,11 @@ public class CaptureFragment extends Fragment {
             // Set flag to indicate capture sequence is running.
             mIsCaptureSequenceRunning = true;
 
+            // Create pipeline to process frames as they are captured.
+            if (mFramePipeline == null) {
+                mFramePipeline = createFramePipeline();
+            }
+
             // Kick off capture sequence.
             if (mTriggerMode == TRIGGER_MODE_MANUAL) {
                 kickoffManualCapture();
@@ -714,15 +733,101 @@ public class CaptureFragment extends Fragment {
     }
 
     /**
-     * Takes picture.
+     * Saves a captured frame, submits it for processing and shows it for review.
+     *
+     * @param data          the Jpeg data of the captured frame, or the NV21 data of a preview frame.
+     * @param previewWidth  the width of the NV21 preview frame; or 0 if the data is Jpeg.
+     * @param previewHeight the height of the NV21 preview frame; or 0 if the data is Jpeg.
+     */
+    private void onFrameCaptured(byte[] data, int previewWidth, int previewHeight) {
+        if (isActivityAlive()) {
+            // Save frame in memory.
+            mFramesData[mFrameIndex] = data;
+            mFramesPreviewWidths[mFrameIndex] = previewWidth;
+            mFramesPreviewHeights[mFrameIndex] = previewHeight;
+
+            // Start processing the frame while the capture sequence continues.
+            if (mFramePipeline != null) {
+                mFramePipeline.submit(mFrameIndex, data, previewWidth, previewHeight);
+            }
+
+            // Setup review overlay for user to review captured frame.
+            mReviewStatus.setText(getString(R.string.capture__review_instructions));
+            mReviewStatus.setTextColor(getResources().getColor(R.color.text_color));
+            Bitmap bitmap = FramePipeline.createFrame(data, previewWidth, previewHeight, mPreviewDisplayOrientation,
+                    mIsReflected, null, null);
+            mReviewImage.setImageBitmap(bitmap);
+
+            // Setup task to clear the review overlay after a frame removal event or after timeout.
+            final int timeout;
+            if (mTriggerMode == TRIGGER_MODE_BURST) {
+                timeout = REVIEW_OVERLAY_WAIT_DURATION_BURST;
+            } else {
+                timeout = REVIEW_OVERLAY_WAIT_DURATION;
+            }
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            if (mTimer != null) {
+                mTimer.schedule(new TimerTask() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            // Wait for user input or a fixed timeout.
+                            latch.await(timeout, TimeUnit.MILLISECONDS);
+
+                            // Post task to ui thread to prepare for next capture.
+                            final Activity activity = getActivity();
+                            if (activity != null && !activity.isFinishing()) {
+                                activity.runOnUiThread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        prepareNextCapture();
+                                    }
+                                });
+                            }
+                        } catch (InterruptedException e) {
+                            // Do nothing.
+                        }
+                    }
+                }, 0);
+            }
+
+            mReviewOverlay.setOnTouchListener(new ReviewOverlayOnTouchListener(latch));
+            mReviewOverlay.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Takes picture. The buffered preview frame closest to the trigger is used if available, otherwise the picture is
+     * taken with the shutter. The latency from the trigger to the capture is recorded either way.
      */
     private void takePicture() {
         if (isActivityAlive() && mCamera != null) {
+            final long triggerTime = SystemClock.elapsedRealtime();
+            final CaptureLatencyStats latencyStats = BaseApplication.getCaptureLatencyStats();
+
+            // Capture from the preview frame closest to the trigger.
+            if (mFrameRing != null) {
+                PreviewFrameRing.Frame frame = mFrameRing.copyClosest(triggerTime);
+                if (frame != null) {
+                    mFrameRing.stop();
+                    latencyStats.record(CaptureLatencyStats.Method.PREVIEW_FRAME,
+                            Math.abs(frame.timestamp - triggerTime));
+
+                    // Keep the NV21 data, which the frame pipeline converts on its worker.
+                    onFrameCaptured(frame.data, frame.width, frame.height);
+                    return;
+                }
+            }
+
             try {
                 mCamera.takePicture(new Camera.ShutterCallback() {
                     @Override
                     public void onShutter() {
                         // Setting a listener enables the system shutter sound.
+                        latencyStats.record(CaptureLatencyStats.Method.SHUTTER,
+                                SystemClock.elapsedRealtime() - triggerTime);
                     }
                 }, null, new JpegPictureCallback());
             } catch (RuntimeException e) {
@@ -967,12 +1072,35 @@ public class CaptureFragment extends Fragment {
         }
     }
 
+    /**
+     * Creates a {@link FramePipeline} with the current camera and filter preferences.
+     *
+     * @return the {@link FramePipeline}.
+     */
+    private FramePipeline createFramePipeline() {
+        Context context = getActivity().getApplicationContext();
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String filterPref = preferences.getString(getString(R.string.pref__filter_key),
+                getString(R.string.pref__filter_default));
+        String arrangementPref = preferences.getString(getString(R.string.pref__arrangement_key),
+                getString(R.string.pref__arrangement_default));
+
+        return new FramePipeline(mFramesTotal, mPreviewDisplayOrientation, mIsReflected, filterPref, arrangementPref,
+                ShareController.createFilters(context, filterPref, arrangementPref), BaseApplication.getBitmapPool(),
+                BaseApplication.getScheduler().newSerialExecutor(WorkerScheduler.Lane.CPU));
+    }
+
     /**
      * Launches the next {@link Fragment}.
      */
     private void nextFragment() {
+        // Hand the frames processed so far to the share screen.
+        FramePipeline.publish(mFramePipeline);
+        mFramePipeline = null;
+
         ((LaunchActivity) getActivity()).replaceFragment(
-                ShareFragment.newInstance(mFramesData, mPreviewDisplayOrientation, mIsReflected), true, false);
+                ShareFragment.newInstance(mFramesData, mFramesPreviewWidths, mFramesPreviewHeights,
+                        mPreviewDisplayOrientation, mIsReflected), true, false);
     }
 
     /**
@@ -64,6 +64,10 @@ public class ShareFragment extends ControllerBackedFragment<ShareController> {
 
     private static final String[] FRAGMENT_BUNDLE_KEY_JPEG_DATA = {"jpegData0", "jpegData1", "jpegData2", "jpegData3"};
 
+    private static final String FRAGMENT_BUNDLE_KEY_PREVIEW_WIDTHS = "previewWidths";
+
+    private static final String FRAGMENT_BUNDLE_KEY_PREVIEW_HEIGHTS = "previewHeights";
+
     private static final String FRAGMENT_BUNDLE_KEY_ROTATION = "rotation";
 
     private static final String FRAGMENT_BUNDLE_KEY_REFLECTION = "reflection";
@@ -88,6 +92,10 @@ public class ShareFragment extends ControllerBackedFragment<ShareController> {
 
     public static final String[] MESSAGE_BUNDLE_KEY_JPEG_DATA = FRAGMENT_BUNDLE_KEY_JPEG_DATA;
 
+    public static final String MESSAGE_BUNDLE_KEY_PREVIEW_WIDTHS = FRAGMENT_BUNDLE_KEY_PREVIEW_WIDTHS;
+
+    public static final String MESSAGE_BUNDLE_KEY_PREVIEW_HEIGHTS = FRAGMENT_BUNDLE_KEY_PREVIEW_HEIGHTS;
+
     public static final String MESSAGE_BUNDLE_KEY_ROTATION = FRAGMENT_BUNDLE_KEY_ROTATION;
 
     public static final String MESSAGE_BUNDLE_KEY_REFLECTION = FRAGMENT_BUNDLE_KEY_REFLECTION;
@@ -205,6 +213,8 @@ public class ShareFragment extends ControllerBackedFragment<ShareController> {
             jpegData[i] = args.getByteArray(FRAGMENT_BUNDLE_KEY_JPEG_DATA[i]);
         }
 
+        int[] previewWidths = args.getIntArray(FRAGMENT_BUNDLE_KEY_PREVIEW_WIDTHS);
+        int[] previewHeights = args.getIntArray(FRAGMENT_BUNDLE_KEY_PREVIEW_HEIGHTS);
         float rotation = args.getFloat(FRAGMENT_BUNDLE_KEY_ROTATION);
         boolean reflection = args.getBoolean(FRAGMENT_BUNDLE_KEY_REFLECTION);
 
@@ -326,6 +336,8 @@ public class ShareFragment extends ControllerBackedFragment<ShareController> {
         for (int i = 0; i < jpegDataLength; i++) {
             bundle.putByteArray(MESSAGE_BUNDLE_KEY_JPEG_DATA[i], jpegData[i]);
         }
+        bundle.putIntArray(MESSAGE_BUNDLE_KEY_PREVIEW_WIDTHS, previewWidths);
+        bundle.putIntArray(MESSAGE_BUNDLE_KEY_PREVIEW_HEIGHTS, previewHeights);
         bundle.putFloat(MESSAGE_BUNDLE_KEY_ROTATION, rotation);
         bundle.putBoolean(MESSAGE_BUNDLE_KEY_REFLECTION, reflection);
         bundle.putString(MESSAGE_BUNDLE_KEY_FILTER, filterPref);
@@ -539,18 +551,23 @@ public class ShareFragment extends ControllerBackedFragment<ShareController> {
     /**
      * Creates a new {@link ShareFragment} instance.
      *
-     * @param jpegData   byte arrays of Jpeg data.
-     * @param rotation   clockwise rotation applied to image in degrees.
-     * @param reflection horizontal reflection applied to image.
+     * @param jpegData       byte arrays of Jpeg data, or of NV21 preview frames.
+     * @param previewWidths  the width of each NV21 preview frame, 0 for Jpeg data.
+     * @param previewHeights the height of each NV21 preview frame, 0 for Jpeg data.
+     * @param rotation       clockwise rotation applied to image in degrees.
+     * @param reflection     horizontal reflection applied to image.
      * @return the new {@link ShareFragment} instance.
      */
-    public static ShareFragment newInstance(byte[][] jpegData, float rotation, boolean reflection) {
+    public static ShareFragment newInstance(byte[][] jpegData, int[] previewWidths, int[] previewHeights,
+                                            float rotation, boolean reflection) {
         ShareFragment fragment = new ShareFragment();
 
         Bundle args = new Bundle();
         for (int i = 0; i < jpegData.length; i++) {
             args.putByteArray(FRAGMENT_BUNDLE_KEY_JPEG_DATA[i], jpegData[i]);
         }
+        args.putIntArray(FRAGMENT_BUNDLE_KEY_PREVIEW_WIDTHS, previewWidths);
+        args.putIntArray(FRAGMENT_BUNDLE_KEY_PREVIEW_HEIGHTS, previewHeights);
         args.putFloat(FRAGMENT_BUNDLE_KEY_ROTATION, rotation);
         args.putBoolean(FRAGMENT_BUNDLE_KEY_REFLECTION, reflection);
         fragment.setArguments(args);
@@ -0,0 +1,74 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.benchmarks;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripCompositor;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks composing four frames and a header into a photo strip, as done by the {@code VerticalArrangement},
+ * {@code HorizontalArrangement} and {@code BoxArrangement}.
+ *
+ * @author Benedict Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ArrangementBenchmark {
+
+    @Param({"VERTICAL", "HORIZONTAL", "BOX"})
+    public StripLayout.Type mType;
+
+    private Raster[] mFrames;
+
+    private Raster mHeader;
+
+    private StripLayout mLayout;
+
+    @Setup
+    public void setup() {
+        mFrames = Fixtures.createFrames();
+        int width = StripLayout.getStripWidth(mType, Fixtures.FRAME_SIZE, Fixtures.NUM_FRAMES,
+                StripLayout.DEFAULT_PADDING);
+        mHeader = Fixtures.createHeader(width);
+        mLayout = new StripLayout(mType, Fixtures.FRAME_SIZE, Fixtures.FRAME_SIZE, Fixtures.NUM_FRAMES,
+                mHeader.getHeight(), StripLayout.DEFAULT_PADDING);
+    }
+
+    @Benchmark
+    public Raster createPhotoStrip() {
+        return StripCompositor.compose(mLayout, mFrames, mHeader);
+    }
+}
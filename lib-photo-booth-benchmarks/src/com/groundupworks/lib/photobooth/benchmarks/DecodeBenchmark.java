@@ -0,0 +1,215 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.benchmarks;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.codecs.Nv21Decoder;
+import com.groundupworks.lib.photobooth.raster.codecs.ScanlineJpegEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Benchmarks creating a frame from a captured Jpeg at each output resolution, following the steps of
+ * {@code ImageHelper.createImage}: decoding the centered square region at the largest power of 2 subsampling factor
+ * that keeps it at least the frame size, then scaling it to the frame size. ImageIO stands in for the Android region
+ * decoder. For comparison, also benchmarks creating a frame from an NV21 preview frame with the same steps, following
+ * {@code ImageHelper.createImageFromPreview}.
+ *
+ * @author Benedict Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx1g"})
+public class DecodeBenchmark {
+
+    /**
+     * The width of the captured picture, a 12 megapixel camera.
+     */
+    private static final int PICTURE_WIDTH = 4000;
+
+    /**
+     * The height of the captured picture.
+     */
+    private static final int PICTURE_HEIGHT = 3000;
+
+    /**
+     * The Jpeg quality of the captured picture, matching {@code CaptureFragment}.
+     */
+    private static final int PICTURE_QUALITY = 100;
+
+    /**
+     * The width and height of each frame, matching {@code PreferencesHelper.PhotoStripResolution}.
+     */
+    /**
+     * The width of the preview frame, a 1080p preview.
+     */
+    private static final int PREVIEW_WIDTH = 1920;
+
+    /**
+     * The height of the preview frame.
+     */
+    private static final int PREVIEW_HEIGHT = 1080;
+
+    @Param({"600", "1200", "1800"})
+    public int mFrameSize;
+
+    private byte[] mJpegData;
+
+    private ImageReader mReader;
+
+    private ImageReadParam mReadParam;
+
+    private byte[] mNv21Data;
+
+    private int mPreviewSampleSize;
+
+    @Setup
+    public void setup() throws IOException {
+        Raster picture = Fixtures.createFrame(0, PICTURE_WIDTH);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ScanlineJpegEncoder encoder = new ScanlineJpegEncoder(outputStream, PICTURE_WIDTH, PICTURE_HEIGHT,
+                PICTURE_QUALITY);
+        encoder.writeRows(picture.getPixels(), 0, PICTURE_WIDTH, PICTURE_HEIGHT);
+        encoder.finish();
+        mJpegData = outputStream.toByteArray();
+
+        // Decode the centered square region at the largest subsampling factor that keeps it large enough.
+        final int shortEdge = Math.min(PICTURE_WIDTH, PICTURE_HEIGHT);
+        int inSampleSize = 1;
+        while ((shortEdge / (inSampleSize * 2)) >= mFrameSize) {
+            inSampleSize *= 2;
+        }
+        mReader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        mReadParam = mReader.getDefaultReadParam();
+        mReadParam.setSourceRegion(new Rectangle((PICTURE_WIDTH - shortEdge) / 2, (PICTURE_HEIGHT - shortEdge) / 2,
+                shortEdge, shortEdge));
+        mReadParam.setSourceSubsampling(inSampleSize, inSampleSize, 0, 0);
+
+        // Convert the top of the picture to an NV21 preview frame.
+        mNv21Data = toNv21(picture, PREVIEW_WIDTH, PREVIEW_HEIGHT);
+        final int previewShortEdge = Math.min(PREVIEW_WIDTH, PREVIEW_HEIGHT);
+        mPreviewSampleSize = 1;
+        while ((previewShortEdge / (mPreviewSampleSize * 2)) >= mFrameSize) {
+            mPreviewSampleSize *= 2;
+        }
+    }
+
+    @Benchmark
+    public BufferedImage createImage() throws IOException {
+        BufferedImage decoded;
+        ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(mJpegData));
+        try {
+            mReader.setInput(inputStream);
+            decoded = mReader.read(0, mReadParam);
+        } finally {
+            inputStream.close();
+        }
+
+        // Scale to the frame size.
+        BufferedImage frame = new BufferedImage(mFrameSize, mFrameSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = frame.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(decoded, 0, 0, mFrameSize, mFrameSize, null);
+        graphics.dispose();
+
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage createImageFromPreview() {
+        // Decode the centered square region at the largest subsampling factor that keeps it large enough.
+        final int shortEdge = Math.min(PREVIEW_WIDTH, PREVIEW_HEIGHT);
+        final int sampledEdge = shortEdge / mPreviewSampleSize;
+        Raster raster = new Raster(sampledEdge, sampledEdge);
+        Nv21Decoder.decode(mNv21Data, PREVIEW_WIDTH, PREVIEW_HEIGHT, (PREVIEW_WIDTH - shortEdge) / 2,
+                (PREVIEW_HEIGHT - shortEdge) / 2, mPreviewSampleSize, raster);
+
+        // Copy into a bitmap, as with Bitmap.setPixels().
+        BufferedImage decoded = new BufferedImage(sampledEdge, sampledEdge, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) decoded.getRaster().getDataBuffer()).getData();
+        System.arraycopy(raster.getPixels(), 0, pixels, 0, pixels.length);
+
+        // Scale to the frame size.
+        BufferedImage frame = new BufferedImage(mFrameSize, mFrameSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = frame.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(decoded, 0, 0, mFrameSize, mFrameSize, null);
+        graphics.dispose();
+
+        return frame;
+    }
+
+    /**
+     * Converts the top left region of a raster to NV21 with the full-range BT.601 equations of JFIF.
+     *
+     * @param raster the raster.
+     * @param width  the width of the region. Must be even.
+     * @param height the height of the region. Must be even.
+     * @return the NV21 image data.
+     */
+    private static byte[] toNv21(Raster raster, int width, int height) {
+        byte[] nv21 = new byte[Nv21Decoder.getByteCount(width, height)];
+        int[] pixels = raster.getPixels();
+        int stride = raster.getWidth();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[y * stride + x];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                nv21[y * width + x] = (byte) Math.round(0.299f * r + 0.587f * g + 0.114f * b);
+                if ((x & 1) == 0 && (y & 1) == 0) {
+                    int chroma = width * height + (y / 2) * width + x;
+                    float v = 128f + 0.5f * r - 0.418688f * g - 0.081312f * b;
+                    float u = 128f - 0.168736f * r - 0.331264f * g + 0.5f * b;
+                    nv21[chroma] = (byte) Math.min(255, Math.round(v));
+                    nv21[chroma + 1] = (byte) Math.min(255, Math.round(u));
+                }
+            }
+        }
+
+        return nv21;
+    }
+}
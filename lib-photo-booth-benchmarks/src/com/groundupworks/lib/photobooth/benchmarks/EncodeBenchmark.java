@@ -0,0 +1,130 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.benchmarks;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripCompositor;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Benchmarks encoding single frames and photo strips to Jpeg at the quality used by {@code ImageHelper.writeJpeg},
+ * and to PNG as used by the bitmap cache.
+ *
+ * @author Benedict Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EncodeBenchmark {
+
+    /**
+     * The Jpeg quality, matching {@code ImageHelper.JPEG_COMPRESSION}.
+     */
+    private static final float JPEG_QUALITY = 1f;
+
+    /**
+     * The image to encode: a single frame, or a photo strip in one of the arrangements.
+     */
+    @Param({"FRAME", "VERTICAL", "HORIZONTAL", "BOX"})
+    public String mImage;
+
+    @Param({"jpeg", "png"})
+    public String mFormat;
+
+    private BufferedImage mBufferedImage;
+
+    private ByteArrayOutputStream mOutputStream;
+
+    private ImageWriter mWriter;
+
+    private ImageWriteParam mWriteParam;
+
+    @Setup
+    public void setup() {
+        Raster raster;
+        if ("FRAME".equals(mImage)) {
+            raster = Fixtures.createFrame(0);
+        } else {
+            StripLayout.Type type = StripLayout.Type.valueOf(mImage);
+            int width = StripLayout.getStripWidth(type, Fixtures.FRAME_SIZE, Fixtures.NUM_FRAMES,
+                    StripLayout.DEFAULT_PADDING);
+            Raster header = Fixtures.createHeader(width);
+            StripLayout layout = new StripLayout(type, Fixtures.FRAME_SIZE, Fixtures.FRAME_SIZE, Fixtures.NUM_FRAMES,
+                    header.getHeight(), StripLayout.DEFAULT_PADDING);
+            raster = StripCompositor.compose(layout, Fixtures.createFrames(), header);
+        }
+
+        final int width = raster.getWidth();
+        final int height = raster.getHeight();
+        mBufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        mBufferedImage.setRGB(0, 0, width, height, raster.getPixels(), 0, width);
+        mOutputStream = new ByteArrayOutputStream(raster.getByteCount());
+
+        mWriter = ImageIO.getImageWritersByFormatName(mFormat).next();
+        mWriteParam = mWriter.getDefaultWriteParam();
+        if ("jpeg".equals(mFormat)) {
+            mWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            mWriteParam.setCompressionQuality(JPEG_QUALITY);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mWriter.dispose();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        mOutputStream.reset();
+        ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(mOutputStream);
+        try {
+            mWriter.setOutput(imageOutputStream);
+            mWriter.write(null, new IIOImage(mBufferedImage, null, null), mWriteParam);
+        } finally {
+            imageOutputStream.close();
+        }
+
+        return mOutputStream.size();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.benchmarks;
+
+import com.groundupworks.lib.photobooth.raster.BandExecutor;
+import com.groundupworks.lib.photobooth.raster.NeighbourhoodOp;
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.filters.LineArtOp;
+import com.groundupworks.lib.photobooth.raster.filters.Looks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the image filters on a single frame. Each operation includes copying the frame pixels, as the Android
+ * filters do when reading a bitmap into a raster. Filters run serially with one band, or in parallel with more.
+ *
+ * @author Benedict Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    /**
+     * The filter under test, named after the Android filter it backs.
+     */
+    @Param({"BlackAndWhiteFilter", "SepiaFilter", "LineArtFilter"})
+    public String mFilter;
+
+    /**
+     * The number of parallel bands; 1 runs the filter directly on the benchmark thread.
+     */
+    @Param({"1", "2", "4"})
+    public int mBands;
+
+    private Raster mFrame;
+
+    private NeighbourhoodOp mOp;
+
+    private BandExecutor mExecutor;
+
+    @Setup
+    public void setup() {
+        mFrame = Fixtures.createFrame(0);
+        if ("BlackAndWhiteFilter".equals(mFilter)) {
+            mOp = Looks.GRAYSCALE;
+        } else if ("SepiaFilter".equals(mFilter)) {
+            mOp = Looks.SEPIA;
+        } else {
+            mOp = new LineArtOp();
+        }
+        mExecutor = mBands > 1 ? new BandExecutor(mBands) : null;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Raster applyFilter() {
+        if (mExecutor != null) {
+            return mExecutor.apply(mOp, mFrame.copy());
+        }
+
+        return mOp.apply(mFrame.copy());
+    }
+}
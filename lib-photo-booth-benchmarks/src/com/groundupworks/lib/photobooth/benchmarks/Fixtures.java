@@ -0,0 +1,201 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.benchmarks;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripLayout;
+
+import java.util.Random;
+
+/**
+ * Deterministic inputs shared by the benchmarks, sized like the images produced on device.
+ *
+ * @author Benedict Lau
+ */
+public class Fixtures {
+
+    /**
+     * The width and height of a frame at the standard resolution, matching {@code ImageHelper.IMAGE_SIZE}.
+     */
+    public static final int FRAME_SIZE = 600;
+
+    /**
+     * The number of frames in a photo strip.
+     */
+    public static final int NUM_FRAMES = 4;
+
+    /**
+     * The height of a header with two title lines, a date and no logo at the standard resolution, matching
+     * {@code BaseTitleHeader}.
+     */
+    public static final int HEADER_HEIGHT = StripLayout.DEFAULT_PADDING * 2 + 100 * 3;
+
+    /**
+     * The seed for generated content, so every run sees the same pixels.
+     */
+    private static final long SEED = 0x5EEDL;
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Creates a frame at the standard resolution.
+     *
+     * @param index the frame index, used to vary the content.
+     * @return the frame.
+     * @see #createFrame(int, int)
+     */
+    public static Raster createFrame(int index) {
+        return createFrame(index, FRAME_SIZE);
+    }
+
+    /**
+     * Creates a frame resembling a photo: smooth gradients for the background plus noise and hard-edged shapes, so
+     * edge detection and compression do realistic work. The shapes scale with the frame.
+     *
+     * @param index the frame index, used to vary the content.
+     * @param size  the width and height of the frame.
+     * @return the frame.
+     */
+    public static Raster createFrame(int index, int size) {
+        Random random = new Random(SEED + index);
+        Raster frame = new Raster(size, size);
+        int[] pixels = frame.getPixels();
+        int tile = Math.max(1, size * 40 / FRAME_SIZE);
+        int i = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int noise = random.nextInt(24);
+                int r = clamp(x * 255 / size + noise);
+                int g = clamp(y * 255 / size + noise);
+                int b = clamp(((x + y + index * 37) & 0xFF) / 2 + noise);
+
+                // Hard-edged shapes.
+                int dx = x - size / 2;
+                int dy = y - size / 3;
+                if (dx * dx + dy * dy < (size / 5) * (size / 5)) {
+                    r = 230 - noise;
+                    g = 190 - noise;
+                    b = 160 - noise;
+                } else if ((x / tile + y / tile) % 7 == index % 7) {
+                    r /= 3;
+                    g /= 3;
+                    b /= 3;
+                }
+                pixels[i++] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+
+        return frame;
+    }
+
+    /**
+     * Creates the frames of a photo strip at the standard resolution.
+     *
+     * @return the frames.
+     */
+    public static Raster[] createFrames() {
+        return createFrames(FRAME_SIZE);
+    }
+
+    /**
+     * Creates the frames of a photo strip.
+     *
+     * @param size the width and height of each frame.
+     * @return the frames.
+     */
+    public static Raster[] createFrames(int size) {
+        Raster[] frames = new Raster[NUM_FRAMES];
+        for (int i = 0; i < NUM_FRAMES; i++) {
+            frames[i] = createFrame(i, size);
+        }
+
+        return frames;
+    }
+
+    /**
+     * Gets the panel padding for frames of a given size, matching {@code BaseArrangement.getPanelPadding}.
+     *
+     * @param frameSize the width and height of each frame.
+     * @return the panel padding.
+     */
+    public static int getPadding(int frameSize) {
+        return Math.max(1, Math.round(StripLayout.DEFAULT_PADDING * frameSize / (float) FRAME_SIZE));
+    }
+
+    /**
+     * Gets the height of a header with two title lines, a date and no logo for frames of a given size, matching
+     * {@code BaseTitleHeader}.
+     *
+     * @param frameSize the width and height of each frame.
+     * @return the header height.
+     */
+    public static int getHeaderHeight(int frameSize) {
+        int lineHeight = Math.round((HEADER_HEIGHT - StripLayout.DEFAULT_PADDING * 2) / 3 * frameSize
+                / (float) FRAME_SIZE);
+        return getPadding(frameSize) * 2 + lineHeight * 3;
+    }
+
+    /**
+     * Creates a header at the standard resolution.
+     *
+     * @param width the width of the header.
+     * @return the header.
+     * @see #createHeader(int, int)
+     */
+    public static Raster createHeader(int width) {
+        return createHeader(width, FRAME_SIZE);
+    }
+
+    /**
+     * Creates a header with transparent background and opaque content bands, standing in for rendered title text.
+     *
+     * @param width     the width of the header.
+     * @param frameSize the width and height of each frame, by which the header height is scaled.
+     * @return the header.
+     */
+    public static Raster createHeader(int width, int frameSize) {
+        final int height = getHeaderHeight(frameSize);
+        final int padding = getPadding(frameSize);
+        Raster header = new Raster(width, height);
+        int[] pixels = header.getPixels();
+        for (int y = padding; y < height - padding; y++) {
+            for (int x = width / 5; x < width * 4 / 5; x++) {
+                if (((x / 9) + (y / 13)) % 3 == 0) {
+                    pixels[y * width + x] = Raster.BLACK;
+                }
+            }
+        }
+
+        return header;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Clamps a channel value to the 0-255 range.
+     *
+     * @param value the channel value.
+     * @return the clamped channel value.
+     */
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(0xFF, value));
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.benchmarks;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering the photo strip title header, following the steps of {@code BaseTitleHeader.getHeaderBitmap}:
+ * fitting the text size for each line, drawing shadowed text and compositing the event logo. Java2D stands in for the
+ * Android text renderer, and the shadow is drawn as an offset grey pass since Java2D has no shadow layer.
+ *
+ * @author Benedict Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HeaderBenchmark {
+
+    /**
+     * The top and bottom padding of the header.
+     */
+    private static final int HEADER_PADDING = StripLayout.DEFAULT_PADDING;
+
+    /**
+     * The height of each line.
+     */
+    private static final int TEXT_LINE_HEIGHT = 100;
+
+    /**
+     * The vertical offset of the text shadow.
+     */
+    private static final int TEXT_SHADOW_DY = 3;
+
+    /**
+     * The factor to fill a bounding box with text, matching {@code TextHelper}.
+     */
+    private static final float FILL_FACTOR = 0.8f;
+
+    /**
+     * The minimum text size, matching {@code TextHelper}.
+     */
+    private static final float MIN_TEXT_SIZE = 12f;
+
+    /**
+     * The max width of the event logo, matching {@code BaseTitleHeader.EVENT_LOGO_MAX_WIDTH}.
+     */
+    private static final int LOGO_WIDTH = Fixtures.FRAME_SIZE;
+
+    /**
+     * The max height of the event logo, matching {@code BaseTitleHeader.EVENT_LOGO_MAX_HEIGHT}.
+     */
+    private static final int LOGO_HEIGHT = LOGO_WIDTH * 2 / 3;
+
+    @Param({"VERTICAL", "HORIZONTAL", "BOX"})
+    public StripLayout.Type mType;
+
+    @Param({"true", "false"})
+    public boolean mHasLogo;
+
+    private final String mLineOne = "Alex & Sam";
+
+    private final String mLineTwo = "Summer Celebration";
+
+    private final String mDate = "Oct 17, 2026";
+
+    private Font mFont;
+
+    private BufferedImage mLogo;
+
+    private int mWidth;
+
+    @Setup
+    public void setup() {
+        mFont = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+        mWidth = StripLayout.getStripWidth(mType, Fixtures.FRAME_SIZE, Fixtures.NUM_FRAMES,
+                StripLayout.DEFAULT_PADDING);
+
+        Raster logo = Fixtures.createHeader(LOGO_WIDTH);
+        mLogo = new BufferedImage(LOGO_WIDTH, LOGO_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        mLogo.setRGB(0, 0, LOGO_WIDTH, Math.min(LOGO_HEIGHT, logo.getHeight()), logo.getPixels(), 0, LOGO_WIDTH);
+    }
+
+    @Benchmark
+    public BufferedImage getHeaderBitmap() {
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+
+        // Calculate height and text sizes.
+        int height = HEADER_PADDING * 2 + TEXT_LINE_HEIGHT * 3;
+        float optimalTextSize = Math.min(getFittedTextSize(mLineOne, frc),
+                Math.min(getFittedTextSize(mLineTwo, frc), getFittedTextSize(mDate, frc)));
+        if (mHasLogo) {
+            height += HEADER_PADDING + mLogo.getHeight();
+        }
+
+        // Create header bitmap.
+        BufferedImage header = new BufferedImage(mWidth, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = header.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setFont(mFont.deriveFont(optimalTextSize));
+
+        int yOffset = HEADER_PADDING;
+        yOffset += TEXT_LINE_HEIGHT;
+        drawCenteredText(graphics, mLineOne, yOffset, Color.BLACK, true);
+        yOffset += TEXT_LINE_HEIGHT;
+        drawCenteredText(graphics, mLineTwo, yOffset, Color.BLACK, true);
+        yOffset += TEXT_LINE_HEIGHT;
+        drawCenteredText(graphics, mDate, yOffset, Color.GRAY, false);
+
+        // Draw event logo.
+        if (mHasLogo) {
+            yOffset += HEADER_PADDING;
+            graphics.drawImage(mLogo, (mWidth - mLogo.getWidth()) / 2, yOffset, null);
+        }
+        graphics.dispose();
+
+        return header;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Gets the text size that fits a line, following {@code TextHelper.getFittedTextSize}.
+     *
+     * @param text the text.
+     * @param frc  the {@link FontRenderContext}.
+     * @return the fitted text size.
+     */
+    private float getFittedTextSize(String text, FontRenderContext frc) {
+        Rectangle2D bounds = mFont.createGlyphVector(frc, text).getVisualBounds();
+        float scaleFactor = 0f;
+        if (bounds.getWidth() > 0d && bounds.getHeight() > 0d) {
+            scaleFactor = (float) Math.min(mWidth / bounds.getWidth(), TEXT_LINE_HEIGHT / bounds.getHeight());
+        }
+
+        return Math.max(mFont.getSize2D() * scaleFactor * FILL_FACTOR, MIN_TEXT_SIZE);
+    }
+
+    /**
+     * Draws a line of text horizontally centered.
+     *
+     * @param graphics the {@link Graphics2D}.
+     * @param text     the text.
+     * @param baseline the y coordinate of the text baseline.
+     * @param color    the text color.
+     * @param shadow   true to draw a shadow under the text; false otherwise.
+     */
+    private void drawCenteredText(Graphics2D graphics, String text, int baseline, Color color, boolean shadow) {
+        int x = (mWidth - graphics.getFontMetrics().stringWidth(text)) / 2;
+        if (shadow) {
+            graphics.setColor(Color.GRAY);
+            graphics.drawString(text, x, baseline + TEXT_SHADOW_DY);
+        }
+        graphics.setColor(color);
+        graphics.drawString(text, x, baseline);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.benchmarks;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripCompositor;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripLayout;
+import com.groundupworks.lib.photobooth.raster.codecs.ScanlineJpegEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing a photo strip as Jpeg at each output resolution, either composed in full and then encoded, or
+ * rendered in bands into the streaming encoder as {@code BaseArrangement.writePhotoStrip} does. Run with the gc
+ * profiler, the default of the jmh task, and compare {@code gc.alloc.rate.norm}: neither path keeps buffers between
+ * operations, so the bytes allocated per photo strip are its peak working set.
+ *
+ * @author Benedict Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class ResolutionBenchmark {
+
+    /**
+     * The Jpeg quality of the print master, matching {@code ImageDerivative.PRINT}.
+     */
+    private static final int JPEG_QUALITY = 100;
+
+    /**
+     * The height of each band, matching {@code BaseArrangement}.
+     */
+    private static final int BAND_HEIGHT = ScanlineJpegEncoder.MCU_HEIGHT * 8;
+
+    /**
+     * The width and height of each frame, matching {@code PreferencesHelper.PhotoStripResolution}.
+     */
+    @Param({"600", "1200", "1800"})
+    public int mFrameSize;
+
+    @Param({"VERTICAL", "HORIZONTAL", "BOX"})
+    public StripLayout.Type mType;
+
+    private Raster[] mFrames;
+
+    private Raster mHeader;
+
+    private StripLayout mLayout;
+
+    private ByteArrayOutputStream mOutputStream;
+
+    @Setup
+    public void setup() {
+        mFrames = Fixtures.createFrames(mFrameSize);
+        int padding = Fixtures.getPadding(mFrameSize);
+        int width = StripLayout.getStripWidth(mType, mFrameSize, Fixtures.NUM_FRAMES, padding);
+        mHeader = Fixtures.createHeader(width, mFrameSize);
+        mLayout = new StripLayout(mType, mFrameSize, mFrameSize, Fixtures.NUM_FRAMES, mHeader.getHeight(), padding);
+        mOutputStream = new ByteArrayOutputStream(mLayout.getWidth() * mLayout.getHeight());
+    }
+
+    @Benchmark
+    public int writeComposed() throws IOException {
+        mOutputStream.reset();
+        Raster photoStrip = StripCompositor.compose(mLayout, mFrames, mHeader);
+        ScanlineJpegEncoder encoder = new ScanlineJpegEncoder(mOutputStream, photoStrip.getWidth(),
+                photoStrip.getHeight(), JPEG_QUALITY);
+        encoder.writeRows(photoStrip.getPixels(), 0, photoStrip.getWidth(), photoStrip.getHeight());
+        encoder.finish();
+
+        return mOutputStream.size();
+    }
+
+    @Benchmark
+    public int writeBanded() throws IOException {
+        mOutputStream.reset();
+        StripCompositor.encode(mLayout, mFrames, mHeader, BAND_HEIGHT, JPEG_QUALITY, mOutputStream);
+
+        return mOutputStream.size();
+    }
+}
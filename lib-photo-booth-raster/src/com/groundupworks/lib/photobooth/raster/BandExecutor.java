@@ -0,0 +1,318 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies {@link NeighbourhoodOp}s in parallel by splitting a raster into horizontal bands. Each band is extended by
+ * the radius of the operation so that the stitched result has no seams. One band runs on the calling thread and the
+ * rest run on an {@link Executor}, either a fixed pool of daemon threads owned by this class or a shared executor
+ * supplied by the caller. The calling thread also runs any band the executor has not started by the time its own band
+ * is done, so a busy shared executor never leaves it waiting, even when it is one of the executor's threads. The
+ * duration of each band in the last run is recorded to measure the speedup. This class is thread-safe, but concurrent
+ * runs share the executor.
+ *
+ * @author Benedict Lau
+ */
+public class BandExecutor {
+
+    /**
+     * The minimum number of rows in a band, below which splitting costs more than it saves.
+     */
+    public static final int MIN_BAND_HEIGHT = 32;
+
+    /**
+     * The prefix of the worker thread names.
+     */
+    private static final String THREAD_NAME_PREFIX = "bandWorker-";
+
+    /**
+     * The max number of bands to split a raster into.
+     */
+    private final int mMaxBands;
+
+    /**
+     * The executor running all bands except the one on the calling thread; or null if there is only one band.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * The pool owned by this class and shut down with it; or null if the executor is shared or there is only one band.
+     */
+    private final ExecutorService mOwnedExecutorService;
+
+    /**
+     * The duration of each band in the last run in nanoseconds.
+     */
+    private long[] mLastBandTimes = new long[0];
+
+    /**
+     * The duration of the last run in nanoseconds.
+     */
+    private long mLastTime = 0L;
+
+    /**
+     * Constructor. Uses one band per available processor.
+     */
+    public BandExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor. Starts a pool of threads owned by this class.
+     *
+     * @param maxBands the max number of bands, which is also the number of threads used including the calling thread.
+     */
+    public BandExecutor(int maxBands) {
+        mMaxBands = Math.max(1, maxBands);
+        if (mMaxBands > 1) {
+            mOwnedExecutorService = Executors.newFixedThreadPool(mMaxBands - 1, new ThreadFactory() {
+
+                /**
+                 * The number of threads created, used to name them.
+                 */
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            mOwnedExecutorService = null;
+        }
+        mExecutor = mOwnedExecutorService;
+    }
+
+    /**
+     * Constructor. Runs bands on a shared executor, so image filters do not add threads on top of the ones already
+     * sized to the processor cores. The executor is not shut down by {@link #shutdown()}.
+     *
+     * @param maxBands the max number of bands, including the one on the calling thread.
+     * @param executor the executor to run the other bands on. Must run tasks concurrently for bands to speed up.
+     */
+    public BandExecutor(int maxBands, Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("The executor must not be null");
+        }
+
+        mMaxBands = Math.max(1, maxBands);
+        mExecutor = executor;
+        mOwnedExecutorService = null;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Applies an operation to a raster in parallel bands.
+     *
+     * @param op  the operation.
+     * @param src the source raster. Must not be null.
+     * @return the resulting raster, which may be the source raster; or null if interrupted.
+     */
+    public Raster apply(NeighbourhoodOp op, Raster src) {
+        final long startTime = System.nanoTime();
+        final int height = src.getHeight();
+        final int numBands = Math.max(1, Math.min(mMaxBands, height / MIN_BAND_HEIGHT));
+        final long[] bandTimes = new long[numBands];
+
+        Raster result;
+        if (numBands == 1) {
+            result = op.apply(src);
+            bandTimes[0] = System.nanoTime() - startTime;
+        } else {
+            result = new Raster(src.getWidth(), height);
+            List<FutureTask<Void>> futures = new ArrayList<FutureTask<Void>>(numBands - 1);
+            for (int i = 1; i < numBands; i++) {
+                FutureTask<Void> future = new FutureTask<Void>(new Band(op, src, result, i, numBands, bandTimes), null);
+                futures.add(future);
+                mExecutor.execute(future);
+            }
+            new Band(op, src, result, 0, numBands, bandTimes).run();
+
+            try {
+                for (FutureTask<Void> future : futures) {
+                    // Run the band here if the executor has not started it. Does nothing if it has.
+                    future.run();
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                for (FutureTask<Void> future : futures) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                result = null;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch (CancellationException e) {
+                result = null;
+            }
+        }
+
+        synchronized (this) {
+            mLastBandTimes = bandTimes;
+            mLastTime = System.nanoTime() - startTime;
+        }
+
+        return result;
+    }
+
+    /**
+     * Stops the worker threads owned by this class. A shared executor is left running. Operations must not be applied
+     * afterwards.
+     */
+    public void shutdown() {
+        if (mOwnedExecutorService != null) {
+            mOwnedExecutorService.shutdown();
+        }
+    }
+
+    /**
+     * @return the max number of bands a raster is split into.
+     */
+    public int getMaxBands() {
+        return mMaxBands;
+    }
+
+    /**
+     * @return the duration of each band in the last run in nanoseconds.
+     */
+    public synchronized long[] getLastBandTimes() {
+        return mLastBandTimes.clone();
+    }
+
+    /**
+     * @return the duration of the last run in nanoseconds, including splitting and stitching.
+     */
+    public synchronized long getLastTime() {
+        return mLastTime;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long[] bandTimesMicros = new long[mLastBandTimes.length];
+        for (int i = 0; i < bandTimesMicros.length; i++) {
+            bandTimesMicros[i] = TimeUnit.NANOSECONDS.toMicros(mLastBandTimes[i]);
+        }
+
+        return "BandExecutor[maxBands=" + mMaxBands + ", lastTimeMicros=" + TimeUnit.NANOSECONDS.toMicros(mLastTime)
+                + ", lastBandTimesMicros=" + Arrays.toString(bandTimesMicros) + "]";
+    }
+
+    //
+    // Private inner classes.
+    //
+
+    /**
+     * A horizontal band of the raster. The band rows plus the halo rows are copied out of the source raster, the
+     * operation is applied to the copy, and only the band rows are copied into the result.
+     */
+    private static class Band implements Runnable {
+
+        /**
+         * The operation to apply to the band.
+         */
+        private final NeighbourhoodOp mOp;
+
+        /**
+         * The source raster.
+         */
+        private final Raster mSrc;
+
+        /**
+         * The raster to write the band rows to.
+         */
+        private final Raster mDst;
+
+        /**
+         * The index of the band.
+         */
+        private final int mIndex;
+
+        /**
+         * The total number of bands.
+         */
+        private final int mNumBands;
+
+        /**
+         * The array to record the duration of the band in, indexed by band.
+         */
+        private final long[] mBandTimes;
+
+        /**
+         * Constructor.
+         *
+         * @param op        the operation.
+         * @param src       the source raster.
+         * @param dst       the raster to write the band rows to.
+         * @param index     the index of the band.
+         * @param numBands  the total number of bands.
+         * @param bandTimes the array to record the duration of the band in.
+         */
+        private Band(NeighbourhoodOp op, Raster src, Raster dst, int index, int numBands, long[] bandTimes) {
+            mOp = op;
+            mSrc = src;
+            mDst = dst;
+            mIndex = index;
+            mNumBands = numBands;
+            mBandTimes = bandTimes;
+        }
+
+        @Override
+        public void run() {
+            final long startTime = System.nanoTime();
+            final int width = mSrc.getWidth();
+            final int height = mSrc.getHeight();
+            final int radius = mOp.getRadius();
+
+            // Split rows evenly, with the remainder spread over the first bands.
+            final int top = (int) ((long) height * mIndex / mNumBands);
+            final int bottom = (int) ((long) height * (mIndex + 1) / mNumBands);
+            final int haloTop = Math.max(0, top - radius);
+            final int haloBottom = Math.min(height, bottom + radius);
+
+            int[] bandPixels = Arrays.copyOfRange(mSrc.getPixels(), haloTop * width, haloBottom * width);
+            Raster band = mOp.apply(new Raster(bandPixels, width, haloBottom - haloTop));
+            System.arraycopy(band.getPixels(), (top - haloTop) * width, mDst.getPixels(), top * width,
+                    (bottom - top) * width);
+
+            mBandTimes[mIndex] = System.nanoTime() - startTime;
+        }
+    }
+}
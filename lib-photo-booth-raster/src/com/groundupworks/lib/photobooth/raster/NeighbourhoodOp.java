@@ -0,0 +1,35 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster;
+
+/**
+ * A {@link RasterOp} where each output pixel depends only on the source pixels within a fixed number of rows. Such an
+ * operation can be applied to horizontal bands of a raster independently, as long as each band is extended by the
+ * radius on both sides. Implementations must be safe to apply to different rasters concurrently.
+ *
+ * @author Benedict Lau
+ */
+public interface NeighbourhoodOp extends RasterOp {
+
+    /**
+     * Gets the number of rows above and below a pixel that affect its output. A band extended by this many rows on
+     * each side must produce the same output in its interior as the whole raster.
+     *
+     * @return the radius in rows; 0 if each output pixel depends only on its own source pixel.
+     */
+    public int getRadius();
+}
@@ -0,0 +1,306 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A platform-independent image backed by a primitive array of packed ARGB pixels, stored in row-major order with no
+ * padding between rows.
+ *
+ * @author Benedict Lau
+ */
+public class Raster {
+
+    /**
+     * Opaque white.
+     */
+    public static final int WHITE = 0xFFFFFFFF;
+
+    /**
+     * Opaque black.
+     */
+    public static final int BLACK = 0xFF000000;
+
+    /**
+     * Opaque dark grey.
+     */
+    public static final int DKGRAY = 0xFF444444;
+
+    /**
+     * Opaque light grey.
+     */
+    public static final int LTGRAY = 0xFFCCCCCC;
+
+    /**
+     * The number of bytes per pixel.
+     */
+    public static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * The width of the raster.
+     */
+    private final int mWidth;
+
+    /**
+     * The height of the raster.
+     */
+    private final int mHeight;
+
+    /**
+     * The packed ARGB pixels.
+     */
+    private final int[] mPixels;
+
+    /**
+     * Constructor. Allocates a raster with all pixels set to transparent.
+     *
+     * @param width  the width of the raster.
+     * @param height the height of the raster.
+     */
+    public Raster(int width, int height) {
+        this(new int[width * height], width, height);
+    }
+
+    /**
+     * Constructor. Wraps an existing pixel array without copying.
+     *
+     * @param pixels the packed ARGB pixels. Must hold at least width * height values.
+     * @param width  the width of the raster.
+     * @param height the height of the raster.
+     */
+    public Raster(int[] pixels, int width, int height) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Invalid raster dimensions " + width + "x" + height);
+        }
+
+        mPixels = pixels;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * @return the width of the raster.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return the height of the raster.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the packed ARGB pixels backing this raster. Changes to the array are reflected in the raster.
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    /**
+     * Gets a pixel.
+     *
+     * @param x the x coordinate.
+     * @param y the y coordinate.
+     * @return the packed ARGB pixel.
+     */
+    public int getPixel(int x, int y) {
+        return mPixels[y * mWidth + x];
+    }
+
+    /**
+     * Sets a pixel.
+     *
+     * @param x     the x coordinate.
+     * @param y     the y coordinate.
+     * @param color the packed ARGB pixel.
+     */
+    public void setPixel(int x, int y, int color) {
+        mPixels[y * mWidth + x] = color;
+    }
+
+    /**
+     * Fills the entire raster with a color.
+     *
+     * @param color the packed ARGB color.
+     */
+    public void fill(int color) {
+        Arrays.fill(mPixels, 0, mWidth * mHeight, color);
+    }
+
+    /**
+     * Creates a copy of this raster.
+     *
+     * @return the copy.
+     */
+    public Raster copy() {
+        int[] pixels = new int[mWidth * mHeight];
+        System.arraycopy(mPixels, 0, pixels, 0, pixels.length);
+        return new Raster(pixels, mWidth, mHeight);
+    }
+
+    /**
+     * Copies the pixels into a buffer as RGBA bytes, which is the in-memory layout of an ARGB_8888 bitmap. The buffer
+     * position is advanced by the number of bytes written.
+     *
+     * @param buffer the buffer to write to. Must have at least {@link #getByteCount()} bytes remaining.
+     */
+    public void copyPixelsToBuffer(ByteBuffer buffer) {
+        final int count = mWidth * mHeight;
+        for (int i = 0; i < count; i++) {
+            int color = mPixels[i];
+            buffer.put((byte) (color >> 16));
+            buffer.put((byte) (color >> 8));
+            buffer.put((byte) color);
+            buffer.put((byte) (color >>> 24));
+        }
+    }
+
+    /**
+     * Copies RGBA bytes from a buffer into the pixels. The buffer position is advanced by the number of bytes read.
+     *
+     * @param buffer the buffer to read from. Must have at least {@link #getByteCount()} bytes remaining.
+     */
+    public void copyPixelsFromBuffer(ByteBuffer buffer) {
+        final int count = mWidth * mHeight;
+        for (int i = 0; i < count; i++) {
+            int r = buffer.get() & 0xFF;
+            int g = buffer.get() & 0xFF;
+            int b = buffer.get() & 0xFF;
+            int a = buffer.get() & 0xFF;
+            mPixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * @return the number of bytes needed to store the pixels.
+     */
+    public int getByteCount() {
+        return mWidth * mHeight * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Draws another raster onto this raster with source-over alpha blending. Pixels falling outside this raster are
+     * clipped.
+     *
+     * @param src  the raster to draw.
+     * @param left the x coordinate of the left side of the drawn raster.
+     * @param top  the y coordinate of the top of the drawn raster.
+     */
+    public void draw(Raster src, int left, int top) {
+        final int startX = Math.max(0, -left);
+        final int startY = Math.max(0, -top);
+        final int endX = Math.min(src.mWidth, mWidth - left);
+        final int endY = Math.min(src.mHeight, mHeight - top);
+        final int[] srcPixels = src.mPixels;
+
+        for (int y = startY; y < endY; y++) {
+            int srcIndex = y * src.mWidth + startX;
+            int dstIndex = (y + top) * mWidth + left + startX;
+            for (int x = startX; x < endX; x++) {
+                mPixels[dstIndex] = blend(srcPixels[srcIndex], mPixels[dstIndex]);
+                srcIndex++;
+                dstIndex++;
+            }
+        }
+    }
+
+    /**
+     * Draws a horizontal or vertical line, both ends inclusive. Pixels falling outside this raster are clipped.
+     *
+     * @param x0    the x coordinate of the start of the line.
+     * @param y0    the y coordinate of the start of the line.
+     * @param x1    the x coordinate of the end of the line.
+     * @param y1    the y coordinate of the end of the line.
+     * @param color the packed ARGB color.
+     */
+    public void drawLine(int x0, int y0, int x1, int y1, int color) {
+        if (y0 == y1) {
+            if (y0 < 0 || y0 >= mHeight) {
+                return;
+            }
+            int start = Math.max(0, Math.min(x0, x1));
+            int end = Math.min(mWidth - 1, Math.max(x0, x1));
+            int offset = y0 * mWidth;
+            for (int x = start; x <= end; x++) {
+                mPixels[offset + x] = color;
+            }
+        } else if (x0 == x1) {
+            if (x0 < 0 || x0 >= mWidth) {
+                return;
+            }
+            int start = Math.max(0, Math.min(y0, y1));
+            int end = Math.min(mHeight - 1, Math.max(y0, y1));
+            for (int y = start; y <= end; y++) {
+                mPixels[y * mWidth + x0] = color;
+            }
+        } else {
+            throw new IllegalArgumentException("Only horizontal and vertical lines are supported");
+        }
+    }
+
+    /**
+     * Draws the outline of a rectangle, all sides inclusive.
+     *
+     * @param left   the left side of the rectangle.
+     * @param top    the top of the rectangle.
+     * @param right  the right side of the rectangle.
+     * @param bottom the bottom of the rectangle.
+     * @param color  the packed ARGB color.
+     */
+    public void drawRectOutline(int left, int top, int right, int bottom, int color) {
+        drawLine(left, top, right, top, color);
+        drawLine(right, top, right, bottom, color);
+        drawLine(right, bottom, left, bottom, color);
+        drawLine(left, bottom, left, top, color);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Blends a source color over a destination color.
+     *
+     * @param src the packed ARGB source color.
+     * @param dst the packed ARGB destination color.
+     * @return the blended color.
+     */
+    private static int blend(int src, int dst) {
+        final int srcAlpha = src >>> 24;
+        if (srcAlpha == 0xFF) {
+            return src;
+        } else if (srcAlpha == 0) {
+            return dst;
+        }
+
+        final int inverse = 0xFF - srcAlpha;
+        int a = srcAlpha + ((dst >>> 24) * inverse + 127) / 0xFF;
+        int r = (((src >> 16) & 0xFF) * srcAlpha + ((dst >> 16) & 0xFF) * inverse + 127) / 0xFF;
+        int g = (((src >> 8) & 0xFF) * srcAlpha + ((dst >> 8) & 0xFF) * inverse + 127) / 0xFF;
+        int b = ((src & 0xFF) * srcAlpha + (dst & 0xFF) * inverse + 127) / 0xFF;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
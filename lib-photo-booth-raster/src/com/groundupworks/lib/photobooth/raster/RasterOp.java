@@ -0,0 +1,33 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster;
+
+/**
+ * An operation applied to a {@link Raster}.
+ *
+ * @author Benedict Lau
+ */
+public interface RasterOp {
+
+    /**
+     * Applies the operation to the source raster.
+     *
+     * @param src the source raster. Must not be null.
+     * @return the resulting raster. Implementations may modify and return the source raster.
+     */
+    public Raster apply(Raster src);
+}
@@ -0,0 +1,174 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster;
+
+/**
+ * Geometric transformations on a {@link Raster}.
+ *
+ * @author Benedict Lau
+ */
+public class Transform {
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Creates a square raster from the centered square of the source raster. The source is scaled so its short edge
+     * matches the size, horizontally reflected if requested, and then rotated about its center. Pixels are sampled
+     * with bilinear interpolation.
+     *
+     * @param src        the source raster. Must not be null.
+     * @param size       the width and height of the new raster.
+     * @param rotation   clockwise rotation applied to the raster in degrees.
+     * @param reflection horizontal reflection applied to the raster.
+     * @return the new raster.
+     */
+    public static Raster createSquare(Raster src, int size, float rotation, boolean reflection) {
+        return createSquare(src, new Raster(size, size), rotation, reflection);
+    }
+
+    /**
+     * Draws the centered square of the source raster into an existing square raster. See
+     * {@link #createSquare(Raster, int, float, boolean)}.
+     *
+     * @param src        the source raster. Must not be null.
+     * @param dst        the destination raster. Must be square.
+     * @param rotation   clockwise rotation applied to the raster in degrees.
+     * @param reflection horizontal reflection applied to the raster.
+     * @return the destination raster.
+     */
+    public static Raster createSquare(Raster src, Raster dst, float rotation, boolean reflection) {
+        final int srcWidth = src.getWidth();
+        final int srcHeight = src.getHeight();
+        final int size = dst.getWidth();
+        final int[] srcPixels = src.getPixels();
+        final int[] dstPixels = dst.getPixels();
+
+        // Inverse of scale, then rotate, mapping destination pixel centers to source coordinates.
+        final float inverseScale = (float) Math.min(srcWidth, srcHeight) / size;
+        final double radians = Math.toRadians(rotation);
+        final float cos = (float) Math.cos(radians);
+        final float sin = (float) Math.sin(radians);
+        final float reflectionSign = reflection ? -1f : 1f;
+        final float srcCenterX = srcWidth / 2f;
+        final float srcCenterY = srcHeight / 2f;
+        final float dstCenter = size / 2f;
+
+        int index = 0;
+        for (int y = 0; y < size; y++) {
+            float dy = y + 0.5f - dstCenter;
+            for (int x = 0; x < size; x++) {
+                float dx = x + 0.5f - dstCenter;
+
+                // Undo rotation, then undo reflection and scale.
+                float rx = dx * cos + dy * sin;
+                float ry = -dx * sin + dy * cos;
+                float sx = rx * reflectionSign * inverseScale + srcCenterX - 0.5f;
+                float sy = ry * inverseScale + srcCenterY - 0.5f;
+
+                dstPixels[index++] = sampleBilinear(srcPixels, srcWidth, srcHeight, sx, sy);
+            }
+        }
+
+        return dst;
+    }
+
+    /**
+     * Creates a scaled copy of a raster using bilinear interpolation.
+     *
+     * @param src       the source raster. Must not be null.
+     * @param dstWidth  the width of the scaled raster.
+     * @param dstHeight the height of the scaled raster.
+     * @return the scaled raster.
+     */
+    public static Raster scale(Raster src, int dstWidth, int dstHeight) {
+        final int srcWidth = src.getWidth();
+        final int srcHeight = src.getHeight();
+        final int[] srcPixels = src.getPixels();
+        final float scaleX = (float) srcWidth / dstWidth;
+        final float scaleY = (float) srcHeight / dstHeight;
+
+        Raster dst = new Raster(dstWidth, dstHeight);
+        final int[] dstPixels = dst.getPixels();
+        int index = 0;
+        for (int y = 0; y < dstHeight; y++) {
+            float sy = (y + 0.5f) * scaleY - 0.5f;
+            for (int x = 0; x < dstWidth; x++) {
+                float sx = (x + 0.5f) * scaleX - 0.5f;
+                dstPixels[index++] = sampleBilinear(srcPixels, srcWidth, srcHeight, sx, sy);
+            }
+        }
+
+        return dst;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Samples a pixel with bilinear interpolation, clamping coordinates to the raster bounds.
+     *
+     * @param pixels the packed ARGB pixels.
+     * @param width  the width of the raster.
+     * @param height the height of the raster.
+     * @param x      the x coordinate, where integers are pixel centers.
+     * @param y      the y coordinate, where integers are pixel centers.
+     * @return the interpolated packed ARGB pixel.
+     */
+    private static int sampleBilinear(int[] pixels, int width, int height, float x, float y) {
+        if (x < 0f) {
+            x = 0f;
+        } else if (x > width - 1) {
+            x = width - 1;
+        }
+        if (y < 0f) {
+            y = 0f;
+        } else if (y > height - 1) {
+            y = height - 1;
+        }
+
+        final int x0 = (int) x;
+        final int y0 = (int) y;
+        final int x1 = Math.min(x0 + 1, width - 1);
+        final int y1 = Math.min(y0 + 1, height - 1);
+
+        // Fixed-point weights in the range 0-256.
+        final int fx = (int) ((x - x0) * 256f);
+        final int fy = (int) ((y - y0) * 256f);
+
+        final int p00 = pixels[y0 * width + x0];
+        final int p10 = pixels[y0 * width + x1];
+        final int p01 = pixels[y1 * width + x0];
+        final int p11 = pixels[y1 * width + x1];
+
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int c00 = (p00 >>> shift) & 0xFF;
+            int c10 = (p10 >>> shift) & 0xFF;
+            int c01 = (p01 >>> shift) & 0xFF;
+            int c11 = (p11 >>> shift) & 0xFF;
+            int top = (c00 << 8) + (c10 - c00) * fx;
+            int bottom = (c01 << 8) + (c11 - c01) * fx;
+            int value = ((top << 8) + (bottom - top) * fy + (1 << 15)) >> 16;
+            result |= value << shift;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.arrangements;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.codecs.ScanlineJpegEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Composes frames into a photo strip {@link Raster} following a {@link StripLayout}. The output matches the Android
+ * arrangements: a white background, the header at the top, a two-tone border around each frame and a dark border
+ * around the photo strip. A photo strip can also be drawn and encoded one band at a time, for photo strips too large
+ * to hold in memory.
+ *
+ * @author Benedict Lau
+ */
+public class StripCompositor {
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Creates a photo strip.
+     *
+     * @param layout the {@link StripLayout}.
+     * @param frames the frames. Must hold {@link StripLayout#getNumFrames()} rasters of the layout frame size.
+     * @param header the header; or null if there is no header.
+     * @return the photo strip.
+     */
+    public static Raster compose(StripLayout layout, Raster[] frames, Raster header) {
+        Raster strip = new Raster(layout.getWidth(), layout.getHeight());
+        composeBand(layout, frames, header, strip, 0);
+
+        return strip;
+    }
+
+    /**
+     * Draws a horizontal band of a photo strip. Together, the bands of a photo strip match {@link #compose}.
+     *
+     * @param layout  the {@link StripLayout}.
+     * @param frames  the frames. Must hold {@link StripLayout#getNumFrames()} rasters of the layout frame size.
+     * @param header  the header; or null if there is no header.
+     * @param band    the raster to draw the band on. Must be as wide as the photo strip.
+     * @param bandTop the y coordinate in the photo strip of the top of the band.
+     */
+    public static void composeBand(StripLayout layout, Raster[] frames, Raster header, Raster band, int bandTop) {
+        band.fill(Raster.WHITE);
+
+        // Draw header.
+        if (header != null) {
+            band.draw(header, 0, -bandTop);
+        }
+
+        // Draw frames that overlap the band, with their borders.
+        final int frameWidth = layout.getFrameWidth();
+        final int frameHeight = layout.getFrameHeight();
+        for (int i = 0; i < frames.length; i++) {
+            int left = layout.getFrameLeft(i);
+            int top = layout.getFrameTop(i) - bandTop;
+            int right = left + frameWidth - 1;
+            int bottom = top + frameHeight - 1;
+
+            if (bottom + 1 >= 0 && top - 1 < band.getHeight()) {
+                band.draw(frames[i], left, top);
+                drawPanelBorders(band, left, top, right, bottom);
+            }
+        }
+
+        // Draw photo strip borders.
+        band.drawRectOutline(0, -bandTop, layout.getWidth() - 1, layout.getHeight() - 1 - bandTop, Raster.DKGRAY);
+    }
+
+    /**
+     * Encodes a photo strip as Jpeg one band at a time, so the full photo strip is never held in memory. Only one
+     * band and one row of Jpeg blocks are allocated, however large the photo strip.
+     *
+     * @param layout       the {@link StripLayout}.
+     * @param frames       the frames. Must hold {@link StripLayout#getNumFrames()} rasters of the layout frame size.
+     * @param header       the header; or null if there is no header.
+     * @param bandHeight   the height of each band. A multiple of {@link ScanlineJpegEncoder#MCU_HEIGHT} is best.
+     * @param quality      the Jpeg quality, between 1 and 100.
+     * @param outputStream the output stream to write the Jpeg to. Not closed.
+     * @throws IOException if the output stream fails.
+     */
+    public static void encode(StripLayout layout, Raster[] frames, Raster header, int bandHeight, int quality,
+                              OutputStream outputStream) throws IOException {
+        final int width = layout.getWidth();
+        final int height = layout.getHeight();
+        ScanlineJpegEncoder encoder = new ScanlineJpegEncoder(outputStream, width, height, quality);
+        Raster band = new Raster(width, Math.min(bandHeight, height));
+        for (int bandTop = 0; bandTop < height; bandTop += band.getHeight()) {
+            composeBand(layout, frames, header, band, bandTop);
+            encoder.writeRows(band.getPixels(), 0, width, Math.min(band.getHeight(), height - bandTop));
+        }
+        encoder.finish();
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Draws the border for a panel.
+     *
+     * @param strip  the photo strip to draw on.
+     * @param left   the left side of the panel.
+     * @param top    the top of the panel.
+     * @param right  the right side of the panel.
+     * @param bottom the bottom of the panel.
+     */
+    private static void drawPanelBorders(Raster strip, int left, int top, int right, int bottom) {
+        strip.drawRectOutline(left, top, right, bottom, Raster.DKGRAY);
+        strip.drawRectOutline(left - 1, top - 1, right + 1, bottom + 1, Raster.LTGRAY);
+    }
+}
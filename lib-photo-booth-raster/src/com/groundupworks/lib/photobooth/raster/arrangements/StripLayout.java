@@ -0,0 +1,245 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.arrangements;
+
+/**
+ * The geometry of a photo strip: its overall size, the header height, and the position of each frame. All frames are
+ * the same size.
+ *
+ * @author Benedict Lau
+ */
+public class StripLayout {
+
+    /**
+     * The default padding around each frame.
+     */
+    public static final int DEFAULT_PADDING = 50;
+
+    /**
+     * The arrangement of frames in a photo strip.
+     */
+    public enum Type {
+
+        /**
+         * Frames stacked from top to bottom.
+         */
+        VERTICAL,
+
+        /**
+         * Frames placed from left to right.
+         */
+        HORIZONTAL,
+
+        /**
+         * Frames placed in a square grid, filled row by row.
+         */
+        BOX
+    }
+
+    /**
+     * The arrangement of frames.
+     */
+    private final Type mType;
+
+    /**
+     * The width of each frame.
+     */
+    private final int mFrameWidth;
+
+    /**
+     * The height of each frame.
+     */
+    private final int mFrameHeight;
+
+    /**
+     * The number of frames.
+     */
+    private final int mNumFrames;
+
+    /**
+     * The height of the header drawn above the frames.
+     */
+    private final int mHeaderHeight;
+
+    /**
+     * The padding around each frame.
+     */
+    private final int mPadding;
+
+    /**
+     * The width of the photo strip.
+     */
+    private final int mWidth;
+
+    /**
+     * The height of the photo strip.
+     */
+    private final int mHeight;
+
+    /**
+     * Constructor.
+     *
+     * @param type         the arrangement of frames.
+     * @param frameWidth   the width of each frame.
+     * @param frameHeight  the height of each frame.
+     * @param numFrames    the number of frames.
+     * @param headerHeight the height of the header drawn above the frames; or 0 if there is no header.
+     * @param padding      the padding around each frame.
+     */
+    public StripLayout(Type type, int frameWidth, int frameHeight, int numFrames, int headerHeight, int padding) {
+        mType = type;
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        mNumFrames = numFrames;
+        mHeaderHeight = headerHeight;
+        mPadding = padding;
+        mWidth = getStripWidth(type, frameWidth, numFrames, padding);
+
+        int height;
+        if (Type.HORIZONTAL.equals(type)) {
+            height = frameHeight + padding * 2;
+        } else if (Type.BOX.equals(type)) {
+            int boxLength = numFrames / 2;
+            height = frameHeight * boxLength + padding * (boxLength + 1);
+        } else {
+            height = frameHeight * numFrames + padding * (numFrames + 1);
+        }
+        mHeight = height + headerHeight;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Calculates the width of a photo strip. The width is needed to size the header before the layout can be created.
+     *
+     * @param type       the arrangement of frames.
+     * @param frameWidth the width of each frame.
+     * @param numFrames  the number of frames.
+     * @param padding    the padding around each frame.
+     * @return the width of the photo strip.
+     */
+    public static int getStripWidth(Type type, int frameWidth, int numFrames, int padding) {
+        int width;
+        if (Type.HORIZONTAL.equals(type)) {
+            width = frameWidth * numFrames + padding * (numFrames + 1);
+        } else if (Type.BOX.equals(type)) {
+            int boxLength = numFrames / 2;
+            width = frameWidth * boxLength + padding * (boxLength + 1);
+        } else {
+            width = frameWidth + padding * 2;
+        }
+
+        return width;
+    }
+
+    /**
+     * @return the arrangement of frames.
+     */
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return the width of the photo strip.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return the height of the photo strip.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the height of the header drawn above the frames.
+     */
+    public int getHeaderHeight() {
+        return mHeaderHeight;
+    }
+
+    /**
+     * @return the width of each frame.
+     */
+    public int getFrameWidth() {
+        return mFrameWidth;
+    }
+
+    /**
+     * @return the height of each frame.
+     */
+    public int getFrameHeight() {
+        return mFrameHeight;
+    }
+
+    /**
+     * @return the number of frames.
+     */
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    /**
+     * @return the padding around each frame.
+     */
+    public int getPadding() {
+        return mPadding;
+    }
+
+    /**
+     * Gets the left side of a frame.
+     *
+     * @param index the index of the frame.
+     * @return the x coordinate of the left side of the frame.
+     */
+    public int getFrameLeft(int index) {
+        int column;
+        if (Type.HORIZONTAL.equals(mType)) {
+            column = index;
+        } else if (Type.BOX.equals(mType)) {
+            // Even indices start at first column and odd indices start at second column.
+            column = index % 2;
+        } else {
+            column = 0;
+        }
+
+        return (mFrameWidth + mPadding) * column + mPadding;
+    }
+
+    /**
+     * Gets the top of a frame.
+     *
+     * @param index the index of the frame.
+     * @return the y coordinate of the top of the frame.
+     */
+    public int getFrameTop(int index) {
+        int row;
+        if (Type.HORIZONTAL.equals(mType)) {
+            row = 0;
+        } else if (Type.BOX.equals(mType)) {
+            row = index / 2;
+        } else {
+            row = index;
+        }
+
+        return (mFrameHeight + mPadding) * row + mPadding + mHeaderHeight;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.codecs;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+/**
+ * A decoder of NV21 images, the default format of camera preview frames, into packed ARGB pixels. NV21 holds a full
+ * resolution Y plane followed by a plane of interleaved V and U samples at half the resolution in both dimensions.
+ * Colours are converted with the full-range BT.601 equations of JFIF, so decoded preview frames match pictures taken
+ * as Jpeg. Integer arithmetic only.
+ *
+ * @author Benedict Lau
+ */
+public class Nv21Decoder {
+
+    /**
+     * The number of fractional bits of the fixed-point conversion coefficients.
+     */
+    private static final int FIXED_POINT_SHIFT = 16;
+
+    /**
+     * Half of the fixed-point unit, added to round to the nearest integer.
+     */
+    private static final int FIXED_POINT_HALF = 1 << (FIXED_POINT_SHIFT - 1);
+
+    /**
+     * The max channel value in fixed-point.
+     */
+    private static final int FIXED_POINT_MAX = (256 << FIXED_POINT_SHIFT) - 1;
+
+    /**
+     * The value of the chroma samples that carries no colour.
+     */
+    private static final int CHROMA_OFFSET = 128;
+
+    /**
+     * The contribution of V to red, 1.402 in fixed-point.
+     */
+    private static final int V_TO_R = 91881;
+
+    /**
+     * The contribution of U to green, 0.344136 in fixed-point.
+     */
+    private static final int U_TO_G = 22554;
+
+    /**
+     * The contribution of V to green, 0.714136 in fixed-point.
+     */
+    private static final int V_TO_G = 46802;
+
+    /**
+     * The contribution of U to blue, 1.772 in fixed-point.
+     */
+    private static final int U_TO_B = 116130;
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Clamps a fixed-point channel value to 0 to 255.
+     *
+     * @param value the channel value in fixed-point.
+     * @return the clamped channel value.
+     */
+    private static int clamp(int value) {
+        if (value < 0) {
+            return 0;
+        }
+        if (value > FIXED_POINT_MAX) {
+            return 255;
+        }
+
+        return value >> FIXED_POINT_SHIFT;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Gets the number of bytes of an NV21 image.
+     *
+     * @param width  the width of the image. Must be even.
+     * @param height the height of the image. Must be even.
+     * @return the number of bytes.
+     */
+    public static int getByteCount(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * Decodes a region of an NV21 image into a raster, taking every step-th pixel in each dimension. The size of the
+     * raster sets the size of the region after subsampling.
+     *
+     * @param nv21   the NV21 image data.
+     * @param width  the width of the image. Must be even.
+     * @param height the height of the image. Must be even.
+     * @param left   the left edge of the region.
+     * @param top    the top edge of the region.
+     * @param step   the subsampling step, 1 to decode every pixel.
+     * @param dst    the raster to decode into.
+     * @throws IllegalArgumentException if the region is not within the image, or the image data is too short.
+     */
+    public static void decode(byte[] nv21, int width, int height, int left, int top, int step, Raster dst) {
+        final int dstWidth = dst.getWidth();
+        final int dstHeight = dst.getHeight();
+        if (step < 1 || left < 0 || top < 0 || left + (dstWidth - 1) * step >= width
+                || top + (dstHeight - 1) * step >= height || nv21.length < getByteCount(width, height)) {
+            throw new IllegalArgumentException("Invalid region of " + width + "x" + height + " NV21 image");
+        }
+
+        final int[] pixels = dst.getPixels();
+        final int chromaPlane = width * height;
+        int i = 0;
+        for (int y = 0; y < dstHeight; y++) {
+            final int srcY = top + y * step;
+            final int lumaRow = srcY * width;
+            final int chromaRow = chromaPlane + (srcY >> 1) * width;
+
+            int srcX = left;
+            for (int x = 0; x < dstWidth; x++) {
+                final int luma = ((nv21[lumaRow + srcX] & 0xFF) << FIXED_POINT_SHIFT) + FIXED_POINT_HALF;
+                final int chroma = chromaRow + (srcX & ~1);
+                final int v = (nv21[chroma] & 0xFF) - CHROMA_OFFSET;
+                final int u = (nv21[chroma + 1] & 0xFF) - CHROMA_OFFSET;
+
+                final int r = clamp(luma + V_TO_R * v);
+                final int g = clamp(luma - U_TO_G * u - V_TO_G * v);
+                final int b = clamp(luma + U_TO_B * u);
+                pixels[i++] = 0xFF000000 | (r << 16) | (g << 8) | b;
+
+                srcX += step;
+            }
+        }
+    }
+}
@@ -0,0 +1,793 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.codecs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A baseline Jpeg encoder that takes the image a few rows at a time, so an image can be encoded while it is being
+ * drawn without ever holding all of its pixels. Only one row of 16-pixel tall blocks is buffered, converted to
+ * YCbCr with 4:2:0 chroma subsampling, and entropy-coded with the standard Huffman tables straight to the output
+ * stream. Alpha is ignored. Not thread-safe.
+ *
+ * @author Benedict Lau
+ */
+public class ScanlineJpegEncoder {
+
+    /**
+     * The number of image rows in a row of minimum coded units, which is the granularity rows are encoded at.
+     */
+    public static final int MCU_HEIGHT = 16;
+
+    /**
+     * The max width or height of a Jpeg.
+     */
+    public static final int MAX_DIMENSION = 65535;
+
+    /**
+     * The width of a minimum coded unit.
+     */
+    private static final int MCU_WIDTH = 16;
+
+    /**
+     * The size of a block.
+     */
+    private static final int BLOCK_SIZE = 8;
+
+    /**
+     * The number of coefficients in a block.
+     */
+    private static final int BLOCK_LENGTH = BLOCK_SIZE * BLOCK_SIZE;
+
+    /**
+     * The max magnitude of a quantized DC coefficient.
+     */
+    private static final int MAX_DC_COEFFICIENT = 1023;
+
+    /**
+     * The max magnitude of a quantized AC coefficient.
+     */
+    private static final int MAX_AC_COEFFICIENT = 1023;
+
+    /**
+     * The size of the output buffer in bytes.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The zigzag position of each coefficient of a block in natural order.
+     */
+    private static final int[] ZIGZAG = {
+            0, 1, 5, 6, 14, 15, 27, 28, 2, 4, 7, 13, 16, 26, 29, 42, 3, 8, 12, 17, 25, 30, 41, 43, 9, 11, 18, 24, 31,
+            40, 44, 53, 10, 19, 23, 32, 39, 45, 52, 54, 20, 22, 33, 38, 46, 51, 55, 60, 21, 34, 37, 47, 50, 56, 59, 61,
+            35, 36, 48, 49, 57, 58, 62, 63
+    };
+
+    /**
+     * The scale factors of the AAN forward DCT, per row and column.
+     */
+    private static final double[] AAN_SCALE_FACTORS = {
+            1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    /**
+     * The base luminance quantization table at quality 50, in natural order (ITU T.81 Annex K.1).
+     */
+    private static final int[] LUMINANCE_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61, 12, 12, 14, 19, 26, 58, 60, 55, 14, 13, 16, 24, 40, 57, 69, 56, 14, 17,
+            22, 29, 51, 87, 80, 62, 18, 22, 37, 56, 68, 109, 103, 77, 24, 35, 55, 64, 81, 104, 113, 92, 49, 64, 78,
+            87, 103, 121, 120, 101, 72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    /**
+     * The base chrominance quantization table at quality 50, in natural order (ITU T.81 Annex K.1).
+     */
+    private static final int[] CHROMINANCE_QUANT = {
+            17, 18, 24, 47, 99, 99, 99, 99, 18, 21, 26, 66, 99, 99, 99, 99, 24, 26, 56, 99, 99, 99, 99, 99, 47, 66,
+            99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    /**
+     * The number of luminance DC Huffman codes of each length from 1 to 16 (ITU T.81 Annex K.3).
+     */
+    private static final int[] LUMINANCE_DC_BITS = {
+            0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    /**
+     * The luminance DC Huffman symbols, in code order.
+     */
+    private static final int[] LUMINANCE_DC_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0a, 0x0b
+    };
+
+    /**
+     * The number of luminance AC Huffman codes of each length from 1 to 16.
+     */
+    private static final int[] LUMINANCE_AC_BITS = {
+            0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 125
+    };
+
+    /**
+     * The luminance AC Huffman symbols, in code order.
+     */
+    private static final int[] LUMINANCE_AC_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07, 0x22,
+            0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0, 0x24, 0x33,
+            0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x34,
+            0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a, 0x53, 0x54, 0x55,
+            0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75, 0x76,
+            0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96,
+            0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5,
+            0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4,
+            0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1,
+            0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa
+    };
+
+    /**
+     * The number of chrominance DC Huffman codes of each length from 1 to 16.
+     */
+    private static final int[] CHROMINANCE_DC_BITS = {
+            0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0
+    };
+
+    /**
+     * The chrominance DC Huffman symbols, in code order.
+     */
+    private static final int[] CHROMINANCE_DC_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0a, 0x0b
+    };
+
+    /**
+     * The number of chrominance AC Huffman codes of each length from 1 to 16.
+     */
+    private static final int[] CHROMINANCE_AC_BITS = {
+            0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 119
+    };
+
+    /**
+     * The chrominance AC Huffman symbols, in code order.
+     */
+    private static final int[] CHROMINANCE_AC_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71, 0x13,
+            0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0, 0x15, 0x62,
+            0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26, 0x27, 0x28, 0x29,
+            0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a, 0x53, 0x54,
+            0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75,
+            0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94,
+            0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3,
+            0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2,
+            0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea,
+            0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa
+    };
+
+    /**
+     * The output stream the Jpeg is written to.
+     */
+    private final OutputStream mOutputStream;
+
+    /**
+     * The width of the image.
+     */
+    private final int mWidth;
+
+    /**
+     * The height of the image.
+     */
+    private final int mHeight;
+
+    /**
+     * The width of the image padded to a whole number of minimum coded units.
+     */
+    private final int mPaddedWidth;
+
+    /**
+     * The luminance quantization table in zigzag order, as written to the Jpeg.
+     */
+    private final int[] mLuminanceQuant = new int[BLOCK_LENGTH];
+
+    /**
+     * The chrominance quantization table in zigzag order, as written to the Jpeg.
+     */
+    private final int[] mChrominanceQuant = new int[BLOCK_LENGTH];
+
+    /**
+     * The luminance divisors applied to the output of the forward DCT, in natural order.
+     */
+    private final float[] mLuminanceDivisors = new float[BLOCK_LENGTH];
+
+    /**
+     * The chrominance divisors applied to the output of the forward DCT, in natural order.
+     */
+    private final float[] mChrominanceDivisors = new float[BLOCK_LENGTH];
+
+    /**
+     * The luminance DC Huffman code and code length of each symbol.
+     */
+    private final int[][] mLuminanceDcCodes = createHuffmanCodes(LUMINANCE_DC_BITS, LUMINANCE_DC_VALUES);
+
+    /**
+     * The luminance AC Huffman code and code length of each symbol.
+     */
+    private final int[][] mLuminanceAcCodes = createHuffmanCodes(LUMINANCE_AC_BITS, LUMINANCE_AC_VALUES);
+
+    /**
+     * The chrominance DC Huffman code and code length of each symbol.
+     */
+    private final int[][] mChrominanceDcCodes = createHuffmanCodes(CHROMINANCE_DC_BITS, CHROMINANCE_DC_VALUES);
+
+    /**
+     * The chrominance AC Huffman code and code length of each symbol.
+     */
+    private final int[][] mChrominanceAcCodes = createHuffmanCodes(CHROMINANCE_AC_BITS, CHROMINANCE_AC_VALUES);
+
+    /**
+     * The level-shifted luminance samples of the buffered row of minimum coded units.
+     */
+    private final float[] mY;
+
+    /**
+     * The blue-difference chrominance samples of the buffered row of minimum coded units, before subsampling.
+     */
+    private final float[] mCb;
+
+    /**
+     * The red-difference chrominance samples of the buffered row of minimum coded units, before subsampling.
+     */
+    private final float[] mCr;
+
+    /**
+     * The block being transformed.
+     */
+    private final float[] mBlock = new float[BLOCK_LENGTH];
+
+    /**
+     * The quantized coefficients of the block being encoded, in zigzag order.
+     */
+    private final int[] mCoefficients = new int[BLOCK_LENGTH];
+
+    /**
+     * The DC coefficient of the previous luminance block.
+     */
+    private int mPreviousY = 0;
+
+    /**
+     * The DC coefficient of the previous blue-difference chrominance block.
+     */
+    private int mPreviousCb = 0;
+
+    /**
+     * The DC coefficient of the previous red-difference chrominance block.
+     */
+    private int mPreviousCr = 0;
+
+    /**
+     * The pending bits not yet written, right-aligned.
+     */
+    private int mBitBuffer = 0;
+
+    /**
+     * The number of pending bits.
+     */
+    private int mBitCount = 0;
+
+    /**
+     * The buffered output bytes.
+     */
+    private final byte[] mOutputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+
+    /**
+     * The number of buffered output bytes.
+     */
+    private int mOutputCount = 0;
+
+    /**
+     * The number of rows buffered in the current row of minimum coded units.
+     */
+    private int mBufferedRows = 0;
+
+    /**
+     * The number of rows taken so far.
+     */
+    private int mRowsWritten = 0;
+
+    /**
+     * True once the headers are written.
+     */
+    private boolean mIsStarted = false;
+
+    /**
+     * True once the Jpeg is finished.
+     */
+    private boolean mIsFinished = false;
+
+    /**
+     * Constructor. Nothing is written until the first rows are taken.
+     *
+     * @param outputStream the output stream to write the Jpeg to. Not closed by the encoder.
+     * @param width        the width of the image.
+     * @param height       the height of the image.
+     * @param quality      the Jpeg quality, between 1 and 100.
+     */
+    public ScanlineJpegEncoder(OutputStream outputStream, int width, int height, int quality) {
+        if (width <= 0 || height <= 0 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Invalid Jpeg dimensions " + width + "x" + height);
+        }
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException("Invalid Jpeg quality " + quality);
+        }
+
+        mOutputStream = outputStream;
+        mWidth = width;
+        mHeight = height;
+        mPaddedWidth = (width + MCU_WIDTH - 1) / MCU_WIDTH * MCU_WIDTH;
+        mY = new float[mPaddedWidth * MCU_HEIGHT];
+        mCb = new float[mPaddedWidth * MCU_HEIGHT];
+        mCr = new float[mPaddedWidth * MCU_HEIGHT];
+
+        initQuantization(LUMINANCE_QUANT, quality, mLuminanceQuant, mLuminanceDivisors);
+        initQuantization(CHROMINANCE_QUANT, quality, mChrominanceQuant, mChrominanceDivisors);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Scales a base quantization table to a quality, the same way as the IJG library.
+     *
+     * @param baseTable the base table at quality 50, in natural order.
+     * @param quality   the Jpeg quality, between 1 and 100.
+     * @param table     the scaled table in zigzag order to fill.
+     * @param divisors  the forward DCT divisors in natural order to fill.
+     */
+    private static void initQuantization(int[] baseTable, int quality, int[] table, float[] divisors) {
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            int value = Math.max(1, Math.min(255, (baseTable[i] * scale + 50) / 100));
+            table[ZIGZAG[i]] = value;
+        }
+
+        for (int row = 0; row < BLOCK_SIZE; row++) {
+            for (int column = 0; column < BLOCK_SIZE; column++) {
+                int i = row * BLOCK_SIZE + column;
+                divisors[i] = (float) (1.0 / (table[ZIGZAG[i]] * AAN_SCALE_FACTORS[row] * AAN_SCALE_FACTORS[column]
+                        * BLOCK_SIZE));
+            }
+        }
+    }
+
+    /**
+     * Creates the Huffman codes of a table.
+     *
+     * @param bits   the number of codes of each length from 1 to 16.
+     * @param values the symbols, in code order.
+     * @return the code and the code length of each symbol, indexed by symbol.
+     */
+    private static int[][] createHuffmanCodes(int[] bits, int[] values) {
+        int[][] codes = new int[256][];
+        int code = 0;
+        int index = 0;
+        for (int length = 1; length <= bits.length; length++) {
+            for (int i = 0; i < bits[length - 1]; i++) {
+                codes[values[index]] = new int[]{code, length};
+                index++;
+                code++;
+            }
+            code <<= 1;
+        }
+
+        return codes;
+    }
+
+    /**
+     * Gets the number of bits needed to represent the magnitude of a coefficient.
+     *
+     * @param value the coefficient.
+     * @return the number of bits.
+     */
+    private static int getCategory(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    /**
+     * Writes a byte to the output buffer.
+     *
+     * @param value the byte.
+     * @throws IOException if the output stream fails.
+     */
+    private void writeByte(int value) throws IOException {
+        if (mOutputCount == OUTPUT_BUFFER_SIZE) {
+            mOutputStream.write(mOutputBuffer, 0, mOutputCount);
+            mOutputCount = 0;
+        }
+        mOutputBuffer[mOutputCount++] = (byte) value;
+    }
+
+    /**
+     * Writes a big-endian 16-bit value to the output buffer.
+     *
+     * @param value the value.
+     * @throws IOException if the output stream fails.
+     */
+    private void writeShort(int value) throws IOException {
+        writeByte(value >> 8);
+        writeByte(value);
+    }
+
+    /**
+     * Writes values to the output buffer, one byte each.
+     *
+     * @param values the values.
+     * @throws IOException if the output stream fails.
+     */
+    private void writeBytes(int[] values) throws IOException {
+        for (int value : values) {
+            writeByte(value);
+        }
+    }
+
+    /**
+     * Writes entropy-coded bits, stuffing a zero byte after each 0xFF byte.
+     *
+     * @param value  the bits, right-aligned.
+     * @param length the number of bits, at most 16.
+     * @throws IOException if the output stream fails.
+     */
+    private void writeBits(int value, int length) throws IOException {
+        mBitBuffer = (mBitBuffer << length) | (value & ((1 << length) - 1));
+        mBitCount += length;
+        while (mBitCount >= 8) {
+            int b = (mBitBuffer >> (mBitCount - 8)) & 0xFF;
+            writeByte(b);
+            if (b == 0xFF) {
+                writeByte(0);
+            }
+            mBitCount -= 8;
+        }
+    }
+
+    /**
+     * Writes a Huffman code.
+     *
+     * @param codes  the Huffman codes of the table.
+     * @param symbol the symbol.
+     * @throws IOException if the output stream fails.
+     */
+    private void writeCode(int[][] codes, int symbol) throws IOException {
+        int[] code = codes[symbol];
+        writeBits(code[0], code[1]);
+    }
+
+    /**
+     * Writes the headers, from the start of image marker to the start of scan marker.
+     *
+     * @throws IOException if the output stream fails.
+     */
+    private void writeHeaders() throws IOException {
+        // Start of image.
+        writeShort(0xFFD8);
+
+        // JFIF application segment, with square pixels and no thumbnail.
+        writeShort(0xFFE0);
+        writeShort(16);
+        writeBytes(new int[]{'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+
+        // Quantization tables.
+        writeShort(0xFFDB);
+        writeShort(2 + 2 * (1 + BLOCK_LENGTH));
+        writeByte(0);
+        writeBytes(mLuminanceQuant);
+        writeByte(1);
+        writeBytes(mChrominanceQuant);
+
+        // Baseline frame, with the luminance sampled at twice the chrominance in both directions.
+        writeShort(0xFFC0);
+        writeShort(17);
+        writeByte(8);
+        writeShort(mHeight);
+        writeShort(mWidth);
+        writeBytes(new int[]{3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+
+        // Huffman tables.
+        writeShort(0xFFC4);
+        writeShort(2 + 4 * (1 + 16) + LUMINANCE_DC_VALUES.length + LUMINANCE_AC_VALUES.length
+                + CHROMINANCE_DC_VALUES.length + CHROMINANCE_AC_VALUES.length);
+        writeByte(0x00);
+        writeBytes(LUMINANCE_DC_BITS);
+        writeBytes(LUMINANCE_DC_VALUES);
+        writeByte(0x10);
+        writeBytes(LUMINANCE_AC_BITS);
+        writeBytes(LUMINANCE_AC_VALUES);
+        writeByte(0x01);
+        writeBytes(CHROMINANCE_DC_BITS);
+        writeBytes(CHROMINANCE_DC_VALUES);
+        writeByte(0x11);
+        writeBytes(CHROMINANCE_AC_BITS);
+        writeBytes(CHROMINANCE_AC_VALUES);
+
+        // Start of scan.
+        writeShort(0xFFDA);
+        writeShort(12);
+        writeBytes(new int[]{3, 1, 0x00, 2, 0x11, 3, 0x11, 0, 0x3F, 0});
+    }
+
+    /**
+     * Converts a row of ARGB pixels to YCbCr samples in the buffered row of minimum coded units. The row is padded to
+     * the padded width by repeating its last pixel.
+     *
+     * @param pixels the packed ARGB pixels.
+     * @param offset the index of the first pixel of the row.
+     * @param row    the index of the row in the buffer.
+     */
+    private void bufferRow(int[] pixels, int offset, int row) {
+        int index = row * mPaddedWidth;
+        for (int x = 0; x < mPaddedWidth; x++) {
+            int color = pixels[offset + Math.min(x, mWidth - 1)];
+            int r = (color >> 16) & 0xFF;
+            int g = (color >> 8) & 0xFF;
+            int b = color & 0xFF;
+            mY[index] = 0.299f * r + 0.587f * g + 0.114f * b - 128f;
+            mCb[index] = -0.168736f * r - 0.331264f * g + 0.5f * b;
+            mCr[index] = 0.5f * r - 0.418688f * g - 0.081312f * b;
+            index++;
+        }
+    }
+
+    /**
+     * Encodes the buffered row of minimum coded units.
+     *
+     * @throws IOException if the output stream fails.
+     */
+    private void encodeMcuRow() throws IOException {
+        for (int left = 0; left < mPaddedWidth; left += MCU_WIDTH) {
+            // Four luminance blocks.
+            for (int blockTop = 0; blockTop < MCU_HEIGHT; blockTop += BLOCK_SIZE) {
+                for (int blockLeft = left; blockLeft < left + MCU_WIDTH; blockLeft += BLOCK_SIZE) {
+                    for (int y = 0; y < BLOCK_SIZE; y++) {
+                        System.arraycopy(mY, (blockTop + y) * mPaddedWidth + blockLeft, mBlock, y * BLOCK_SIZE,
+                                BLOCK_SIZE);
+                    }
+                    mPreviousY = encodeBlock(mLuminanceDivisors, mLuminanceDcCodes, mLuminanceAcCodes, mPreviousY);
+                }
+            }
+
+            // One subsampled block per chrominance component.
+            subsampleBlock(mCb, left);
+            mPreviousCb = encodeBlock(mChrominanceDivisors, mChrominanceDcCodes, mChrominanceAcCodes, mPreviousCb);
+            subsampleBlock(mCr, left);
+            mPreviousCr = encodeBlock(mChrominanceDivisors, mChrominanceDcCodes, mChrominanceAcCodes, mPreviousCr);
+        }
+    }
+
+    /**
+     * Averages 2x2 samples of a minimum coded unit into the block being transformed.
+     *
+     * @param samples the samples of the buffered row of minimum coded units.
+     * @param left    the left side of the minimum coded unit.
+     */
+    private void subsampleBlock(float[] samples, int left) {
+        for (int y = 0; y < BLOCK_SIZE; y++) {
+            int index = y * 2 * mPaddedWidth + left;
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                mBlock[y * BLOCK_SIZE + x] = (samples[index] + samples[index + 1] + samples[index + mPaddedWidth]
+                        + samples[index + mPaddedWidth + 1]) * 0.25f;
+                index += 2;
+            }
+        }
+    }
+
+    /**
+     * Transforms, quantizes and entropy-codes the block being transformed.
+     *
+     * @param divisors   the forward DCT divisors of the component.
+     * @param dcCodes    the DC Huffman codes of the component.
+     * @param acCodes    the AC Huffman codes of the component.
+     * @param previousDc the previous DC coefficient of the component.
+     * @return the DC coefficient of this block.
+     * @throws IOException if the output stream fails.
+     */
+    private int encodeBlock(float[] divisors, int[][] dcCodes, int[][] acCodes, int previousDc) throws IOException {
+        forwardDct(mBlock);
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            // Clamp to the ranges baseline Huffman tables can code, which rounding errors may exceed at high quality.
+            int limit = i == 0 ? MAX_DC_COEFFICIENT : MAX_AC_COEFFICIENT;
+            mCoefficients[ZIGZAG[i]] = Math.max(-limit, Math.min(limit, Math.round(mBlock[i] * divisors[i])));
+        }
+
+        // Encode the DC coefficient as the difference from the previous block.
+        int dc = mCoefficients[0];
+        int diff = dc - previousDc;
+        int category = getCategory(diff);
+        writeCode(dcCodes, category);
+        if (category > 0) {
+            writeBits(diff < 0 ? diff - 1 : diff, category);
+        }
+
+        // Encode the AC coefficients as runs of zeros followed by a value.
+        int last = BLOCK_LENGTH - 1;
+        while (last > 0 && mCoefficients[last] == 0) {
+            last--;
+        }
+
+        int run = 0;
+        for (int i = 1; i <= last; i++) {
+            int value = mCoefficients[i];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+
+            while (run >= 16) {
+                writeCode(acCodes, 0xF0);
+                run -= 16;
+            }
+            category = getCategory(value);
+            writeCode(acCodes, (run << 4) | category);
+            writeBits(value < 0 ? value - 1 : value, category);
+            run = 0;
+        }
+
+        // End of block.
+        if (last < BLOCK_LENGTH - 1) {
+            writeCode(acCodes, 0x00);
+        }
+
+        return dc;
+    }
+
+    /**
+     * Applies the AAN forward DCT to a block in place. The output is scaled by the AAN scale factors, which the
+     * quantization divisors undo.
+     *
+     * @param block the block in natural order.
+     */
+    private static void forwardDct(float[] block) {
+        // Rows, then columns.
+        for (int pass = 0; pass < 2; pass++) {
+            int step = pass == 0 ? 1 : BLOCK_SIZE;
+            int stride = pass == 0 ? BLOCK_SIZE : 1;
+            for (int line = 0; line < BLOCK_SIZE; line++) {
+                int i0 = line * stride;
+                int i1 = i0 + step;
+                int i2 = i1 + step;
+                int i3 = i2 + step;
+                int i4 = i3 + step;
+                int i5 = i4 + step;
+                int i6 = i5 + step;
+                int i7 = i6 + step;
+
+                float tmp0 = block[i0] + block[i7];
+                float tmp7 = block[i0] - block[i7];
+                float tmp1 = block[i1] + block[i6];
+                float tmp6 = block[i1] - block[i6];
+                float tmp2 = block[i2] + block[i5];
+                float tmp5 = block[i2] - block[i5];
+                float tmp3 = block[i3] + block[i4];
+                float tmp4 = block[i3] - block[i4];
+
+                // Even part.
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+
+                block[i0] = tmp10 + tmp11;
+                block[i4] = tmp10 - tmp11;
+
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                block[i2] = tmp13 + z1;
+                block[i6] = tmp13 - z1;
+
+                // Odd part.
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+
+                block[i5] = z13 + z2;
+                block[i3] = z13 - z2;
+                block[i1] = z11 + z4;
+                block[i7] = z11 - z4;
+            }
+        }
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Encodes the next rows of the image. Rows are buffered until a full row of minimum coded units is available.
+     *
+     * @param pixels  the packed ARGB pixels.
+     * @param offset  the index of the first pixel of the first row.
+     * @param stride  the number of pixels between the starts of consecutive rows.
+     * @param numRows the number of rows.
+     * @throws IOException if the output stream fails.
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int numRows) throws IOException {
+        if (mIsFinished || mRowsWritten + numRows > mHeight) {
+            throw new IllegalStateException("Too many rows for a Jpeg of height " + mHeight);
+        }
+
+        if (!mIsStarted) {
+            writeHeaders();
+            mIsStarted = true;
+        }
+
+        for (int i = 0; i < numRows; i++) {
+            bufferRow(pixels, offset + i * stride, mBufferedRows);
+            mBufferedRows++;
+            mRowsWritten++;
+            if (mBufferedRows == MCU_HEIGHT) {
+                encodeMcuRow();
+                mBufferedRows = 0;
+            }
+        }
+    }
+
+    /**
+     * Finishes the Jpeg after all rows are written, and flushes it to the output stream. The last row of minimum
+     * coded units is padded by repeating the last row of the image.
+     *
+     * @throws IOException if the output stream fails.
+     */
+    public void finish() throws IOException {
+        if (mIsFinished || mRowsWritten != mHeight) {
+            throw new IllegalStateException("Expected " + mHeight + " rows but got " + mRowsWritten);
+        }
+
+        if (mBufferedRows > 0) {
+            int lastRow = (mBufferedRows - 1) * mPaddedWidth;
+            for (int row = mBufferedRows; row < MCU_HEIGHT; row++) {
+                System.arraycopy(mY, lastRow, mY, row * mPaddedWidth, mPaddedWidth);
+                System.arraycopy(mCb, lastRow, mCb, row * mPaddedWidth, mPaddedWidth);
+                System.arraycopy(mCr, lastRow, mCr, row * mPaddedWidth, mPaddedWidth);
+            }
+            encodeMcuRow();
+            mBufferedRows = 0;
+        }
+
+        // Pad the last byte with ones, then end of image.
+        if (mBitCount > 0) {
+            writeBits(0x7F, 8 - mBitCount);
+        }
+        writeShort(0xFFD9);
+
+        mOutputStream.write(mOutputBuffer, 0, mOutputCount);
+        mOutputCount = 0;
+        mOutputStream.flush();
+        mIsFinished = true;
+    }
+
+    /**
+     * @return the number of rows written so far.
+     */
+    public int getRowsWritten() {
+        return mRowsWritten;
+    }
+}
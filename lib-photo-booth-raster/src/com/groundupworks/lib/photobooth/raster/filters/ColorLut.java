@@ -0,0 +1,314 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.NeighbourhoodOp;
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+import java.util.Arrays;
+
+/**
+ * A color transform compiled into per-channel lookup tables and applied in place, preserving the alpha. The transform
+ * is a color matrix followed by a tone curve for each channel, and is built with a {@link Builder}. The matrix is
+ * compiled into a 16.16 fixed-point table per input and output channel, so each pixel costs nine table lookups for the
+ * matrix and three for the curves. Matrices that produce the same value for all channels, such as grayscale, cost three
+ * lookups for the matrix, and matrices without cross-channel terms are folded into the curves entirely. Instances are
+ * immutable and can be shared between threads.
+ *
+ * @author Benedict Lau
+ */
+public class ColorLut implements NeighbourhoodOp {
+
+    /**
+     * The number of values of an 8-bit channel.
+     */
+    private static final int LEVELS = 256;
+
+    /**
+     * The number of fractional bits of the fixed-point tables.
+     */
+    private static final int FRACTION_BITS = 16;
+
+    /**
+     * The fixed-point value of one half, added to round to the nearest value.
+     */
+    private static final int HALF = 1 << (FRACTION_BITS - 1);
+
+    /**
+     * The matrix has cross-channel terms that differ between output channels.
+     */
+    private static final int MODE_GENERAL = 0;
+
+    /**
+     * The matrix produces the same value for all output channels.
+     */
+    private static final int MODE_MONOCHROME = 1;
+
+    /**
+     * The matrix has no cross-channel terms, so each output channel depends only on the same input channel.
+     */
+    private static final int MODE_SEPARABLE = 2;
+
+    /**
+     * How the matrix tables are applied.
+     */
+    private final int mMode;
+
+    /**
+     * The 4x5 color matrix equivalent to the transform; or null if the transform has tone curves.
+     */
+    private final float[] mColorMatrix;
+
+    /**
+     * The fixed-point contribution of each input channel to each output channel. Table {@code out * 3 + in} holds the
+     * contribution of input channel {@code in} to output channel {@code out}, with the translation and rounding folded
+     * into the table of the same input channel.
+     */
+    private final int[][] mMatrixTables = new int[9][LEVELS];
+
+    /**
+     * The tone curve table of each output channel.
+     */
+    private final int[][] mCurveTables = new int[3][LEVELS];
+
+    /**
+     * Constructor.
+     *
+     * @param matrix the 3x4 color matrix in row-major order, mapping red, green and blue plus a translation to each
+     *               output channel.
+     * @param curves the red, green and blue tone curves; or null if there are none.
+     */
+    private ColorLut(float[] matrix, ToneCurve[] curves) {
+        if (curves == null) {
+            mColorMatrix = new float[ColorMatrixOp.MATRIX_LENGTH];
+            for (int out = 0; out < 3; out++) {
+                System.arraycopy(matrix, out * 4, mColorMatrix, out * 5, 3);
+                mColorMatrix[out * 5 + 4] = matrix[out * 4 + 3];
+            }
+            mColorMatrix[18] = 1f;
+            curves = new ToneCurve[]{ToneCurve.IDENTITY, ToneCurve.IDENTITY, ToneCurve.IDENTITY};
+        } else {
+            mColorMatrix = null;
+        }
+
+        if (matrix[1] == 0f && matrix[2] == 0f && matrix[4] == 0f && matrix[6] == 0f && matrix[8] == 0f
+                && matrix[9] == 0f) {
+            mMode = MODE_SEPARABLE;
+        } else if (Arrays.equals(Arrays.copyOfRange(matrix, 0, 4), Arrays.copyOfRange(matrix, 4, 8))
+                && Arrays.equals(Arrays.copyOfRange(matrix, 0, 4), Arrays.copyOfRange(matrix, 8, 12))) {
+            mMode = MODE_MONOCHROME;
+        } else {
+            mMode = MODE_GENERAL;
+        }
+
+        for (int out = 0; out < 3; out++) {
+            for (int in = 0; in < 3; in++) {
+                float coefficient = matrix[out * 4 + in];
+                int[] table = mMatrixTables[out * 3 + in];
+                for (int value = 0; value < LEVELS; value++) {
+                    table[value] = Math.round(coefficient * value * (1 << FRACTION_BITS));
+                }
+            }
+
+            int translation = Math.round(matrix[out * 4 + 3] * (1 << FRACTION_BITS)) + HALF;
+            int[] diagonalTable = mMatrixTables[out * 3 + out];
+            for (int value = 0; value < LEVELS; value++) {
+                diagonalTable[value] += translation;
+            }
+
+            // Without cross-channel terms, fold the matrix into the curve so that it is indexed by the input value.
+            for (int value = 0; value < LEVELS; value++) {
+                int matrixValue = mMode == MODE_SEPARABLE ? clamp(diagonalTable[value] >> FRACTION_BITS) : value;
+                mCurveTables[out][value] = curves[out].get(matrixValue);
+            }
+        }
+    }
+
+    @Override
+    public Raster apply(Raster src) {
+        final int[] rr = mMatrixTables[0];
+        final int[] rg = mMatrixTables[1];
+        final int[] rb = mMatrixTables[2];
+        final int[] gr = mMatrixTables[3];
+        final int[] gg = mMatrixTables[4];
+        final int[] gb = mMatrixTables[5];
+        final int[] br = mMatrixTables[6];
+        final int[] bg = mMatrixTables[7];
+        final int[] bb = mMatrixTables[8];
+        final int[] curveR = mCurveTables[0];
+        final int[] curveG = mCurveTables[1];
+        final int[] curveB = mCurveTables[2];
+
+        final int[] pixels = src.getPixels();
+        final int count = src.getWidth() * src.getHeight();
+        if (mMode == MODE_SEPARABLE) {
+            for (int i = 0; i < count; i++) {
+                int argb = pixels[i];
+                int dstR = curveR[(argb >> 16) & 0xFF];
+                int dstG = curveG[(argb >> 8) & 0xFF];
+                int dstB = curveB[argb & 0xFF];
+                pixels[i] = (argb & 0xFF000000) | (dstR << 16) | (dstG << 8) | dstB;
+            }
+        } else if (mMode == MODE_MONOCHROME) {
+            for (int i = 0; i < count; i++) {
+                int argb = pixels[i];
+                int sum = rr[(argb >> 16) & 0xFF] + rg[(argb >> 8) & 0xFF] + rb[argb & 0xFF];
+                int value = clamp(sum >> FRACTION_BITS);
+                pixels[i] = (argb & 0xFF000000) | (curveR[value] << 16) | (curveG[value] << 8) | curveB[value];
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                int argb = pixels[i];
+                int r = (argb >> 16) & 0xFF;
+                int g = (argb >> 8) & 0xFF;
+                int b = argb & 0xFF;
+
+                int dstR = curveR[clamp((rr[r] + rg[g] + rb[b]) >> FRACTION_BITS)];
+                int dstG = curveG[clamp((gr[r] + gg[g] + gb[b]) >> FRACTION_BITS)];
+                int dstB = curveB[clamp((br[r] + bg[g] + bb[b]) >> FRACTION_BITS)];
+                pixels[i] = (argb & 0xFF000000) | (dstR << 16) | (dstG << 8) | dstB;
+            }
+        }
+
+        return src;
+    }
+
+    @Override
+    public int getRadius() {
+        return 0;
+    }
+
+    /**
+     * Gets the color matrix equivalent to the transform, so that it can be applied by other means such as an Android
+     * {@code ColorMatrixColorFilter}.
+     *
+     * @return a copy of the 4x5 color matrix in row-major order; or null if the transform has tone curves.
+     */
+    public float[] getColorMatrix() {
+        return mColorMatrix != null ? mColorMatrix.clone() : null;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Clamps a channel value to the 0-255 range.
+     *
+     * @param value the channel value.
+     * @return the clamped channel value.
+     */
+    private static int clamp(int value) {
+        if (value < 0) {
+            return 0;
+        } else if (value > 0xFF) {
+            return 0xFF;
+        }
+
+        return value;
+    }
+
+    //
+    // Public inner classes.
+    //
+
+    /**
+     * Builder for a {@link ColorLut}. Color matrices are concatenated in the order they are added, and must be added
+     * before any tone curve.
+     */
+    public static class Builder {
+
+        /**
+         * The concatenated 3x4 color matrix.
+         */
+        private float[] mMatrix = {1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f};
+
+        /**
+         * The red, green and blue tone curves; or null if none has been set.
+         */
+        private ToneCurve[] mCurves = null;
+
+        /**
+         * Adds a color matrix. The matrix has the same layout as an Android {@code ColorMatrix}, but must leave the
+         * alpha unchanged and must not read it.
+         *
+         * @param matrix the 4x5 color matrix in row-major order. Only the first 20 values are used.
+         * @return this builder.
+         */
+        public Builder matrix(float[] matrix) {
+            if (matrix.length < ColorMatrixOp.MATRIX_LENGTH) {
+                throw new IllegalArgumentException("A color matrix must have " + ColorMatrixOp.MATRIX_LENGTH
+                        + " values");
+            }
+            if (matrix[3] != 0f || matrix[8] != 0f || matrix[13] != 0f || matrix[15] != 0f || matrix[16] != 0f
+                    || matrix[17] != 0f || matrix[18] != 1f || matrix[19] != 0f) {
+                throw new IllegalArgumentException("Color matrices that read or change the alpha are not supported");
+            }
+            if (mCurves != null) {
+                throw new IllegalStateException("Color matrices must be added before tone curves");
+            }
+
+            // Concatenate with the current matrix, which is applied first.
+            float[] concatenated = new float[12];
+            for (int out = 0; out < 3; out++) {
+                for (int column = 0; column < 4; column++) {
+                    float value = column == 3 ? matrix[out * 5 + 4] : 0f;
+                    for (int k = 0; k < 3; k++) {
+                        value += matrix[out * 5 + k] * mMatrix[k * 4 + column];
+                    }
+                    concatenated[out * 4 + column] = value;
+                }
+            }
+            mMatrix = concatenated;
+
+            return this;
+        }
+
+        /**
+         * Sets the same tone curve for all channels.
+         *
+         * @param curve the tone curve.
+         * @return this builder.
+         */
+        public Builder curve(ToneCurve curve) {
+            return curves(curve, curve, curve);
+        }
+
+        /**
+         * Sets a tone curve for each channel.
+         *
+         * @param red   the red tone curve.
+         * @param green the green tone curve.
+         * @param blue  the blue tone curve.
+         * @return this builder.
+         */
+        public Builder curves(ToneCurve red, ToneCurve green, ToneCurve blue) {
+            mCurves = new ToneCurve[]{red, green, blue};
+
+            return this;
+        }
+
+        /**
+         * Compiles the lookup tables.
+         *
+         * @return the {@link ColorLut}.
+         */
+        public ColorLut build() {
+            return new ColorLut(mMatrix, mCurves);
+        }
+    }
+}
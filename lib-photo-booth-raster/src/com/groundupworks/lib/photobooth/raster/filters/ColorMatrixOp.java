@@ -0,0 +1,103 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.NeighbourhoodOp;
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+import java.util.Arrays;
+
+/**
+ * Transforms the colors of a raster in place with a 4x5 color matrix. The matrix has the same layout as an Android
+ * {@code ColorMatrix}, where each output channel is computed from the 0-255 RGBA input channels plus a translation.
+ *
+ * @author Benedict Lau
+ */
+public class ColorMatrixOp implements NeighbourhoodOp {
+
+    /**
+     * The number of values in a color matrix.
+     */
+    public static final int MATRIX_LENGTH = 20;
+
+    /**
+     * The color matrix.
+     */
+    private final float[] mMatrix;
+
+    /**
+     * Constructor.
+     *
+     * @param matrix the 4x5 color matrix in row-major order. Like an Android {@code ColorMatrix}, only the first 20
+     *               values are used, so a 5x5 matrix is also accepted. The values are copied.
+     */
+    public ColorMatrixOp(float[] matrix) {
+        if (matrix.length < MATRIX_LENGTH) {
+            throw new IllegalArgumentException("A color matrix must have " + MATRIX_LENGTH + " values");
+        }
+
+        mMatrix = Arrays.copyOf(matrix, MATRIX_LENGTH);
+    }
+
+    @Override
+    public Raster apply(Raster src) {
+        final float[] m = mMatrix;
+        final int[] pixels = src.getPixels();
+        final int count = src.getWidth() * src.getHeight();
+        for (int i = 0; i < count; i++) {
+            int argb = pixels[i];
+            int a = argb >>> 24;
+            int r = (argb >> 16) & 0xFF;
+            int g = (argb >> 8) & 0xFF;
+            int b = argb & 0xFF;
+
+            int dstR = clamp(m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4]);
+            int dstG = clamp(m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9]);
+            int dstB = clamp(m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14]);
+            int dstA = clamp(m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19]);
+            pixels[i] = (dstA << 24) | (dstR << 16) | (dstG << 8) | dstB;
+        }
+
+        return src;
+    }
+
+    @Override
+    public int getRadius() {
+        return 0;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Rounds and clamps a channel value to the 0-255 range.
+     *
+     * @param value the channel value.
+     * @return the clamped channel value.
+     */
+    private static int clamp(float value) {
+        int rounded = (int) (value + 0.5f);
+        if (rounded < 0) {
+            return 0;
+        } else if (rounded > 0xFF) {
+            return 0xFF;
+        }
+
+        return rounded;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.NeighbourhoodOp;
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+/**
+ * Converts a raster to grayscale in place, using the same integer luma weights as the jhlabs grayscale filter.
+ *
+ * @author Benedict Lau
+ */
+public class GrayscaleOp implements NeighbourhoodOp {
+
+    @Override
+    public Raster apply(Raster src) {
+        final int[] pixels = src.getPixels();
+        final int count = src.getWidth() * src.getHeight();
+        for (int i = 0; i < count; i++) {
+            int argb = pixels[i];
+            int r = (argb >> 16) & 0xFF;
+            int g = (argb >> 8) & 0xFF;
+            int b = argb & 0xFF;
+            int luma = (r * 77 + g * 151 + b * 28) >> 8;
+            pixels[i] = (argb & 0xFF000000) | (luma << 16) | (luma << 8) | luma;
+        }
+
+        return src;
+    }
+
+    @Override
+    public int getRadius() {
+        return 0;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.NeighbourhoodOp;
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+/**
+ * Converts a raster to line art in place. Edges are detected with a Sobel operator on each color channel, thresholded
+ * by their mean brightness to black lines on a white background, and cleaned up with a square median, like the jhlabs
+ * edge, threshold and median filters. All three steps run in a single pass over the raster, keeping only three
+ * scanlines of source pixels and a window of scanlines of line pixels at a time. Since line pixels are binary, the
+ * median is a majority vote computed from sliding column sums, so its cost does not depend on the median radius.
+ *
+ * @author Benedict Lau
+ */
+public class LineArtOp implements NeighbourhoodOp {
+
+    /**
+     * The edge brightness at and above which a pixel becomes part of a line.
+     */
+    public static final int DEFAULT_THRESHOLD = 35;
+
+    /**
+     * The default radius of the median, which gives a 3x3 window.
+     */
+    public static final int DEFAULT_MEDIAN_RADIUS = 1;
+
+    /**
+     * The divisor applied to the gradient magnitude.
+     */
+    private static final double EDGE_SCALE = 1.8d;
+
+    /**
+     * The rows above and below a pixel used by the edge detector.
+     */
+    private static final int EDGE_RADIUS = 1;
+
+    /**
+     * The smallest sum of the channel edge brightnesses that becomes part of a line.
+     */
+    private final int mMinEdgeSum;
+
+    /**
+     * The radius of the median.
+     */
+    private final int mMedianRadius;
+
+    /**
+     * Constructor.
+     */
+    public LineArtOp() {
+        this(DEFAULT_THRESHOLD, DEFAULT_MEDIAN_RADIUS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threshold the edge brightness at and above which a pixel becomes part of a line.
+     */
+    public LineArtOp(int threshold) {
+        this(threshold, DEFAULT_MEDIAN_RADIUS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threshold    the edge brightness at and above which a pixel becomes part of a line.
+     * @param medianRadius the radius of the median. Larger radii give smoother lines. Pass 0 to disable.
+     */
+    public LineArtOp(int threshold, int medianRadius) {
+        if (medianRadius < 0) {
+            throw new IllegalArgumentException("The median radius must not be negative");
+        }
+
+        mMinEdgeSum = 3 * threshold;
+        mMedianRadius = medianRadius;
+    }
+
+    @Override
+    public Raster apply(Raster src) {
+        final int width = src.getWidth();
+        final int height = src.getHeight();
+        final int[] pixels = src.getPixels();
+        if (width == 0 || height == 0) {
+            return src;
+        }
+
+        final int radius = mMedianRadius;
+        final int window = 2 * radius + 1;
+
+        // Rolling scanlines. Source row y is held at index y % 3, since the median overwrites the raster behind the
+        // edge detector, and line row y at index y % lines.length, which keeps the row leaving the median window until
+        // it has been subtracted.
+        int[][] rows = new int[3][width];
+        byte[][] lines = new byte[window + 1][width];
+
+        // The sums of each column of line pixels over the median window. Rows outside the raster count as lines.
+        int[] columnSums = new int[width];
+        fill(columnSums, radius + 1);
+
+        System.arraycopy(pixels, 0, rows[0], 0, width);
+        for (int row = 0; row < height + radius; row++) {
+            if (row < height) {
+                int[] above = row > 0 ? rows[(row - 1) % 3] : rows[row % 3];
+                int[] center = rows[row % 3];
+                int[] below = center;
+                if (row + 1 < height) {
+                    below = rows[(row + 1) % 3];
+                    System.arraycopy(pixels, (row + 1) * width, below, 0, width);
+                }
+
+                byte[] line = lines[row % lines.length];
+                detectLines(above, center, below, width, mMinEdgeSum, line);
+                add(columnSums, line, 1);
+            } else {
+                add(columnSums, 1);
+            }
+
+            // The window of line rows around the row above is now complete, so its median can be written out.
+            int y = row - radius;
+            if (y >= 0) {
+                int leaving = y - radius - 1;
+                if (leaving >= 0) {
+                    add(columnSums, lines[leaving % lines.length], -1);
+                } else {
+                    add(columnSums, -1);
+                }
+                writeMedianRow(columnSums, radius, width, pixels, y * width);
+            }
+        }
+
+        return src;
+    }
+
+    @Override
+    public int getRadius() {
+        return EDGE_RADIUS + mMedianRadius;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Detects the line pixels of a row with a Sobel operator on each color channel. Neighbours outside the raster are
+     * replaced with the center pixel's row or column.
+     *
+     * @param above      the source pixels of the row above.
+     * @param center     the source pixels of the row.
+     * @param below      the source pixels of the row below.
+     * @param width      the width of the raster.
+     * @param minEdgeSum the smallest sum of the channel edge brightnesses that becomes part of a line.
+     * @param out        the array to write the line pixels to, 1 for a line and 0 otherwise.
+     */
+    private static void detectLines(int[] above, int[] center, int[] below, int width, int minEdgeSum, byte[] out) {
+        final int last = width - 1;
+        for (int x = 0; x < width; x++) {
+            int left = x > 0 ? x - 1 : x;
+            int right = x < last ? x + 1 : x;
+            int sum = 0;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                int aboveLeft = (above[left] >> shift) & 0xFF;
+                int belowLeft = (below[left] >> shift) & 0xFF;
+                int aboveRight = (above[right] >> shift) & 0xFF;
+                int belowRight = (below[right] >> shift) & 0xFF;
+                int h = (belowLeft + 2 * ((below[x] >> shift) & 0xFF) + belowRight)
+                        - (aboveLeft + 2 * ((above[x] >> shift) & 0xFF) + aboveRight);
+                int v = (aboveRight + 2 * ((center[right] >> shift) & 0xFF) + belowRight)
+                        - (aboveLeft + 2 * ((center[left] >> shift) & 0xFF) + belowLeft);
+                sum += Math.min((int) (Math.sqrt(h * h + v * v) / EDGE_SCALE), 0xFF);
+            }
+            out[x] = (byte) (sum >= minEdgeSum ? 1 : 0);
+        }
+    }
+
+    /**
+     * Adds a row of line pixels to the column sums.
+     *
+     * @param columnSums the column sums.
+     * @param line       the line pixels.
+     * @param sign       1 to add the row; -1 to subtract it.
+     */
+    private static void add(int[] columnSums, byte[] line, int sign) {
+        for (int x = 0; x < columnSums.length; x++) {
+            columnSums[x] += sign * line[x];
+        }
+    }
+
+    /**
+     * Adds a row outside the raster, which counts as all lines, to the column sums.
+     *
+     * @param columnSums the column sums.
+     * @param sign       1 to add the row; -1 to subtract it.
+     */
+    private static void add(int[] columnSums, int sign) {
+        for (int x = 0; x < columnSums.length; x++) {
+            columnSums[x] += sign;
+        }
+    }
+
+    /**
+     * Fills the column sums with a value.
+     *
+     * @param columnSums the column sums.
+     * @param value      the value.
+     */
+    private static void fill(int[] columnSums, int value) {
+        for (int x = 0; x < columnSums.length; x++) {
+            columnSums[x] = value;
+        }
+    }
+
+    /**
+     * Writes out a row of the median of the line pixels, which is the majority of each window. Windows extending past
+     * the raster bounds are padded with line pixels, like the jhlabs median pads with black.
+     *
+     * @param columnSums the sums of each column over the rows of the window.
+     * @param radius     the radius of the median.
+     * @param width      the width of the raster.
+     * @param pixels     the packed ARGB pixels to write to.
+     * @param offset     the index of the first pixel in the row.
+     */
+    private static void writeMedianRow(int[] columnSums, int radius, int width, int[] pixels, int offset) {
+        final int window = 2 * radius + 1;
+        final int majority = window * window / 2 + 1;
+
+        // Sum of the window around the first pixel, with columns left of the raster counting as lines.
+        int sum = radius * window;
+        for (int x = 0; x <= radius; x++) {
+            sum += x < width ? columnSums[x] : window;
+        }
+
+        for (int x = 0; x < width; x++) {
+            pixels[offset + x] = sum >= majority ? Raster.BLACK : Raster.WHITE;
+
+            int entering = x + radius + 1;
+            int leaving = x - radius;
+            sum += (entering < width ? columnSums[entering] : window) - (leaving >= 0 ? columnSums[leaving] : window);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+/**
+ * The color looks used by the image filters, each compiled once into a {@link ColorLut}.
+ *
+ * @author Benedict Lau
+ */
+public class Looks {
+
+    /**
+     * Values for sepia color matrix.
+     */
+    public static final float[] SEPIA_COLOR_MATRIX = {0.3930000066757202f, 0.7689999938011169f,
+            0.1889999955892563f, 0, 0, 0.3490000069141388f, 0.6859999895095825f, 0.1679999977350235f, 0, 0,
+            0.2720000147819519f, 0.5339999794960022f, 0.1309999972581863f, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1};
+
+    /**
+     * Values for grayscale color matrix, with the integer luma weights of the jhlabs grayscale filter. The translation
+     * of -0.5 makes the rounding truncate, as the jhlabs filter does.
+     */
+    public static final float[] GRAYSCALE_COLOR_MATRIX = {77 / 256f, 151 / 256f, 28 / 256f, 0, -0.5f, 77 / 256f,
+            151 / 256f, 28 / 256f, 0, -0.5f, 77 / 256f, 151 / 256f, 28 / 256f, 0, -0.5f, 0, 0, 0, 1, 0};
+
+    /**
+     * Sepia look.
+     */
+    public static final ColorLut SEPIA = new ColorLut.Builder().matrix(SEPIA_COLOR_MATRIX).build();
+
+    /**
+     * Tone curve of faded film, with lifted blacks and dimmed highlights.
+     */
+    public static final ToneCurve FADED_FILM_CURVE = new ToneCurve(0, 32, 64, 80, 192, 198, 255, 236);
+
+    /**
+     * Faded film look, sepia with the faded film tone curve. The tone curve does not reduce to a color matrix, so the
+     * look is applied from its lookup tables.
+     */
+    public static final ColorLut FADED_FILM = new ColorLut.Builder().matrix(SEPIA_COLOR_MATRIX).curve(FADED_FILM_CURVE)
+            .build();
+
+    /**
+     * Black and white look.
+     */
+    public static final ColorLut GRAYSCALE = new ColorLut.Builder().matrix(GRAYSCALE_COLOR_MATRIX).build();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private Looks() {
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.NeighbourhoodOp;
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+/**
+ * Applies a square median to each color channel of a raster in place, preserving the alpha. Each channel is filtered
+ * with sliding histograms: a histogram per column is updated as the window moves down, and the window histogram is
+ * updated from the column histograms as it moves across. Histograms are split into 16 coarse bins of 16 fine bins,
+ * and the fine bins of the window are only brought up to date for the coarse bin holding the median, so the cost per
+ * pixel does not depend on the radius, which keeps larger radii affordable. Windows extending past the raster bounds
+ * are padded with black, like the jhlabs median. Unlike the jhlabs median, which picks the pixel closest to all others
+ * in the window, each channel is filtered on its own, so the result matches it only on grayscale input. Binary planes
+ * are filtered with the majority vote of {@link LineArtOp} instead.
+ *
+ * @author Benedict Lau
+ */
+public class MedianOp implements NeighbourhoodOp {
+
+    /**
+     * The number of values of an 8-bit channel.
+     */
+    private static final int LEVELS = 256;
+
+    /**
+     * The number of fine bins in each coarse bin.
+     */
+    private static final int FINE_BINS = 16;
+
+    /**
+     * The number of coarse bins.
+     */
+    private static final int COARSE_BINS = LEVELS / FINE_BINS;
+
+    /**
+     * The bit shift from a value to its coarse bin.
+     */
+    private static final int COARSE_SHIFT = 4;
+
+    /**
+     * The bit shifts of the color channels in a packed ARGB pixel.
+     */
+    private static final int[] CHANNEL_SHIFTS = {16, 8, 0};
+
+    /**
+     * The radius of the median.
+     */
+    private final int mRadius;
+
+    /**
+     * Constructor.
+     *
+     * @param radius the radius of the median, giving a window of 2 * radius + 1 pixels on each side.
+     */
+    public MedianOp(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("The median radius must not be negative");
+        }
+
+        mRadius = radius;
+    }
+
+    @Override
+    public Raster apply(Raster src) {
+        final int width = src.getWidth();
+        final int height = src.getHeight();
+        final int[] pixels = src.getPixels();
+        if (width == 0 || height == 0 || mRadius == 0) {
+            return src;
+        }
+
+        byte[] plane = new byte[width * height];
+        byte[] median = new byte[width * height];
+        for (int shift : CHANNEL_SHIFTS) {
+            final int mask = ~(0xFF << shift);
+            final int count = width * height;
+            for (int i = 0; i < count; i++) {
+                plane[i] = (byte) (pixels[i] >> shift);
+            }
+            median(plane, width, height, mRadius, median);
+            for (int i = 0; i < count; i++) {
+                pixels[i] = (pixels[i] & mask) | ((median[i] & 0xFF) << shift);
+            }
+        }
+
+        return src;
+    }
+
+    @Override
+    public int getRadius() {
+        return mRadius;
+    }
+
+    //
+    // Package private methods.
+    //
+
+    /**
+     * Applies a square median to an 8-bit plane. Values outside the plane count as 0.
+     *
+     * @param plane  the source plane.
+     * @param width  the width of the plane.
+     * @param height the height of the plane.
+     * @param radius the radius of the median. Must be positive.
+     * @param out    the array to write the filtered plane to. Must not be the source plane.
+     */
+    static void median(byte[] plane, int width, int height, int radius, byte[] out) {
+        final int window = 2 * radius + 1;
+        final int rank = window * window / 2;
+
+        // Column histograms, including the padding columns on both sides. Column c holds plane column c - radius.
+        final int columns = width + 2 * radius;
+        int[] columnFine = new int[columns * LEVELS];
+        int[] columnCoarse = new int[columns * COARSE_BINS];
+
+        // Start each column with the rows of the first window, where rows above the plane count as 0.
+        for (int c = 0; c < columns; c++) {
+            int x = c - radius;
+            for (int y = -radius; y <= radius; y++) {
+                int value = (x >= 0 && x < width && y >= 0 && y < height) ? plane[y * width + x] & 0xFF : 0;
+                columnFine[c * LEVELS + value]++;
+                columnCoarse[c * COARSE_BINS + (value >> COARSE_SHIFT)]++;
+            }
+        }
+
+        int[] coarse = new int[COARSE_BINS];
+        int[] fine = new int[LEVELS];
+        int[] fineColumn = new int[COARSE_BINS];
+        for (int y = 0; y < height; y++) {
+            // Slide the column histograms down to this row, past the first row.
+            if (y > 0) {
+                int leaving = y - radius - 1;
+                int entering = y + radius;
+                for (int c = 0; c < columns; c++) {
+                    int x = c - radius;
+                    boolean inside = x >= 0 && x < width;
+                    int oldValue = (inside && leaving >= 0) ? plane[leaving * width + x] & 0xFF : 0;
+                    int newValue = (inside && entering < height) ? plane[entering * width + x] & 0xFF : 0;
+                    if (oldValue != newValue) {
+                        columnFine[c * LEVELS + oldValue]--;
+                        columnCoarse[c * COARSE_BINS + (oldValue >> COARSE_SHIFT)]--;
+                        columnFine[c * LEVELS + newValue]++;
+                        columnCoarse[c * COARSE_BINS + (newValue >> COARSE_SHIFT)]++;
+                    }
+                }
+            }
+
+            // Start the window at the first pixel. Fine bins are built lazily, so mark them as out of date.
+            for (int j = 0; j < COARSE_BINS; j++) {
+                coarse[j] = 0;
+                fineColumn[j] = -window - 1;
+            }
+            for (int c = 0; c < window; c++) {
+                for (int j = 0; j < COARSE_BINS; j++) {
+                    coarse[j] += columnCoarse[c * COARSE_BINS + j];
+                }
+            }
+
+            final int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                // The window covers columns x to x + window - 1.
+                if (x > 0) {
+                    int leaving = (x - 1) * COARSE_BINS;
+                    int entering = (x + window - 1) * COARSE_BINS;
+                    for (int j = 0; j < COARSE_BINS; j++) {
+                        coarse[j] += columnCoarse[entering + j] - columnCoarse[leaving + j];
+                    }
+                }
+
+                // Find the coarse bin holding the median.
+                int bin = 0;
+                int below = 0;
+                while (below + coarse[bin] <= rank) {
+                    below += coarse[bin];
+                    bin++;
+                }
+
+                // Bring the fine bins of that coarse bin up to date with this window.
+                final int fineOffset = bin * FINE_BINS;
+                int last = fineColumn[bin];
+                if (x - last >= window) {
+                    for (int k = 0; k < FINE_BINS; k++) {
+                        fine[fineOffset + k] = 0;
+                    }
+                    for (int c = x; c < x + window; c++) {
+                        int columnOffset = c * LEVELS + fineOffset;
+                        for (int k = 0; k < FINE_BINS; k++) {
+                            fine[fineOffset + k] += columnFine[columnOffset + k];
+                        }
+                    }
+                } else {
+                    for (int c = last; c < x; c++) {
+                        int leavingOffset = c * LEVELS + fineOffset;
+                        int enteringOffset = (c + window) * LEVELS + fineOffset;
+                        for (int k = 0; k < FINE_BINS; k++) {
+                            fine[fineOffset + k] += columnFine[enteringOffset + k] - columnFine[leavingOffset + k];
+                        }
+                    }
+                }
+                fineColumn[bin] = x;
+
+                // Find the median within the coarse bin.
+                int value = fineOffset;
+                while (below + fine[value] <= rank) {
+                    below += fine[value];
+                    value++;
+                }
+                out[rowOffset + x] = (byte) value;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+/**
+ * A tone curve mapping each 8-bit channel value to a new value. The curve is defined by control points and linearly
+ * interpolated between them. Values before the first or after the last control point take the value of that point.
+ *
+ * @author Benedict Lau
+ */
+public class ToneCurve {
+
+    /**
+     * The curve that leaves all values unchanged.
+     */
+    public static final ToneCurve IDENTITY = new ToneCurve(0, 0, 0xFF, 0xFF);
+
+    /**
+     * The number of values of an 8-bit channel.
+     */
+    private static final int LEVELS = 256;
+
+    /**
+     * The output value for each input value.
+     */
+    private final int[] mTable = new int[LEVELS];
+
+    /**
+     * Constructor.
+     *
+     * @param points the control points as pairs of input and output values in the 0-255 range, in increasing order of
+     *               input value. At least one point is required.
+     */
+    public ToneCurve(int... points) {
+        if (points.length < 2 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("A tone curve needs pairs of input and output values");
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] < 0 || points[i] > 0xFF) {
+                throw new IllegalArgumentException("Tone curve values must be in the 0-255 range");
+            }
+            if (i >= 2 && i % 2 == 0 && points[i] <= points[i - 2]) {
+                throw new IllegalArgumentException("Tone curve inputs must be in increasing order");
+            }
+        }
+
+        int point = 0;
+        for (int value = 0; value < LEVELS; value++) {
+            while (point + 2 < points.length && points[point + 2] <= value) {
+                point += 2;
+            }
+
+            int x0 = points[point];
+            int y0 = points[point + 1];
+            if (value <= x0 || point + 2 >= points.length) {
+                mTable[value] = y0;
+            } else {
+                int x1 = points[point + 2];
+                int y1 = points[point + 3];
+                mTable[value] = Math.round(y0 + (float) (y1 - y0) * (value - x0) / (x1 - x0));
+            }
+        }
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Gets the output value of the curve.
+     *
+     * @param value the input value in the 0-255 range.
+     * @return the output value in the 0-255 range.
+     */
+    public int get(int value) {
+        return mTable[value];
+    }
+}
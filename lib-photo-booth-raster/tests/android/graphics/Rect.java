@@ -0,0 +1,49 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.graphics;
+
+/**
+ * Minimal stand-in for the Android rectangle, which is all the jhlabs filters need from the platform to run on the
+ * JVM in tests.
+ *
+ * @author Benedict Lau
+ */
+public class Rect {
+
+    public int left;
+
+    public int top;
+
+    public int right;
+
+    public int bottom;
+
+    /**
+     * Constructor.
+     *
+     * @param left   the left edge.
+     * @param top    the top edge.
+     * @param right  the right edge.
+     * @param bottom the bottom edge.
+     */
+    public Rect(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster;
+
+import com.groundupworks.lib.photobooth.raster.filters.LineArtOp;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that {@link BandExecutor} stitches bands without seams, on its own pool and on a shared executor.
+ *
+ * @author Benedict Lau
+ */
+public class BandExecutorTest {
+
+    private static final int WIDTH = 90;
+
+    private static final int HEIGHT = 250;
+
+    @Test
+    public void ownedPoolMatchesSerial() {
+        int[] pixels = createNoise();
+        int[] expected = applySerial(pixels);
+
+        BandExecutor executor = new BandExecutor(4);
+        try {
+            assertArrayEquals(expected, executor.apply(new LineArtOp(), new Raster(pixels, WIDTH, HEIGHT)).getPixels());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedExecutorMatchesSerial() {
+        int[] pixels = createNoise();
+        int[] expected = applySerial(pixels);
+
+        ExecutorService shared = Executors.newFixedThreadPool(2);
+        try {
+            BandExecutor executor = new BandExecutor(4, shared);
+            assertArrayEquals(expected, executor.apply(new LineArtOp(), new Raster(pixels, WIDTH, HEIGHT)).getPixels());
+
+            // The shared executor is left running.
+            executor.shutdown();
+            assertFalse(shared.isShutdown());
+        } finally {
+            shared.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedExecutorThreadDoesNotWaitOnItself() throws Exception {
+        final int[] pixels = createNoise();
+        int[] expected = applySerial(pixels);
+
+        // Every band is queued behind the only thread of the shared executor, which is the one applying the op.
+        ExecutorService shared = Executors.newSingleThreadExecutor();
+        try {
+            final BandExecutor executor = new BandExecutor(4, shared);
+            int[] actual = shared.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return executor.apply(new LineArtOp(), new Raster(pixels, WIDTH, HEIGHT)).getPixels();
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertArrayEquals(expected, actual);
+        } finally {
+            shared.shutdown();
+        }
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Applies the op to a copy of the pixels on the calling thread.
+     *
+     * @param pixels the packed ARGB pixels.
+     * @return the filtered pixels.
+     */
+    private static int[] applySerial(int[] pixels) {
+        return new LineArtOp().apply(new Raster(pixels.clone(), WIDTH, HEIGHT)).getPixels();
+    }
+
+    /**
+     * Creates an image of opaque random pixels.
+     *
+     * @return the packed ARGB pixels.
+     */
+    private static int[] createNoise() {
+        Random random = new Random(3);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+
+        return pixels;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link ColorLut} looks against a floating-point color matrix followed by the tone curves.
+ *
+ * @author Benedict Lau
+ */
+public class ColorLutTest {
+
+    /**
+     * The number of random colors to check.
+     */
+    private static final int COLOR_COUNT = 100000;
+
+    @Test
+    public void fadedFilmMatchesMatrixThenCurve() {
+        assertMatches(Looks.FADED_FILM, Looks.SEPIA_COLOR_MATRIX, Looks.FADED_FILM_CURVE);
+    }
+
+    @Test
+    public void separableMatrixIsFoldedIntoCurve() {
+        float[] contrast = {1.2f, 0, 0, 0, -20f, 0, 1.2f, 0, 0, -20f, 0, 0, 1.2f, 0, -20f, 0, 0, 0, 1, 0};
+        ColorLut lut = new ColorLut.Builder().matrix(contrast).curve(Looks.FADED_FILM_CURVE).build();
+        assertMatches(lut, contrast, Looks.FADED_FILM_CURVE);
+    }
+
+    @Test
+    public void onlyLooksWithoutCurvesReduceToColorMatrix() {
+        assertNotNull(Looks.SEPIA.getColorMatrix());
+        assertNotNull(Looks.GRAYSCALE.getColorMatrix());
+        assertNull(Looks.FADED_FILM.getColorMatrix());
+    }
+
+    @Test
+    public void preservesAlpha() {
+        int[] pixels = {0x00123456, 0x80FFFFFF, 0xFF000000};
+        Looks.FADED_FILM.apply(new Raster(pixels, pixels.length, 1));
+        assertEquals(0x00, pixels[0] >>> 24);
+        assertEquals(0x80, pixels[1] >>> 24);
+        assertEquals(0xFF, pixels[2] >>> 24);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Asserts that a look is within one level of the color matrix and tone curve it is compiled from.
+     *
+     * @param lut    the look.
+     * @param matrix the 4x5 color matrix.
+     * @param curve  the tone curve applied to all channels after the matrix.
+     */
+    private static void assertMatches(ColorLut lut, float[] matrix, ToneCurve curve) {
+        Random random = new Random(3);
+        int[] pixels = new int[COLOR_COUNT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() | 0xFF000000;
+        }
+        int[] colors = pixels.clone();
+
+        lut.apply(new Raster(pixels, pixels.length, 1));
+        for (int i = 0; i < colors.length; i++) {
+            int r = (colors[i] >> 16) & 0xFF;
+            int g = (colors[i] >> 8) & 0xFF;
+            int b = colors[i] & 0xFF;
+            for (int out = 0; out < 3; out++) {
+                float value = matrix[out * 5] * r + matrix[out * 5 + 1] * g + matrix[out * 5 + 2] * b
+                        + matrix[out * 5 + 4];
+                int expected = curve.get(Math.max(0, Math.min(0xFF, Math.round(value))));
+                int actual = (pixels[i] >> (16 - out * 8)) & 0xFF;
+                assertTrue("color " + Integer.toHexString(colors[i]) + ", channel " + out,
+                        Math.abs(expected - actual) <= 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.BandExecutor;
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.jabistudio.androidjhlabs.filter.EdgeFilter;
+import com.jabistudio.androidjhlabs.filter.MedianFilter;
+import com.jabistudio.androidjhlabs.filter.ThresholdFilter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link LineArtOp} against the jhlabs edge, threshold and median filters it replaces.
+ *
+ * @author Benedict Lau
+ */
+public class LineArtOpTest {
+
+    /**
+     * The sizes of the test images, as width and height pairs. Includes sizes smaller than the filter windows.
+     */
+    private static final int[][] SIZES = {{1, 1}, {2, 3}, {17, 5}, {64, 48}, {101, 77}};
+
+    @Test
+    public void defaultMatchesJhlabsOnNoise() {
+        Random random = new Random(7);
+        for (int[] size : SIZES) {
+            int[] pixels = createNoise(random, size[0], size[1]);
+            assertMatchesJhlabs(pixels, size[0], size[1]);
+        }
+    }
+
+    @Test
+    public void defaultMatchesJhlabsOnShapes() {
+        for (int[] size : SIZES) {
+            int[] pixels = createShapes(size[0], size[1]);
+            assertMatchesJhlabs(pixels, size[0], size[1]);
+        }
+    }
+
+    @Test
+    public void medianRadiusMatchesMajority() {
+        Random random = new Random(11);
+        for (int radius = 0; radius <= 4; radius++) {
+            for (int[] size : SIZES) {
+                final int width = size[0];
+                final int height = size[1];
+                int[] pixels = createNoise(random, width, height);
+
+                // Without the median, the op gives the raw line pixels to take the majority of.
+                int[] lines = new LineArtOp(LineArtOp.DEFAULT_THRESHOLD, 0).apply(
+                        new Raster(pixels.clone(), width, height)).getPixels();
+                int[] expected = majority(lines, width, height, radius);
+
+                int[] actual = new LineArtOp(LineArtOp.DEFAULT_THRESHOLD, radius).apply(
+                        new Raster(pixels, width, height)).getPixels();
+                assertArrayEquals("radius " + radius + ", " + width + "x" + height, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void bandedMatchesSerial() {
+        final int width = 120;
+        final int height = 200;
+        int[] pixels = createNoise(new Random(13), width, height);
+        LineArtOp op = new LineArtOp(LineArtOp.DEFAULT_THRESHOLD, 3);
+
+        int[] expected = op.apply(new Raster(pixels.clone(), width, height)).getPixels();
+
+        BandExecutor executor = new BandExecutor(4);
+        try {
+            int[] actual = executor.apply(op, new Raster(pixels, width, height)).getPixels();
+            assertArrayEquals(expected, actual);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void reportsEdgeAndMedianRadius() {
+        assertEquals(2, new LineArtOp().getRadius());
+        assertEquals(1, new LineArtOp(LineArtOp.DEFAULT_THRESHOLD, 0).getRadius());
+        assertEquals(4, new LineArtOp(LineArtOp.DEFAULT_THRESHOLD, 3).getRadius());
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Asserts that the default op gives the same pixels as the jhlabs filter chain.
+     *
+     * @param pixels the packed ARGB pixels of the source image.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     */
+    private static void assertMatchesJhlabs(int[] pixels, int width, int height) {
+        int[] colors = new EdgeFilter().filter(pixels.clone(), width, height);
+
+        ThresholdFilter thresholdFilter = new ThresholdFilter();
+        thresholdFilter.setDimensions(width, height);
+        thresholdFilter.setLowerThreshold(LineArtOp.DEFAULT_THRESHOLD);
+        thresholdFilter.setUpperThreshold(0);
+        thresholdFilter.setWhite(Raster.BLACK);
+        thresholdFilter.setBlack(Raster.WHITE);
+        colors = thresholdFilter.filter(colors, width, height);
+
+        int[] expected = new MedianFilter().filter(colors, width, height);
+        int[] actual = new LineArtOp().apply(new Raster(pixels, width, height)).getPixels();
+        assertArrayEquals(width + "x" + height, expected, actual);
+    }
+
+    /**
+     * Takes a brute-force majority of line pixels over square windows, padding with line pixels outside the image.
+     *
+     * @param lines  the black and white line pixels.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @param radius the radius of the window.
+     * @return the filtered pixels.
+     */
+    private static int[] majority(int[] lines, int width, int height, int radius) {
+        final int window = 2 * radius + 1;
+        int[] out = new int[lines.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int sx = x + dx;
+                        int sy = y + dy;
+                        boolean inside = sx >= 0 && sx < width && sy >= 0 && sy < height;
+                        if (!inside || lines[sy * width + sx] == Raster.BLACK) {
+                            count++;
+                        }
+                    }
+                }
+                out[y * width + x] = count > window * window / 2 ? Raster.BLACK : Raster.WHITE;
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Creates an image of opaque random pixels.
+     *
+     * @param random the source of randomness.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed ARGB pixels.
+     */
+    private static int[] createNoise(Random random, int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Creates an image of flat coloured shapes, which gives long clean edges rather than noise.
+     *
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed ARGB pixels.
+     */
+    private static int[] createShapes(int width, int height) {
+        Raster raster = new Raster(width, height);
+        raster.fill(Raster.LTGRAY);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int dx = 2 * x - width;
+                int dy = 2 * y - height;
+                if (dx * dx + dy * dy < width * height / 2) {
+                    raster.setPixel(x, y, 0xFF3366CC);
+                } else if (x < width / 3) {
+                    raster.setPixel(x, y, Raster.DKGRAY);
+                }
+            }
+        }
+
+        return raster.getPixels();
+    }
+}
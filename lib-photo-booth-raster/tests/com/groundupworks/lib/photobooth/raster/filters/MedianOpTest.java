@@ -0,0 +1,198 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.raster.filters;
+
+import com.groundupworks.lib.photobooth.raster.BandExecutor;
+import com.groundupworks.lib.photobooth.raster.Raster;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the sliding-histogram {@link MedianOp} against a brute-force median of sorted windows.
+ *
+ * @author Benedict Lau
+ */
+public class MedianOpTest {
+
+    /**
+     * The radii to check, including one with a window larger than the smaller planes.
+     */
+    private static final int[] RADII = {1, 2, 5};
+
+    /**
+     * The sizes of the test planes, as width and height pairs. Includes sizes smaller than the windows.
+     */
+    private static final int[][] SIZES = {{1, 1}, {2, 3}, {17, 5}, {64, 48}, {101, 77}};
+
+    @Test
+    public void planeMatchesSortedWindowOnNoise() {
+        Random random = new Random(5);
+        for (int radius : RADII) {
+            for (int[] size : SIZES) {
+                assertPlaneMatchesSortedWindow(createPlane(random, size[0], size[1], 256), size[0], size[1], radius);
+            }
+        }
+    }
+
+    @Test
+    public void planeMatchesSortedWindowOnFewLevels() {
+        Random random = new Random(9);
+        for (int radius : RADII) {
+            for (int[] size : SIZES) {
+                assertPlaneMatchesSortedWindow(createPlane(random, size[0], size[1], 3), size[0], size[1], radius);
+            }
+        }
+    }
+
+    @Test
+    public void filtersEachChannelAndKeepsAlpha() {
+        final int width = 31;
+        final int height = 23;
+        final int count = width * height;
+        Random random = new Random(17);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        for (int radius : RADII) {
+            int[] actual = new MedianOp(radius).apply(new Raster(pixels.clone(), width, height)).getPixels();
+
+            int[] expected = new int[count];
+            for (int i = 0; i < count; i++) {
+                expected[i] = pixels[i] & 0xFF000000;
+            }
+            for (int shift = 0; shift <= 16; shift += 8) {
+                byte[] plane = new byte[count];
+                for (int i = 0; i < count; i++) {
+                    plane[i] = (byte) (pixels[i] >> shift);
+                }
+                byte[] median = sortedWindowMedian(plane, width, height, radius);
+                for (int i = 0; i < count; i++) {
+                    expected[i] |= (median[i] & 0xFF) << shift;
+                }
+            }
+            assertArrayEquals("radius " + radius, expected, actual);
+        }
+    }
+
+    @Test
+    public void bandedMatchesSerial() {
+        final int width = 120;
+        final int height = 200;
+        Random random = new Random(19);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        MedianOp op = new MedianOp(5);
+
+        int[] expected = op.apply(new Raster(pixels.clone(), width, height)).getPixels();
+
+        BandExecutor executor = new BandExecutor(4);
+        try {
+            int[] actual = executor.apply(op, new Raster(pixels, width, height)).getPixels();
+            assertArrayEquals(expected, actual);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void zeroRadiusLeavesPixelsUnchanged() {
+        int[] pixels = {0xFF102030, 0x80405060, 0x00708090};
+        int[] actual = new MedianOp(0).apply(new Raster(pixels.clone(), 3, 1)).getPixels();
+        assertArrayEquals(pixels, actual);
+        assertEquals(0, new MedianOp(0).getRadius());
+        assertEquals(5, new MedianOp(5).getRadius());
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Asserts that the sliding-histogram median of a plane matches the brute-force median.
+     *
+     * @param plane  the source plane.
+     * @param width  the width of the plane.
+     * @param height the height of the plane.
+     * @param radius the radius of the median.
+     */
+    private static void assertPlaneMatchesSortedWindow(byte[] plane, int width, int height, int radius) {
+        byte[] actual = new byte[plane.length];
+        MedianOp.median(plane, width, height, radius, actual);
+        byte[] expected = sortedWindowMedian(plane, width, height, radius);
+        assertArrayEquals("radius " + radius + ", " + width + "x" + height, expected, actual);
+    }
+
+    /**
+     * Takes a brute-force median by sorting each square window, padding with 0 outside the plane.
+     *
+     * @param plane  the source plane.
+     * @param width  the width of the plane.
+     * @param height the height of the plane.
+     * @param radius the radius of the median.
+     * @return the filtered plane.
+     */
+    private static byte[] sortedWindowMedian(byte[] plane, int width, int height, int radius) {
+        final int window = 2 * radius + 1;
+        int[] values = new int[window * window];
+        byte[] out = new byte[plane.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int sx = x + dx;
+                        int sy = y + dy;
+                        boolean inside = sx >= 0 && sx < width && sy >= 0 && sy < height;
+                        values[i++] = inside ? plane[sy * width + sx] & 0xFF : 0;
+                    }
+                }
+                Arrays.sort(values);
+                out[y * width + x] = (byte) values[values.length / 2];
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Creates a plane of random values.
+     *
+     * @param random the source of randomness.
+     * @param width  the width of the plane.
+     * @param height the height of the plane.
+     * @param levels the number of distinct values, spread over the 0-255 range.
+     * @return the plane.
+     */
+    private static byte[] createPlane(Random random, int width, int height, int levels) {
+        byte[] plane = new byte[width * height];
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = (byte) (levels > 1 ? random.nextInt(levels) * 255 / (levels - 1) : 0);
+        }
+
+        return plane;
+    }
+}
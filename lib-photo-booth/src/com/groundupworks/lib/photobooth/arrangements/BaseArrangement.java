@@ -20,83 +20,445 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 
+import com.groundupworks.lib.photobooth.helpers.BitmapPool;
+import com.groundupworks.lib.photobooth.helpers.ImageHelper;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper.Arrangement;
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.arrangements.StripLayout;
+import com.groundupworks.lib.photobooth.raster.codecs.ScanlineJpegEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
- * Base class where other {@link Arrangement} implementations extend from.
+ * Base class where other {@link Arrangement} implementations extend from. Arrangements keep no drawing state, and the
+ * geometry of each photo strip size is kept in a shared {@link StripPlan}, so one arrangement can draw photo strips on
+ * several threads at once.
  *
  * @author Benedict Lau
  */
 public abstract class BaseArrangement implements Arrangement {
 
     /**
-     * Photo strip panel padding.
+     * Photo strip panel padding for frames of {@link ImageHelper#IMAGE_SIZE}. Larger frames are padded in proportion.
+     */
+    public static final int PHOTO_STRIP_PANEL_PADDING = StripLayout.DEFAULT_PADDING;
+
+    /**
+     * The max size in bytes of a photo strip bitmap that is composed in memory. Larger photo strips are rendered in
+     * bands with {@link #writePhotoStrip}.
+     */
+    public static final long MAX_COMPOSITION_BYTES = 12L * 1024L * 1024L;
+
+    /**
+     * The height of each band of a photo strip rendered in bands, a multiple of the Jpeg block row height.
+     */
+    private static final int BAND_HEIGHT = ScanlineJpegEncoder.MCU_HEIGHT * 8;
+
+    /**
+     * An optional {@link BitmapPool} to take the photo strip bitmap from.
+     */
+    private BitmapPool mBitmapPool = null;
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Sets the {@link BitmapPool} to take the photo strip bitmap from. The caller is responsible for returning the
+     * photo strip bitmap to the pool when it is no longer used.
+     *
+     * @param pool the {@link BitmapPool}; or null to allocate a new bitmap for each photo strip.
+     */
+    public void setBitmapPool(BitmapPool pool) {
+        mBitmapPool = pool;
+    }
+
+    /**
+     * Gets the scale of frames relative to {@link ImageHelper#IMAGE_SIZE}, by which the padding and header of the
+     * photo strip are scaled.
+     *
+     * @param frameWidth  the width of each frame.
+     * @param frameHeight the height of each frame.
+     * @return the scale.
+     */
+    public static float getScale(int frameWidth, int frameHeight) {
+        return Math.min(frameWidth, frameHeight) / (float) ImageHelper.IMAGE_SIZE;
+    }
+
+    /**
+     * Gets the panel padding for frames of a given size.
+     *
+     * @param frameWidth  the width of each frame.
+     * @param frameHeight the height of each frame.
+     * @return the panel padding, {@link #PHOTO_STRIP_PANEL_PADDING} scaled by {@link #getScale}.
+     */
+    public static int getPanelPadding(int frameWidth, int frameHeight) {
+        return Math.max(1, Math.round(PHOTO_STRIP_PANEL_PADDING * getScale(frameWidth, frameHeight)));
+    }
+
+    /**
+     * Gets the plan for drawing photo strips of this arrangement. Plans are cached, so this is cheap once a photo strip
+     * of the same size has been drawn, and it tells the photo strip size before any frame exists.
+     *
+     * @param frameWidth  the width of each frame.
+     * @param frameHeight the height of each frame.
+     * @param numFrames   the number of frames in the photo strip.
+     * @return the {@link StripPlan}.
+     */
+    public StripPlan getPlan(int frameWidth, int frameHeight, int numFrames) {
+        final StripLayout.Type type = getLayoutType();
+        final int padding = getPanelPadding(frameWidth, frameHeight);
+        int width = StripLayout.getStripWidth(type, frameWidth, numFrames, padding);
+        int headerHeight = getHeaderHeight(width, getScale(frameWidth, frameHeight));
+        return StripPlan.obtain(type, frameWidth, frameHeight, numFrames, headerHeight, padding);
+    }
+
+    /**
+     * Prepares the header of photo strips of this size ahead of composition, for example by loading it from a cache in
+     * the background. The base implementation does nothing.
+     *
+     * @param frameWidth  the width of each frame.
+     * @param frameHeight the height of each frame.
+     * @param numFrames   the number of frames in the photo strip.
+     */
+    public void prefetchHeader(int frameWidth, int frameHeight, int numFrames) {
+        // Do nothing.
+    }
+
+    /**
+     * Starts composing a photo strip one frame at a time. The photo strip bitmap and header are drawn up front with
+     * empty panels, and frames can then be drawn into their panels in any order as they become available.
+     *
+     * @param frameWidth  the width of each frame.
+     * @param frameHeight the height of each frame.
+     * @param numFrames   the number of frames in the photo strip.
+     * @return the {@link Composition}; or null if the photo strip bitmap could not be created.
+     */
+    public Composition startComposition(int frameWidth, int frameHeight, int numFrames) {
+        Composition composition = null;
+
+        StripPlan plan = getPlan(frameWidth, frameHeight, numFrames);
+        StripLayout layout = plan.getLayout();
+        Bitmap returnBitmap = createPhotoStripBitmap(layout.getWidth(), layout.getHeight());
+        if (returnBitmap != null) {
+            // Create canvas and draw photo strip.
+            Canvas canvas = new Canvas(returnBitmap);
+            canvas.drawColor(Color.WHITE);
+
+            // Draw header bitmap.
+            drawHeader(canvas, layout, getScale(frameWidth, frameHeight));
+
+            composition = new Composition(plan, returnBitmap, canvas);
+            for (int i = 0; i < numFrames; i++) {
+                composition.clearFrame(i);
+            }
+
+            // Draw photo strip borders.
+            plan.drawStripBorders(canvas);
+        }
+
+        return composition;
+    }
+
+    /**
+     * Checks whether a photo strip is too large to compose in memory, and should be rendered in bands instead.
+     *
+     * @param frameWidth  the width of each frame.
+     * @param frameHeight the height of each frame.
+     * @param numFrames   the number of frames in the photo strip.
+     * @return true if the photo strip bitmap would exceed {@link #MAX_COMPOSITION_BYTES}; false otherwise.
+     */
+    public boolean isTooLargeToCompose(int frameWidth, int frameHeight, int numFrames) {
+        StripLayout layout = getPlan(frameWidth, frameHeight, numFrames).getLayout();
+        return (long) layout.getWidth() * layout.getHeight() * Raster.BYTES_PER_PIXEL > MAX_COMPOSITION_BYTES;
+    }
+
+    /**
+     * Renders a photo strip a band at a time and streams it as Jpeg to an output stream, so the full photo strip
+     * bitmap is never created. Each band is also drawn into a downscaled copy of the photo strip, so smaller versions
+     * can be made without rendering again. Peak memory is one band, one row of Jpeg blocks and the downscaled copy,
+     * however large the photo strip.
+     *
+     * @param srcBitmaps   the frames. Not modified.
+     * @param outputStream the output stream to write the Jpeg to. Not closed.
+     * @param quality      the Jpeg quality, between 1 and 100.
+     * @param maxLongEdge  the max length of the long edge of the downscaled copy.
+     * @return the downscaled copy of the photo strip; or null if unsuccessful. The caller is responsible for
+     * returning it to the pool or recycling it.
      */
-    public static final int PHOTO_STRIP_PANEL_PADDING = 50;
+    public Bitmap writePhotoStrip(Bitmap[] srcBitmaps, OutputStream outputStream, int quality, int maxLongEdge) {
+        Bitmap scaledBitmap = null;
+
+        // Get the layout, with the header if applied.
+        final int frameWidth = srcBitmaps[0].getWidth();
+        final int frameHeight = srcBitmaps[0].getHeight();
+        StripPlan plan = getPlan(frameWidth, frameHeight, srcBitmaps.length);
+        StripLayout layout = plan.getLayout();
+        final int width = layout.getWidth();
+        final int height = layout.getHeight();
+        final float headerScale = getScale(frameWidth, frameHeight);
+        Bitmap header = null;
+        if (layout.getHeaderHeight() > 0) {
+            header = getHeader(width, headerScale);
+        }
+
+        // Fit the downscaled copy within the max long edge.
+        float scale = Math.min(1f, maxLongEdge / (float) Math.max(width, height));
+        int scaledWidth = Math.max(1, Math.round(width * scale));
+        int scaledHeight = Math.max(1, Math.round(height * scale));
+
+        Bitmap band = createPhotoStripBitmap(width, Math.min(BAND_HEIGHT, height));
+        Bitmap scaled = createPhotoStripBitmap(scaledWidth, scaledHeight);
+        if (band != null && scaled != null && height <= ScanlineJpegEncoder.MAX_DIMENSION
+                && width <= ScanlineJpegEncoder.MAX_DIMENSION) {
+            Canvas canvas = new Canvas(band);
+            Canvas scaledCanvas = new Canvas(scaled);
+            Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            Rect bandRect = new Rect();
+            RectF scaledRect = new RectF();
+            int[] pixels = new int[width * band.getHeight()];
+            ScanlineJpegEncoder encoder = new ScanlineJpegEncoder(outputStream, width, height, quality);
+            try {
+                for (int bandTop = 0; bandTop < height; bandTop += band.getHeight()) {
+                    int bandRows = Math.min(band.getHeight(), height - bandTop);
+
+                    // Draw the band, translated so it draws the same as a whole photo strip. Drawing outside the band
+                    // is clipped.
+                    canvas.save();
+                    canvas.translate(0, -bandTop);
+                    canvas.drawColor(Color.WHITE);
+                    if (header != null) {
+                        canvas.drawBitmap(header, 0, 0, null);
+                    }
+                    for (int i = 0; i < srcBitmaps.length; i++) {
+                        if (plan.isPanelInRows(i, bandTop, bandRows)) {
+                            plan.drawFrame(canvas, i, srcBitmaps[i]);
+                        }
+                    }
+                    plan.drawStripBorders(canvas);
+                    canvas.restore();
+
+                    // Stream the band to the Jpeg encoder.
+                    band.getPixels(pixels, 0, width, 0, 0, width, bandRows);
+                    encoder.writeRows(pixels, 0, width, bandRows);
+
+                    // Draw the band into the downscaled copy.
+                    bandRect.set(0, 0, width, bandRows);
+                    scaledRect.set(0, bandTop * scale, scaledWidth, (bandTop + bandRows) * scale);
+                    scaledCanvas.drawBitmap(band, bandRect, scaledRect, scalePaint);
+                }
+                encoder.finish();
+
+                scaledBitmap = scaled;
+                scaled = null;
+            } catch (IOException e) {
+                // Do nothing.
+            }
+        }
+
+        // Return the band and any unused downscaled copy.
+        recycleBitmap(band);
+        recycleBitmap(scaled);
+        if (header != null) {
+            releaseHeader(header, width, headerScale);
+            header = null;
+        }
+
+        return scaledBitmap;
+    }
+
+    //
+    // Arrangement implementation.
+    //
+
+    @Override
+    public Bitmap createPhotoStrip(Bitmap[] srcBitmaps) {
+        Bitmap returnBitmap = null;
+
+        Composition composition = startComposition(srcBitmaps[0].getWidth(), srcBitmaps[0].getHeight(),
+                srcBitmaps.length);
+        if (composition != null) {
+            // Draw photo bitmaps.
+            for (int i = 0; i < srcBitmaps.length; i++) {
+                composition.drawFrame(i, srcBitmaps[i]);
+            }
+            returnBitmap = composition.getBitmap();
+        }
+
+        return returnBitmap;
+    }
 
     //
     // Private methods.
     //
 
+    /**
+     * Gets the {@link StripLayout.Type} that positions the frames of this arrangement.
+     *
+     * @return the layout type.
+     */
+    protected abstract StripLayout.Type getLayoutType();
+
+    /**
+     * Creates the bitmap to draw the photo strip on, using a pooled bitmap when possible.
+     *
+     * @param width  the width of the photo strip.
+     * @param height the height of the photo strip.
+     * @return the photo strip bitmap; or null if unsuccessful.
+     */
+    protected Bitmap createPhotoStripBitmap(int width, int height) {
+        BitmapPool pool = mBitmapPool;
+        if (pool != null) {
+            return pool.get(width, height, ImageHelper.BITMAP_CONFIG);
+        }
+
+        return Bitmap.createBitmap(width, height, ImageHelper.BITMAP_CONFIG);
+    }
+
+    /**
+     * Returns a bitmap taken with {@link #createPhotoStripBitmap} to the pool, or recycles it if there is no pool.
+     *
+     * @param bitmap the bitmap; or null.
+     */
+    protected void recycleBitmap(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        BitmapPool pool = mBitmapPool;
+        if (pool != null) {
+            pool.put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Gets the height of the header for the photo strip, without drawing it. Must match the height of the bitmap from
+     * {@link #getHeader}. The base implementation returns 0.
+     *
+     * @param width the width of the header.
+     * @param scale the scale of the frames relative to {@link ImageHelper#IMAGE_SIZE}.
+     * @return the header height; or 0 if no header is applied.
+     */
+    protected int getHeaderHeight(int width, float scale) {
+        return 0;
+    }
+
     /**
      * Gets the header bitmap for the photo strip. The base implementation returns null.
      *
      * @param width the width of the header bitmap.
+     * @param scale the scale of the frames relative to {@link ImageHelper#IMAGE_SIZE}, by which the header content
+     *              should be scaled.
      * @return a bitmap to be drawn as the photo strip header; or null if no header is applied.
      */
-    protected Bitmap getHeader(int width) {
+    protected Bitmap getHeader(int width, float scale) {
         return null;
     }
 
     /**
-     * Draws the border for the photo strip.
+     * Releases a header bitmap from {@link #getHeader} once it has been drawn. The base implementation recycles it.
+     * Override if the header bitmap may be shared, for example when it is held in a cache.
      *
-     * @param canvas the canvas to draw on.
-     * @param left   the left side of the photo strip.
-     * @param top    the top of the photo strip.
-     * @param right  the right side of the photo strip.
-     * @param bottom the bottom of the photo strip.
+     * @param header the header bitmap.
+     * @param width  the width the header bitmap was requested with.
+     * @param scale  the scale the header bitmap was requested with.
      */
-    protected static void drawPhotoStripBorders(Canvas canvas, float left, float top, float right, float bottom) {
-        Paint paint = new Paint();
-        paint.setColor(Color.DKGRAY);
-        drawRectOutline(canvas, left, top, right, bottom, paint);
+    protected void releaseHeader(Bitmap header, int width, float scale) {
+        header.recycle();
     }
 
     /**
-     * Draws the border for a panel.
+     * Draws the header of a photo strip at its top, if applied.
      *
-     * @param canvas the canvas to draw on.
-     * @param left   the left side of the panel.
-     * @param top    the top of the panel.
-     * @param right  the right side of the panel.
-     * @param bottom the bottom of the panel.
+     * @param canvas the canvas drawing on the photo strip.
+     * @param layout the layout of the photo strip.
+     * @param scale  the scale of the frames relative to {@link ImageHelper#IMAGE_SIZE}.
      */
-    protected static void drawPanelBorders(Canvas canvas, float left, float top, float right, float bottom) {
-        Paint paint = new Paint();
-
-        paint.setColor(Color.DKGRAY);
-        drawRectOutline(canvas, left, top, right, bottom, paint);
-
-        paint.setColor(Color.LTGRAY);
-        drawRectOutline(canvas, left - 1, top - 1, right + 1, bottom + 1, paint);
+    private void drawHeader(Canvas canvas, StripLayout layout, float scale) {
+        if (layout.getHeaderHeight() > 0) {
+            Bitmap header = getHeader(layout.getWidth(), scale);
+            if (header != null) {
+                canvas.drawBitmap(header, 0, 0, null);
+                releaseHeader(header, layout.getWidth(), scale);
+            }
+        }
     }
 
+    //
+    // Public inner classes.
+    //
+
     /**
-     * Draws the outline of a rectangle.
-     *
-     * @param canvas the canvas to draw on.
-     * @param left   the left side of the rectangle to be drawn.
-     * @param top    the top of the rectangle to be drawn.
-     * @param right  the right side of the rectangle to be drawn.
-     * @param bottom the bottom of the rectangle to be drawn.
-     * @param paint  the {@link Paint} to use for drawing.
-     */
-    protected static void drawRectOutline(Canvas canvas, float left, float top, float right, float bottom, Paint paint) {
-        canvas.drawLine(left, top, right, top, paint);
-        canvas.drawLine(right, top, right, bottom, paint);
-        canvas.drawLine(right, bottom, left, bottom, paint);
-        canvas.drawLine(left, bottom, left, top, paint);
+     * A photo strip being composed one frame at a time. Frames are drawn into their panels directly on the photo strip
+     * bitmap, so the photo strip is complete as soon as its last frame is drawn. Not thread-safe.
+     */
+    public static class Composition {
+
+        /**
+         * The plan of the photo strip.
+         */
+        private final StripPlan mPlan;
+
+        /**
+         * The photo strip bitmap.
+         */
+        private final Bitmap mBitmap;
+
+        /**
+         * The canvas drawing on the photo strip bitmap.
+         */
+        private final Canvas mCanvas;
+
+        /**
+         * Private constructor.
+         *
+         * @param plan   the plan of the photo strip.
+         * @param bitmap the photo strip bitmap.
+         * @param canvas the canvas drawing on the photo strip bitmap.
+         */
+        private Composition(StripPlan plan, Bitmap bitmap, Canvas canvas) {
+            mPlan = plan;
+            mBitmap = bitmap;
+            mCanvas = canvas;
+        }
+
+        /**
+         * Draws a frame into its panel, replacing any frame drawn there before.
+         *
+         * @param index the index of the panel.
+         * @param frame the frame bitmap. Must match the frame size of the photo strip.
+         */
+        public void drawFrame(int index, Bitmap frame) {
+            mPlan.drawFrame(mCanvas, index, frame);
+        }
+
+        /**
+         * Clears a panel back to empty.
+         *
+         * @param index the index of the panel.
+         */
+        public void clearFrame(int index) {
+            mPlan.clearPanel(mCanvas, index);
+        }
+
+        /**
+         * @return the layout of the photo strip.
+         */
+        public StripLayout getLayout() {
+            return mPlan.getLayout();
+        }
+
+        /**
+         * @return the photo strip bitmap. Frames drawn later are drawn onto the same bitmap.
+         */
+        public Bitmap getBitmap() {
+            return mBitmap;
+        }
     }
 }
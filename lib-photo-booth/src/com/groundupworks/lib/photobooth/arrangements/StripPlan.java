@@ -0,0 +1,259 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.arrangements;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.groundupworks.lib.photobooth.raster.arrangements.StripLayout;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * An immutable plan for drawing photo strips of one {@link StripLayout}: the panel rectangles, the border lines and the
+ * paints to draw them with. Plans are cached by layout, so every photo strip of the same template, output size and
+ * header height shares one plan, and drawing with it allocates nothing. This class is thread-safe.
+ *
+ * @author Benedict Lau
+ */
+public class StripPlan {
+
+    /**
+     * The max number of plans kept in the cache.
+     */
+    private static final int MAX_CACHED_PLANS = 8;
+
+    /**
+     * The number of coordinates of the four lines outlining a rectangle.
+     */
+    private static final int OUTLINE_POINTS = 16;
+
+    /**
+     * The paint to draw the photo strip borders and the inner panel borders with. Shared, so never modified.
+     */
+    private static final Paint DARK_BORDER_PAINT = createPaint(Color.DKGRAY);
+
+    /**
+     * The paint to draw the outer panel borders with. Shared, so never modified.
+     */
+    private static final Paint LIGHT_BORDER_PAINT = createPaint(Color.LTGRAY);
+
+    /**
+     * The paint to clear panels with. Shared, so never modified.
+     */
+    private static final Paint CLEAR_PAINT = createPaint(Color.WHITE);
+
+    /**
+     * The cached plans, ordered from the most to the least recently used. Guarded by itself.
+     */
+    private static final LinkedList<StripPlan> sCache = new LinkedList<StripPlan>();
+
+    /**
+     * The layout of the photo strip.
+     */
+    private final StripLayout mLayout;
+
+    /**
+     * The rectangle of each panel.
+     */
+    private final Rect[] mPanels;
+
+    /**
+     * The lines outlining the photo strip.
+     */
+    private final float[] mStripBorderLines;
+
+    /**
+     * The lines outlining each panel, {@link #OUTLINE_POINTS} coordinates per panel.
+     */
+    private final float[] mInnerPanelBorderLines;
+
+    /**
+     * The lines outlining each panel one pixel further out, {@link #OUTLINE_POINTS} coordinates per panel.
+     */
+    private final float[] mOuterPanelBorderLines;
+
+    /**
+     * Private constructor.
+     *
+     * @param layout the layout of the photo strip.
+     */
+    private StripPlan(StripLayout layout) {
+        mLayout = layout;
+
+        final int numFrames = layout.getNumFrames();
+        mPanels = new Rect[numFrames];
+        mInnerPanelBorderLines = new float[numFrames * OUTLINE_POINTS];
+        mOuterPanelBorderLines = new float[numFrames * OUTLINE_POINTS];
+        for (int i = 0; i < numFrames; i++) {
+            int left = layout.getFrameLeft(i);
+            int top = layout.getFrameTop(i);
+            int right = left + layout.getFrameWidth() - 1;
+            int bottom = top + layout.getFrameHeight() - 1;
+            mPanels[i] = new Rect(left, top, right + 1, bottom + 1);
+            setOutline(mInnerPanelBorderLines, i * OUTLINE_POINTS, left, top, right, bottom);
+            setOutline(mOuterPanelBorderLines, i * OUTLINE_POINTS, left - 1, top - 1, right + 1, bottom + 1);
+        }
+
+        mStripBorderLines = new float[OUTLINE_POINTS];
+        setOutline(mStripBorderLines, 0, 0, 0, layout.getWidth() - 1, layout.getHeight() - 1);
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Gets the plan for a photo strip layout, from the cache if a plan for the same layout was made before.
+     *
+     * @param type         the arrangement of frames.
+     * @param frameWidth   the width of each frame.
+     * @param frameHeight  the height of each frame.
+     * @param numFrames    the number of frames.
+     * @param headerHeight the height of the header drawn above the frames; or 0 if there is no header.
+     * @param padding      the padding around each frame.
+     * @return the plan.
+     */
+    public static StripPlan obtain(StripLayout.Type type, int frameWidth, int frameHeight, int numFrames,
+                                   int headerHeight, int padding) {
+        synchronized (sCache) {
+            Iterator<StripPlan> iterator = sCache.iterator();
+            while (iterator.hasNext()) {
+                StripPlan plan = iterator.next();
+                StripLayout layout = plan.mLayout;
+                if (layout.getType() == type && layout.getFrameWidth() == frameWidth
+                        && layout.getFrameHeight() == frameHeight && layout.getNumFrames() == numFrames
+                        && layout.getHeaderHeight() == headerHeight && layout.getPadding() == padding) {
+                    // Move to the front as the most recently used.
+                    iterator.remove();
+                    sCache.addFirst(plan);
+                    return plan;
+                }
+            }
+
+            StripPlan plan = new StripPlan(new StripLayout(type, frameWidth, frameHeight, numFrames, headerHeight,
+                    padding));
+            sCache.addFirst(plan);
+            if (sCache.size() > MAX_CACHED_PLANS) {
+                sCache.removeLast();
+            }
+
+            return plan;
+        }
+    }
+
+    /**
+     * @return the layout of the photo strip.
+     */
+    public StripLayout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * Checks whether a panel, including its borders, overlaps a range of rows.
+     *
+     * @param index   the index of the panel.
+     * @param top     the first row of the range.
+     * @param numRows the number of rows in the range.
+     * @return true if the panel overlaps the rows; false otherwise.
+     */
+    public boolean isPanelInRows(int index, int top, int numRows) {
+        Rect panel = mPanels[index];
+        return panel.bottom + 1 > top && panel.top - 1 < top + numRows;
+    }
+
+    /**
+     * Draws a frame into its panel, with the panel borders.
+     *
+     * @param canvas the canvas to draw on.
+     * @param index  the index of the panel.
+     * @param frame  the frame bitmap. Must match the frame size of the layout.
+     */
+    public void drawFrame(Canvas canvas, int index, Bitmap frame) {
+        Rect panel = mPanels[index];
+        canvas.drawBitmap(frame, panel.left, panel.top, null);
+        drawPanelBorders(canvas, index);
+    }
+
+    /**
+     * Clears a panel back to empty, with the panel borders.
+     *
+     * @param canvas the canvas to draw on.
+     * @param index  the index of the panel.
+     */
+    public void clearPanel(Canvas canvas, int index) {
+        canvas.drawRect(mPanels[index], CLEAR_PAINT);
+        drawPanelBorders(canvas, index);
+    }
+
+    /**
+     * Draws the borders of the photo strip.
+     *
+     * @param canvas the canvas to draw on.
+     */
+    public void drawStripBorders(Canvas canvas) {
+        canvas.drawLines(mStripBorderLines, DARK_BORDER_PAINT);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Draws the borders of a panel.
+     *
+     * @param canvas the canvas to draw on.
+     * @param index  the index of the panel.
+     */
+    private void drawPanelBorders(Canvas canvas, int index) {
+        canvas.drawLines(mInnerPanelBorderLines, index * OUTLINE_POINTS, OUTLINE_POINTS, DARK_BORDER_PAINT);
+        canvas.drawLines(mOuterPanelBorderLines, index * OUTLINE_POINTS, OUTLINE_POINTS, LIGHT_BORDER_PAINT);
+    }
+
+    /**
+     * Creates a paint of a color.
+     *
+     * @param color the color.
+     * @return the paint.
+     */
+    private static Paint createPaint(int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        return paint;
+    }
+
+    /**
+     * Sets the four lines outlining a rectangle into an array of line coordinates, in the order top, right, bottom and
+     * left.
+     *
+     * @param lines  the array of line coordinates.
+     * @param offset the index of the first coordinate to set.
+     * @param left   the left side of the rectangle.
+     * @param top    the top of the rectangle.
+     * @param right  the right side of the rectangle.
+     * @param bottom the bottom of the rectangle.
+     */
+    private static void setOutline(float[] lines, int offset, float left, float top, float right, float bottom) {
+        float[] outline = {left, top, right, top, right, top, right, bottom, right, bottom, left, bottom, left, bottom,
+                left, top};
+        System.arraycopy(outline, 0, lines, offset, OUTLINE_POINTS);
+    }
+}
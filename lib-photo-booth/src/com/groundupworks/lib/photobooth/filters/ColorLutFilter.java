@@ -0,0 +1,57 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.filters;
+
+import android.graphics.Bitmap;
+
+import com.groundupworks.lib.photobooth.framework.BaseApplication;
+import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.lib.photobooth.helpers.ImageHelper.ColorMatrixFilter;
+import com.groundupworks.lib.photobooth.raster.filters.ColorLut;
+
+/**
+ * Filter to apply a color look compiled into a {@link ColorLut}. Mutable bitmaps are filtered in place, and looks
+ * without tone curves are applied as a color matrix while the image is drawn.
+ *
+ * @author Benedict Lau
+ */
+public class ColorLutFilter implements ColorMatrixFilter {
+
+    /**
+     * The compiled color look.
+     */
+    private final ColorLut mLut;
+
+    /**
+     * Constructor.
+     *
+     * @param lut the compiled color look.
+     */
+    public ColorLutFilter(ColorLut lut) {
+        mLut = lut;
+    }
+
+    @Override
+    public Bitmap applyFilter(Bitmap srcBitmap) {
+        return ImageHelper.applyRasterOp(srcBitmap, mLut, BaseApplication.getBandExecutor());
+    }
+
+    @Override
+    public float[] getColorMatrix() {
+        return mLut.getColorMatrix();
+    }
+}
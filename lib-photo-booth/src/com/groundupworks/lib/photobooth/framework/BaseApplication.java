@@ -18,17 +18,24 @@ package com.groundupworks.lib.photobooth.framework;
 
 import android.app.Application;
 import android.content.Context;
-import android.os.HandlerThread;
-import android.os.Looper;
 
 import com.groundupworks.lib.photobooth.R;
+import com.groundupworks.lib.photobooth.helpers.BitmapPool;
+import com.groundupworks.lib.photobooth.helpers.CaptureLatencyStats;
+import com.groundupworks.lib.photobooth.helpers.ImageDerivative;
 import com.groundupworks.lib.photobooth.helpers.LogsHelper;
+import com.groundupworks.lib.photobooth.helpers.ShareOutbox;
+import com.groundupworks.lib.photobooth.helpers.TargetSizeJpegEncoder;
+import com.groundupworks.lib.photobooth.helpers.WingsShareSender;
+import com.groundupworks.lib.photobooth.raster.BandExecutor;
 import com.groundupworks.wings.IWingsModule;
 import com.groundupworks.wings.Wings;
 import com.groundupworks.wings.dropbox.DropboxEndpoint;
 import com.groundupworks.wings.facebook.FacebookEndpoint;
 import com.groundupworks.wings.gcp.GoogleCloudPrintEndpoint;
 
+import java.io.File;
+
 /**
  * Main {@link Application} class.
  *
@@ -36,11 +43,39 @@ import com.groundupworks.wings.gcp.GoogleCloudPrintEndpoint;
  */
 public abstract class BaseApplication extends Application {
 
-    private static final String WORKER_THREAD_NAME = "workerThread";
+    /**
+     * The max heap size is divided by this to get the max size of the bitmap pool.
+     */
+    private static final int BITMAP_POOL_HEAP_DIVISOR = 8;
+
+    /**
+     * The name of the file in the files directory to persist pending shares to.
+     */
+    private static final String SHARE_OUTBOX_FILENAME = "share_outbox";
+
+    /**
+     * The max number of bytes per second to hand to share endpoints.
+     */
+    private static final long SHARE_OUTBOX_BYTES_PER_SECOND = 256L * 1024L;
+
+    /**
+     * The lowest Jpeg quality used to fit a derivative in its byte budget.
+     */
+    private static final int JPEG_MIN_QUALITY = 50;
 
     private static Context sInstance;
 
-    private static HandlerThread sWorkerThread = null;
+    private static WorkerScheduler sScheduler = null;
+
+    private static BitmapPool sBitmapPool = null;
+
+    private static BandExecutor sBandExecutor = null;
+
+    private static ShareOutbox sShareOutbox = null;
+
+    private static TargetSizeJpegEncoder sJpegEncoder = null;
+
+    private static CaptureLatencyStats sCaptureLatencyStats = null;
 
     @Override
     public void onCreate() {
@@ -49,13 +84,54 @@ public abstract class BaseApplication extends Application {
         // Set a static reference to the Application Context.
         sInstance = this;
 
-        // Start a worker thread that has a {@link Looper} to execute background tasks.
-        sWorkerThread = new HandlerThread(WORKER_THREAD_NAME);
-        sWorkerThread.start();
+        // Start the worker lanes to execute background tasks, with one cpu thread per processor core.
+        sScheduler = new WorkerScheduler(Runtime.getRuntime().availableProcessors());
+
+        // Create a bitmap pool bounded by a fraction of the max heap size.
+        sBitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / BITMAP_POOL_HEAP_DIVISOR);
+
+        // Create an executor to run image filters in parallel bands, one per processor core, on the cpu lane threads.
+        sBandExecutor = new BandExecutor(Runtime.getRuntime().availableProcessors(),
+                sScheduler.newExecutor(WorkerScheduler.Lane.CPU));
+
+        // Create an encoder that fits Jpeg derivatives in their byte budgets.
+        sJpegEncoder = new TargetSizeJpegEncoder(JPEG_MIN_QUALITY);
+
+        // Collect capture latencies to compare preview frame capture against the shutter.
+        sCaptureLatencyStats = new CaptureLatencyStats();
 
         // Initialize Wings.
-        IWingsModule module = new Wings.DefaultModule(this, getWorkerLooper(), new LogsHelper());
+        IWingsModule module = new Wings.DefaultModule(this, sScheduler.getLooper(WorkerScheduler.Lane.NETWORK),
+                new LogsHelper());
         Wings.init(module, FacebookEndpoint.class, DropboxEndpoint.class, GoogleCloudPrintEndpoint.class);
+
+        // Create a persistent outbox that drains shares to Wings on the network lane.
+        sShareOutbox = new ShareOutbox(new File(getFilesDir(), SHARE_OUTBOX_FILENAME), new WingsShareSender(),
+                sScheduler.newHandler(WorkerScheduler.Lane.NETWORK), SHARE_OUTBOX_BYTES_PER_SECOND);
+
+        // Delete image derivatives whose shares are long done.
+        sScheduler.newSerialExecutor(WorkerScheduler.Lane.IO).execute(new Runnable() {
+            @Override
+            public void run() {
+                ImageDerivative.deleteExpired(BaseApplication.this);
+            }
+        });
+    }
+
+    @Override
+    public void onLowMemory() {
+        sBitmapPool.clear();
+        super.onLowMemory();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            sBitmapPool.clear();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            sBitmapPool.trim(0.5f);
+        }
+        super.onTrimMemory(level);
     }
 
     //
@@ -70,9 +146,49 @@ public abstract class BaseApplication extends Application {
     }
 
     /**
-     * @return the {@link Looper} to process background tasks.
+     * @return the {@link WorkerScheduler} to process background tasks on; or null if {@link Application#onCreate()}
+     * has not been called.
+     */
+    public static WorkerScheduler getScheduler() {
+        return sScheduler;
+    }
+
+    /**
+     * @return the {@link BitmapPool} with application scope.
+     */
+    public static BitmapPool getBitmapPool() {
+        return sBitmapPool;
+    }
+
+    /**
+     * @return the {@link BandExecutor} to run image filters in parallel; or null if {@link Application#onCreate()} has
+     * not been called.
+     */
+    public static BandExecutor getBandExecutor() {
+        return sBandExecutor;
+    }
+
+    /**
+     * @return the {@link ShareOutbox} to enqueue shares to; or null if {@link Application#onCreate()} has not been
+     * called.
+     */
+    public static ShareOutbox getShareOutbox() {
+        return sShareOutbox;
+    }
+
+    /**
+     * @return the {@link TargetSizeJpegEncoder} to encode Jpeg derivatives with; or null if
+     * {@link Application#onCreate()} has not been called.
+     */
+    public static TargetSizeJpegEncoder getJpegEncoder() {
+        return sJpegEncoder;
+    }
+
+    /**
+     * @return the {@link CaptureLatencyStats} to record capture latencies to; or null if
+     * {@link Application#onCreate()} has not been called.
      */
-    public static Looper getWorkerLooper() {
-        return sWorkerThread.getLooper();
+    public static CaptureLatencyStats getCaptureLatencyStats() {
+        return sCaptureLatencyStats;
     }
 }
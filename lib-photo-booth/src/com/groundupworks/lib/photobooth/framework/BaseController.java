@@ -16,10 +16,11 @@
  */
 package com.groundupworks.lib.photobooth.framework;
 
-import android.os.Handler;
 import android.os.Message;
 import android.support.v4.app.Fragment;
 
+import java.util.concurrent.Executor;
+
 /**
  * Base class for controller that works with a {@link ControllerBackedFragment}. Used to handle background tasks.
  *
@@ -27,20 +28,24 @@ import android.support.v4.app.Fragment;
  */
 public abstract class BaseController {
 
-    private Handler mWorkerHandler;
+    private final Executor mWorkerExecutor;
 
     private ControllerBackedFragment<?> mFragment = null;
 
     /**
-     * Constructor.
+     * Constructor. Events are handled on the {@link WorkerScheduler.Lane#CPU} lane.
      */
     public BaseController() {
-        mWorkerHandler = new Handler(BaseApplication.getWorkerLooper()) {
-            @Override
-            public void handleMessage(Message msg) {
-                handleEvent(msg);
-            }
-        };
+        this(WorkerScheduler.Lane.CPU);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lane the {@link WorkerScheduler.Lane} to handle events on.
+     */
+    protected BaseController(WorkerScheduler.Lane lane) {
+        mWorkerExecutor = BaseApplication.getScheduler().newSerialExecutor(lane);
     }
 
     //
@@ -60,12 +65,27 @@ public abstract class BaseController {
     }
 
     /**
-     * Handles events on the worker thread.
+     * Handles events on the worker lane, one at a time in the order they are sent.
      *
      * @param msg the event to handle.
      */
     protected abstract void handleEvent(Message msg);
 
+    /**
+     * Sends an event to the worker handler to process. Also used by subclasses to handle results of their own
+     * background work in order with other events.
+     *
+     * @param msg the event to handle.
+     */
+    protected void sendToWorkerHandler(final Message msg) {
+        mWorkerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                handleEvent(msg);
+            }
+        });
+    }
+
     //
     // Package private methods.
     //
@@ -85,13 +105,4 @@ public abstract class BaseController {
     void detachFragment() {
         mFragment = null;
     }
-
-    /**
-     * Sends an event to the worker handler to process.
-     *
-     * @param msg the event to handle.
-     */
-    void sendToWorkerHandler(Message msg) {
-        mWorkerHandler.sendMessage(msg);
-    }
 }
@@ -0,0 +1,402 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.framework;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.MessageQueue;
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules background work on separate lanes so that slow work of one kind does not hold up work of another. The
+ * {@link Lane#CPU} lane runs on a pool with one thread per processor core, and every other lane runs on its own
+ * {@link HandlerThread}. Each lane keeps a gauge of the tasks and messages submitted to it that have not finished
+ * running. This class is thread-safe.
+ *
+ * @author Benedict Lau
+ */
+public class WorkerScheduler {
+
+    /**
+     * The lanes to run background work on.
+     */
+    public enum Lane {
+
+        /**
+         * CPU-bound work such as image processing, run on a pool with one thread per processor core.
+         */
+        CPU("cpuWorker", Process.THREAD_PRIORITY_DEFAULT),
+
+        /**
+         * Storage reads and writes.
+         */
+        IO("ioWorker", Process.THREAD_PRIORITY_BACKGROUND),
+
+        /**
+         * Network and share work.
+         */
+        NETWORK("networkWorker", Process.THREAD_PRIORITY_BACKGROUND),
+
+        /**
+         * Latency-critical audio and camera callbacks.
+         */
+        HIGH_PRIORITY("highPriorityWorker", Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+        /**
+         * The name of the threads running the lane.
+         */
+        private final String mThreadName;
+
+        /**
+         * The {@link Process} priority of the threads running the lane.
+         */
+        private final int mThreadPriority;
+
+        /**
+         * Private constructor.
+         *
+         * @param threadName     the name of the threads running the lane.
+         * @param threadPriority the {@link Process} priority of the threads running the lane.
+         */
+        private Lane(String threadName, int threadPriority) {
+            mThreadName = threadName;
+            mThreadPriority = threadPriority;
+        }
+    }
+
+    /**
+     * The pool running the {@link Lane#CPU} lane.
+     */
+    private final ExecutorService mCpuExecutor;
+
+    /**
+     * The threads running the other lanes, indexed by {@link Lane#ordinal()}. The entry for {@link Lane#CPU} is null.
+     */
+    private final HandlerThread[] mThreads = new HandlerThread[Lane.values().length];
+
+    /**
+     * Handlers posting to the threads running the other lanes, indexed by {@link Lane#ordinal()}.
+     */
+    private final Handler[] mHandlers = new Handler[Lane.values().length];
+
+    /**
+     * The queue depth gauges, indexed by {@link Lane#ordinal()}.
+     */
+    private final AtomicInteger[] mDepths = new AtomicInteger[Lane.values().length];
+
+    /**
+     * Constructor.
+     *
+     * @param cpuThreads the number of threads running the {@link Lane#CPU} lane. Must be at least 1.
+     */
+    public WorkerScheduler(int cpuThreads) {
+        if (cpuThreads < 1) {
+            throw new IllegalArgumentException("cpuThreads must be at least 1");
+        }
+
+        for (Lane lane : Lane.values()) {
+            mDepths[lane.ordinal()] = new AtomicInteger();
+        }
+
+        // Start a pool of threads for the cpu lane.
+        mCpuExecutor = Executors.newFixedThreadPool(cpuThreads, new ThreadFactory() {
+
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Lane.CPU.mThreadPriority);
+                        runnable.run();
+                    }
+                }, Lane.CPU.mThreadName + "-" + mCount.incrementAndGet());
+            }
+        });
+
+        // Start a thread that has a {@link Looper} for each of the other lanes.
+        for (Lane lane : Lane.values()) {
+            if (lane != Lane.CPU) {
+                HandlerThread thread = new HandlerThread(lane.mThreadName, lane.mThreadPriority);
+                thread.start();
+                mThreads[lane.ordinal()] = thread;
+                mHandlers[lane.ordinal()] = new Handler(thread.getLooper());
+
+                // Reset the gauge whenever the lane runs out of work, so messages removed before they are handled do
+                // not inflate it.
+                final AtomicInteger depth = mDepths[lane.ordinal()];
+                mHandlers[lane.ordinal()].post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                            @Override
+                            public boolean queueIdle() {
+                                depth.set(0);
+                                return true;
+                            }
+                        });
+                    }
+                });
+            }
+        }
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Decrements a queue depth gauge without taking it below zero.
+     *
+     * @param depth the gauge.
+     */
+    private static void decrement(AtomicInteger depth) {
+        int value;
+        do {
+            value = depth.get();
+        } while (value > 0 && !depth.compareAndSet(value, value - 1));
+    }
+
+    /**
+     * Runs a task on a lane without touching its gauge.
+     *
+     * @param lane     the lane.
+     * @param runnable the task.
+     */
+    private void dispatch(Lane lane, Runnable runnable) {
+        if (lane == Lane.CPU) {
+            mCpuExecutor.execute(runnable);
+        } else {
+            mHandlers[lane.ordinal()].post(runnable);
+        }
+    }
+
+    /**
+     * Gets the thread running a lane.
+     *
+     * @param lane the lane. Must not be {@link Lane#CPU}.
+     * @return the thread.
+     */
+    private HandlerThread getThread(Lane lane) {
+        if (lane == Lane.CPU) {
+            throw new IllegalArgumentException("The cpu lane does not have a looper");
+        }
+        return mThreads[lane.ordinal()];
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Creates an {@link Executor} that runs tasks on a lane and counts them in the lane gauge. Tasks may run in parallel
+     * on the {@link Lane#CPU} lane.
+     *
+     * @param lane the lane.
+     * @return the executor.
+     */
+    public Executor newExecutor(final Lane lane) {
+        final AtomicInteger depth = mDepths[lane.ordinal()];
+        return new Executor() {
+            @Override
+            public void execute(final Runnable runnable) {
+                depth.incrementAndGet();
+                dispatch(lane, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            runnable.run();
+                        } finally {
+                            decrement(depth);
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Creates an {@link Executor} that runs tasks on a lane one at a time, in the order they are submitted. Tasks of
+     * different serial executors may run in parallel on the {@link Lane#CPU} lane.
+     *
+     * @param lane the lane.
+     * @return the serial executor.
+     */
+    public Executor newSerialExecutor(Lane lane) {
+        return new SerialExecutor(lane);
+    }
+
+    /**
+     * Creates a {@link Handler} that posts to a lane and counts its messages in the lane gauge.
+     *
+     * @param lane the lane. Must not be {@link Lane#CPU}.
+     * @return the handler.
+     */
+    public Handler newHandler(Lane lane) {
+        return new GaugedHandler(getThread(lane).getLooper(), mDepths[lane.ordinal()]);
+    }
+
+    /**
+     * Gets the {@link Looper} of a lane, for APIs that create their own {@link Handler}. Messages of such handlers are
+     * not counted in the lane gauge.
+     *
+     * @param lane the lane. Must not be {@link Lane#CPU}.
+     * @return the looper.
+     */
+    public Looper getLooper(Lane lane) {
+        return getThread(lane).getLooper();
+    }
+
+    /**
+     * Gets the queue depth gauge of a lane.
+     *
+     * @param lane the lane.
+     * @return the number of tasks and messages submitted to the lane that have not finished running.
+     */
+    public int getQueueDepth(Lane lane) {
+        return mDepths[lane.ordinal()].get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("WorkerScheduler[");
+        for (Lane lane : Lane.values()) {
+            if (lane.ordinal() > 0) {
+                builder.append(", ");
+            }
+            builder.append(lane.name().toLowerCase()).append('=').append(getQueueDepth(lane));
+        }
+        return builder.append(']').toString();
+    }
+
+    //
+    // Private inner classes.
+    //
+
+    /**
+     * An {@link Executor} that runs tasks on a lane one at a time, in the order they are submitted.
+     */
+    private class SerialExecutor implements Executor {
+
+        /**
+         * The lane to run tasks on.
+         */
+        private final Lane mLane;
+
+        /**
+         * The tasks waiting for the running task to finish.
+         */
+        private final Queue<Runnable> mTasks = new ArrayDeque<Runnable>();
+
+        /**
+         * The running task; or null if idle.
+         */
+        private Runnable mActive = null;
+
+        /**
+         * Constructor.
+         *
+         * @param lane the lane to run tasks on.
+         */
+        private SerialExecutor(Lane lane) {
+            mLane = lane;
+        }
+
+        /**
+         * Dispatches the next waiting task to the lane.
+         */
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                dispatch(mLane, mActive);
+            }
+        }
+
+        @Override
+        public synchronized void execute(final Runnable runnable) {
+            final AtomicInteger depth = mDepths[mLane.ordinal()];
+            depth.incrementAndGet();
+            mTasks.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runnable.run();
+                    } finally {
+                        decrement(depth);
+                        scheduleNext();
+                    }
+                }
+            });
+
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+    }
+
+    /**
+     * A {@link Handler} that counts its messages in a lane gauge.
+     */
+    private static class GaugedHandler extends Handler {
+
+        /**
+         * The gauge of the lane.
+         */
+        private final AtomicInteger mDepth;
+
+        /**
+         * Constructor.
+         *
+         * @param looper the {@link Looper} of the lane.
+         * @param depth  the gauge of the lane.
+         */
+        private GaugedHandler(Looper looper, AtomicInteger depth) {
+            super(looper);
+            mDepth = depth;
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            mDepth.incrementAndGet();
+            boolean isSent = super.sendMessageAtTime(msg, uptimeMillis);
+            if (!isSent) {
+                decrement(mDepth);
+            }
+            return isSent;
+        }
+
+        @Override
+        public void dispatchMessage(Message msg) {
+            try {
+                super.dispatchMessage(msg);
+            } finally {
+                decrement(mDepth);
+            }
+        }
+    }
+}
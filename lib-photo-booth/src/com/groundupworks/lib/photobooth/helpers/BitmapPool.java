@@ -0,0 +1,252 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A pool of mutable bitmaps that can be reused instead of allocating new ones. Bitmaps are matched by width, height
+ * and {@link Bitmap.Config}, and the total size of the pooled bitmaps is bounded in bytes. When the pool is full, the
+ * least recently returned bitmaps are recycled first. This class is thread-safe.
+ *
+ * @author Benedict Lau
+ */
+public class BitmapPool {
+
+    /**
+     * The max total size of pooled bitmaps in bytes.
+     */
+    private final long mMaxSize;
+
+    /**
+     * The pooled bitmaps, ordered from the least to the most recently returned.
+     */
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<Bitmap>();
+
+    /**
+     * The current total size of pooled bitmaps in bytes.
+     */
+    private long mSize = 0L;
+
+    /**
+     * The number of requests served by a pooled bitmap.
+     */
+    private long mHitCount = 0L;
+
+    /**
+     * The number of requests that could not be served by a pooled bitmap.
+     */
+    private long mMissCount = 0L;
+
+    /**
+     * The number of bitmaps recycled to stay within the max size.
+     */
+    private long mEvictionCount = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the max total size of pooled bitmaps in bytes.
+     */
+    public BitmapPool(long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Gets the size of a bitmap in bytes.
+     *
+     * @param bitmap the bitmap.
+     * @return the size in bytes.
+     */
+    private static long getBitmapSize(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Removes a matching bitmap from the pool.
+     *
+     * @param width  the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the {@link Bitmap.Config} of the bitmap.
+     * @return the pooled bitmap; or null if none matches.
+     */
+    private synchronized Bitmap remove(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+
+        // Search from the most recently returned.
+        Iterator<Bitmap> iterator = mBitmaps.descendingIterator();
+        while (iterator.hasNext()) {
+            Bitmap pooled = iterator.next();
+            if (pooled.getWidth() == width && pooled.getHeight() == height && config.equals(pooled.getConfig())) {
+                iterator.remove();
+                mSize -= getBitmapSize(pooled);
+                bitmap = pooled;
+                break;
+            }
+        }
+
+        if (bitmap != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Recycles the least recently returned bitmaps until the total size is within the limit.
+     *
+     * @param maxSize the max total size in bytes.
+     */
+    private synchronized void trimToSize(long maxSize) {
+        while (mSize > maxSize && !mBitmaps.isEmpty()) {
+            Bitmap evicted = mBitmaps.removeFirst();
+            mSize -= getBitmapSize(evicted);
+            evicted.recycle();
+            mEvictionCount++;
+        }
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Gets a mutable bitmap cleared to transparent. A pooled bitmap is returned if available, otherwise a new bitmap is
+     * allocated.
+     *
+     * @param width  the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the {@link Bitmap.Config} of the bitmap.
+     * @return the bitmap.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = remove(width, height, config);
+        if (bitmap != null) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        } else {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Gets a pooled bitmap without clearing its content. Useful for
+     * {@link android.graphics.BitmapFactory.Options#inBitmap}, where the content is overwritten anyway.
+     *
+     * @param width  the width of the bitmap.
+     * @param height the height of the bitmap.
+     * @param config the {@link Bitmap.Config} of the bitmap.
+     * @return the pooled bitmap; or null if none is available.
+     */
+    public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        return remove(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must not use the bitmap afterwards. Immutable bitmaps and bitmaps larger
+     * than the pool are recycled instead.
+     *
+     * @param bitmap the bitmap to return. Null is ignored.
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        long bitmapSize = getBitmapSize(bitmap);
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || bitmapSize > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        synchronized (this) {
+            if (!mBitmaps.contains(bitmap)) {
+                mBitmaps.addLast(bitmap);
+                mSize += bitmapSize;
+            }
+        }
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Recycles all pooled bitmaps.
+     */
+    public void clear() {
+        trimToSize(0L);
+    }
+
+    /**
+     * Recycles pooled bitmaps until the total size is at most the given fraction of the max size.
+     *
+     * @param fraction the fraction of the max size to keep, between 0 and 1.
+     */
+    public void trim(float fraction) {
+        trimToSize((long) (mMaxSize * fraction));
+    }
+
+    /**
+     * @return the current total size of pooled bitmaps in bytes.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the max total size of pooled bitmaps in bytes.
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of requests served by a pooled bitmap.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of requests that could not be served by a pooled bitmap.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of bitmaps recycled to stay within the max size.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool[size=" + mSize + ", maxSize=" + mMaxSize + ", hits=" + mHitCount + ", misses="
+                + mMissCount + ", evictions=" + mEvictionCount + "]";
+    }
+}
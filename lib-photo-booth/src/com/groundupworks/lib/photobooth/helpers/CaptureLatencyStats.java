@@ -0,0 +1,119 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+/**
+ * Collects the latency from a capture trigger, such as the end of a countdown or an autofocus callback, to the moment
+ * the captured image was exposed. Latencies are kept per capture method so the preview frame path can be compared
+ * against {@link android.hardware.Camera#takePicture}. This class is thread-safe.
+ *
+ * @author Benedict Lau
+ */
+public class CaptureLatencyStats {
+
+    /**
+     * The number of captures recorded per method.
+     */
+    private final long[] mCounts = new long[Method.values().length];
+
+    /**
+     * The sum of latencies in milliseconds per method.
+     */
+    private final long[] mTotals = new long[Method.values().length];
+
+    /**
+     * The max latency in milliseconds per method.
+     */
+    private final long[] mMaxes = new long[Method.values().length];
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Records the latency of a capture.
+     *
+     * @param method        the capture method.
+     * @param latencyMillis the latency from trigger to exposure in milliseconds.
+     */
+    public synchronized void record(Method method, long latencyMillis) {
+        final int index = method.ordinal();
+        mCounts[index]++;
+        mTotals[index] += latencyMillis;
+        mMaxes[index] = Math.max(mMaxes[index], latencyMillis);
+
+        LogsHelper.slog(CaptureLatencyStats.class, "record", method + " latency=" + latencyMillis + "ms " + this);
+    }
+
+    /**
+     * @param method the capture method.
+     * @return the number of captures recorded for the method.
+     */
+    public synchronized long getCount(Method method) {
+        return mCounts[method.ordinal()];
+    }
+
+    /**
+     * @param method the capture method.
+     * @return the mean latency in milliseconds for the method; or 0 if none is recorded.
+     */
+    public synchronized long getMeanLatency(Method method) {
+        final int index = method.ordinal();
+        return mCounts[index] > 0L ? mTotals[index] / mCounts[index] : 0L;
+    }
+
+    /**
+     * @param method the capture method.
+     * @return the max latency in milliseconds for the method.
+     */
+    public synchronized long getMaxLatency(Method method) {
+        return mMaxes[method.ordinal()];
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("CaptureLatencyStats[");
+        for (Method method : Method.values()) {
+            if (method.ordinal() > 0) {
+                builder.append(", ");
+            }
+            builder.append(method).append("={count=").append(getCount(method)).append(", mean=")
+                    .append(getMeanLatency(method)).append("ms, max=").append(getMaxLatency(method)).append("ms}");
+        }
+        return builder.append("]").toString();
+    }
+
+    //
+    // Public inner classes.
+    //
+
+    /**
+     * The capture methods.
+     */
+    public enum Method {
+
+        /**
+         * Capture by {@link android.hardware.Camera#takePicture}, timed until the shutter callback.
+         */
+        SHUTTER,
+
+        /**
+         * Capture from a buffered preview frame, timed by how far the chosen frame is from the trigger.
+         */
+        PREVIEW_FRAME
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+/**
+ * Interface for sending shares drained from a {@link ShareQueue}.
+ *
+ * @author Benedict Lau
+ */
+public interface IShareSender {
+
+    /**
+     * The result of sending a share.
+     */
+    enum Result {
+
+        /**
+         * The share is sent.
+         */
+        SENT,
+
+        /**
+         * The share failed and should be retried later.
+         */
+        RETRY,
+
+        /**
+         * The share can never succeed, for example because the endpoint is unknown. It is dropped.
+         */
+        REJECTED
+    }
+
+    /**
+     * Sends a share. Called on the thread draining the queue.
+     *
+     * @param filePath the path to the file to share.
+     * @param endpoint the name of the endpoint to share to.
+     * @return the result.
+     */
+    Result send(String filePath, String endpoint);
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.groundupworks.lib.photobooth.arrangements.BaseArrangement;
+import com.groundupworks.wings.WingsEndpoint;
+import com.groundupworks.wings.dropbox.DropboxEndpoint;
+import com.groundupworks.wings.facebook.FacebookEndpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.EnumMap;
+
+/**
+ * The derivatives of an output image, each with its own size and Jpeg budget. The {@link #PRINT} master keeps the full
+ * resolution for printing, while the smaller derivatives are routed to endpoints that only display the image, so less
+ * data is uploaded. Derivatives are declared from the largest to the smallest.
+ *
+ * @author Benedict Lau
+ */
+public enum ImageDerivative {
+
+    /**
+     * The full resolution master, for printing and storage.
+     */
+    PRINT(0, 100, 0, null),
+
+    /**
+     * A derivative for social networks, sized for their full screen viewers.
+     */
+    SOCIAL(2048, 85, 500 * 1024, "_social"),
+
+    /**
+     * A derivative for web viewing.
+     */
+    WEB(1024, 80, 200 * 1024, "_web");
+
+    /**
+     * The name of the directory in the files directory to save derivatives to.
+     */
+    private static final String DIRECTORY_NAME = "derivatives";
+
+    /**
+     * The separator between the quality key and the derivative name in quality cache keys.
+     */
+    private static final String CACHE_KEY_SEPARATOR = "/";
+
+    /**
+     * The age in milliseconds after which saved derivatives are deleted. By then the shares referencing them have
+     * long been sent or dropped.
+     */
+    private static final long MAX_AGE = 7L * 24L * 60L * 60L * 1000L;
+
+    /**
+     * The max length of the long edge in pixels; or 0 to keep the full resolution.
+     */
+    private final int mMaxLongEdge;
+
+    /**
+     * The highest Jpeg quality to encode with, between 0 and 100.
+     */
+    private final int mQuality;
+
+    /**
+     * The max size of the Jpeg in bytes; or 0 for no limit.
+     */
+    private final int mMaxBytes;
+
+    /**
+     * The suffix added to the master filename; or null for the master itself.
+     */
+    private final String mFilenameSuffix;
+
+    /**
+     * Private constructor.
+     *
+     * @param maxLongEdge    the max length of the long edge in pixels; or 0 to keep the full resolution.
+     * @param quality        the highest Jpeg quality to encode with, between 0 and 100.
+     * @param maxBytes       the max size of the Jpeg in bytes; or 0 for no limit.
+     * @param filenameSuffix the suffix added to the master filename; or null for the master itself.
+     */
+    private ImageDerivative(int maxLongEdge, int quality, int maxBytes, String filenameSuffix) {
+        mMaxLongEdge = maxLongEdge;
+        mQuality = quality;
+        mMaxBytes = maxBytes;
+        mFilenameSuffix = filenameSuffix;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * @return the max length of the long edge in pixels; or 0 to keep the full resolution.
+     */
+    public int getMaxLongEdge() {
+        return mMaxLongEdge;
+    }
+
+    /**
+     * @return the highest Jpeg quality to encode with, between 0 and 100.
+     */
+    public int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * @return the max size of the Jpeg in bytes; or 0 for no limit.
+     */
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Gets the file to save this derivative of a master Jpeg to.
+     *
+     * @param context    the {@link Context}.
+     * @param masterFile the file of the master Jpeg.
+     * @return the file; the master file itself for {@link #PRINT}.
+     */
+    public File getFile(Context context, File masterFile) {
+        if (mFilenameSuffix == null) {
+            return masterFile;
+        }
+
+        String name = masterFile.getName();
+        int extensionIndex = name.lastIndexOf('.');
+        if (extensionIndex < 0) {
+            extensionIndex = name.length();
+        }
+
+        return new File(getDirectory(context), name.substring(0, extensionIndex) + mFilenameSuffix
+                + name.substring(extensionIndex));
+    }
+
+    /**
+     * Gets the derivative to share to an endpoint.
+     *
+     * @param endpointClazz the {@link WingsEndpoint} class.
+     * @return the derivative.
+     */
+    public static ImageDerivative forEndpoint(Class<? extends WingsEndpoint> endpointClazz) {
+        if (FacebookEndpoint.class.equals(endpointClazz)) {
+            return SOCIAL;
+        } else if (DropboxEndpoint.class.equals(endpointClazz)) {
+            return WEB;
+        }
+
+        // Print and unknown endpoints get the master.
+        return PRINT;
+    }
+
+    /**
+     * Gets the directory saved derivatives are kept in. The directory is private to the application, so the smaller
+     * derivatives do not show up in the Android Gallery next to the master.
+     *
+     * @param context the {@link Context}.
+     * @return the directory. It may not exist yet.
+     */
+    public static File getDirectory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * Deletes saved derivatives older than the max age. Should not be called on the ui thread.
+     *
+     * @param context the {@link Context}.
+     */
+    public static void deleteExpired(Context context) {
+        File[] files = getDirectory(context).listFiles();
+        if (files != null) {
+            long expiryTime = System.currentTimeMillis() - MAX_AGE;
+            for (File file : files) {
+                if (file.lastModified() < expiryTime) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes all derivatives of an image in one pass. The image is encoded as the {@link #PRINT} master, then
+     * downscaled step by step from the largest to the smallest derivative, each scaled from the previous one rather
+     * than from the full resolution image, and encoded at the highest quality that fits its own budget.
+     *
+     * @param bitmap     the full resolution image. Not modified.
+     * @param pool       an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @param encoder    the {@link TargetSizeJpegEncoder} to encode with.
+     * @param qualityKey the key of the look of the image, such as its template and theme, under which the chosen
+     *                   qualities are cached; or null to not cache them.
+     * @return the Jpeg data of each derivative; or null if the master failed to encode. Derivatives that failed to
+     * encode are left out.
+     */
+    public static EnumMap<ImageDerivative, ByteArrayOutputStream> encodeAll(Bitmap bitmap, BitmapPool pool,
+                                                                            TargetSizeJpegEncoder encoder,
+                                                                            String qualityKey) {
+        EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData = new EnumMap<ImageDerivative,
+                ByteArrayOutputStream>(ImageDerivative.class);
+        encodeCascade(bitmap, false, PRINT, jpegData, pool, encoder, qualityKey);
+        if (!jpegData.containsKey(PRINT)) {
+            return null;
+        }
+
+        return jpegData;
+    }
+
+    /**
+     * Encodes all derivatives of a photo strip without creating the full resolution photo strip bitmap. The
+     * {@link #PRINT} master is rendered in bands and streamed as Jpeg straight into the given output stream by
+     * {@link BaseArrangement#writePhotoStrip}, which also draws a downscaled copy sized for the next derivative. The
+     * smaller derivatives are then made from that copy as in {@link #encodeAll(Bitmap, BitmapPool,
+     * TargetSizeJpegEncoder, String)}. The master has no byte budget, so it is encoded once at its quality, and it is
+     * never held in memory in full.
+     *
+     * @param arrangement  the arrangement of the photo strip.
+     * @param frames       the frames of the photo strip. Not modified.
+     * @param masterStream the output stream to stream the master to, typically a file. Not closed.
+     * @param pool         an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @param encoder      the {@link TargetSizeJpegEncoder} to encode the smaller derivatives with.
+     * @param qualityKey   the key of the look of the photo strip, such as its template and theme, under which the
+     *                     chosen qualities are cached; or null to not cache them.
+     * @return the Jpeg data of each derivative other than the master; or null if the master failed to encode.
+     * Derivatives that failed to encode are left out.
+     */
+    public static EnumMap<ImageDerivative, ByteArrayOutputStream> encodeAll(BaseArrangement arrangement,
+                                                                            Bitmap[] frames,
+                                                                            OutputStream masterStream,
+                                                                            BitmapPool pool,
+                                                                            TargetSizeJpegEncoder encoder,
+                                                                            String qualityKey) {
+        EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData = new EnumMap<ImageDerivative,
+                ByteArrayOutputStream>(ImageDerivative.class);
+
+        ImageDerivative next = values()[PRINT.ordinal() + 1];
+        Bitmap scaled = arrangement.writePhotoStrip(frames, masterStream, PRINT.mQuality, next.mMaxLongEdge);
+        if (scaled == null) {
+            return null;
+        }
+
+        encodeCascade(scaled, true, next, jpegData, pool, encoder, qualityKey);
+
+        return jpegData;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Returns an intermediate bitmap to the pool, or recycles it if there is no pool.
+     *
+     * @param bitmap the bitmap.
+     * @param pool   the {@link BitmapPool}; or null.
+     */
+    private static void recycle(Bitmap bitmap, BitmapPool pool) {
+        if (pool != null) {
+            pool.put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Encodes derivatives from an image, from a given derivative to the smallest. Each derivative is scaled from the
+     * previous one if its long edge exceeds the max, and encoded at the highest quality that fits its own budget. The
+     * cascade stops at the first derivative that fails to scale, or if the master fails to encode.
+     *
+     * @param bitmap        the image to start from.
+     * @param isBitmapOwned true to return the image to the pool when done; false to leave it to the caller.
+     * @param first         the first derivative to encode.
+     * @param jpegData      the map to put the Jpeg data of each encoded derivative in.
+     * @param pool          an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @param encoder       the {@link TargetSizeJpegEncoder} to encode with.
+     * @param qualityKey    the key under which the chosen qualities are cached; or null to not cache them.
+     */
+    private static void encodeCascade(Bitmap bitmap, boolean isBitmapOwned, ImageDerivative first,
+                                      EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData, BitmapPool pool,
+                                      TargetSizeJpegEncoder encoder, String qualityKey) {
+        Bitmap source = bitmap;
+        ImageDerivative[] derivatives = values();
+        for (int i = first.ordinal(); i < derivatives.length; i++) {
+            ImageDerivative derivative = derivatives[i];
+
+            // Downscale from the previous derivative if the long edge exceeds the max.
+            Bitmap scaled = source;
+            int longEdge = Math.max(source.getWidth(), source.getHeight());
+            if (derivative.mMaxLongEdge > 0 && longEdge > derivative.mMaxLongEdge) {
+                float scale = derivative.mMaxLongEdge / (float) longEdge;
+                int width = Math.max(1, Math.round(source.getWidth() * scale));
+                int height = Math.max(1, Math.round(source.getHeight() * scale));
+                scaled = ImageHelper.createScaledBitmap(source, width, height, pool);
+                if (scaled == null) {
+                    break;
+                }
+            }
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            String cacheKey = qualityKey == null ? null : qualityKey + CACHE_KEY_SEPARATOR + derivative.name();
+            if (encoder.encode(scaled, derivative.mQuality, derivative.mMaxBytes, cacheKey, data) >= 0) {
+                jpegData.put(derivative, data);
+            } else if (derivative == PRINT) {
+                // The other derivatives are of no use without the master.
+                break;
+            }
+
+            // Keep the scaled bitmap as the source of the next derivative.
+            if (scaled != source) {
+                if (source != bitmap || isBitmapOwned) {
+                    recycle(source, pool);
+                }
+                source = scaled;
+            }
+        }
+
+        if (source != bitmap || isBitmapOwned) {
+            recycle(source, pool);
+        }
+    }
+}
@@ -22,18 +22,34 @@ import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
+import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.net.Uri;
+import android.os.Build;
 import android.util.DisplayMetrics;
 
 import com.groundupworks.lib.photobooth.R;
+import com.groundupworks.lib.photobooth.raster.BandExecutor;
+import com.groundupworks.lib.photobooth.raster.NeighbourhoodOp;
+import com.groundupworks.lib.photobooth.raster.Raster;
+import com.groundupworks.lib.photobooth.raster.RasterOp;
+import com.groundupworks.lib.photobooth.raster.codecs.Nv21Decoder;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
 
 /**
  * A helper class containing image processing-related methods and configurations.
@@ -48,7 +64,8 @@ public class ImageHelper {
     public static final String JPEG_MIME_TYPE = "image/jpeg";
 
     /**
-     * The width and height of an image.
+     * The width and height of an image at the standard output resolution. Other resolutions are scaled relative to
+     * it.
      */
     public static final int IMAGE_SIZE = 600;
 
@@ -77,6 +94,40 @@ public class ImageHelper {
      */
     private static final int DECODE_ERROR = -1;
 
+    /**
+     * The magic number at the start of a raw bitmap file.
+     */
+    private static final int RAW_MAGIC = 0x52415742;
+
+    /**
+     * The version of the raw bitmap file format.
+     */
+    private static final int RAW_VERSION = 2;
+
+    /**
+     * The size of the raw bitmap file header in bytes. The header holds the magic number, the version, the width, the
+     * height, the index of the {@link Bitmap.Config} in {@link #RAW_CONFIGS} and the CRC-32 of the pixel bytes, as
+     * big-endian ints.
+     */
+    private static final int RAW_HEADER_SIZE = 24;
+
+    /**
+     * The {@link Bitmap.Config} values supported by the raw bitmap file format. Do not reorder, as files store the
+     * index.
+     */
+    private static final Bitmap.Config[] RAW_CONFIGS = {Config.ALPHA_8, Config.RGB_565, Config.ARGB_4444,
+            Config.ARGB_8888};
+
+    /**
+     * The suffix of the temp file a raw bitmap file is written to before it is renamed.
+     */
+    private static final String RAW_TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The size in bytes of the chunks the pixels of a memory-mapped raw bitmap file are checksummed in.
+     */
+    private static final int RAW_CRC_CHUNK_SIZE = 16 * 1024;
+
     //
     // Public methods.
     //
@@ -270,9 +321,21 @@ public class ImageHelper {
      * @return true if successful; false otherwise.
      */
     public static boolean writeJpeg(Bitmap bitmap, OutputStream outputStream) {
+        return writeJpeg(bitmap, outputStream, JPEG_COMPRESSION);
+    }
+
+    /**
+     * Compresses a bitmap to Jpeg at a given quality and writes the Jpeg data to an output stream.
+     *
+     * @param bitmap       the bitmap to compress.
+     * @param outputStream the outputstream to write the compressed data.
+     * @param quality      the Jpeg quality, between 0 and 100.
+     * @return true if successful; false otherwise.
+     */
+    public static boolean writeJpeg(Bitmap bitmap, OutputStream outputStream, int quality) {
         boolean isSuccessful = false;
         if (bitmap != null) {
-            isSuccessful = bitmap.compress(CompressFormat.JPEG, JPEG_COMPRESSION, outputStream);
+            isSuccessful = bitmap.compress(CompressFormat.JPEG, quality, outputStream);
         }
 
         return isSuccessful;
@@ -294,6 +357,145 @@ public class ImageHelper {
         return isSuccessful;
     }
 
+    /**
+     * Writes the uncompressed pixels of a bitmap to a raw bitmap file, which can be read back at close to memory copy
+     * speed with {@link #readRaw(File)}. The file is written to a temp file first and then renamed, so it is never
+     * left half-written.
+     *
+     * @param bitmap the bitmap to write.
+     * @param file   the file to write to. Any existing file is replaced.
+     * @return true if successful; false otherwise.
+     */
+    public static boolean writeRaw(Bitmap bitmap, File file) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return false;
+        }
+
+        int configIndex = -1;
+        for (int i = 0; i < RAW_CONFIGS.length; i++) {
+            if (RAW_CONFIGS[i].equals(bitmap.getConfig())) {
+                configIndex = i;
+            }
+        }
+        if (configIndex < 0) {
+            return false;
+        }
+
+        ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(pixels.array(), 0, pixels.limit());
+
+        ByteBuffer header = ByteBuffer.allocate(RAW_HEADER_SIZE);
+        header.putInt(RAW_MAGIC).putInt(RAW_VERSION).putInt(bitmap.getWidth()).putInt(bitmap.getHeight())
+                .putInt(configIndex).putInt((int) crc.getValue());
+        header.flip();
+
+        boolean isSuccessful = false;
+        File tempFile = new File(file.getPath() + RAW_TEMP_SUFFIX);
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(tempFile, "rw");
+            randomAccessFile.setLength(0L);
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer[] buffers = {header, pixels};
+            while (pixels.hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(false);
+            randomAccessFile.close();
+            randomAccessFile = null;
+
+            isSuccessful = tempFile.renameTo(file);
+        } catch (IOException e) {
+            // Do nothing.
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+            if (!isSuccessful) {
+                tempFile.delete();
+            }
+        }
+
+        return isSuccessful;
+    }
+
+    /**
+     * Reads a bitmap from a raw bitmap file written by {@link #writeRaw(Bitmap, File)}. The pixels are verified against
+     * the checksum in the header, then copied from the memory-mapped file without decoding. The checksum is computed
+     * in small chunks, so the pixels are never copied to the heap.
+     *
+     * @param file the file to read from.
+     * @return the mutable bitmap; or null if the file is missing, corrupt or not a valid raw bitmap file.
+     */
+    public static Bitmap readRaw(File file) {
+        Bitmap bitmap = null;
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size >= RAW_HEADER_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+                int magic = buffer.getInt();
+                int version = buffer.getInt();
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                int configIndex = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (magic == RAW_MAGIC && version == RAW_VERSION && width > 0 && height > 0 && configIndex >= 0
+                        && configIndex < RAW_CONFIGS.length) {
+                    bitmap = Bitmap.createBitmap(width, height, RAW_CONFIGS[configIndex]);
+                    ByteBuffer pixels = null;
+                    if ((long) bitmap.getRowBytes() * height == size - RAW_HEADER_SIZE) {
+                        pixels = buffer.slice();
+
+                        CRC32 crc = new CRC32();
+                        byte[] chunk = new byte[Math.min(RAW_CRC_CHUNK_SIZE, pixels.remaining())];
+                        while (pixels.hasRemaining()) {
+                            int length = Math.min(chunk.length, pixels.remaining());
+                            pixels.get(chunk, 0, length);
+                            crc.update(chunk, 0, length);
+                        }
+                        if ((int) crc.getValue() == checksum) {
+                            pixels.rewind();
+                        } else {
+                            pixels = null;
+                        }
+                    }
+
+                    if (pixels != null) {
+                        bitmap.copyPixelsFromBuffer(pixels);
+                    } else {
+                        bitmap.recycle();
+                        bitmap = null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Do nothing.
+        } catch (OutOfMemoryError e) {
+            // Do nothing.
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+        }
+
+        return bitmap;
+    }
+
     /**
      * Creates a processed bitmap image from Jpeg data in a byte array. Transformations and image filters are applied to
      * the original image in the process.
@@ -305,88 +507,173 @@ public class ImageHelper {
      * @return the image; or null if unsuccessful.
      */
     public static Bitmap createImage(byte[] jpegData, float rotation, boolean reflection, ImageFilter filter) {
+        return createImage(jpegData, rotation, reflection, filter, null);
+    }
+
+    /**
+     * Creates a processed bitmap image from Jpeg data in a byte array. Transformations and image filters are applied to
+     * the original image in the process. A {@link ColorMatrixFilter} is applied in the same draw as the
+     * transformations. Intermediate and returned bitmaps are taken from the {@link BitmapPool} when possible, and
+     * intermediate bitmaps are returned to it.
+     *
+     * @param jpegData   byte array of Jpeg data.
+     * @param rotation   clockwise rotation applied to image in degrees.
+     * @param reflection horizontal reflection applied to image.
+     * @param filter     an optional {@link ImageFilter} to apply. Pass null to disable.
+     * @param pool       an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @return the image; or null if unsuccessful.
+     */
+    public static Bitmap createImage(byte[] jpegData, float rotation, boolean reflection, ImageFilter filter,
+                                     BitmapPool pool) {
+        return createImage(jpegData, IMAGE_SIZE, rotation, reflection, filter, pool);
+    }
+
+    /**
+     * Creates a processed bitmap image of a given size from Jpeg data in a byte array. Transformations and image
+     * filters are applied to the original image in the process. A {@link ColorMatrixFilter} is applied in the same draw
+     * as the transformations. Intermediate and returned bitmaps are taken from the {@link BitmapPool} when possible,
+     * and intermediate bitmaps are returned to it.
+     *
+     * @param jpegData   byte array of Jpeg data.
+     * @param size       the width and height of the image. The Jpeg data is subsampled while decoding to the largest
+     *                   factor that keeps it at least this large.
+     * @param rotation   clockwise rotation applied to image in degrees.
+     * @param reflection horizontal reflection applied to image.
+     * @param filter     an optional {@link ImageFilter} to apply. Pass null to disable.
+     * @param pool       an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @return the image; or null if unsuccessful.
+     */
+    public static Bitmap createImage(byte[] jpegData, int size, float rotation, boolean reflection,
+                                     ImageFilter filter, BitmapPool pool) {
         Bitmap returnBitmap = null;
 
         if (jpegData != null) {
-            // Decode Jpeg to create source Bitmap.
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            Bitmap decodedBitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length, options);
-
-            if (decodedBitmap != null && options.outWidth != DECODE_ERROR && options.outHeight != DECODE_ERROR) {
-                /*
-                 * Scale bitmap.
-                 */
-                // Determine scale factor.
-                float scaleFactor = (float) IMAGE_SIZE / Math.min(options.outWidth, options.outHeight);
-
-                // Create matrix to scale and reflect bitmap.
-                float scaleFactorX = scaleFactor;
-                float scaleFactorY = scaleFactor;
-
-                if (reflection) {
-                    scaleFactorX = -scaleFactorX;
-                }
+            // Decode only the centered square region at the largest subsampling factor that keeps it large enough.
+            Bitmap decodedBitmap = decodeCenteredSquare(jpegData, size, pool);
 
-                Matrix scaleMatrix = new Matrix();
-                scaleMatrix.setScale(scaleFactorX, scaleFactorY);
+            if (decodedBitmap != null) {
+                returnBitmap = transformDecodedImage(decodedBitmap, size, rotation, reflection, filter, pool);
+            }
+        }
 
-                // Create new scaled bitmap.
-                Bitmap scaledBitmap = Bitmap.createBitmap(decodedBitmap, 0, 0, options.outWidth, options.outHeight,
-                        scaleMatrix, true);
+        return returnBitmap;
+    }
 
-                // Recycle old decoded bitmap if it is not the same object referenced by scaledBitmap.
-                if (decodedBitmap != scaledBitmap) {
-                    decodedBitmap.recycle();
-                }
-                decodedBitmap = null;
-
-                if (scaledBitmap != null) {
-                    int scaledBitmapWidth = scaledBitmap.getWidth();
-                    int scaledBitmapHeight = scaledBitmap.getHeight();
-
-                    if (scaledBitmapWidth >= IMAGE_SIZE && scaledBitmapHeight >= IMAGE_SIZE) {
-                        /*
-                         * Crop and rotate bitmap.
-                         */
-                        // Determine crop region.
-                        int cropStartX = (scaledBitmapWidth - IMAGE_SIZE) / 2;
-                        int cropStartY = (scaledBitmapHeight - IMAGE_SIZE) / 2;
-
-                        // Create matrix to rotate Bitmap.
-                        Matrix rotationMatrix = new Matrix();
-                        rotationMatrix.setRotate(rotation);
-
-                        // Create new rotated and cropped bitmap.
-                        Bitmap croppedBitmap = Bitmap.createBitmap(scaledBitmap, cropStartX, cropStartY, IMAGE_SIZE,
-                                IMAGE_SIZE, rotationMatrix, true);
-
-                        if (croppedBitmap != null) {
-                            if (filter != null) {
-                                returnBitmap = filter.applyFilter(croppedBitmap);
-
-                                // Recycle old cropped bitmap if it is not the same object referenced by returnBitmap.
-                                if (croppedBitmap != returnBitmap) {
-                                    croppedBitmap.recycle();
-                                }
-                                croppedBitmap = null;
-                            } else {
-                                returnBitmap = croppedBitmap;
-                            }
-                        }
-                    }
+    /**
+     * Creates a processed bitmap image of a given size from an NV21 camera preview frame, the same way
+     * {@link #createImage(byte[], int, float, boolean, ImageFilter, BitmapPool)} does from Jpeg data. The centered
+     * square region is converted to RGB without going through a Jpeg encode and decode.
+     *
+     * @param nv21Data   byte array of NV21 data.
+     * @param width      the width of the preview frame.
+     * @param height     the height of the preview frame.
+     * @param size       the width and height of the image. The preview frame is subsampled while converting to the
+     *                   largest factor that keeps it at least this large.
+     * @param rotation   clockwise rotation applied to image in degrees.
+     * @param reflection horizontal reflection applied to image.
+     * @param filter     an optional {@link ImageFilter} to apply. Pass null to disable.
+     * @param pool       an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @return the image; or null if unsuccessful.
+     */
+    public static Bitmap createImageFromPreview(byte[] nv21Data, int width, int height, int size, float rotation,
+                                                boolean reflection, ImageFilter filter, BitmapPool pool) {
+        Bitmap returnBitmap = null;
 
-                    // Recycle old scaled bitmap if it is not the same object referenced by returnBitmap.
-                    if (scaledBitmap != returnBitmap) {
-                        scaledBitmap.recycle();
-                    }
-                    scaledBitmap = null;
-                }
+        if (nv21Data != null) {
+            // Convert only the centered square region at the largest subsampling factor that keeps it large enough.
+            Bitmap decodedBitmap = decodeNv21CenteredSquare(nv21Data, width, height, size, pool);
+
+            if (decodedBitmap != null) {
+                returnBitmap = transformDecodedImage(decodedBitmap, size, rotation, reflection, filter, pool);
             }
         }
 
         return returnBitmap;
     }
 
+    /**
+     * Creates a scaled copy of a bitmap, using a pooled bitmap when possible.
+     *
+     * @param srcBitmap the source bitmap. Must not be null.
+     * @param dstWidth  the width of the scaled bitmap.
+     * @param dstHeight the height of the scaled bitmap.
+     * @param pool      an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @return the scaled bitmap; or null if unsuccessful.
+     */
+    public static Bitmap createScaledBitmap(Bitmap srcBitmap, int dstWidth, int dstHeight, BitmapPool pool) {
+        if (pool == null) {
+            return Bitmap.createScaledBitmap(srcBitmap, dstWidth, dstHeight, true);
+        }
+
+        Bitmap dstBitmap = pool.get(dstWidth, dstHeight, BITMAP_CONFIG);
+        if (dstBitmap != null) {
+            Canvas canvas = new Canvas(dstBitmap);
+            canvas.drawBitmap(srcBitmap, new Rect(0, 0, srcBitmap.getWidth(), srcBitmap.getHeight()),
+                    new Rect(0, 0, dstWidth, dstHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+        }
+
+        return dstBitmap;
+    }
+
+    /**
+     * Copies the pixels of a bitmap into a new {@link Raster}.
+     *
+     * @param bitmap the bitmap. Must not be null.
+     * @return the raster.
+     */
+    public static Raster toRaster(Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        return new Raster(pixels, width, height);
+    }
+
+    /**
+     * Creates a new bitmap from the pixels of a {@link Raster}.
+     *
+     * @param raster the raster. Must not be null.
+     * @return the bitmap; or null if unsuccessful.
+     */
+    public static Bitmap toBitmap(Raster raster) {
+        final int width = raster.getWidth();
+        return Bitmap.createBitmap(raster.getPixels(), 0, width, width, raster.getHeight(), BITMAP_CONFIG);
+    }
+
+    /**
+     * Applies a {@link RasterOp} to a bitmap. Operations that implement {@link NeighbourhoodOp} run in parallel bands
+     * when a {@link BandExecutor} is provided. If the source bitmap is mutable and the operation keeps the size, the
+     * result is written back into the source bitmap instead of a new one.
+     *
+     * @param srcBitmap the source bitmap. Must not be null.
+     * @param op        the operation.
+     * @param executor  an optional {@link BandExecutor} to run the operation in parallel. Pass null to disable.
+     * @return the resulting bitmap, which may be the source bitmap; or null if unsuccessful.
+     */
+    public static Bitmap applyRasterOp(Bitmap srcBitmap, RasterOp op, BandExecutor executor) {
+        Raster raster = toRaster(srcBitmap);
+        if (executor != null && op instanceof NeighbourhoodOp) {
+            raster = executor.apply((NeighbourhoodOp) op, raster);
+            LogsHelper.slog(ImageHelper.class, "applyRasterOp", op.getClass().getSimpleName() + " " + executor);
+        } else {
+            raster = op.apply(raster);
+        }
+
+        if (raster == null) {
+            return null;
+        }
+
+        final int width = raster.getWidth();
+        final int height = raster.getHeight();
+        if (srcBitmap.isMutable() && srcBitmap.getWidth() == width && srcBitmap.getHeight() == height) {
+            srcBitmap.setPixels(raster.getPixels(), 0, width, 0, 0, width, height);
+            return srcBitmap;
+        }
+
+        return toBitmap(raster);
+    }
+
     /**
      * Creates a photo strip consisting of an array of bitmaps. The bitmaps must be identical in size.
      *
@@ -403,6 +690,272 @@ public class ImageHelper {
         return returnBitmap;
     }
 
+    //
+    // Private methods.
+    //
+
+    /**
+     * Calculates the largest subsampling factor that is a power of 2 and keeps the short edge at or above the
+     * required size.
+     *
+     * @param shortEdge    the short edge of the source image.
+     * @param requiredSize the minimum size of the short edge after subsampling.
+     * @return the subsampling factor.
+     */
+    private static int calculateInSampleSize(int shortEdge, int requiredSize) {
+        int inSampleSize = 1;
+        while ((shortEdge / (inSampleSize * 2)) >= requiredSize) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Decodes the centered square region of Jpeg data. Subsampling is applied while decoding so the region is never
+     * decoded at a resolution much larger than required. Falls back to decoding the full image when the region
+     * decoder is not available for the Jpeg data.
+     *
+     * @param jpegData     byte array of Jpeg data.
+     * @param requiredSize the minimum width and height of the decoded region.
+     * @param pool         an optional {@link BitmapPool} to decode into. Pass null to disable.
+     * @return the decoded bitmap, where the centered square of the short edge is the region of interest; or null if
+     * unsuccessful.
+     */
+    private static Bitmap decodeCenteredSquare(byte[] jpegData, int requiredSize, BitmapPool pool) {
+        Bitmap decodedBitmap = null;
+
+        // Get the source bitmap size.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length, options);
+
+        final int srcWidth = options.outWidth;
+        final int srcHeight = options.outHeight;
+
+        if (srcWidth != DECODE_ERROR && srcHeight != DECODE_ERROR && srcWidth > 0 && srcHeight > 0) {
+            final int shortEdge = Math.min(srcWidth, srcHeight);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateInSampleSize(shortEdge, requiredSize);
+            options.inPreferredConfig = BITMAP_CONFIG;
+
+            // Decode only the centered square region.
+            int left = (srcWidth - shortEdge) / 2;
+            int top = (srcHeight - shortEdge) / 2;
+            Rect region = new Rect(left, top, left + shortEdge, top + shortEdge);
+
+            // Decode into a pooled bitmap of the subsampled region size if the region decoder supports it.
+            if (pool != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                int sampledEdge = shortEdge / options.inSampleSize;
+                options.inBitmap = pool.getDirty(sampledEdge, sampledEdge, BITMAP_CONFIG);
+                options.inMutable = true;
+            }
+
+            BitmapRegionDecoder regionDecoder = null;
+            try {
+                regionDecoder = BitmapRegionDecoder.newInstance(jpegData, 0, jpegData.length, false);
+                decodedBitmap = decodeRegion(regionDecoder, region, options, pool);
+            } catch (IOException e) {
+                // Do nothing.
+            } catch (IllegalArgumentException e) {
+                // Do nothing.
+            } finally {
+                if (regionDecoder != null) {
+                    regionDecoder.recycle();
+                    regionDecoder = null;
+                }
+            }
+
+            // Fall back to subsampled decoding of the full image.
+            if (decodedBitmap == null) {
+                if (options.inBitmap != null) {
+                    pool.put(options.inBitmap);
+                    options.inBitmap = null;
+                }
+                decodedBitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length, options);
+            }
+        }
+
+        return decodedBitmap;
+    }
+
+    /**
+     * Decodes a region with a region decoder. If the pooled bitmap in the options cannot be reused, it is returned to
+     * the pool and the region is decoded again into a new bitmap, with the same subsampling.
+     *
+     * @param regionDecoder the region decoder. Must not be null.
+     * @param region        the region to decode.
+     * @param options       the decoding options, with an optional pooled bitmap to decode into.
+     * @param pool          the {@link BitmapPool} the pooled bitmap is from; or null if there is none.
+     * @return the decoded bitmap; or null if unsuccessful.
+     */
+    private static Bitmap decodeRegion(BitmapRegionDecoder regionDecoder, Rect region, BitmapFactory.Options options,
+                                       BitmapPool pool) {
+        if (options.inBitmap != null) {
+            try {
+                return regionDecoder.decodeRegion(region, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap cannot be reused. Decode into a new bitmap instead.
+                pool.put(options.inBitmap);
+                options.inBitmap = null;
+            }
+        }
+
+        return regionDecoder.decodeRegion(region, options);
+    }
+
+    /**
+     * Draws the centered square of a source bitmap into a new square bitmap. Scaling, horizontal reflection, rotation
+     * and an optional color matrix are applied in the same draw.
+     *
+     * @param srcBitmap   the source bitmap. Must not be null.
+     * @param size        the width and height of the new bitmap.
+     * @param rotation    clockwise rotation applied to image in degrees.
+     * @param reflection  horizontal reflection applied to image.
+     * @param colorMatrix an optional 4x5 color matrix applied to image. Pass null to disable.
+     * @param pool        an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @return the new bitmap; or null if unsuccessful.
+     */
+    private static Bitmap drawTransformedSquare(Bitmap srcBitmap, int size, float rotation, boolean reflection,
+                                                float[] colorMatrix, BitmapPool pool) {
+        final int srcWidth = srcBitmap.getWidth();
+        final int srcHeight = srcBitmap.getHeight();
+
+        Bitmap returnBitmap;
+        if (pool != null) {
+            returnBitmap = pool.get(size, size, BITMAP_CONFIG);
+        } else {
+            returnBitmap = Bitmap.createBitmap(size, size, BITMAP_CONFIG);
+        }
+        if (returnBitmap != null) {
+            // Determine scale factor.
+            float scaleFactor = (float) size / Math.min(srcWidth, srcHeight);
+            float scaleFactorX = scaleFactor;
+            float scaleFactorY = scaleFactor;
+
+            if (reflection) {
+                scaleFactorX = -scaleFactorX;
+            }
+
+            // Map the center of the source to the center of the new bitmap, reflecting before rotating.
+            Matrix matrix = new Matrix();
+            matrix.setTranslate(-srcWidth / 2f, -srcHeight / 2f);
+            matrix.postScale(scaleFactorX, scaleFactorY);
+            matrix.postRotate(rotation);
+            matrix.postTranslate(size / 2f, size / 2f);
+
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            if (colorMatrix != null) {
+                paint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+            }
+
+            Canvas canvas = new Canvas(returnBitmap);
+            canvas.drawBitmap(srcBitmap, matrix, paint);
+        }
+
+        return returnBitmap;
+    }
+
+    /**
+     * Converts the centered square region of an NV21 preview frame to a bitmap, subsampled so the region is never
+     * converted at a resolution much larger than required.
+     *
+     * @param nv21Data     byte array of NV21 data.
+     * @param width        the width of the preview frame.
+     * @param height       the height of the preview frame.
+     * @param requiredSize the minimum width and height of the converted region.
+     * @param pool         an optional {@link BitmapPool} to convert into. Pass null to disable.
+     * @return the converted square bitmap; or null if unsuccessful.
+     */
+    private static Bitmap decodeNv21CenteredSquare(byte[] nv21Data, int width, int height, int requiredSize,
+                                                   BitmapPool pool) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        final int shortEdge = Math.min(width, height);
+        final int sampleSize = calculateInSampleSize(shortEdge, requiredSize);
+        final int sampledEdge = shortEdge / sampleSize;
+        Raster raster = new Raster(sampledEdge, sampledEdge);
+        try {
+            Nv21Decoder.decode(nv21Data, width, height, (width - shortEdge) / 2, (height - shortEdge) / 2,
+                    sampleSize, raster);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        // Every pixel is overwritten, so a pooled bitmap need not be cleared. Allocate one on a pool miss.
+        Bitmap decodedBitmap = null;
+        if (pool != null) {
+            decodedBitmap = pool.getDirty(sampledEdge, sampledEdge, BITMAP_CONFIG);
+        }
+        if (decodedBitmap == null) {
+            decodedBitmap = Bitmap.createBitmap(sampledEdge, sampledEdge, BITMAP_CONFIG);
+        }
+        decodedBitmap.setPixels(raster.getPixels(), 0, sampledEdge, 0, 0, sampledEdge, sampledEdge);
+
+        return decodedBitmap;
+    }
+
+    /**
+     * Transforms a decoded bitmap into a processed square image and releases the decoded bitmap. The scale,
+     * reflection, crop, rotation and any color matrix filter are applied in a single draw, and any other image filter
+     * after it.
+     *
+     * @param decodedBitmap the decoded bitmap, where the centered square of the short edge is the region of interest.
+     * @param size          the width and height of the image.
+     * @param rotation      clockwise rotation applied to image in degrees.
+     * @param reflection    horizontal reflection applied to image.
+     * @param filter        an optional {@link ImageFilter} to apply. Pass null to disable.
+     * @param pool          an optional {@link BitmapPool} to reuse bitmaps from. Pass null to disable.
+     * @return the image; or null if unsuccessful.
+     */
+    private static Bitmap transformDecodedImage(Bitmap decodedBitmap, int size, float rotation, boolean reflection,
+                                                ImageFilter filter, BitmapPool pool) {
+        Bitmap returnBitmap = null;
+
+        // Scale, reflect, crop, rotate and apply a color matrix filter in a single draw.
+        float[] colorMatrix = null;
+        if (filter instanceof ColorMatrixFilter) {
+            colorMatrix = ((ColorMatrixFilter) filter).getColorMatrix();
+        }
+        Bitmap croppedBitmap = drawTransformedSquare(decodedBitmap, size, rotation, reflection, colorMatrix, pool);
+
+        // Release decoded bitmap.
+        release(decodedBitmap, pool);
+        decodedBitmap = null;
+
+        if (croppedBitmap != null) {
+            if (filter != null && colorMatrix == null) {
+                returnBitmap = filter.applyFilter(croppedBitmap);
+
+                // Release old cropped bitmap if it is not the same object referenced by returnBitmap.
+                if (croppedBitmap != returnBitmap) {
+                    release(croppedBitmap, pool);
+                }
+                croppedBitmap = null;
+            } else {
+                returnBitmap = croppedBitmap;
+            }
+        }
+
+        return returnBitmap;
+    }
+
+    /**
+     * Returns a bitmap to the {@link BitmapPool}, or recycles it if there is no pool.
+     *
+     * @param bitmap the bitmap to release.
+     * @param pool   an optional {@link BitmapPool}.
+     */
+    private static void release(Bitmap bitmap, BitmapPool pool) {
+        if (pool != null) {
+            pool.put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
     //
     // Public interfaces.
     //
@@ -421,6 +974,21 @@ public class ImageHelper {
         public Bitmap applyFilter(Bitmap srcBitmap);
     }
 
+    /**
+     * An image filter that may reduce to a color matrix. Such a filter is applied while drawing the image, instead of
+     * in a separate pass over the drawn bitmap.
+     */
+    public interface ColorMatrixFilter extends ImageFilter {
+
+        /**
+         * Gets the color matrix equivalent to the filter.
+         *
+         * @return the 4x5 color matrix in row-major order, in the layout of {@link android.graphics.ColorMatrix}; or
+         * null if the filter does not reduce to a color matrix.
+         */
+        public float[] getColorMatrix();
+    }
+
     /**
      * An arrangement of bitmaps to create a photo strip. Only supports bitmaps of the same size.
      */
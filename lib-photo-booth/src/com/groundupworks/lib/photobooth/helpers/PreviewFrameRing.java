@@ -0,0 +1,287 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.os.SystemClock;
+
+import com.groundupworks.lib.photobooth.raster.codecs.Nv21Decoder;
+
+/**
+ * A small ring of NV21 preview frames for capturing without shutter lag. Preview buffers are allocated once and cycled
+ * through {@link Camera#setPreviewCallbackWithBuffer(Camera.PreviewCallback)}, so running the ring allocates nothing
+ * per frame. The most recent frames are held back from the camera, and on a capture trigger the held frame closest to
+ * the trigger is copied out. The ring must be used on the thread whose looper receives the preview callbacks.
+ *
+ * @author Benedict Lau
+ */
+public class PreviewFrameRing implements Camera.PreviewCallback {
+
+    /**
+     * The default number of preview buffers.
+     */
+    public static final int DEFAULT_NUM_BUFFERS = 4;
+
+    /**
+     * The number of buffers always left queued with the camera, so it never stalls waiting for a buffer.
+     */
+    private static final int MIN_QUEUED_BUFFERS = 2;
+
+    /**
+     * The number of preview buffers.
+     */
+    private final int mNumBuffers;
+
+    /**
+     * The preview buffers, reused across starts while the preview size does not change.
+     */
+    private byte[][] mBuffers = null;
+
+    /**
+     * The held frames in arrival order, starting at {@link #mHeldStart}.
+     */
+    private final byte[][] mHeldFrames;
+
+    /**
+     * The arrival time of each held frame, in milliseconds of {@link SystemClock#elapsedRealtime()}.
+     */
+    private final long[] mHeldTimestamps;
+
+    /**
+     * The index of the oldest held frame.
+     */
+    private int mHeldStart = 0;
+
+    /**
+     * The number of held frames.
+     */
+    private int mHeldCount = 0;
+
+    /**
+     * The camera the ring is running on; or null if stopped.
+     */
+    private Camera mCamera = null;
+
+    /**
+     * The width of the preview frames.
+     */
+    private int mWidth = 0;
+
+    /**
+     * The height of the preview frames.
+     */
+    private int mHeight = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param numBuffers the number of preview buffers. Must be greater than {@link #MIN_QUEUED_BUFFERS}.
+     */
+    public PreviewFrameRing(int numBuffers) {
+        if (numBuffers <= MIN_QUEUED_BUFFERS) {
+            throw new IllegalArgumentException("numBuffers must be greater than " + MIN_QUEUED_BUFFERS);
+        }
+
+        mNumBuffers = numBuffers;
+        mHeldFrames = new byte[numBuffers][];
+        mHeldTimestamps = new long[numBuffers];
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Starts buffering preview frames. Call once the preview size is set, typically when the preview has started.
+     * Frames are captured from the centered square of the preview, so a preview whose short edge is below the frame
+     * size would be upscaled. Buffering is refused in that case, and captures should fall back to the shutter.
+     *
+     * @param camera    the {@link Camera} with the preview.
+     * @param frameSize the width and height of the frames captured from the preview.
+     * @return true if buffering started; false if the preview format is not NV21, the preview is smaller than the
+     * frame size or the camera is not available.
+     */
+    public boolean start(Camera camera, int frameSize) {
+        stop();
+
+        int width;
+        int height;
+        try {
+            Camera.Parameters parameters = camera.getParameters();
+            if (parameters.getPreviewFormat() != ImageFormat.NV21) {
+                return false;
+            }
+            Camera.Size previewSize = parameters.getPreviewSize();
+            width = previewSize.width;
+            height = previewSize.height;
+        } catch (RuntimeException e) {
+            return false;
+        }
+
+        if (Math.min(width, height) < frameSize) {
+            LogsHelper.slog(PreviewFrameRing.class, "start", "preview too small, width=" + width + " height=" + height
+                    + " frameSize=" + frameSize);
+            return false;
+        }
+
+        // Reallocate buffers only if the preview size has changed.
+        final int byteCount = Nv21Decoder.getByteCount(width, height);
+        if (mBuffers == null || mBuffers[0].length != byteCount) {
+            mBuffers = null;
+            byte[][] buffers = new byte[mNumBuffers][];
+            for (int i = 0; i < mNumBuffers; i++) {
+                buffers[i] = new byte[byteCount];
+            }
+            mBuffers = buffers;
+        }
+
+        mCamera = camera;
+        mWidth = width;
+        mHeight = height;
+        try {
+            camera.setPreviewCallbackWithBuffer(this);
+            for (byte[] buffer : mBuffers) {
+                camera.addCallbackBuffer(buffer);
+            }
+        } catch (RuntimeException e) {
+            mCamera = null;
+            return false;
+        }
+
+        LogsHelper.slog(PreviewFrameRing.class, "start", "width=" + width + " height=" + height + " buffers="
+                + mNumBuffers);
+
+        return true;
+    }
+
+    /**
+     * Stops buffering preview frames. The buffers are kept for the next start.
+     */
+    public void stop() {
+        if (mCamera != null) {
+            try {
+                mCamera.setPreviewCallbackWithBuffer(null);
+            } catch (RuntimeException e) {
+                // Do nothing.
+            }
+            mCamera = null;
+        }
+
+        for (int i = 0; i < mNumBuffers; i++) {
+            mHeldFrames[i] = null;
+        }
+        mHeldStart = 0;
+        mHeldCount = 0;
+    }
+
+    /**
+     * Copies the held frame whose arrival time is closest to a trigger time.
+     *
+     * @param triggerTime the trigger time in milliseconds of {@link SystemClock#elapsedRealtime()}.
+     * @return a copy of the frame; or null if no frame is held.
+     */
+    public Frame copyClosest(long triggerTime) {
+        int closest = -1;
+        long closestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < mHeldCount; i++) {
+            int index = (mHeldStart + i) % mNumBuffers;
+            long distance = Math.abs(mHeldTimestamps[index] - triggerTime);
+            if (distance <= closestDistance) {
+                closest = index;
+                closestDistance = distance;
+            }
+        }
+
+        if (closest < 0) {
+            return null;
+        }
+
+        return new Frame(mHeldFrames[closest].clone(), mWidth, mHeight, mHeldTimestamps[closest]);
+    }
+
+    //
+    // Camera.PreviewCallback implementation.
+    //
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        // Drop frames arriving after stop, or in buffers from a previous preview size.
+        if (mCamera == null || camera != mCamera || data == null || data.length != mBuffers[0].length) {
+            return;
+        }
+
+        // Hold the new frame.
+        int index = (mHeldStart + mHeldCount) % mNumBuffers;
+        mHeldFrames[index] = data;
+        mHeldTimestamps[index] = SystemClock.elapsedRealtime();
+        mHeldCount++;
+
+        // Return the oldest held frames to the camera.
+        while (mHeldCount > mNumBuffers - MIN_QUEUED_BUFFERS) {
+            camera.addCallbackBuffer(mHeldFrames[mHeldStart]);
+            mHeldFrames[mHeldStart] = null;
+            mHeldStart = (mHeldStart + 1) % mNumBuffers;
+            mHeldCount--;
+        }
+    }
+
+    //
+    // Public inner classes.
+    //
+
+    /**
+     * A copied preview frame.
+     */
+    public static class Frame {
+
+        /**
+         * The NV21 data.
+         */
+        public final byte[] data;
+
+        /**
+         * The width of the frame.
+         */
+        public final int width;
+
+        /**
+         * The height of the frame.
+         */
+        public final int height;
+
+        /**
+         * The arrival time in milliseconds of {@link SystemClock#elapsedRealtime()}.
+         */
+        public final long timestamp;
+
+        /**
+         * Constructor.
+         *
+         * @param data      the NV21 data.
+         * @param width     the width of the frame.
+         * @param height    the height of the frame.
+         * @param timestamp the arrival time in milliseconds of {@link SystemClock#elapsedRealtime()}.
+         */
+        private Frame(byte[] data, int width, int height, long timestamp) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import android.os.Handler;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * A persistent outbox of pending shares in front of an {@link IShareSender}. Shares are kept in a {@link ShareQueue},
+ * which persists them, retries them with backoff and throttles them, and are drained on a {@link Handler} whenever the
+ * queue is due. This class is thread-safe.
+ *
+ * @author Benedict Lau
+ */
+public class ShareOutbox {
+
+    /**
+     * The queue of pending shares.
+     */
+    private final ShareQueue mQueue;
+
+    /**
+     * The handler to drain shares on.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Drains due shares and schedules the next drain.
+     */
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Constructor. Shares persisted by a previous instance are loaded and drained.
+     *
+     * @param file           the file to persist pending shares to.
+     * @param sender         the sender to drain shares to.
+     * @param handler        the handler to drain shares on.
+     * @param bytesPerSecond the max number of bytes to send per second; or 0 for no limit.
+     */
+    public ShareOutbox(File file, IShareSender sender, Handler handler, long bytesPerSecond) {
+        mQueue = new ShareQueue(file, sender, bytesPerSecond);
+        mHandler = handler;
+        mHandler.post(mDrainRunnable);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Drains the queue and schedules the next drain for when the queue is due again. Only called on the handler.
+     */
+    private void drain() {
+        mHandler.removeCallbacks(mDrainRunnable);
+
+        long delay = mQueue.drain(System.currentTimeMillis());
+        if (delay != ShareQueue.NO_PENDING_SHARES) {
+            mHandler.postDelayed(mDrainRunnable, delay);
+        }
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Enqueues a share and persists it before returning.
+     *
+     * @param filePath the path to the file to share.
+     * @param endpoint the name of the endpoint to share to, as understood by the {@link IShareSender}.
+     * @return true if the share is persisted; false otherwise, in which case it is not enqueued.
+     */
+    public boolean enqueue(String filePath, String endpoint) {
+        boolean isSuccessful = mQueue.enqueue(filePath, endpoint, System.currentTimeMillis());
+        if (isSuccessful) {
+            mHandler.post(mDrainRunnable);
+        }
+
+        return isSuccessful;
+    }
+
+    /**
+     * Sets the max number of bytes to send per second.
+     *
+     * @param bytesPerSecond the max number of bytes per second; or 0 for no limit.
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mQueue.setBytesPerSecond(bytesPerSecond, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the number of pending shares.
+     */
+    public int getQueueDepth() {
+        return mQueue.getQueueDepth();
+    }
+
+    /**
+     * Gets the number of pending shares per endpoint.
+     *
+     * @return the number of pending shares keyed by endpoint name.
+     */
+    public Map<String, Integer> getQueueDepths() {
+        return mQueue.getQueueDepths();
+    }
+
+    /**
+     * @return the age of the oldest pending share in milliseconds; or 0 if the outbox is empty.
+     */
+    public long getOldestAge() {
+        return mQueue.getOldestAge(System.currentTimeMillis());
+    }
+
+    /**
+     * @return the number of shares sent.
+     */
+    public long getSentCount() {
+        return mQueue.getSentCount();
+    }
+
+    /**
+     * @return the number of failed send attempts.
+     */
+    public long getFailureCount() {
+        return mQueue.getFailureCount();
+    }
+
+    /**
+     * @return the number of shares dropped after being rejected or failing too many times.
+     */
+    public long getDroppedCount() {
+        return mQueue.getDroppedCount();
+    }
+
+    @Override
+    public String toString() {
+        return "ShareOutbox[depth=" + getQueueDepth() + ", oldestAge=" + getOldestAge() + ", sent=" + getSentCount()
+                + ", failures=" + getFailureCount() + ", dropped=" + getDroppedCount() + ", bytesPerSecond="
+                + mQueue.getBytesPerSecond() + "]";
+    }
+}
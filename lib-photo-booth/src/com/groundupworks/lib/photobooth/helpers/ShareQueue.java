@@ -0,0 +1,526 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent queue of pending shares in front of an {@link IShareSender}. Shares are written to disk as soon as they
+ * are enqueued, and drained in batches per endpoint. Failed shares are retried with exponential backoff, and sends are
+ * throttled by a token bucket to a configurable number of bytes per second. The queue does not schedule itself:
+ * {@link #drain(long)} returns the delay until it needs to be drained again, and all times are passed in by the caller.
+ * This class is thread-safe, but must only be drained from one thread at a time.
+ *
+ * @author Benedict Lau
+ */
+public class ShareQueue {
+
+    /**
+     * Returned by {@link #drain(long)} when there are no pending shares.
+     */
+    public static final long NO_PENDING_SHARES = -1L;
+
+    /**
+     * The max number of shares sent to one endpoint before moving on to the next.
+     */
+    static final int MAX_BATCH_SIZE = 8;
+
+    /**
+     * The delay before the first retry of a failed share in milliseconds. The delay doubles with each attempt.
+     */
+    static final long RETRY_BASE_DELAY = 5000L;
+
+    /**
+     * The max delay between retries in milliseconds.
+     */
+    static final long RETRY_MAX_DELAY = 10L * 60L * 1000L;
+
+    /**
+     * The number of failed attempts after which a share is dropped.
+     */
+    static final int MAX_ATTEMPTS = 10;
+
+    /**
+     * The throttle lets sends burst up to this many seconds worth of bytes.
+     */
+    static final long THROTTLE_BURST_SECONDS = 2L;
+
+    /**
+     * The separator between the fields of a persisted share.
+     */
+    private static final String FIELD_SEPARATOR = "\t";
+
+    /**
+     * The suffix of the temp file the queue is written to before it is renamed.
+     */
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * The file the pending shares are persisted to.
+     */
+    private final File mFile;
+
+    /**
+     * The sender to drain shares to.
+     */
+    private final IShareSender mSender;
+
+    /**
+     * The pending shares, ordered from the oldest to the newest.
+     */
+    private final List<Share> mShares = new LinkedList<Share>();
+
+    /**
+     * True once the persisted shares have been loaded.
+     */
+    private boolean mIsLoaded = false;
+
+    /**
+     * The max number of bytes to send per second; or 0 for no limit.
+     */
+    private long mBytesPerSecond;
+
+    /**
+     * The number of bytes the throttle allows to be sent now. May be negative after sending a large file.
+     */
+    private long mThrottleBytes;
+
+    /**
+     * The time of the last throttle refill in milliseconds since epoch; or -1 if the throttle has not been refilled.
+     */
+    private long mThrottleRefillTime = -1L;
+
+    /**
+     * The number of shares sent.
+     */
+    private long mSentCount = 0L;
+
+    /**
+     * The number of failed send attempts.
+     */
+    private long mFailureCount = 0L;
+
+    /**
+     * The number of shares dropped after being rejected or failing too many times.
+     */
+    private long mDroppedCount = 0L;
+
+    /**
+     * Constructor. Shares persisted by a previous instance are loaded when the queue is first enqueued to or drained.
+     *
+     * @param file           the file to persist pending shares to.
+     * @param sender         the sender to drain shares to.
+     * @param bytesPerSecond the max number of bytes to send per second; or 0 for no limit.
+     */
+    public ShareQueue(File file, IShareSender sender, long bytesPerSecond) {
+        mFile = file;
+        mSender = sender;
+        mBytesPerSecond = bytesPerSecond;
+        mThrottleBytes = bytesPerSecond * THROTTLE_BURST_SECONDS;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Loads the persisted shares if not loaded yet. Malformed lines are skipped.
+     */
+    private synchronized void ensureLoaded() {
+        if (mIsLoaded) {
+            return;
+        }
+        mIsLoaded = true;
+
+        if (!mFile.exists()) {
+            return;
+        }
+
+        List<Share> loaded = new ArrayList<Share>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(FIELD_SEPARATOR, 5);
+                if (fields.length == 5) {
+                    try {
+                        loaded.add(new Share(fields[4], fields[0], Integer.parseInt(fields[1]),
+                                Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                    } catch (NumberFormatException e) {
+                        // Do nothing.
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LogsHelper.slog(ShareQueue.class, "ensureLoaded", "Failed to load " + mFile.getPath());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+        }
+
+        mShares.addAll(0, loaded);
+    }
+
+    /**
+     * Writes the pending shares to disk. The shares are written to a temp file first and then renamed, so the queue is
+     * never left half-written.
+     *
+     * @return true if successful; false otherwise.
+     */
+    private synchronized boolean persist() {
+        boolean isSuccessful = false;
+        File tempFile = new File(mFile.getPath() + TEMP_FILE_SUFFIX);
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+            for (Share share : mShares) {
+                writer.write(share.mEndpoint + FIELD_SEPARATOR + share.mAttempts + FIELD_SEPARATOR
+                        + share.mEnqueueTime + FIELD_SEPARATOR + share.mNextAttemptTime + FIELD_SEPARATOR
+                        + share.mFilePath + "\n");
+            }
+            writer.flush();
+            outputStream.getFD().sync();
+            writer.close();
+            outputStream = null;
+
+            isSuccessful = tempFile.renameTo(mFile);
+        } catch (IOException e) {
+            // Do nothing.
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+        }
+
+        if (!isSuccessful) {
+            LogsHelper.slog(ShareQueue.class, "persist", "Failed to persist " + mFile.getPath());
+        }
+
+        return isSuccessful;
+    }
+
+    /**
+     * Refills the throttle for the time elapsed since the last refill. Time going backwards refills nothing.
+     *
+     * @param now the current time in milliseconds since epoch.
+     */
+    private synchronized void refillThrottle(long now) {
+        if (mThrottleRefillTime >= 0L && now > mThrottleRefillTime) {
+            long maxBytes = mBytesPerSecond * THROTTLE_BURST_SECONDS;
+            mThrottleBytes = Math.min(maxBytes, mThrottleBytes + (now - mThrottleRefillTime) * mBytesPerSecond / 1000L);
+        }
+        mThrottleRefillTime = now;
+    }
+
+    /**
+     * Takes the next batch of due shares, all for the endpoint whose oldest due share is the oldest.
+     *
+     * @param now the current time in milliseconds since epoch.
+     * @return the batch; empty if no share is due.
+     */
+    private synchronized List<Share> takeBatch(long now) {
+        List<Share> batch = new ArrayList<Share>();
+        String endpoint = null;
+        for (Share share : mShares) {
+            if (share.mNextAttemptTime <= now && (endpoint == null || endpoint.equals(share.mEndpoint))) {
+                endpoint = share.mEndpoint;
+                batch.add(share);
+                if (batch.size() >= MAX_BATCH_SIZE) {
+                    break;
+                }
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Gets the time the next share is due.
+     *
+     * @return the time in milliseconds since epoch; or {@link Long#MAX_VALUE} if the queue is empty.
+     */
+    private synchronized long getNextAttemptTime() {
+        long nextAttemptTime = Long.MAX_VALUE;
+        for (Share share : mShares) {
+            nextAttemptTime = Math.min(nextAttemptTime, share.mNextAttemptTime);
+        }
+
+        return nextAttemptTime;
+    }
+
+    /**
+     * Records the result of sending a share. A sent share is removed. A rejected share, or one that has failed too
+     * many times, is dropped. Otherwise the share is retried after a delay that doubles with each failed attempt.
+     *
+     * @param share  the share.
+     * @param result the result of sending the share.
+     * @param now    the current time in milliseconds since epoch.
+     */
+    private synchronized void onSendResult(Share share, IShareSender.Result result, long now) {
+        if (IShareSender.Result.SENT.equals(result)) {
+            mShares.remove(share);
+            mSentCount++;
+        } else if (IShareSender.Result.REJECTED.equals(result) || share.mAttempts + 1 >= MAX_ATTEMPTS) {
+            mShares.remove(share);
+            mFailureCount++;
+            mDroppedCount++;
+            LogsHelper.slog(ShareQueue.class, "onSendResult", "Dropped share of " + share.mFilePath + " to "
+                    + share.mEndpoint + " after " + (share.mAttempts + 1) + " attempts");
+        } else {
+            share.mAttempts++;
+            share.mNextAttemptTime = now + getRetryDelay(share.mAttempts);
+            mFailureCount++;
+        }
+    }
+
+    //
+    // Package private methods.
+    //
+
+    /**
+     * Gets the delay before retrying a share.
+     *
+     * @param attempts the number of failed attempts. Must be positive.
+     * @return the delay in milliseconds.
+     */
+    static long getRetryDelay(int attempts) {
+        return Math.min(RETRY_MAX_DELAY, RETRY_BASE_DELAY << Math.min(attempts - 1, 20));
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Enqueues a share and persists it before returning.
+     *
+     * @param filePath the path to the file to share.
+     * @param endpoint the name of the endpoint to share to, as understood by the {@link IShareSender}.
+     * @param now      the current time in milliseconds since epoch.
+     * @return true if the share is persisted; false otherwise, in which case it is not enqueued.
+     */
+    public synchronized boolean enqueue(String filePath, String endpoint, long now) {
+        if (filePath == null || endpoint == null || filePath.contains("\n") || endpoint.contains(FIELD_SEPARATOR)) {
+            return false;
+        }
+
+        ensureLoaded();
+        Share share = new Share(filePath, endpoint, 0, now, now);
+        mShares.add(share);
+        boolean isSuccessful = persist();
+        if (!isSuccessful) {
+            mShares.remove(share);
+        }
+
+        return isSuccessful;
+    }
+
+    /**
+     * Sends due shares in batches per endpoint until none is due or the throttle runs out. The queue is persisted after
+     * each batch.
+     *
+     * @param now the current time in milliseconds since epoch.
+     * @return the delay in milliseconds until the queue should be drained again; or {@link #NO_PENDING_SHARES} if the
+     * queue is empty.
+     */
+    public long drain(long now) {
+        ensureLoaded();
+
+        long throttleDelay = 0L;
+        List<Share> batch = takeBatch(now);
+        while (!batch.isEmpty() && throttleDelay == 0L) {
+            for (Share share : batch) {
+                // Stop when the throttle has run out, until it refills.
+                long size = new File(share.mFilePath).length();
+                synchronized (this) {
+                    if (mBytesPerSecond > 0L) {
+                        refillThrottle(now);
+                        if (mThrottleBytes <= 0L) {
+                            throttleDelay = 1L + (-mThrottleBytes * 1000L) / mBytesPerSecond;
+                            break;
+                        }
+                        mThrottleBytes -= size;
+                    }
+                }
+
+                onSendResult(share, mSender.send(share.mFilePath, share.mEndpoint), now);
+            }
+
+            // Persist once per batch.
+            persist();
+            batch = takeBatch(now);
+        }
+
+        if (throttleDelay > 0L) {
+            return throttleDelay;
+        }
+
+        long nextAttemptTime = getNextAttemptTime();
+        return nextAttemptTime == Long.MAX_VALUE ? NO_PENDING_SHARES : Math.max(0L, nextAttemptTime - now);
+    }
+
+    /**
+     * Sets the max number of bytes to send per second.
+     *
+     * @param bytesPerSecond the max number of bytes per second; or 0 for no limit.
+     * @param now            the current time in milliseconds since epoch.
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond, long now) {
+        refillThrottle(now);
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return the number of pending shares.
+     */
+    public synchronized int getQueueDepth() {
+        return mShares.size();
+    }
+
+    /**
+     * Gets the number of pending shares per endpoint.
+     *
+     * @return the number of pending shares keyed by endpoint name.
+     */
+    public synchronized Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        for (Share share : mShares) {
+            Integer depth = depths.get(share.mEndpoint);
+            depths.put(share.mEndpoint, depth == null ? 1 : depth + 1);
+        }
+
+        return depths;
+    }
+
+    /**
+     * Gets the age of the oldest pending share.
+     *
+     * @param now the current time in milliseconds since epoch.
+     * @return the age in milliseconds; or 0 if the queue is empty.
+     */
+    public synchronized long getOldestAge(long now) {
+        long oldestAge = 0L;
+        for (Share share : mShares) {
+            oldestAge = Math.max(oldestAge, now - share.mEnqueueTime);
+        }
+
+        return oldestAge;
+    }
+
+    /**
+     * @return the number of shares sent.
+     */
+    public synchronized long getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return the number of failed send attempts.
+     */
+    public synchronized long getFailureCount() {
+        return mFailureCount;
+    }
+
+    /**
+     * @return the number of shares dropped after being rejected or failing too many times.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return the max number of bytes to send per second; or 0 for no limit.
+     */
+    public synchronized long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    //
+    // Private inner classes.
+    //
+
+    /**
+     * A pending share.
+     */
+    private static class Share {
+
+        /**
+         * The path to the file to share.
+         */
+        private final String mFilePath;
+
+        /**
+         * The name of the endpoint to share to.
+         */
+        private final String mEndpoint;
+
+        /**
+         * The number of failed attempts.
+         */
+        private int mAttempts;
+
+        /**
+         * The time the share was enqueued in milliseconds since epoch.
+         */
+        private final long mEnqueueTime;
+
+        /**
+         * The time of the next attempt in milliseconds since epoch.
+         */
+        private long mNextAttemptTime;
+
+        /**
+         * Constructor.
+         *
+         * @param filePath        the path to the file to share.
+         * @param endpoint        the name of the endpoint to share to.
+         * @param attempts        the number of failed attempts.
+         * @param enqueueTime     the time the share was enqueued in milliseconds since epoch.
+         * @param nextAttemptTime the time of the next attempt in milliseconds since epoch.
+         */
+        private Share(String filePath, String endpoint, int attempts, long enqueueTime, long nextAttemptTime) {
+            mFilePath = filePath;
+            mEndpoint = endpoint;
+            mAttempts = attempts;
+            mEnqueueTime = enqueueTime;
+            mNextAttemptTime = nextAttemptTime;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes bitmaps to Jpeg within a byte budget, at the highest quality that fits. The quality is found by bisection,
+ * encoding each probe into in-memory buffers that are reused across calls. The chosen quality is cached per key, such
+ * as a photo strip template and theme, so later images with the same key start the search at it and usually need only
+ * two probes. This class is thread-safe, but encodes one image at a time.
+ *
+ * @author Benedict Lau
+ */
+public class TargetSizeJpegEncoder {
+
+    /**
+     * The initial capacity of the reused buffers in bytes.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 512 * 1024;
+
+    /**
+     * The lowest quality the search goes down to.
+     */
+    private final int mMinQuality;
+
+    /**
+     * The buffer holding the best Jpeg that fits the budget so far.
+     */
+    private ByteArrayOutputStream mBestBuffer = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+
+    /**
+     * The buffer the current probe is encoded into.
+     */
+    private ByteArrayOutputStream mProbeBuffer = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+
+    /**
+     * The last chosen quality of each key.
+     */
+    private final Map<String, Integer> mQualityCache = new HashMap<String, Integer>();
+
+    /**
+     * The number of images encoded.
+     */
+    private long mEncodeCount = 0L;
+
+    /**
+     * The number of probe encodes across all images.
+     */
+    private long mProbeCount = 0L;
+
+    /**
+     * The number of images that did not fit the budget even at the min quality.
+     */
+    private long mOverBudgetCount = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param minQuality the lowest quality the search goes down to, between 0 and 100. Images that do not fit the
+     *                   budget at this quality are encoded at it anyway.
+     */
+    public TargetSizeJpegEncoder(int minQuality) {
+        mMinQuality = minQuality;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Encodes a probe into the probe buffer.
+     *
+     * @param bitmap  the bitmap to compress.
+     * @param quality the Jpeg quality.
+     * @return true if successful; false otherwise.
+     */
+    private boolean probe(Bitmap bitmap, int quality) {
+        mProbeCount++;
+        mProbeBuffer.reset();
+        return ImageHelper.writeJpeg(bitmap, mProbeBuffer, quality);
+    }
+
+    /**
+     * Keeps the probe buffer as the best Jpeg so far, swapping in the previous best buffer for reuse.
+     */
+    private void keepProbe() {
+        ByteArrayOutputStream best = mBestBuffer;
+        mBestBuffer = mProbeBuffer;
+        mProbeBuffer = best;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Compresses a bitmap to Jpeg at the highest quality that fits a byte budget, and writes the Jpeg data to an
+     * output stream.
+     *
+     * @param bitmap       the bitmap to compress.
+     * @param maxQuality   the highest quality to consider, between the min quality and 100.
+     * @param maxBytes     the byte budget; or 0 to compress at the max quality.
+     * @param cacheKey     the key to cache the chosen quality under; or null to search from the max quality.
+     * @param outputStream the outputstream to write the compressed data.
+     * @return the Jpeg quality of the compressed data; or -1 if unsuccessful.
+     */
+    public synchronized int encode(Bitmap bitmap, int maxQuality, int maxBytes, String cacheKey,
+                                   OutputStream outputStream) {
+        if (bitmap == null) {
+            return -1;
+        }
+        mEncodeCount++;
+
+        // Without a budget there is nothing to search.
+        int minQuality = Math.min(mMinQuality, maxQuality);
+        if (maxBytes <= 0) {
+            mProbeCount++;
+            return ImageHelper.writeJpeg(bitmap, outputStream, maxQuality) ? maxQuality : -1;
+        }
+
+        /*
+         * Bisect for the highest quality that fits, where fitLow is the highest quality known to fit and overHigh is
+         * the lowest quality known not to fit. Start from the cached quality and then probe its neighbour, so that a
+         * steady cached quality is confirmed in two probes.
+         */
+        int fitLow = minQuality - 1;
+        int overHigh = maxQuality + 1;
+        Integer cachedQuality = cacheKey == null ? null : mQualityCache.get(cacheKey);
+        int quality = cachedQuality == null ? maxQuality : Math.max(minQuality, Math.min(maxQuality, cachedQuality));
+        boolean isNeighbourProbed = cachedQuality == null;
+        while (overHigh - fitLow > 1) {
+            if (!probe(bitmap, quality)) {
+                return -1;
+            }
+
+            if (mProbeBuffer.size() <= maxBytes) {
+                fitLow = quality;
+                keepProbe();
+            } else {
+                overHigh = quality;
+            }
+
+            if (!isNeighbourProbed) {
+                isNeighbourProbed = true;
+                quality = quality == fitLow ? fitLow + 1 : overHigh - 1;
+            } else {
+                quality = (fitLow + overHigh + 1) / 2;
+            }
+        }
+
+        // Fall back to the min quality if nothing fits.
+        if (fitLow < minQuality) {
+            mOverBudgetCount++;
+            fitLow = minQuality;
+            if (!probe(bitmap, minQuality)) {
+                return -1;
+            }
+            keepProbe();
+        }
+
+        if (cacheKey != null) {
+            mQualityCache.put(cacheKey, fitLow);
+        }
+
+        try {
+            mBestBuffer.writeTo(outputStream);
+        } catch (IOException e) {
+            return -1;
+        }
+
+        return fitLow;
+    }
+
+    /**
+     * Clears the cached qualities.
+     */
+    public synchronized void clearCache() {
+        mQualityCache.clear();
+    }
+
+    /**
+     * @return the number of images encoded.
+     */
+    public synchronized long getEncodeCount() {
+        return mEncodeCount;
+    }
+
+    /**
+     * @return the number of probe encodes across all images.
+     */
+    public synchronized long getProbeCount() {
+        return mProbeCount;
+    }
+
+    /**
+     * @return the number of images that did not fit the budget even at the min quality.
+     */
+    public synchronized long getOverBudgetCount() {
+        return mOverBudgetCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TargetSizeJpegEncoder[encodes=" + mEncodeCount + ", probes=" + mProbeCount + ", overBudget="
+                + mOverBudgetCount + ", cachedKeys=" + mQualityCache.size() + "]";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import com.groundupworks.wings.Wings;
+import com.groundupworks.wings.WingsEndpoint;
+
+import java.io.File;
+
+/**
+ * An {@link IShareSender} that hands shares to {@link Wings}. Endpoints are named by the class name of their
+ * {@link WingsEndpoint}.
+ *
+ * @author Benedict Lau
+ */
+public class WingsShareSender implements IShareSender {
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Gets the endpoint name of a {@link WingsEndpoint} to enqueue shares with.
+     *
+     * @param endpointClazz the {@link WingsEndpoint} class.
+     * @return the endpoint name.
+     */
+    public static String getEndpointName(Class<? extends WingsEndpoint> endpointClazz) {
+        return endpointClazz.getName();
+    }
+
+    //
+    // IShareSender implementation.
+    //
+
+    @Override
+    public Result send(String filePath, String endpoint) {
+        Class<? extends WingsEndpoint> endpointClazz;
+        try {
+            endpointClazz = Class.forName(endpoint).asSubclass(WingsEndpoint.class);
+        } catch (ClassNotFoundException e) {
+            return Result.REJECTED;
+        } catch (ClassCastException e) {
+            return Result.REJECTED;
+        }
+
+        WingsEndpoint wingsEndpoint = Wings.getEndpoint(endpointClazz);
+        if (wingsEndpoint == null || !wingsEndpoint.isLinked() || !new File(filePath).exists()) {
+            return Result.REJECTED;
+        }
+
+        return Wings.share(filePath, endpointClazz) ? Result.SENT : Result.RETRY;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.lib.photobooth.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the persistence, retry, drop and throttle behaviour of {@link ShareQueue}.
+ *
+ * @author Benedict Lau
+ */
+public class ShareQueueTest {
+
+    /**
+     * The time the tests start at, in milliseconds since epoch.
+     */
+    private static final long START_TIME = 1000000L;
+
+    /**
+     * The directory holding the queue file and the files to share.
+     */
+    private File mDirectory;
+
+    /**
+     * The file the queue is persisted to.
+     */
+    private File mQueueFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("shareQueue", "");
+        assertTrue(mDirectory.delete() && mDirectory.mkdir());
+        mQueueFile = new File(mDirectory, "outbox");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void reloadsPendingSharesAfterRestart() {
+        ScriptedSender failingSender = new ScriptedSender(IShareSender.Result.RETRY);
+        ShareQueue queue = new ShareQueue(mQueueFile, failingSender, 0L);
+        assertTrue(queue.enqueue("/a.jpg", "facebook", START_TIME));
+        assertTrue(queue.enqueue("/b.jpg", "dropbox", START_TIME));
+        assertEquals(ShareQueue.RETRY_BASE_DELAY, queue.drain(START_TIME));
+
+        // A new queue on the same file picks up the shares with their attempts and retry times.
+        ScriptedSender sender = new ScriptedSender(IShareSender.Result.SENT);
+        ShareQueue restarted = new ShareQueue(mQueueFile, sender, 0L);
+        assertEquals(ShareQueue.RETRY_BASE_DELAY, restarted.drain(START_TIME));
+        assertEquals(2, restarted.getQueueDepth());
+        assertEquals(1, restarted.getQueueDepths().get("facebook").intValue());
+        assertEquals(1, restarted.getQueueDepths().get("dropbox").intValue());
+        assertEquals(0, sender.mSent.size());
+
+        long retryTime = START_TIME + ShareQueue.RETRY_BASE_DELAY;
+        assertEquals(ShareQueue.NO_PENDING_SHARES, restarted.drain(retryTime));
+        assertEquals(Arrays.asList("/a.jpg facebook", "/b.jpg dropbox"), sender.mSent);
+        assertEquals(0, restarted.getQueueDepth());
+
+        // The sent shares are gone from disk too.
+        ShareQueue restartedAgain = new ShareQueue(mQueueFile, sender, 0L);
+        assertEquals(ShareQueue.NO_PENDING_SHARES, restartedAgain.drain(retryTime));
+        assertEquals(2, sender.mSent.size());
+    }
+
+    @Test
+    public void backoffDoublesUpToMaxAndDropsAfterMaxAttempts() {
+        ScriptedSender sender = new ScriptedSender(IShareSender.Result.RETRY);
+        ShareQueue queue = new ShareQueue(mQueueFile, sender, 0L);
+        assertTrue(queue.enqueue("/a.jpg", "facebook", START_TIME));
+
+        long now = START_TIME;
+        long expectedDelay = ShareQueue.RETRY_BASE_DELAY;
+        for (int attempt = 1; attempt < ShareQueue.MAX_ATTEMPTS; attempt++) {
+            long delay = queue.drain(now);
+            assertEquals("attempt " + attempt, expectedDelay, delay);
+            assertEquals(attempt, sender.mSent.size());
+
+            // Nothing is sent before the share is due.
+            assertEquals(delay - 1L, queue.drain(now + 1L));
+            assertEquals(attempt, sender.mSent.size());
+
+            now += delay;
+            expectedDelay = Math.min(ShareQueue.RETRY_MAX_DELAY, expectedDelay * 2L);
+        }
+        assertEquals(ShareQueue.RETRY_MAX_DELAY, ShareQueue.getRetryDelay(ShareQueue.MAX_ATTEMPTS));
+
+        // The last attempt drops the share.
+        assertEquals(ShareQueue.NO_PENDING_SHARES, queue.drain(now));
+        assertEquals(ShareQueue.MAX_ATTEMPTS, sender.mSent.size());
+        assertEquals(0, queue.getQueueDepth());
+        assertEquals(ShareQueue.MAX_ATTEMPTS, queue.getFailureCount());
+        assertEquals(1L, queue.getDroppedCount());
+        assertEquals(0L, queue.getSentCount());
+    }
+
+    @Test
+    public void dropsRejectedSharesWithoutRetrying() {
+        ScriptedSender sender = new ScriptedSender(IShareSender.Result.SENT);
+        sender.mRejectedEndpoints.add("unknown");
+        ShareQueue queue = new ShareQueue(mQueueFile, sender, 0L);
+        assertTrue(queue.enqueue("/a.jpg", "unknown", START_TIME));
+        assertTrue(queue.enqueue("/b.jpg", "facebook", START_TIME));
+
+        assertEquals(ShareQueue.NO_PENDING_SHARES, queue.drain(START_TIME));
+        assertEquals(Arrays.asList("/a.jpg unknown", "/b.jpg facebook"), sender.mSent);
+        assertEquals(1L, queue.getDroppedCount());
+        assertEquals(1L, queue.getSentCount());
+        assertEquals(0, queue.getQueueDepth());
+
+        // The rejected share is not persisted either.
+        ShareQueue restarted = new ShareQueue(mQueueFile, sender, 0L);
+        assertEquals(ShareQueue.NO_PENDING_SHARES, restarted.drain(START_TIME + ShareQueue.RETRY_MAX_DELAY));
+        assertEquals(2, sender.mSent.size());
+    }
+
+    @Test
+    public void throttleDefersSendsUntilRefilled() throws IOException {
+        final long bytesPerSecond = 1000L;
+        final int fileSize = 1500;
+        ScriptedSender sender = new ScriptedSender(IShareSender.Result.SENT);
+        ShareQueue queue = new ShareQueue(mQueueFile, sender, bytesPerSecond);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.enqueue(createFile("strip" + i + ".jpg", fileSize), "facebook", START_TIME));
+        }
+
+        // The burst allows 2000 bytes, so two shares go out and leave the bucket 1000 bytes short.
+        long delay = queue.drain(START_TIME);
+        assertEquals(2, sender.mSent.size());
+        assertEquals(1L + (2L * fileSize - ShareQueue.THROTTLE_BURST_SECONDS * bytesPerSecond), delay);
+
+        // Draining early sends nothing.
+        assertEquals(delay - 500L, queue.drain(START_TIME + 500L));
+        assertEquals(2, sender.mSent.size());
+
+        assertEquals(ShareQueue.NO_PENDING_SHARES, queue.drain(START_TIME + delay));
+        assertEquals(3, sender.mSent.size());
+        assertEquals(3L, queue.getSentCount());
+    }
+
+    @Test
+    public void sendsInBatchesPerEndpoint() {
+        ScriptedSender sender = new ScriptedSender(IShareSender.Result.SENT);
+        ShareQueue queue = new ShareQueue(mQueueFile, sender, 0L);
+        assertTrue(queue.enqueue("/a.jpg", "facebook", START_TIME));
+        assertTrue(queue.enqueue("/b.jpg", "dropbox", START_TIME));
+        assertTrue(queue.enqueue("/c.jpg", "facebook", START_TIME));
+
+        assertEquals(ShareQueue.NO_PENDING_SHARES, queue.drain(START_TIME));
+        assertEquals(Arrays.asList("/a.jpg facebook", "/c.jpg facebook", "/b.jpg dropbox"), sender.mSent);
+    }
+
+    @Test
+    public void refusesSharesThatCannotBePersisted() {
+        ScriptedSender sender = new ScriptedSender(IShareSender.Result.SENT);
+        ShareQueue queue = new ShareQueue(mQueueFile, sender, 0L);
+        assertFalse(queue.enqueue("/a\n.jpg", "facebook", START_TIME));
+        assertFalse(queue.enqueue("/a.jpg", "face\tbook", START_TIME));
+        assertFalse(queue.enqueue(null, "facebook", START_TIME));
+
+        ShareQueue unwritable = new ShareQueue(new File(new File(mDirectory, "missing"), "outbox"), sender, 0L);
+        assertFalse(unwritable.enqueue("/a.jpg", "facebook", START_TIME));
+        assertEquals(0, unwritable.getQueueDepth());
+
+        assertEquals(ShareQueue.NO_PENDING_SHARES, queue.drain(START_TIME));
+        assertEquals(0, sender.mSent.size());
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Creates a file to share.
+     *
+     * @param filename the name of the file.
+     * @param size     the size of the file in bytes.
+     * @return the path to the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private String createFile(String filename, int size) throws IOException {
+        File file = new File(mDirectory, filename);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(new byte[size]);
+        } finally {
+            outputStream.close();
+        }
+
+        return file.getPath();
+    }
+
+    //
+    // Private inner classes.
+    //
+
+    /**
+     * A sender that records each send and returns a fixed result, except for rejected endpoints.
+     */
+    private static class ScriptedSender implements IShareSender {
+
+        /**
+         * The result of sends to endpoints that are not rejected.
+         */
+        private final Result mResult;
+
+        /**
+         * The endpoints that reject every share.
+         */
+        private final Set<String> mRejectedEndpoints = new HashSet<String>();
+
+        /**
+         * The file path and endpoint of each send, in order.
+         */
+        private final List<String> mSent = new ArrayList<String>();
+
+        /**
+         * Constructor.
+         *
+         * @param result the result of sends to endpoints that are not rejected.
+         */
+        private ScriptedSender(Result result) {
+            mResult = result;
+        }
+
+        @Override
+        public Result send(String filePath, String endpoint) {
+            mSent.add(filePath + " " + endpoint);
+            return mRejectedEndpoints.contains(endpoint) ? Result.REJECTED : mResult;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.partyphotobooth;
+
+import android.graphics.Bitmap;
+
+import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A disk cache of bitmaps stored as raw bitmap files, bounded by the total size of its files. The cache keeps an index
+ * of its entries in an append-only journal, and rebuilds the index from the journal on {@link #open()} rather than
+ * trusting the files in the directory, so files left behind by an interrupted write or a power loss are discarded. The
+ * least recently used entries are evicted first. This class is not thread-safe and must be used from a single thread.
+ *
+ * @author Benedict Lau
+ */
+public class DiskBitmapCache {
+
+    /**
+     * The name of the journal file.
+     */
+    private static final String JOURNAL_FILENAME = "journal";
+
+    /**
+     * The name of the temp file the journal is rebuilt into.
+     */
+    private static final String JOURNAL_TEMP_FILENAME = "journal.tmp";
+
+    /**
+     * The first line of the journal.
+     */
+    private static final String JOURNAL_MAGIC = "PersistedBitmapCache.journal";
+
+    /**
+     * The second line of the journal.
+     */
+    private static final String JOURNAL_VERSION = "1";
+
+    /**
+     * Journal operation for an entry that has been written completely, followed by its size in bytes.
+     */
+    private static final String OP_CLEAN = "CLEAN";
+
+    /**
+     * Journal operation for an entry that has been read.
+     */
+    private static final String OP_READ = "READ";
+
+    /**
+     * Journal operation for an entry that has been removed.
+     */
+    private static final String OP_REMOVE = "REMOVE";
+
+    /**
+     * The journal is rebuilt when it has this many more lines than entries.
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    /**
+     * The cache directory.
+     */
+    private final File mDirectory;
+
+    /**
+     * The max total size of the entries in bytes.
+     */
+    private final long mMaxSize;
+
+    /**
+     * The sizes of the entries in bytes, keyed by filename and ordered from the least to the most recently used.
+     */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(0, 0.75f, true);
+
+    /**
+     * The current total size of the entries in bytes.
+     */
+    private long mSize = 0L;
+
+    /**
+     * The number of journal lines that do not describe the current entries.
+     */
+    private int mRedundantOpCount = 0;
+
+    /**
+     * The writer appending to the journal; or null if the cache is not open.
+     */
+    private Writer mJournalWriter = null;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the cache directory. Files in it that are not in the journal are deleted.
+     * @param maxSize   the max total size of the entries in bytes.
+     */
+    public DiskBitmapCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Reads the journal into the index. An unreadable journal leaves the index empty, and a truncated last line is
+     * ignored.
+     */
+    private void readJournal() {
+        File journal = new File(mDirectory, JOURNAL_FILENAME);
+        if (!journal.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+            if (JOURNAL_MAGIC.equals(reader.readLine()) && JOURNAL_VERSION.equals(reader.readLine())) {
+                int lineCount = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    readJournalLine(line);
+                    lineCount++;
+                }
+                mRedundantOpCount = lineCount - mEntries.size();
+            }
+        } catch (IOException e) {
+            mEntries.clear();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a journal line to the index. Malformed lines are ignored.
+     *
+     * @param line the journal line.
+     */
+    private void readJournalLine(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length == 3 && OP_CLEAN.equals(parts[0])) {
+            try {
+                mEntries.put(parts[1], Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                // Do nothing.
+            }
+        } else if (parts.length == 2 && OP_READ.equals(parts[0])) {
+            mEntries.get(parts[1]);
+        } else if (parts.length == 2 && OP_REMOVE.equals(parts[0])) {
+            mEntries.remove(parts[1]);
+        }
+    }
+
+    /**
+     * Drops entries whose files are missing or have the wrong size, deletes files that are not entries, and sums the
+     * size of the remaining entries.
+     */
+    private void verifyEntries() {
+        mSize = 0L;
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (new File(mDirectory, entry.getKey()).length() == entry.getValue()) {
+                mSize += entry.getValue();
+            } else {
+                iterator.remove();
+            }
+        }
+
+        Set<String> keep = new HashSet<String>(mEntries.keySet());
+        keep.add(JOURNAL_FILENAME);
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!keep.contains(file.getName())) {
+                    deleteRecursively(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it.
+     *
+     * @param file the file or directory.
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Rewrites the journal with one line per entry, replacing the old journal atomically, and opens it for appending.
+     *
+     * @throws IOException if the journal could not be written.
+     */
+    private void rebuildJournal() throws IOException {
+        closeJournal();
+
+        File tempJournal = new File(mDirectory, JOURNAL_TEMP_FILENAME);
+        FileOutputStream outputStream = new FileOutputStream(tempJournal);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        try {
+            writer.write(JOURNAL_MAGIC + "\n" + JOURNAL_VERSION + "\n");
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(OP_CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+            writer.flush();
+            outputStream.getFD().sync();
+        } finally {
+            writer.close();
+        }
+
+        if (!tempJournal.renameTo(new File(mDirectory, JOURNAL_FILENAME))) {
+            throw new IOException("Failed to replace journal");
+        }
+        mRedundantOpCount = 0;
+        mJournalWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(mDirectory, JOURNAL_FILENAME), true), "UTF-8"));
+    }
+
+    /**
+     * Closes the journal writer if open.
+     */
+    private void closeJournal() {
+        if (mJournalWriter != null) {
+            try {
+                mJournalWriter.close();
+            } catch (IOException e) {
+                // Do nothing.
+            }
+            mJournalWriter = null;
+        }
+    }
+
+    /**
+     * Appends a line to the journal, and rebuilds the journal if it has grown too redundant.
+     *
+     * @param line the journal line, without the line break.
+     * @param isRedundant true if the line does not describe a current entry.
+     */
+    private void appendJournal(String line, boolean isRedundant) {
+        if (isRedundant) {
+            mRedundantOpCount++;
+        }
+
+        try {
+            if (mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOpCount >= mEntries.size()) {
+                rebuildJournal();
+            } else if (mJournalWriter != null) {
+                mJournalWriter.write(line + "\n");
+                mJournalWriter.flush();
+            }
+        } catch (IOException e) {
+            // The entries are still consistent on disk. Entries missing from the journal are discarded on next open.
+            closeJournal();
+        }
+    }
+
+    /**
+     * Removes an entry and deletes its file.
+     *
+     * @param filename the filename of the entry.
+     */
+    private void removeEntry(String filename) {
+        Long size = mEntries.remove(filename);
+        if (size != null) {
+            mSize -= size;
+            appendJournal(OP_REMOVE + " " + filename, true);
+        }
+        new File(mDirectory, filename).delete();
+    }
+
+    /**
+     * Evicts the least recently used entries until the total size is within the limit.
+     *
+     * @param maxSize the max total size in bytes.
+     */
+    private void trimToSize(long maxSize) {
+        while (mSize > maxSize && !mEntries.isEmpty()) {
+            removeEntry(mEntries.keySet().iterator().next());
+        }
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Opens the cache, rebuilding the index from the journal. Must be called before any other method.
+     *
+     * @return true if successful; false if the journal could not be written, in which case the cache stays usable but
+     * new entries will not survive a restart.
+     */
+    public boolean open() {
+        mDirectory.mkdirs();
+        mEntries.clear();
+        readJournal();
+        verifyEntries();
+        trimToSize(mMaxSize);
+
+        boolean isSuccessful = true;
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            isSuccessful = false;
+        }
+
+        return isSuccessful;
+    }
+
+    /**
+     * Writes a bitmap to the cache, evicting the least recently used entries if the cache grows too large.
+     *
+     * @param filename the filename of the entry. Must be a valid filename without spaces.
+     * @param bitmap   the bitmap.
+     * @return true if successful; false otherwise.
+     */
+    public boolean put(String filename, Bitmap bitmap) {
+        File file = new File(mDirectory, filename);
+        if (!ImageHelper.writeRaw(bitmap, file)) {
+            return false;
+        }
+
+        Long oldSize = mEntries.put(filename, file.length());
+        if (oldSize != null) {
+            mSize -= oldSize;
+        }
+        mSize += file.length();
+        appendJournal(OP_CLEAN + " " + filename + " " + file.length(), oldSize != null);
+        trimToSize(mMaxSize);
+
+        return mEntries.containsKey(filename);
+    }
+
+    /**
+     * Reads a bitmap from the cache. An entry that fails its checksum is removed.
+     *
+     * @param filename the filename of the entry.
+     * @return the bitmap; or null if the entry is not in the cache or is corrupt.
+     */
+    public Bitmap get(String filename) {
+        if (!mEntries.containsKey(filename)) {
+            return null;
+        }
+
+        Bitmap bitmap = ImageHelper.readRaw(new File(mDirectory, filename));
+        if (bitmap != null) {
+            mEntries.get(filename);
+            appendJournal(OP_READ + " " + filename, true);
+        } else {
+            removeEntry(filename);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Removes an entry from the cache.
+     *
+     * @param filename the filename of the entry.
+     * @return true if the entry was in the cache; false otherwise.
+     */
+    public boolean remove(String filename) {
+        boolean isRemoved = mEntries.containsKey(filename);
+        removeEntry(filename);
+        return isRemoved;
+    }
+
+    /**
+     * Checks whether an entry is in the cache, without reading it or marking it as used.
+     *
+     * @param filename the filename of the entry.
+     * @return true if the entry is in the cache; false otherwise.
+     */
+    public boolean contains(String filename) {
+        return mEntries.containsKey(filename);
+    }
+
+    /**
+     * @return the current total size of the entries in bytes.
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the max total size of the entries in bytes.
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int getCount() {
+        return mEntries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "DiskBitmapCache[size=" + mSize + ", maxSize=" + mMaxSize + ", count=" + mEntries.size() + "]";
+    }
+}
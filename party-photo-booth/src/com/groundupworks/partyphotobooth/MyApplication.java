@@ -19,6 +19,11 @@ package com.groundupworks.partyphotobooth;
 import android.os.Handler;
 
 import com.groundupworks.lib.photobooth.framework.BaseApplication;
+import com.groundupworks.lib.photobooth.framework.WorkerScheduler;
+import com.groundupworks.partyphotobooth.arrangements.BaseTitleHeader;
+import com.groundupworks.partyphotobooth.controllers.PhotoStripOutput;
+
+import java.util.Collections;
 
 /**
  * A concrete {@link BaseApplication} class.
@@ -32,10 +37,35 @@ public class MyApplication extends BaseApplication {
      */
     private static PersistedBitmapCache mCache;
 
+    /**
+     * Output stage of submitted photo strips with application scope.
+     */
+    private static PhotoStripOutput mPhotoStripOutput;
+
     @Override
     public void onCreate() {
         super.onCreate();
-        mCache = new PersistedBitmapCache(this, new Handler(getWorkerLooper()), new Handler(getMainLooper()));
+        mCache = new PersistedBitmapCache(this, getScheduler().newHandler(WorkerScheduler.Lane.IO),
+                new Handler(getMainLooper()));
+
+        // Keep the event logo in memory through trims, since photo strips read it synchronously.
+        mCache.pin(BaseTitleHeader.EVENT_LOGO_CACHE_KEY);
+
+        // Move the event logo out of the PNG file older versions kept in the cache directory.
+        mCache.asyncMigrateLegacy(Collections.singletonList(BaseTitleHeader.EVENT_LOGO_CACHE_KEY));
+        mPhotoStripOutput = new PhotoStripOutput(this, getBitmapPool());
+    }
+
+    @Override
+    public void onLowMemory() {
+        mCache.trimMemory(TRIM_MEMORY_COMPLETE);
+        super.onLowMemory();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        mCache.trimMemory(level);
+        super.onTrimMemory(level);
     }
 
     //
@@ -50,4 +80,13 @@ public class MyApplication extends BaseApplication {
     public static PersistedBitmapCache getBitmapCache() {
         return mCache;
     }
+
+    /**
+     * Gets the output stage of submitted photo strips with application scope.
+     *
+     * @return the photo strip output.
+     */
+    public static PhotoStripOutput getPhotoStripOutput() {
+        return mPhotoStripOutput;
+    }
 }
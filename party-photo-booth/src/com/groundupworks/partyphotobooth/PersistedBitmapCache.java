@@ -17,42 +17,82 @@
 package com.groundupworks.partyphotobooth;
 
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Handler;
 import android.os.Looper;
+import android.support.v4.util.LruCache;
 
-import com.groundupworks.lib.photobooth.helpers.ImageHelper;
 import com.groundupworks.lib.photobooth.helpers.StorageHelper;
 import com.groundupworks.partyphotobooth.helpers.TextHelper;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A bitmap in-memory cache backed with disk storage using the cache directory. Note that the disk cache
- * may be cleared when the device runs out of storage space.
+ * A bitmap in-memory cache backed with a journaled {@link DiskBitmapCache} in the cache directory. Both tiers are
+ * bounded in bytes and drop the least recently used bitmaps first. Bitmaps of pinned keys are held in memory outside
+ * the bounded tier, so they are never evicted by size or memory trims. Note that the disk cache may be cleared when the
+ * device runs out of storage space.
  *
  * @author Benedict Lau
  */
 public class PersistedBitmapCache {
 
     /**
-     * In-memory cache.
+     * The memory class of the device in bytes is divided by this to get the max size of the in-memory cache.
      */
-    private final Map<String, Bitmap> mMemCache;
+    private static final int MEM_CACHE_MEMORY_CLASS_DIVISOR = 8;
 
     /**
-     * The disk cache directory.
+     * The number of bytes in a megabyte.
      */
-    private final File mDiskCacheDir;
+    private static final int BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    /**
+     * The directory of the disk cache, relative to the application cache directory.
+     */
+    private static final String DISK_CACHE_DIRECTORY = "bitmaps";
+
+    /**
+     * The max total size of the disk cache in bytes.
+     */
+    private static final long DISK_CACHE_MAX_SIZE = 64L * BYTES_PER_MEGABYTE;
+
+    /**
+     * In-memory cache, sized by the bytes of its bitmaps.
+     */
+    private final LruCache<String, Bitmap> mMemCache;
+
+    /**
+     * In-memory bitmaps of pinned keys, which are never evicted.
+     */
+    private final Map<String, Bitmap> mPinnedBitmaps = new ConcurrentHashMap<String, Bitmap>();
+
+    /**
+     * The pinned keys.
+     */
+    private final Set<String> mPinnedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The directory older versions stored PNG entries in, directly under their hashed filenames.
+     */
+    private final File mLegacyDirectory;
+
+    /**
+     * Journaled disk cache. Only accessed from the worker thread.
+     */
+    private final DiskBitmapCache mDiskCache;
 
     /**
      * Handler for background tasks.
@@ -64,6 +104,16 @@ public class PersistedBitmapCache {
      */
     private final Handler mCallbackHandler;
 
+    /**
+     * Memoized disk cache filenames, keyed by cache key.
+     */
+    private final Map<String, String> mFilenames = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Callbacks waiting for an in-flight get, keyed by cache key. Guarded by itself.
+     */
+    private final Map<String, List<IAsyncGetCallbacks>> mPendingGets = new HashMap<String, List<IAsyncGetCallbacks>>();
+
     /**
      * Constructor.
      *
@@ -74,20 +124,106 @@ public class PersistedBitmapCache {
      *                        to. Pass null to post callbacks to the main thread.
      */
     public PersistedBitmapCache(Context context, Handler workerHandler, Handler callbackHandler) {
-        mMemCache = new ConcurrentHashMap<String, Bitmap>();
-        mDiskCacheDir = context.getCacheDir();
+        // Bound the in-memory cache by a fraction of the per-application memory class of the device.
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxMemSize = activityManager.getMemoryClass() * BYTES_PER_MEGABYTE / MEM_CACHE_MEMORY_CLASS_DIVISOR;
+        mMemCache = new LruCache<String, Bitmap>(maxMemSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return getBitmapSize(bitmap);
+            }
+        };
+
+        mLegacyDirectory = context.getCacheDir();
+        mDiskCache = new DiskBitmapCache(new File(mLegacyDirectory, DISK_CACHE_DIRECTORY), DISK_CACHE_MAX_SIZE);
         mWorkerHandler = workerHandler;
         if (callbackHandler != null) {
             mCallbackHandler = callbackHandler;
         } else {
             mCallbackHandler = new Handler(Looper.getMainLooper());
         }
+
+        // Rebuild the disk cache index from its journal before any other command runs.
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mDiskCache.open();
+            }
+        });
     }
 
     //
     // Private methods.
     //
 
+    /**
+     * Gets the size of a bitmap in bytes. Equivalent to {@link Bitmap#getByteCount()}, which needs API level 12.
+     *
+     * @param bitmap the bitmap.
+     * @return the size in bytes.
+     */
+    private static int getBitmapSize(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Gets the disk cache filename for a key. Filenames are hashed once per key and then memoized.
+     *
+     * @param key the key for the bitmap.
+     * @return the filename; or null if failed.
+     */
+    private String getFilename(String key) {
+        String filename = mFilenames.get(key);
+        if (filename == null) {
+            filename = StorageHelper.generateValidFilename(key);
+            if (filename != null) {
+                mFilenames.put(key, filename);
+            }
+        }
+
+        return filename;
+    }
+
+    /**
+     * Puts a bitmap in memory, in the pinned bitmaps if the key is pinned or in the bounded memory cache otherwise.
+     *
+     * @param key    the key for the bitmap.
+     * @param bitmap the bitmap.
+     */
+    private void memPut(String key, Bitmap bitmap) {
+        if (mPinnedKeys.contains(key)) {
+            mPinnedBitmaps.put(key, bitmap);
+        } else {
+            mMemCache.put(key, bitmap);
+        }
+    }
+
+    /**
+     * Gets a bitmap from memory, from the pinned bitmaps or the bounded memory cache.
+     *
+     * @param key the key for the bitmap.
+     * @return the bitmap; or null if not in memory.
+     */
+    private Bitmap memGet(String key) {
+        Bitmap bitmap = mPinnedBitmaps.get(key);
+        if (bitmap == null) {
+            bitmap = mMemCache.get(key);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Detaches the in-flight get of a key, if any, so that later gets load again instead of joining it. Called when
+     * a put or remove is issued, since the in-flight get may complete before the change is made.
+     *
+     * @param key the key for the bitmap.
+     */
+    private void detachPendingGet(String key) {
+        synchronized (mPendingGets) {
+            mPendingGets.remove(key);
+        }
+    }
+
     /**
      * Puts bitmap into the cache.
      *
@@ -99,27 +235,16 @@ public class PersistedBitmapCache {
         boolean isSuccessful = true;
 
         // Get unique filename based on key.
-        final String filename = StorageHelper.generateValidFilename(key);
+        final String filename = getFilename(key);
         if (TextHelper.isValid(filename)) {
-            final File file = new File(mDiskCacheDir, filename);
-
-            // Store PNG in disk cache.
-            try {
-                final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
-                isSuccessful = ImageHelper.writePng(bitmap, outputStream);
-                outputStream.flush();
-                outputStream.close();
-            } catch (FileNotFoundException e) {
-                isSuccessful = false;
-            } catch (IOException e) {
-                isSuccessful = false;
-            }
+            // Store raw pixels in disk cache.
+            isSuccessful = mDiskCache.put(filename, bitmap);
 
             if (isSuccessful) {
-                // Read PNG from disk cache and put bitmap in memory cache.
-                Bitmap storedBitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+                // Put a copy of the bitmap in memory cache, so the cache is not affected if the caller recycles it.
+                Bitmap storedBitmap = bitmap.copy(bitmap.getConfig(), false);
                 if (storedBitmap != null) {
-                    mMemCache.put(key, storedBitmap);
+                    memPut(key, storedBitmap);
                 } else {
                     isSuccessful = false;
                 }
@@ -137,18 +262,17 @@ public class PersistedBitmapCache {
      */
     private Bitmap get(String key) {
         // Try to get bitmap from memory cache.
-        Bitmap bitmap = mMemCache.get(key);
+        Bitmap bitmap = memGet(key);
 
-        // Try to get PNG from disk cache if bitmap not found in memory cache.
+        // Try to get raw pixels from disk cache if bitmap not found in memory cache.
         if (bitmap == null) {
             // Get unique filename based on key.
-            String filename = StorageHelper.generateValidFilename(key);
+            String filename = getFilename(key);
             if (TextHelper.isValid(filename)) {
-                final File file = new File(mDiskCacheDir, filename);
-                bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+                bitmap = mDiskCache.get(filename);
                 if (bitmap != null) {
                     // Put bitmap in memory cache.
-                    mMemCache.put(key, bitmap);
+                    memPut(key, bitmap);
                 }
             }
         }
@@ -166,19 +290,51 @@ public class PersistedBitmapCache {
         boolean isSuccessful = true;
 
         // Get unique filename based on key.
-        final String filename = StorageHelper.generateValidFilename(key);
+        final String filename = getFilename(key);
         if (TextHelper.isValid(filename)) {
-            // Remove PNG from disk cache.
-            final File file = new File(mDiskCacheDir, filename);
-            isSuccessful = file.delete();
+            // Remove raw pixels from disk cache.
+            isSuccessful = mDiskCache.remove(filename);
 
             // Remove bitmap from memory cache.
+            mPinnedBitmaps.remove(key);
             mMemCache.remove(key);
         }
 
         return isSuccessful;
     }
 
+    /**
+     * Moves the PNG entry of a key left by an older version into the disk cache, then deletes the PNG file. An entry
+     * already in the disk cache is newer than the PNG file, so the file is only deleted. A file that fails to decode
+     * is deleted, but one that decodes and fails to store is kept so the next launch tries again.
+     *
+     * @param key the key for the bitmap.
+     */
+    private void migrateLegacy(String key) {
+        final String filename = getFilename(key);
+        if (!TextHelper.isValid(filename)) {
+            return;
+        }
+
+        final File legacyFile = new File(mLegacyDirectory, filename);
+        if (!legacyFile.isFile()) {
+            return;
+        }
+
+        boolean isMigrated = true;
+        if (!mDiskCache.contains(filename)) {
+            Bitmap bitmap = BitmapFactory.decodeFile(legacyFile.getAbsolutePath());
+            if (bitmap != null) {
+                isMigrated = put(key, bitmap);
+                bitmap.recycle();
+            }
+        }
+
+        if (isMigrated) {
+            legacyFile.delete();
+        }
+    }
+
     //
     // Public methods.
     //
@@ -193,7 +349,113 @@ public class PersistedBitmapCache {
      * @return the bitmap; or null if failed.
      */
     public Bitmap tryGet(String key) {
-        return mMemCache.get(key);
+        return memGet(key);
+    }
+
+    /**
+     * Synchronously puts a bitmap into the cache on the calling thread, which must not be the ui thread. The memory
+     * cache holds its own copy of the bitmap, available from {@link #tryGet(String)} once this returns successfully,
+     * so the caller keeps ownership of the bitmap passed in.
+     *
+     * @param key    the key for the bitmap.
+     * @param bitmap the bitmap.
+     * @return true if successful; false otherwise.
+     */
+    public boolean syncPut(String key, Bitmap bitmap) {
+        detachPendingGet(key);
+        return put(key, bitmap);
+    }
+
+    /**
+     * Pins a key, so its bitmap is held in memory outside the bounded memory cache and never evicted by size or
+     * {@link #trimMemory(int)}. Use for small bitmaps that must stay available to {@link #tryGet(String)}, such as
+     * the event logo. Pinning does not load the bitmap.
+     *
+     * @param key the key for the bitmap.
+     */
+    public void pin(String key) {
+        mPinnedKeys.add(key);
+
+        // Move an already loaded bitmap out of the bounded memory cache.
+        Bitmap bitmap = mMemCache.remove(key);
+        if (bitmap != null) {
+            mPinnedBitmaps.put(key, bitmap);
+        }
+    }
+
+    /**
+     * Asynchronously moves the PNG entries that older versions stored in the root of the cache directory into the
+     * disk cache, and deletes the PNG files. Runs before any command issued after it, so gets of the keys see the
+     * migrated bitmaps. Once the PNG files are gone this only checks that they do not exist.
+     *
+     * @param keys the keys to migrate.
+     */
+    public void asyncMigrateLegacy(List<String> keys) {
+        final List<String> keysCopy = new ArrayList<String>(keys);
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (String key : keysCopy) {
+                    migrateLegacy(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Evicts bitmaps from the memory cache in response to a memory trim request from the system. Call from
+     * {@link ComponentCallbacks2#onTrimMemory(int)}, and with {@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE} on low
+     * memory. Pinned bitmaps and the disk cache are not affected.
+     *
+     * @param level the memory trim level.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mMemCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemCache.trimToSize(mMemCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * @return the current total size of bitmaps in the memory cache in bytes.
+     */
+    public int getMemSize() {
+        return mMemCache.size();
+    }
+
+    /**
+     * @return the max total size of bitmaps in the memory cache in bytes.
+     */
+    public int getMaxMemSize() {
+        return mMemCache.maxSize();
+    }
+
+    /**
+     * @return the number of memory cache lookups that found a bitmap.
+     */
+    public int getHitCount() {
+        return mMemCache.hitCount();
+    }
+
+    /**
+     * @return the number of memory cache lookups that did not find a bitmap.
+     */
+    public int getMissCount() {
+        return mMemCache.missCount();
+    }
+
+    /**
+     * @return the number of bitmaps evicted from the memory cache.
+     */
+    public int getEvictionCount() {
+        return mMemCache.evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "PersistedBitmapCache[memSize=" + getMemSize() + ", maxMemSize=" + getMaxMemSize() + ", hits="
+                + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
     }
 
     /**
@@ -204,6 +466,7 @@ public class PersistedBitmapCache {
      * @param callbacks the callbacks for this operation.
      */
     public void asyncPut(final String key, final Bitmap bitmap, final IAsyncPutCallbacks callbacks) {
+        detachPendingGet(key);
         mWorkerHandler.post(new Runnable() {
             @Override
             public void run() {
@@ -233,36 +496,85 @@ public class PersistedBitmapCache {
     }
 
     /**
-     * Asynchronously gets a bitmap from the cache using a background thread.
+     * Asynchronously gets a bitmap from the cache using a background thread. Gets for the same key issued while one is
+     * in flight share its result instead of loading again.
      *
      * @param key       the key for the bitmap.
      * @param callbacks the callbacks for this operation.
      */
     public void asyncGet(final String key, final IAsyncGetCallbacks callbacks) {
+        final List<IAsyncGetCallbacks> flight;
+        synchronized (mPendingGets) {
+            List<IAsyncGetCallbacks> pending = mPendingGets.get(key);
+            if (pending != null) {
+                // Join the in-flight get.
+                pending.add(callbacks);
+                return;
+            }
+
+            flight = new ArrayList<IAsyncGetCallbacks>();
+            flight.add(callbacks);
+            mPendingGets.put(key, flight);
+        }
+
         mWorkerHandler.post(new Runnable() {
             @Override
             public void run() {
-                final Runnable runnable;
                 final Bitmap bitmap = get(key);
 
-                if (bitmap != null) {
-                    runnable = new Runnable() {
-                        @Override
-                        public void run() {
-                            callbacks.onSuccess(key, bitmap);
+                // Stop accepting callbacks before delivering to them.
+                synchronized (mPendingGets) {
+                    if (mPendingGets.get(key) == flight) {
+                        mPendingGets.remove(key);
+                    }
+                }
+
+                // Post callbacks to callback handler thread.
+                mCallbackHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (IAsyncGetCallbacks flightCallbacks : flight) {
+                            if (bitmap != null) {
+                                flightCallbacks.onSuccess(key, bitmap);
+                            } else {
+                                flightCallbacks.onFailure(key);
+                            }
                         }
-                    };
-                } else {
-                    runnable = new Runnable() {
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Asynchronously gets several bitmaps from the cache in a single background task, and delivers them in a single
+     * callback. Useful to warm up the memory cache.
+     *
+     * @param keys      the keys for the bitmaps.
+     * @param callbacks the callbacks for this operation. Pass null to only load the bitmaps into the memory cache.
+     */
+    public void asyncGetAll(List<String> keys, final IAsyncGetAllCallbacks callbacks) {
+        final List<String> keysCopy = new ArrayList<String>(keys);
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, Bitmap> bitmaps = new LinkedHashMap<String, Bitmap>();
+                for (String key : keysCopy) {
+                    Bitmap bitmap = get(key);
+                    if (bitmap != null) {
+                        bitmaps.put(key, bitmap);
+                    }
+                }
+
+                // Post callback to callback handler thread.
+                if (callbacks != null) {
+                    mCallbackHandler.post(new Runnable() {
                         @Override
                         public void run() {
-                            callbacks.onFailure(key);
+                            callbacks.onComplete(bitmaps);
                         }
-                    };
+                    });
                 }
-
-                // Post callback to callback handler thread.
-                mCallbackHandler.post(runnable);
             }
         });
     }
@@ -274,6 +586,7 @@ public class PersistedBitmapCache {
      * @param callbacks the callbacks for this operation.
      */
     public void asyncRemove(final String key, final IAsyncRemoveCallbacks callbacks) {
+        detachPendingGet(key);
         mWorkerHandler.post(new Runnable() {
             @Override
             public void run() {
@@ -350,6 +663,20 @@ public class PersistedBitmapCache {
         public void onFailure(String key);
     }
 
+    /**
+     * Callbacks for the {@link #asyncGetAll(List, PersistedBitmapCache.IAsyncGetAllCallbacks)} command.
+     */
+    public interface IAsyncGetAllCallbacks {
+
+        /**
+         * The operation completed.
+         *
+         * @param bitmaps the bitmaps that were found, keyed by their keys in request order. Keys that failed are
+         *                absent.
+         */
+        public void onComplete(Map<String, Bitmap> bitmaps);
+    }
+
     /**
      * Callbacks for the {@link #asyncRemove(String, PersistedBitmapCache.IAsyncRemoveCallbacks)} command.
      * Only one of {@link #onSuccess(String)} and {@link #onFailure(String)} will be called.
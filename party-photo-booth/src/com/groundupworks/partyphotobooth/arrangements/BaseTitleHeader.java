@@ -21,6 +21,7 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 
 import com.groundupworks.lib.photobooth.arrangements.BaseArrangement;
@@ -50,17 +51,17 @@ public class BaseTitleHeader implements IPhotoStripHeader {
     public static final String EVENT_LOGO_CACHE_KEY = "eventLogo";
 
     /**
-     * The top and bottom padding of the header.
+     * The top and bottom padding of the header, at a scale of 1.
      */
     private static final int HEADER_PADDING = BaseArrangement.PHOTO_STRIP_PANEL_PADDING;
 
     /**
-     * The height of each line.
+     * The height of each line, at a scale of 1.
      */
     private static final int TEXT_LINE_HEIGHT = 100;
 
     /**
-     * The radius of the text shadow.
+     * The radius of the text shadow, at a scale of 1.
      */
     private static final float TEXT_SHADOW_RADIUS = 3f;
 
@@ -70,7 +71,7 @@ public class BaseTitleHeader implements IPhotoStripHeader {
     private static final float TEXT_SHADOW_DX = 0f;
 
     /**
-     * The dy of the text shadow.
+     * The dy of the text shadow, at a scale of 1.
      */
     private static final float TEXT_SHADOW_DY = 3f;
 
@@ -99,6 +100,11 @@ public class BaseTitleHeader implements IPhotoStripHeader {
      */
     private Typeface mFont = null;
 
+    /**
+     * The scale of the header content.
+     */
+    private float mScale = 1f;
+
     /**
      * Constructor.
      *
@@ -107,13 +113,46 @@ public class BaseTitleHeader implements IPhotoStripHeader {
      * @param date    the date of the event; or null to hide.
      * @param logo    the event logo; or null to hide.
      * @param font    the font.
+     * @param scale   the scale of the header content, matching the scale of the photo strip frames relative to
+     *                {@link ImageHelper#IMAGE_SIZE}.
      */
-    public BaseTitleHeader(String lineOne, String lineTwo, String date, Bitmap logo, Typeface font) {
+    public BaseTitleHeader(String lineOne, String lineTwo, String date, Bitmap logo, Typeface font, float scale) {
         mLineOne = lineOne;
         mLineTwo = lineTwo;
         mDate = date;
         mLogo = logo;
         mFont = font;
+        mScale = scale;
+    }
+
+    @Override
+    public int getHeaderHeight(int width) {
+        int height = 0;
+
+        boolean hasLineOne = TextHelper.isValid(mLineOne);
+        boolean hasLineTwo = TextHelper.isValid(mLineTwo);
+        boolean hasDate = TextHelper.isValid(mDate);
+        boolean hasLogo = mLogo != null;
+
+        if (hasLineOne || hasLineTwo || hasDate || hasLogo) {
+            final int padding = Math.round(HEADER_PADDING * mScale);
+            final int lineHeight = Math.round(TEXT_LINE_HEIGHT * mScale);
+            height = padding * 2;
+            if (hasLineOne) {
+                height += lineHeight;
+            }
+            if (hasLineTwo) {
+                height += lineHeight;
+            }
+            if (hasDate) {
+                height += lineHeight;
+            }
+            if (hasLogo) {
+                height += padding + Math.round(mLogo.getHeight() * mScale);
+            }
+        }
+
+        return height;
     }
 
     @Override
@@ -126,31 +165,36 @@ public class BaseTitleHeader implements IPhotoStripHeader {
         boolean hasLogo = mLogo != null;
 
         if (hasLineOne || hasLineTwo || hasDate || hasLogo) {
+            // Scale the header dimensions.
+            final int padding = Math.round(HEADER_PADDING * mScale);
+            final int lineHeight = Math.round(TEXT_LINE_HEIGHT * mScale);
+            int logoWidth = 0;
+            int logoHeight = 0;
+            if (hasLogo) {
+                logoWidth = Math.round(mLogo.getWidth() * mScale);
+                logoHeight = Math.round(mLogo.getHeight() * mScale);
+            }
+
             // Configure paint for drawing text.
             Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
             paint.setTypeface(mFont);
-            paint.setShadowLayer(TEXT_SHADOW_RADIUS, TEXT_SHADOW_DX, TEXT_SHADOW_DY, Color.GRAY);
+            paint.setShadowLayer(TEXT_SHADOW_RADIUS * mScale, TEXT_SHADOW_DX * mScale, TEXT_SHADOW_DY * mScale,
+                    Color.GRAY);
             paint.setTextAlign(Align.CENTER);
 
             // Calculate height and text sizes.
-            int height = HEADER_PADDING * 2;
+            int height = getHeaderHeight(width);
             float lineOneTextSize = 0f;
             float lineTwoTextSize = 0f;
             float dateTextSize = 0f;
             if (hasLineOne) {
-                height += TEXT_LINE_HEIGHT;
-                lineOneTextSize = TextHelper.getFittedTextSize(mLineOne, width, TEXT_LINE_HEIGHT, paint);
+                lineOneTextSize = TextHelper.getFittedTextSize(mLineOne, width, lineHeight, paint);
             }
             if (hasLineTwo) {
-                height += TEXT_LINE_HEIGHT;
-                lineTwoTextSize = TextHelper.getFittedTextSize(mLineTwo, width, TEXT_LINE_HEIGHT, paint);
+                lineTwoTextSize = TextHelper.getFittedTextSize(mLineTwo, width, lineHeight, paint);
             }
             if (hasDate) {
-                height += TEXT_LINE_HEIGHT;
-                dateTextSize = TextHelper.getFittedTextSize(mDate, width, TEXT_LINE_HEIGHT, paint);
-            }
-            if (hasLogo) {
-                height += HEADER_PADDING + mLogo.getHeight();
+                dateTextSize = TextHelper.getFittedTextSize(mDate, width, lineHeight, paint);
             }
 
             // Calculate optimal size by using the smallest non-zero text size.
@@ -169,7 +213,7 @@ public class BaseTitleHeader implements IPhotoStripHeader {
             bitmap = Bitmap.createBitmap(width, height, ImageHelper.BITMAP_CONFIG);
             if (bitmap != null) {
                 Canvas canvas = new Canvas(bitmap);
-                int yOffset = HEADER_PADDING;
+                int yOffset = padding;
 
                 // Proceed only if the optimal text size is valid.
                 if (optimalTextSize < Float.MAX_VALUE) {
@@ -177,31 +221,33 @@ public class BaseTitleHeader implements IPhotoStripHeader {
 
                     // Draw line one in black.
                     if (hasLineOne) {
-                        yOffset += TEXT_LINE_HEIGHT;
+                        yOffset += lineHeight;
                         paint.setColor(Color.BLACK);
                         canvas.drawText(mLineOne, width / 2, yOffset, paint);
                     }
 
                     // Draw line two in black.
                     if (hasLineTwo) {
-                        yOffset += TEXT_LINE_HEIGHT;
+                        yOffset += lineHeight;
                         paint.setColor(Color.BLACK);
                         canvas.drawText(mLineTwo, width / 2, yOffset, paint);
                     }
 
                     // Draw date in grey with no shadow.
                     if (hasDate) {
-                        yOffset += TEXT_LINE_HEIGHT;
+                        yOffset += lineHeight;
                         paint.setShadowLayer(0f, 0f, 0f, Color.WHITE);
                         paint.setColor(Color.GRAY);
                         canvas.drawText(mDate, width / 2, yOffset, paint);
                     }
                 }
 
-                // Draw event logo.
+                // Draw event logo, filtered if scaled.
                 if (hasLogo) {
-                    yOffset += HEADER_PADDING;
-                    canvas.drawBitmap(mLogo, (width - mLogo.getWidth()) / 2, yOffset, null);
+                    yOffset += padding;
+                    int left = (width - logoWidth) / 2;
+                    Rect dst = new Rect(left, yOffset, left + logoWidth, yOffset + logoHeight);
+                    canvas.drawBitmap(mLogo, null, dst, new Paint(Paint.FILTER_BITMAP_FLAG));
                 }
             }
         }
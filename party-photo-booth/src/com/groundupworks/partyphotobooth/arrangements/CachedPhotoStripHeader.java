@@ -0,0 +1,142 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.partyphotobooth.arrangements;
+
+import android.graphics.Bitmap;
+
+import com.groundupworks.partyphotobooth.PersistedBitmapCache;
+
+import java.util.Collections;
+
+/**
+ * An {@link IPhotoStripHeader} that keeps the bitmaps of another header in a {@link PersistedBitmapCache}, so that
+ * each header is only drawn once per event configuration and width. The header bitmaps may be shared with the cache,
+ * so they must be released with {@link #releaseHeaderBitmap(Bitmap, int)} instead of being recycled.
+ *
+ * @author Benedict Lau
+ */
+public class CachedPhotoStripHeader implements IPhotoStripHeader {
+
+    /**
+     * The separator between the parts of a cache key.
+     */
+    private static final String CACHE_KEY_SEPARATOR = "_";
+
+    /**
+     * The max fraction of the memory cache that a header bitmap may take up. Larger headers would push each other out
+     * of the memory cache and be persisted again with every photo strip, so they are drawn every time instead.
+     */
+    private static final int MAX_MEM_CACHE_FRACTION_DIVISOR = 2;
+
+    /**
+     * The header to draw on a cache miss.
+     */
+    private final IPhotoStripHeader mHeader;
+
+    /**
+     * The bitmap cache.
+     */
+    private final PersistedBitmapCache mCache;
+
+    /**
+     * The prefix of the cache keys, unique to the header content.
+     */
+    private final String mKeyPrefix;
+
+    /**
+     * Constructor.
+     *
+     * @param header   the header to draw on a cache miss.
+     * @param scale    the scale of the header content.
+     * @param cache    the bitmap cache.
+     * @param eventKey a key that changes whenever the content of the header changes, such as a hash of the event
+     *                 configuration.
+     */
+    public CachedPhotoStripHeader(IPhotoStripHeader header, float scale, PersistedBitmapCache cache, String eventKey) {
+        mHeader = header;
+        mCache = cache;
+        mKeyPrefix = eventKey + CACHE_KEY_SEPARATOR + header.getClass().getSimpleName() + CACHE_KEY_SEPARATOR
+                + scale;
+    }
+
+    @Override
+    public int getHeaderHeight(int width) {
+        return mHeader.getHeaderHeight(width);
+    }
+
+    @Override
+    public Bitmap getHeaderBitmap(int width) {
+        final String key = getCacheKey(width);
+        Bitmap bitmap = mCache.tryGet(key);
+        if (bitmap == null) {
+            // Draw the header and persist it for later photo strips, then hand out the copy stored by the cache.
+            bitmap = mHeader.getHeaderBitmap(width);
+            if (bitmap != null && bitmap.getRowBytes() * bitmap.getHeight() <= mCache.getMaxMemSize()
+                    / MAX_MEM_CACHE_FRACTION_DIVISOR && mCache.syncPut(key, bitmap)) {
+                Bitmap storedBitmap = mCache.tryGet(key);
+                if (storedBitmap != null) {
+                    bitmap.recycle();
+                    bitmap = storedBitmap;
+                }
+            }
+        }
+
+        return bitmap;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Releases a header bitmap from {@link #getHeaderBitmap(int)} once it has been drawn. The bitmap is recycled unless
+     * it is the one held by the cache. Headers too large to cache, or that the cache failed to store, are drawn for the
+     * caller alone and are recycled here.
+     *
+     * @param bitmap the header bitmap.
+     * @param width  the width of the header bitmap.
+     */
+    public void releaseHeaderBitmap(Bitmap bitmap, int width) {
+        if (bitmap != mCache.tryGet(getCacheKey(width))) {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Loads the header bitmap of a width from the disk cache into the memory cache in the background, if persisted by
+     * an earlier run, so that {@link #getHeaderBitmap(int)} does not need to draw it again.
+     *
+     * @param width the width of the header bitmap.
+     */
+    public void prefetch(int width) {
+        mCache.asyncGetAll(Collections.singletonList(getCacheKey(width)), null);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Gets the cache key of the header bitmap of a width.
+     *
+     * @param width the width of the header bitmap.
+     * @return the cache key.
+     */
+    private String getCacheKey(int width) {
+        return mKeyPrefix + CACHE_KEY_SEPARATOR + width;
+    }
+}
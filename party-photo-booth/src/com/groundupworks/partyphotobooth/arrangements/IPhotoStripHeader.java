@@ -25,6 +25,14 @@ import android.graphics.Bitmap;
  */
 public interface IPhotoStripHeader {
 
+    /**
+     * Gets the height of the header bitmap, without drawing it.
+     *
+     * @param width the width of the header bitmap.
+     * @return the height of the header bitmap; or 0 if there is nothing to draw.
+     */
+    int getHeaderHeight(int width);
+
     /**
      * Gets the header bitmap to be drawn.
      *
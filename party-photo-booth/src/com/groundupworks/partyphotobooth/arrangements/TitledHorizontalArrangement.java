@@ -22,6 +22,7 @@ import android.graphics.Typeface;
 import com.groundupworks.lib.photobooth.arrangements.BaseArrangement;
 import com.groundupworks.lib.photobooth.arrangements.HorizontalArrangement;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.partyphotobooth.PersistedBitmapCache;
 import com.groundupworks.partyphotobooth.helpers.TextHelper;
 
 /**
@@ -32,8 +33,8 @@ import com.groundupworks.partyphotobooth.helpers.TextHelper;
 public class TitledHorizontalArrangement extends HorizontalArrangement {
 
     /**
-     * The threshold width to switch from using the {@link BaseTitleHeader} to using the {@link WideTitleHeader}. Use
-     * {@link WideTitleHeader} if there is more than one frame in the horizontal dimension.
+     * The threshold width to switch from using the {@link BaseTitleHeader} to using the {@link WideTitleHeader}, at a
+     * scale of 1. Use {@link WideTitleHeader} if there is more than one frame in the horizontal dimension.
      */
     private static final int WIDE_TITLE_THRESHOLD = ImageHelper.IMAGE_SIZE + BaseArrangement.PHOTO_STRIP_PANEL_PADDING
             * 2;
@@ -63,32 +64,79 @@ public class TitledHorizontalArrangement extends HorizontalArrangement {
      */
     private Typeface mFont = null;
 
+    /**
+     * The cache of header bitmaps.
+     */
+    private PersistedBitmapCache mCache = null;
+
+    /**
+     * The key of the event configuration, under which header bitmaps are cached.
+     */
+    private String mEventKey = null;
+
     /**
      * Constructor.
      *
-     * @param lineOne the first line of the event title; or null to hide.
-     * @param lineTwo the second line of the event title; or null to hide.
-     * @param date    the date of the event; or null to hide.
-     * @param logo    the event logo; or null to hide.
-     * @param font    the font.
+     * @param lineOne  the first line of the event title; or null to hide.
+     * @param lineTwo  the second line of the event title; or null to hide.
+     * @param date     the date of the event; or null to hide.
+     * @param logo     the event logo; or null to hide.
+     * @param font     the font.
+     * @param cache    the cache of header bitmaps.
+     * @param eventKey a key that changes whenever the event configuration changes, under which header bitmaps are
+     *                 cached.
      */
-    public TitledHorizontalArrangement(String lineOne, String lineTwo, String date, Bitmap logo, Typeface font) {
+    public TitledHorizontalArrangement(String lineOne, String lineTwo, String date, Bitmap logo, Typeface font,
+            PersistedBitmapCache cache, String eventKey) {
         mLineOne = lineOne;
         mLineTwo = lineTwo;
         mDate = date;
         mLogo = logo;
         mFont = font;
+        mCache = cache;
+        mEventKey = eventKey;
     }
 
     @Override
-    protected Bitmap getHeader(int width) {
+    protected int getHeaderHeight(int width, float scale) {
+        return createHeader(width, scale).getHeaderHeight(width);
+    }
+
+    @Override
+    protected Bitmap getHeader(int width, float scale) {
+        return createHeader(width, scale).getHeaderBitmap(width);
+    }
+
+    @Override
+    protected void releaseHeader(Bitmap header, int width, float scale) {
+        createHeader(width, scale).releaseHeaderBitmap(header, width);
+    }
+
+    @Override
+    public void prefetchHeader(int frameWidth, int frameHeight, int numFrames) {
+        int width = getPlan(frameWidth, frameHeight, numFrames).getLayout().getWidth();
+        createHeader(width, getScale(frameWidth, frameHeight)).prefetch(width);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Creates the header for the width of the photo strip.
+     *
+     * @param width the width of the header.
+     * @param scale the scale of the header content.
+     * @return the {@link CachedPhotoStripHeader}.
+     */
+    private CachedPhotoStripHeader createHeader(int width, float scale) {
         IPhotoStripHeader header;
-        if (width > WIDE_TITLE_THRESHOLD) {
+        if (width > WIDE_TITLE_THRESHOLD * scale) {
             String title = TextHelper.joinStrings(mLineOne, mLineTwo);
-            header = new WideTitleHeader(title, mDate, mLogo, mFont);
+            header = new WideTitleHeader(title, mDate, mLogo, mFont, scale);
         } else {
-            header = new BaseTitleHeader(mLineOne, mLineTwo, mDate, mLogo, mFont);
+            header = new BaseTitleHeader(mLineOne, mLineTwo, mDate, mLogo, mFont, scale);
         }
-        return header.getHeaderBitmap(width);
+        return new CachedPhotoStripHeader(header, scale, mCache, mEventKey);
     }
 }
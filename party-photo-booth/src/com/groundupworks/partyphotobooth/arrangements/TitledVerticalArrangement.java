@@ -20,6 +20,7 @@ import android.graphics.Bitmap;
 import android.graphics.Typeface;
 
 import com.groundupworks.lib.photobooth.arrangements.VerticalArrangement;
+import com.groundupworks.partyphotobooth.PersistedBitmapCache;
 
 /**
  * Vertical arrangement with title and date as the header.
@@ -53,26 +54,72 @@ public class TitledVerticalArrangement extends VerticalArrangement {
      */
     private Typeface mFont = null;
 
+    /**
+     * The cache of header bitmaps.
+     */
+    private PersistedBitmapCache mCache = null;
+
+    /**
+     * The key of the event configuration, under which header bitmaps are cached.
+     */
+    private String mEventKey = null;
+
     /**
      * Constructor.
      *
-     * @param lineOne the first line of the event title; or null to hide.
-     * @param lineTwo the second line of the event title; or null to hide.
-     * @param date    the date of the event; or null to hide.
-     * @param logo    the event logo; or null to hide.
-     * @param font    the font.
+     * @param lineOne  the first line of the event title; or null to hide.
+     * @param lineTwo  the second line of the event title; or null to hide.
+     * @param date     the date of the event; or null to hide.
+     * @param logo     the event logo; or null to hide.
+     * @param font     the font.
+     * @param cache    the cache of header bitmaps.
+     * @param eventKey a key that changes whenever the event configuration changes, under which header bitmaps are
+     *                 cached.
      */
-    public TitledVerticalArrangement(String lineOne, String lineTwo, String date, Bitmap logo, Typeface font) {
+    public TitledVerticalArrangement(String lineOne, String lineTwo, String date, Bitmap logo, Typeface font,
+            PersistedBitmapCache cache, String eventKey) {
         mLineOne = lineOne;
         mLineTwo = lineTwo;
         mDate = date;
         mLogo = logo;
         mFont = font;
+        mCache = cache;
+        mEventKey = eventKey;
     }
 
     @Override
-    protected Bitmap getHeader(int width) {
-        IPhotoStripHeader header = new BaseTitleHeader(mLineOne, mLineTwo, mDate, mLogo, mFont);
-        return header.getHeaderBitmap(width);
+    protected int getHeaderHeight(int width, float scale) {
+        return createHeader(scale).getHeaderHeight(width);
+    }
+
+    @Override
+    protected Bitmap getHeader(int width, float scale) {
+        return createHeader(scale).getHeaderBitmap(width);
+    }
+
+    @Override
+    protected void releaseHeader(Bitmap header, int width, float scale) {
+        createHeader(scale).releaseHeaderBitmap(header, width);
+    }
+
+    @Override
+    public void prefetchHeader(int frameWidth, int frameHeight, int numFrames) {
+        int width = getPlan(frameWidth, frameHeight, numFrames).getLayout().getWidth();
+        createHeader(getScale(frameWidth, frameHeight)).prefetch(width);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Creates the header.
+     *
+     * @param scale the scale of the header content.
+     * @return the {@link CachedPhotoStripHeader}.
+     */
+    private CachedPhotoStripHeader createHeader(float scale) {
+        IPhotoStripHeader header = new BaseTitleHeader(mLineOne, mLineTwo, mDate, mLogo, mFont, scale);
+        return new CachedPhotoStripHeader(header, scale, mCache, mEventKey);
     }
 }
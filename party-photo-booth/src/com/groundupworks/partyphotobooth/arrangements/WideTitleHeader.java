@@ -33,8 +33,10 @@ public class WideTitleHeader extends BaseTitleHeader {
      * @param date  the date of the event; or null to hide.
      * @param logo  the event logo; or null to hide.
      * @param font  the font.
+     * @param scale the scale of the header content, matching the scale of the photo strip frames relative to
+     *              {@code ImageHelper.IMAGE_SIZE}.
      */
-    public WideTitleHeader(String title, String date, Bitmap logo, Typeface font) {
-        super(title, null, date, logo, font);
+    public WideTitleHeader(String title, String date, Bitmap logo, Typeface font, float scale) {
+        super(title, null, date, logo, font, scale);
     }
 }
@@ -20,15 +20,17 @@ import android.app.Application;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.media.MediaScannerConnection;
 import android.os.Bundle;
 import android.os.Message;
 import android.util.SparseArray;
 
+import com.groundupworks.lib.photobooth.arrangements.BaseArrangement;
 import com.groundupworks.lib.photobooth.framework.BaseController;
+import com.groundupworks.lib.photobooth.helpers.BitmapPool;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper;
-import com.groundupworks.lib.photobooth.helpers.ImageHelper.Arrangement;
+import com.groundupworks.lib.photobooth.helpers.StorageHelper;
 import com.groundupworks.partyphotobooth.MyApplication;
+import com.groundupworks.partyphotobooth.PersistedBitmapCache;
 import com.groundupworks.partyphotobooth.R;
 import com.groundupworks.partyphotobooth.arrangements.BaseTitleHeader;
 import com.groundupworks.partyphotobooth.arrangements.TitledBoxArrangement;
@@ -36,21 +38,14 @@ import com.groundupworks.partyphotobooth.arrangements.TitledHorizontalArrangemen
 import com.groundupworks.partyphotobooth.arrangements.TitledVerticalArrangement;
 import com.groundupworks.partyphotobooth.fragments.PhotoStripFragment;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper;
+import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoBoothTheme;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoStripArrangement;
+import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoStripResolution;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoStripTemplate;
 import com.groundupworks.partyphotobooth.helpers.TextHelper;
 import com.groundupworks.partyphotobooth.themes.Theme;
-import com.groundupworks.wings.Wings;
-import com.groundupworks.wings.dropbox.DropboxEndpoint;
-import com.groundupworks.wings.facebook.FacebookEndpoint;
-import com.groundupworks.wings.gcp.GoogleCloudPrintEndpoint;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -66,6 +61,8 @@ public class PhotoStripController extends BaseController {
 
     public static final int ERROR_PHOTO_STRIP_SUBMIT = -3;
 
+    public static final int ERROR_PHOTO_STRIP_OUTPUT = -4;
+
     public static final int THUMB_BITMAP_READY = 0;
 
     public static final int FRAME_REMOVED = 1;
@@ -74,6 +71,14 @@ public class PhotoStripController extends BaseController {
 
     public static final int PHOTO_STRIP_SUBMITTED = 3;
 
+    public static final int PHOTO_STRIP_ENCODED = 4;
+
+    public static final int PHOTO_STRIP_SAVED = 5;
+
+    public static final int PHOTO_STRIP_SCANNED = 6;
+
+    public static final int PHOTO_STRIP_SHARED = 7;
+
     //
     // Message bundle keys.
     //
@@ -84,6 +89,22 @@ public class PhotoStripController extends BaseController {
 
     public static final String MESSAGE_BUNDLE_KEY_GCP_SHARED = "gcpShared";
 
+    /**
+     * Worker event sent when the event logo is loaded after construction. Negative to stay apart from the ui events
+     * of {@link PhotoStripFragment}.
+     */
+    private static final int EVENT_LOGO_LOADED = -1;
+
+    /**
+     * The separator between the template, theme and resolution in Jpeg quality cache keys.
+     */
+    private static final String QUALITY_KEY_SEPARATOR = "/";
+
+    /**
+     * The separator between the event fields hashed into the event key.
+     */
+    private static final String EVENT_KEY_SEPARATOR = "\n";
+
     /**
      * The {@link Application} {@link Context}.
      */
@@ -124,6 +145,21 @@ public class PhotoStripController extends BaseController {
      */
     private Theme mTheme;
 
+    /**
+     * The width and height of each frame, from the photo strip resolution.
+     */
+    private int mFrameSize;
+
+    /**
+     * The key of the template, theme and resolution, under which the Jpeg qualities of photo strips are cached.
+     */
+    private String mQualityKey;
+
+    /**
+     * The hash of the event configuration, under which the photo strip headers are cached.
+     */
+    private String mEventKey;
+
     /**
      * The total number of frames to capture.
      */
@@ -149,6 +185,21 @@ public class PhotoStripController extends BaseController {
      */
     private int mFramesCurrKey;
 
+    /**
+     * The {@link BitmapPool} to reuse frame, thumbnail and photo strip bitmaps from.
+     */
+    private BitmapPool mBitmapPool;
+
+    /**
+     * The arrangement of the photo strip.
+     */
+    private BaseArrangement mArrangement;
+
+    /**
+     * The photo strip being composed as frames arrive; or null if not started.
+     */
+    private BaseArrangement.Composition mComposition = null;
+
     /**
      * Constructor.
      */
@@ -165,20 +216,36 @@ public class PhotoStripController extends BaseController {
             mDate = TextHelper.getDateString(mContext, date);
         }
 
-        if (TextHelper.isValid(mPreferencesHelper.getEventLogoUri(mContext))) {
+        String logoUri = mPreferencesHelper.getEventLogoUri(mContext);
+        if (TextHelper.isValid(logoUri)) {
             mLogo = MyApplication.getBitmapCache().tryGet(BaseTitleHeader.EVENT_LOGO_CACHE_KEY);
+            if (mLogo == null) {
+                // The logo is not in memory yet, for example while the kiosk warm-up is in flight. Load it and
+                // redraw the header when it arrives, instead of leaving it out of the photo strip.
+                loadLogo();
+            }
         }
 
         PhotoStripTemplate template = mPreferencesHelper.getPhotoStripTemplate(mContext);
         mArrangementPref = template.getArrangement();
 
-        mTheme = Theme.from(mContext, mPreferencesHelper.getPhotoBoothTheme(mContext));
+        PhotoBoothTheme theme = mPreferencesHelper.getPhotoBoothTheme(mContext);
+        mTheme = Theme.from(mContext, theme);
+        mEventKey = createEventKey(logoUri, theme);
+
+        PhotoStripResolution resolution = mPreferencesHelper.getSupportedPhotoStripResolution(mContext);
+        mFrameSize = resolution.getFrameSize();
+        mQualityKey = template.name() + QUALITY_KEY_SEPARATOR + theme.name() + QUALITY_KEY_SEPARATOR
+                + resolution.name();
 
         // Set params for frame management.
         mFramesTotalPref = template.getNumPhotos();
         mFramesList = new LinkedList<Bitmap>();
         mFramesMap = new SparseArray<Bitmap>(mFramesTotalPref);
         mFramesCurrKey = 0;
+        mBitmapPool = MyApplication.getBitmapPool();
+        mArrangement = createArrangement();
+        mArrangement.prefetchHeader(mFrameSize, mFrameSize, mFramesTotalPref);
 
         // Set params from resources.
         Resources res = mContext.getResources();
@@ -195,6 +262,18 @@ public class PhotoStripController extends BaseController {
                 boolean reflection = bundle.getBoolean(PhotoStripFragment.MESSAGE_BUNDLE_KEY_REFLECTION);
                 processJpegData(jpegData, rotation, reflection);
                 break;
+            case PhotoStripFragment.PREVIEW_FRAME_READY:
+                Bundle frameBundle = msg.getData();
+                byte[] nv21Data = frameBundle.getByteArray(PhotoStripFragment.MESSAGE_BUNDLE_KEY_NV21_DATA);
+                int width = frameBundle.getInt(PhotoStripFragment.MESSAGE_BUNDLE_KEY_WIDTH);
+                int height = frameBundle.getInt(PhotoStripFragment.MESSAGE_BUNDLE_KEY_HEIGHT);
+                float frameRotation = frameBundle.getFloat(PhotoStripFragment.MESSAGE_BUNDLE_KEY_ROTATION);
+                boolean frameReflection = frameBundle.getBoolean(PhotoStripFragment.MESSAGE_BUNDLE_KEY_REFLECTION);
+                processPreviewFrame(nv21Data, width, height, frameRotation, frameReflection);
+                break;
+            case EVENT_LOGO_LOADED:
+                processLogo((Bitmap) msg.obj);
+                break;
             case PhotoStripFragment.FRAME_REMOVAL:
                 processFrameRemoval(msg.arg1);
                 break;
@@ -229,13 +308,39 @@ public class PhotoStripController extends BaseController {
      * @param reflection horizontal reflection applied to image.
      */
     private void processJpegData(byte[] jpegData, float rotation, boolean reflection) {
-        Bitmap frame = ImageHelper.createImage(jpegData, rotation, reflection, mTheme.getFilter());
+        Bitmap frame = ImageHelper.createImage(jpegData, mFrameSize, rotation, reflection, mTheme.getFilter(),
+                mBitmapPool);
+        processFrame(frame);
+    }
+
+    /**
+     * Processes an NV21 preview frame and notifies ui.
+     *
+     * @param nv21Data   byte array of NV21 data.
+     * @param width      the width of the preview frame.
+     * @param height     the height of the preview frame.
+     * @param rotation   clockwise rotation applied to image in degrees.
+     * @param reflection horizontal reflection applied to image.
+     */
+    private void processPreviewFrame(byte[] nv21Data, int width, int height, float rotation, boolean reflection) {
+        Bitmap frame = ImageHelper.createImageFromPreview(nv21Data, width, height, mFrameSize, rotation, reflection,
+                mTheme.getFilter(), mBitmapPool);
+        processFrame(frame);
+    }
+
+    /**
+     * Adds a captured frame to the photo strip and notifies ui.
+     *
+     * @param frame the frame bitmap; or null if it could not be created.
+     */
+    private void processFrame(Bitmap frame) {
         if (frame != null) {
             // Create thumbnail bitmap.
-            Bitmap thumb = Bitmap.createScaledBitmap(frame, mThumbSize, mThumbSize, true);
+            Bitmap thumb = ImageHelper.createScaledBitmap(frame, mThumbSize, mThumbSize, mBitmapPool);
             if (thumb != null) {
-                // Store frame bitmap.
+                // Store frame bitmap and draw it into the next panel of the photo strip.
                 int key = storeFrame(frame);
+                composeFrames(mFramesList.size() - 1);
 
                 // Notify ui.
                 Message uiMsg = Message.obtain();
@@ -251,6 +356,7 @@ public class PhotoStripController extends BaseController {
                 sendUiUpdate(uiMsg);
             } else {
                 // An error has occurred.
+                mBitmapPool.put(frame);
                 reportError(ERROR_JPEG_DATA);
             }
         } else {
@@ -259,6 +365,52 @@ public class PhotoStripController extends BaseController {
         }
     }
 
+    /**
+     * Loads the event logo from the bitmap cache and sends it to the worker as an {@link #EVENT_LOGO_LOADED} event.
+     */
+    private void loadLogo() {
+        MyApplication.getBitmapCache().asyncGet(BaseTitleHeader.EVENT_LOGO_CACHE_KEY,
+                new PersistedBitmapCache.IAsyncGetCallbacks() {
+                    @Override
+                    public void onSuccess(String key, Bitmap bitmap) {
+                        Message msg = Message.obtain();
+                        msg.what = EVENT_LOGO_LOADED;
+                        msg.obj = bitmap;
+                        sendToWorkerHandler(msg);
+                    }
+
+                    @Override
+                    public void onFailure(String key) {
+                        // Do nothing.
+                    }
+                });
+    }
+
+    /**
+     * Processes an event logo loaded after construction. Recreates the arrangement with the logo, and redraws the
+     * photo strip if composing has started.
+     *
+     * @param logo the event logo.
+     */
+    private void processLogo(Bitmap logo) {
+        if (mLogo != null || logo == null) {
+            return;
+        }
+
+        mLogo = logo;
+        mEventKey = createEventKey(mPreferencesHelper.getEventLogoUri(mContext),
+                mPreferencesHelper.getPhotoBoothTheme(mContext));
+        mArrangement = createArrangement();
+        mArrangement.prefetchHeader(mFrameSize, mFrameSize, mFramesTotalPref);
+
+        // Restart the composition so the header is drawn with the logo.
+        if (mComposition != null) {
+            mBitmapPool.put(mComposition.getBitmap());
+            mComposition = null;
+            composeFrames(0);
+        }
+    }
+
     /**
      * Processes a frame removal request and notifies ui.
      *
@@ -267,11 +419,20 @@ public class PhotoStripController extends BaseController {
     private void processFrameRemoval(int key) {
         // Remove frame.
         Bitmap frame = mFramesMap.get(key);
+        int index = mFramesList.indexOf(frame);
         mFramesList.remove(frame);
 
+        // Redraw the panels from the removed frame onwards, as the later frames move up by one.
+        if (index >= 0) {
+            composeFrames(index);
+        }
+
         // Remove mapping.
         mFramesMap.delete(key);
 
+        // Return frame bitmap to the pool.
+        mBitmapPool.put(frame);
+
         // Notify ui.
         Message uiMsg = Message.obtain();
         uiMsg.what = FRAME_REMOVED;
@@ -291,102 +452,175 @@ public class PhotoStripController extends BaseController {
         }
 
         /*
-         * Create photo strip.
+         * Take the photo strip, composed as the frames arrived. Photo strips too large to compose in memory are
+         * rendered in bands from the frames by the output stage instead.
          */
-        // Select arrangement.
-        Arrangement arrangement = null;
-        if (PhotoStripArrangement.HORIZONTAL.equals(mArrangementPref)) {
-            arrangement = new TitledHorizontalArrangement(mLineOne, mLineTwo, mDate, mLogo, mTheme.getFont());
-        } else if (PhotoStripArrangement.BOX.equals(mArrangementPref)) {
-            arrangement = new TitledBoxArrangement(mLineOne, mLineTwo, mDate, mLogo, mTheme.getFont());
+        Bitmap photoStrip = null;
+        Bitmap[] frames = null;
+        if (isBanded()) {
+            frames = mFramesList.toArray(new Bitmap[mFramesList.size()]);
+        } else if (mComposition != null) {
+            photoStrip = mComposition.getBitmap();
+            mComposition = null;
         } else {
-            arrangement = new TitledVerticalArrangement(mLineOne, mLineTwo, mDate, mLogo, mTheme.getFont());
+            // The photo strip bitmap could not be created up front. Try again with all frames.
+            Bitmap[] bitmaps = mFramesList.toArray(new Bitmap[mFramesList.size()]);
+            photoStrip = ImageHelper.createPhotoStrip(bitmaps, mArrangement);
         }
 
-        // Create photo strip as a single bitmap.
-        Bitmap[] bitmaps = new Bitmap[mFramesTotalPref];
-        int i = 0;
-        for (Bitmap frame : mFramesList) {
-            bitmaps[i++] = frame;
+        // Return frame bitmaps to the pool, unless handed off to be rendered in bands.
+        if (frames == null) {
+            for (Bitmap frame : mFramesList) {
+                mBitmapPool.put(frame);
+            }
         }
-        Bitmap photoStrip = ImageHelper.createPhotoStrip(bitmaps, arrangement);
 
         // Reset frame management params.
         mFramesList.clear();
         mFramesMap.clear();
         mFramesCurrKey = 0;
 
+        if (photoStrip == null && frames == null) {
+            reportError(ERROR_PHOTO_STRIP_SUBMIT);
+            return;
+        }
+
         /*
-         * Save photo strip bitmap as Jpeg.
+         * Hand photo strip bitmap off to be encoded, saved and shared in the background.
          */
-        Context context = MyApplication.getContext();
-        try {
-            String imageDirectory = ImageHelper.getCapturedImageDirectory(context
-                    .getString(R.string.image_helper__image_folder_name));
-            if (imageDirectory != null) {
-                String imageName = ImageHelper.generateCapturedImageName(context
-                        .getString(R.string.image_helper__image_filename_prefix));
-                File file = new File(imageDirectory, imageName);
-                final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
-
-                // Convert to Jpeg and writes to file.
-                boolean isSuccessful = ImageHelper.writeJpeg(photoStrip, outputStream);
-                outputStream.flush();
-                outputStream.close();
-
-                if (isSuccessful) {
-                    String jpegPath = file.getPath();
-                    // Request adding Jpeg to Android Gallery.
-                    MediaScannerConnection.scanFile(context, new String[]{jpegPath},
-                            new String[]{ImageHelper.JPEG_MIME_TYPE}, null);
-
-                    // Share to Facebook.
-                    boolean facebookShared = false;
-                    if (Wings.getEndpoint(FacebookEndpoint.class).isLinked()) {
-                        facebookShared = Wings.share(jpegPath, FacebookEndpoint.class);
-                    }
-
-                    // Share to Dropbox.
-                    boolean dropboxShared = false;
-                    if (Wings.getEndpoint(DropboxEndpoint.class).isLinked()) {
-                        dropboxShared = Wings.share(jpegPath, DropboxEndpoint.class);
-                    }
-
-                    // Share to Google Cloud Print.
-                    boolean gcpShared = false;
-                    if (Wings.getEndpoint(GoogleCloudPrintEndpoint.class).isLinked()) {
-                        gcpShared = Wings.share(jpegPath, GoogleCloudPrintEndpoint.class);
-                    }
+        String imageDirectory = ImageHelper.getCapturedImageDirectory(mContext
+                .getString(R.string.image_helper__image_folder_name));
+        if (imageDirectory != null) {
+            String imageName = ImageHelper.generateCapturedImageName(mContext
+                    .getString(R.string.image_helper__image_filename_prefix));
+            File file = new File(imageDirectory, imageName);
+            if (frames != null) {
+                MyApplication.getPhotoStripOutput().submitFrames(mArrangement, frames, file, mQualityKey,
+                        new OutputListener());
+            } else {
+                MyApplication.getPhotoStripOutput().submit(photoStrip, file, mQualityKey, new OutputListener());
+            }
 
-                    // Notify ui the Jpeg is saved and shared to linked services.
-                    Message uiMsg = Message.obtain();
-                    uiMsg.what = PHOTO_STRIP_SUBMITTED;
-                    Bundle bundle = new Bundle();
-                    bundle.putBoolean(MESSAGE_BUNDLE_KEY_FACEBOOK_SHARED, facebookShared);
-                    bundle.putBoolean(MESSAGE_BUNDLE_KEY_DROPBOX_SHARED, dropboxShared);
-                    bundle.putBoolean(MESSAGE_BUNDLE_KEY_GCP_SHARED, gcpShared);
-                    uiMsg.setData(bundle);
-                    sendUiUpdate(uiMsg);
-                } else {
-                    reportError(ERROR_PHOTO_STRIP_SUBMIT);
+            // Notify ui the photo strip is enqueued to be saved and shared to linked services.
+            PhotoStripOutput.ShareResult linked = PhotoStripOutput.getLinkedEndpoints();
+            Message uiMsg = Message.obtain();
+            uiMsg.what = PHOTO_STRIP_SUBMITTED;
+            uiMsg.setData(createShareBundle(linked));
+            sendUiUpdate(uiMsg);
+        } else {
+            // Invalid external storage state or failed directory creation.
+            if (frames != null) {
+                for (Bitmap frame : frames) {
+                    mBitmapPool.put(frame);
                 }
             } else {
-                // Invalid external storage state or failed directory creation.
-                reportError(ERROR_PHOTO_STRIP_SUBMIT);
+                mBitmapPool.put(photoStrip);
             }
-        } catch (FileNotFoundException e) {
-            reportError(ERROR_PHOTO_STRIP_SUBMIT);
-        } catch (IOException e) {
             reportError(ERROR_PHOTO_STRIP_SUBMIT);
         }
+    }
 
-        /*
-         * Recycle photo strip bitmap.
-         */
-        if (photoStrip != null) {
-            photoStrip.recycle();
-            photoStrip = null;
+    /**
+     * Creates a message bundle with the endpoints a photo strip is shared to.
+     *
+     * @param result the endpoints shared to.
+     * @return the bundle.
+     */
+    private static Bundle createShareBundle(PhotoStripOutput.ShareResult result) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(MESSAGE_BUNDLE_KEY_FACEBOOK_SHARED, result.isFacebookShared());
+        bundle.putBoolean(MESSAGE_BUNDLE_KEY_DROPBOX_SHARED, result.isDropboxShared());
+        bundle.putBoolean(MESSAGE_BUNDLE_KEY_GCP_SHARED, result.isGcpShared());
+        return bundle;
+    }
+
+    /**
+     * Creates a key that changes whenever the content of the photo strip header changes, by hashing the event fields
+     * it is drawn from.
+     *
+     * @param logoUri the uri to the event logo image; or an empty string.
+     * @param theme   the photo booth theme, which sets the font.
+     * @return the key.
+     */
+    private String createEventKey(String logoUri, PhotoBoothTheme theme) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(mLineOne).append(EVENT_KEY_SEPARATOR).append(mLineTwo).append(EVENT_KEY_SEPARATOR).append(mDate)
+                .append(EVENT_KEY_SEPARATOR).append(logoUri).append(EVENT_KEY_SEPARATOR).append(theme.name());
+        if (mLogo != null) {
+            builder.append(EVENT_KEY_SEPARATOR).append(mLogo.getWidth()).append(EVENT_KEY_SEPARATOR)
+                    .append(mLogo.getHeight());
+        }
+
+        // Fall back to the unhashed fields, which are still unique but make a longer key.
+        String fields = builder.toString();
+        String key = StorageHelper.generateValidFilename(fields);
+        return key != null ? key : fields;
+    }
+
+    /**
+     * Creates the arrangement for the photo strip from preferences.
+     *
+     * @return the arrangement.
+     */
+    private BaseArrangement createArrangement() {
+        BaseArrangement arrangement;
+        if (PhotoStripArrangement.HORIZONTAL.equals(mArrangementPref)) {
+            arrangement = new TitledHorizontalArrangement(mLineOne, mLineTwo, mDate, mLogo, mTheme.getFont(),
+                    MyApplication.getBitmapCache(), mEventKey);
+        } else if (PhotoStripArrangement.BOX.equals(mArrangementPref)) {
+            arrangement = new TitledBoxArrangement(mLineOne, mLineTwo, mDate, mLogo, mTheme.getFont(),
+                    MyApplication.getBitmapCache(), mEventKey);
+        } else {
+            arrangement = new TitledVerticalArrangement(mLineOne, mLineTwo, mDate, mLogo, mTheme.getFont(),
+                    MyApplication.getBitmapCache(), mEventKey);
         }
+        arrangement.setBitmapPool(mBitmapPool);
+
+        return arrangement;
+    }
+
+    /**
+     * Draws the stored frames into the panels of the photo strip, starting at a panel index. The photo strip bitmap
+     * and header are created with the first frame. Panels after the last stored frame are cleared.
+     *
+     * @param fromIndex the index of the first panel to draw.
+     */
+    private void composeFrames(int fromIndex) {
+        if (mComposition == null) {
+            if (mFramesList.isEmpty() || isBanded()) {
+                return;
+            }
+
+            mComposition = mArrangement.startComposition(mFrameSize, mFrameSize, mFramesTotalPref);
+            fromIndex = 0;
+            if (mComposition == null) {
+                // Fall back to composing the whole photo strip on submission.
+                return;
+            }
+        }
+
+        int i = 0;
+        for (Bitmap frame : mFramesList) {
+            if (i >= fromIndex && i < mFramesTotalPref) {
+                mComposition.drawFrame(i, frame);
+            }
+            i++;
+        }
+        for (; i < mFramesTotalPref; i++) {
+            if (i >= fromIndex) {
+                mComposition.clearFrame(i);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the photo strip is too large to compose in memory, and is to be rendered in bands on
+     * submission instead.
+     *
+     * @return true if the photo strip is rendered in bands; false if it is composed as frames arrive.
+     */
+    private boolean isBanded() {
+        return mArrangement.isTooLargeToCompose(mFrameSize, mFrameSize, mFramesTotalPref);
     }
 
     /**
@@ -416,4 +650,42 @@ public class PhotoStripController extends BaseController {
     private boolean isPhotoStripComplete() {
         return mFramesList.size() == mFramesTotalPref;
     }
+
+    //
+    // Private inner classes.
+    //
+
+    /**
+     * Forwards the progress of a submitted photo strip to the ui, if still attached. The ui may have moved on to the
+     * next photo strip by the time the output completes.
+     */
+    private class OutputListener implements PhotoStripOutput.IListener {
+
+        @Override
+        public void onStageCompleted(File file, PhotoStripOutput.Stage stage, PhotoStripOutput.ShareResult result) {
+            Message uiMsg = Message.obtain();
+            uiMsg.obj = file.getPath();
+            switch (stage) {
+                case ENCODED:
+                    uiMsg.what = PHOTO_STRIP_ENCODED;
+                    break;
+                case SAVED:
+                    uiMsg.what = PHOTO_STRIP_SAVED;
+                    break;
+                case SCANNED:
+                    uiMsg.what = PHOTO_STRIP_SCANNED;
+                    break;
+                default:
+                    uiMsg.what = PHOTO_STRIP_SHARED;
+                    uiMsg.setData(createShareBundle(result));
+                    break;
+            }
+            sendUiUpdate(uiMsg);
+        }
+
+        @Override
+        public void onFailed(File file) {
+            reportError(ERROR_PHOTO_STRIP_OUTPUT);
+        }
+    }
 }
@@ -0,0 +1,499 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.partyphotobooth.controllers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+
+import com.groundupworks.lib.photobooth.arrangements.BaseArrangement;
+import com.groundupworks.lib.photobooth.framework.BaseApplication;
+import com.groundupworks.lib.photobooth.framework.WorkerScheduler;
+import com.groundupworks.lib.photobooth.helpers.BitmapPool;
+import com.groundupworks.lib.photobooth.helpers.ImageDerivative;
+import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.lib.photobooth.helpers.LogsHelper;
+import com.groundupworks.lib.photobooth.helpers.ShareOutbox;
+import com.groundupworks.lib.photobooth.helpers.WingsShareSender;
+import com.groundupworks.wings.Wings;
+import com.groundupworks.wings.WingsEndpoint;
+import com.groundupworks.wings.dropbox.DropboxEndpoint;
+import com.groundupworks.wings.facebook.FacebookEndpoint;
+import com.groundupworks.wings.gcp.GoogleCloudPrintEndpoint;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.concurrent.Executor;
+
+/**
+ * The output stage of submitted photo strips. A submitted photo strip is Jpeg-encoded as each
+ * {@link ImageDerivative} on the {@link WorkerScheduler.Lane#CPU} lane, then written and synced to storage,
+ * registered with the Android Gallery and shared to linked endpoints on the {@link WorkerScheduler.Lane#IO} lane.
+ * Each endpoint is shared the derivative routed to it. Masters of photo strips rendered in bands are streamed to a
+ * temp file while they are encoded, and only renamed on the storage lane. Photo strips complete each stage in the
+ * order they are submitted, and the caller is notified as each stage completes. This class is thread-safe.
+ *
+ * @author Benedict Lau
+ */
+public class PhotoStripOutput {
+
+    /**
+     * The stages of the output of a photo strip, in order.
+     */
+    public enum Stage {
+
+        /**
+         * The photo strip is encoded as Jpeg, once per {@link ImageDerivative}.
+         */
+        ENCODED,
+
+        /**
+         * The Jpeg derivatives are written and synced to storage.
+         */
+        SAVED,
+
+        /**
+         * The Jpeg is registered with the Android Gallery.
+         */
+        SCANNED,
+
+        /**
+         * The Jpeg derivative routed to each linked endpoint is persisted in the {@link ShareOutbox} for sharing.
+         */
+        SHARED
+    }
+
+    /**
+     * The suffix of the temp file a Jpeg is written to before it is renamed.
+     */
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * The size of the buffer a streamed Jpeg master is written to the file through.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The {@link android.app.Application} {@link Context}.
+     */
+    private final Context mContext;
+
+    /**
+     * The {@link BitmapPool} to return photo strip and frame bitmaps to once encoded.
+     */
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Executor encoding photo strips in order.
+     */
+    private final Executor mEncodeExecutor;
+
+    /**
+     * Executor saving, registering and sharing photo strips in order.
+     */
+    private final Executor mStorageExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param context    the {@link Context}.
+     * @param bitmapPool the {@link BitmapPool} to return photo strip and frame bitmaps to once encoded; or null to
+     *                   recycle them.
+     */
+    public PhotoStripOutput(Context context, BitmapPool bitmapPool) {
+        mContext = context.getApplicationContext();
+        mBitmapPool = bitmapPool;
+
+        WorkerScheduler scheduler = BaseApplication.getScheduler();
+        mEncodeExecutor = scheduler.newSerialExecutor(WorkerScheduler.Lane.CPU);
+        mStorageExecutor = scheduler.newSerialExecutor(WorkerScheduler.Lane.IO);
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Writes Jpeg data to a file and syncs it to storage. The data is written to a temp file first and then renamed,
+     * so the Android Gallery never sees a half-written Jpeg.
+     *
+     * @param jpegData the Jpeg data.
+     * @param file     the file to write to.
+     * @return true if successful; false otherwise.
+     */
+    private static boolean writeSynced(ByteArrayOutputStream jpegData, File file) {
+        boolean isSuccessful = false;
+        if (!makeParentDirs(file)) {
+            return false;
+        }
+
+        File tempFile = getTempFile(file);
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            jpegData.writeTo(outputStream);
+            outputStream.flush();
+            outputStream.getFD().sync();
+            outputStream.close();
+            outputStream = null;
+
+            isSuccessful = tempFile.renameTo(file);
+        } catch (IOException e) {
+            // Do nothing.
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+            if (!isSuccessful) {
+                tempFile.delete();
+            }
+        }
+
+        return isSuccessful;
+    }
+
+    /**
+     * Creates the parent directory of a file if it does not exist.
+     *
+     * @param file the file.
+     * @return true if the parent directory exists; false otherwise.
+     */
+    private static boolean makeParentDirs(File file) {
+        File parent = file.getParentFile();
+        return parent == null || parent.isDirectory() || parent.mkdirs();
+    }
+
+    /**
+     * Gets the temp file a Jpeg is written to before it is renamed to its file. The temp file is in the same directory,
+     * so the rename is atomic.
+     *
+     * @param file the file.
+     * @return the temp file.
+     */
+    private static File getTempFile(File file) {
+        return new File(file.getPath() + TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Enqueues a share of a photo strip in the outbox, using the derivative routed to the endpoint if it is saved, or
+     * the master otherwise.
+     *
+     * @param file          the file of the master Jpeg.
+     * @param savedFiles    the saved derivatives.
+     * @param endpointClazz the {@link WingsEndpoint} to share to.
+     * @return true if the share is persisted in the outbox; false otherwise.
+     */
+    private static boolean enqueueShare(File file, EnumMap<ImageDerivative, File> savedFiles,
+                                        Class<? extends WingsEndpoint> endpointClazz) {
+        File shareFile = savedFiles.get(ImageDerivative.forEndpoint(endpointClazz));
+        if (shareFile == null) {
+            shareFile = file;
+        }
+
+        return BaseApplication.getShareOutbox().enqueue(shareFile.getPath(),
+                WingsShareSender.getEndpointName(endpointClazz));
+    }
+
+    /**
+     * Returns a bitmap to the pool, or recycles it if there is no pool.
+     *
+     * @param bitmap the bitmap.
+     */
+    private void recycle(Bitmap bitmap) {
+        if (mBitmapPool != null) {
+            mBitmapPool.put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Notifies the listener of the outcome of encoding a photo strip, and stores it if successful.
+     *
+     * @param jpegData   the Jpeg data of each derivative; or null if encoding failed.
+     * @param masterFile the synced temp file the master was streamed to; or null if the master is in the Jpeg data.
+     * @param file       the file to save the master to.
+     * @param listener   the listener to notify.
+     */
+    private void onEncoded(EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData, File masterFile, File file,
+                           IListener listener) {
+        if (jpegData != null) {
+            listener.onStageCompleted(file, Stage.ENCODED, null);
+            store(jpegData, masterFile, file, listener);
+        } else {
+            LogsHelper.slog(PhotoStripOutput.class, "submit", "Failed to encode " + file.getPath());
+            listener.onFailed(file);
+        }
+    }
+
+    /**
+     * Saves, registers and shares an encoded photo strip on the storage lane.
+     *
+     * @param jpegData   the Jpeg data of each derivative, including the {@link ImageDerivative#PRINT} master unless it
+     *                   was streamed to a file.
+     * @param masterFile the synced temp file the master was streamed to, which is renamed to the file; or null if
+     *                   the master is in the Jpeg data.
+     * @param file       the file to save the master to.
+     * @param listener   the listener to notify.
+     */
+    private void store(final EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData, final File masterFile,
+                       final File file, final IListener listener) {
+        mStorageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean isMasterSaved;
+                if (masterFile != null) {
+                    isMasterSaved = masterFile.renameTo(file);
+                    if (!isMasterSaved) {
+                        masterFile.delete();
+                    }
+                } else {
+                    isMasterSaved = writeSynced(jpegData.get(ImageDerivative.PRINT), file);
+                }
+                if (!isMasterSaved) {
+                    LogsHelper.slog(PhotoStripOutput.class, "store", "Failed to save " + file.getPath());
+                    listener.onFailed(file);
+                    return;
+                }
+
+                // Save the smaller derivatives. Shares fall back to the master for any that fail.
+                EnumMap<ImageDerivative, File> savedFiles = new EnumMap<ImageDerivative, File>(ImageDerivative.class);
+                savedFiles.put(ImageDerivative.PRINT, file);
+                for (ImageDerivative derivative : jpegData.keySet()) {
+                    if (derivative != ImageDerivative.PRINT) {
+                        File derivativeFile = derivative.getFile(mContext, file);
+                        if (writeSynced(jpegData.get(derivative), derivativeFile)) {
+                            savedFiles.put(derivative, derivativeFile);
+                        } else {
+                            LogsHelper.slog(PhotoStripOutput.class, "store", "Failed to save "
+                                    + derivativeFile.getPath());
+                        }
+                    }
+                }
+                listener.onStageCompleted(file, Stage.SAVED, null);
+
+                // Request adding Jpeg to Android Gallery.
+                final String jpegPath = file.getPath();
+                MediaScannerConnection.scanFile(mContext, new String[]{jpegPath},
+                        new String[]{ImageHelper.JPEG_MIME_TYPE}, new MediaScannerConnection.OnScanCompletedListener() {
+                            @Override
+                            public void onScanCompleted(String path, Uri uri) {
+                                listener.onStageCompleted(file, Stage.SCANNED, null);
+                            }
+                        });
+
+                // Enqueue shares to linked endpoints in the outbox, each with its own derivative.
+                ShareResult result = new ShareResult();
+                if (Wings.getEndpoint(FacebookEndpoint.class).isLinked()) {
+                    result.mFacebookShared = enqueueShare(file, savedFiles, FacebookEndpoint.class);
+                }
+                if (Wings.getEndpoint(DropboxEndpoint.class).isLinked()) {
+                    result.mDropboxShared = enqueueShare(file, savedFiles, DropboxEndpoint.class);
+                }
+                if (Wings.getEndpoint(GoogleCloudPrintEndpoint.class).isLinked()) {
+                    result.mGcpShared = enqueueShare(file, savedFiles, GoogleCloudPrintEndpoint.class);
+                }
+                listener.onStageCompleted(file, Stage.SHARED, result);
+            }
+        });
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Gets the endpoints a photo strip submitted now will be shared to.
+     *
+     * @return the endpoints that are linked.
+     */
+    public static ShareResult getLinkedEndpoints() {
+        ShareResult result = new ShareResult();
+        result.mFacebookShared = Wings.getEndpoint(FacebookEndpoint.class).isLinked();
+        result.mDropboxShared = Wings.getEndpoint(DropboxEndpoint.class).isLinked();
+        result.mGcpShared = Wings.getEndpoint(GoogleCloudPrintEndpoint.class).isLinked();
+        return result;
+    }
+
+    /**
+     * Submits a photo strip for output and returns immediately. The photo strip bitmap is owned by the output stage
+     * from then on, and the caller must not use it afterwards.
+     *
+     * @param photoStrip the photo strip bitmap.
+     * @param file       the file to save the Jpeg to.
+     * @param qualityKey the key of the look of the photo strip, such as its template and theme, under which the Jpeg
+     *                   qualities chosen to fit the derivative budgets are cached; or null to not cache them.
+     * @param listener   the listener to notify as each stage completes. Called on worker threads.
+     */
+    public void submit(final Bitmap photoStrip, final File file, final String qualityKey, final IListener listener) {
+        mEncodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData = ImageDerivative.encodeAll(photoStrip,
+                        mBitmapPool, BaseApplication.getJpegEncoder(), qualityKey);
+
+                // Return photo strip bitmap to the pool.
+                recycle(photoStrip);
+
+                onEncoded(jpegData, null, file, listener);
+            }
+        });
+    }
+
+    /**
+     * Submits the frames of a photo strip for output and returns immediately. The photo strip is rendered in bands and
+     * streamed as Jpeg to a temp file next to the file, so neither its full bitmap nor its full Jpeg is held in memory.
+     * The temp file is synced once encoded and renamed to the file when saved. Use for photo strips too large to
+     * compose in memory. The frame bitmaps are owned by the output stage from then on, and the caller must not use
+     * them afterwards.
+     *
+     * @param arrangement the arrangement of the photo strip. May still be used by the caller, as arrangements keep no
+     *                    drawing state.
+     * @param frames      the frame bitmaps.
+     * @param file        the file to save the Jpeg to.
+     * @param qualityKey  the key of the look of the photo strip, such as its template and theme, under which the Jpeg
+     *                    qualities chosen to fit the derivative budgets are cached; or null to not cache them.
+     * @param listener    the listener to notify as each stage completes. Called on worker threads.
+     * @see BaseArrangement#isTooLargeToCompose(int, int, int)
+     */
+    public void submitFrames(final BaseArrangement arrangement, final Bitmap[] frames, final File file,
+                             final String qualityKey, final IListener listener) {
+        mEncodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                EnumMap<ImageDerivative, ByteArrayOutputStream> jpegData = null;
+                File masterFile = getTempFile(file);
+                FileOutputStream outputStream = null;
+                try {
+                    if (makeParentDirs(file)) {
+                        // Stream the master to the temp file and sync it.
+                        outputStream = new FileOutputStream(masterFile);
+                        BufferedOutputStream bufferedStream = new BufferedOutputStream(outputStream,
+                                STREAM_BUFFER_SIZE);
+                        jpegData = ImageDerivative.encodeAll(arrangement, frames, bufferedStream, mBitmapPool,
+                                BaseApplication.getJpegEncoder(), qualityKey);
+                        bufferedStream.flush();
+                        outputStream.getFD().sync();
+                        outputStream.close();
+                        outputStream = null;
+                    }
+                } catch (IOException e) {
+                    jpegData = null;
+                } finally {
+                    if (outputStream != null) {
+                        try {
+                            outputStream.close();
+                        } catch (IOException e) {
+                            // Do nothing.
+                        }
+                    }
+                    if (jpegData == null) {
+                        masterFile.delete();
+                    }
+                }
+
+                // Return frame bitmaps to the pool.
+                for (Bitmap frame : frames) {
+                    recycle(frame);
+                }
+
+                onEncoded(jpegData, masterFile, file, listener);
+            }
+        });
+    }
+
+    //
+    // Public inner classes.
+    //
+
+    /**
+     * The endpoints a photo strip is shared to.
+     */
+    public static class ShareResult {
+
+        /**
+         * True if shared to Facebook.
+         */
+        private boolean mFacebookShared = false;
+
+        /**
+         * True if shared to Dropbox.
+         */
+        private boolean mDropboxShared = false;
+
+        /**
+         * True if shared to Google Cloud Print.
+         */
+        private boolean mGcpShared = false;
+
+        /**
+         * @return true if shared to Facebook; false otherwise.
+         */
+        public boolean isFacebookShared() {
+            return mFacebookShared;
+        }
+
+        /**
+         * @return true if shared to Dropbox; false otherwise.
+         */
+        public boolean isDropboxShared() {
+            return mDropboxShared;
+        }
+
+        /**
+         * @return true if shared to Google Cloud Print; false otherwise.
+         */
+        public boolean isGcpShared() {
+            return mGcpShared;
+        }
+    }
+
+    //
+    // Interfaces.
+    //
+
+    /**
+     * Listener for the progress of a submitted photo strip.
+     */
+    public interface IListener {
+
+        /**
+         * A stage of the output completed.
+         *
+         * @param file   the Jpeg file of the photo strip.
+         * @param stage  the completed stage.
+         * @param result the endpoints shared to for {@link Stage#SHARED}; or null for other stages.
+         */
+        public void onStageCompleted(File file, Stage stage, ShareResult result);
+
+        /**
+         * The output failed and no further stages will complete.
+         *
+         * @param file the Jpeg file of the photo strip.
+         */
+        public void onFailed(File file);
+    }
+}
@@ -29,6 +29,7 @@ import android.hardware.Camera.Size;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
@@ -38,9 +39,12 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import com.groundupworks.lib.photobooth.framework.BaseApplication;
+import com.groundupworks.lib.photobooth.framework.WorkerScheduler;
 import com.groundupworks.lib.photobooth.helpers.CameraAudioHelper;
 import com.groundupworks.lib.photobooth.helpers.CameraHelper;
+import com.groundupworks.lib.photobooth.helpers.CaptureLatencyStats;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.lib.photobooth.helpers.PreviewFrameRing;
 import com.groundupworks.lib.photobooth.views.AnimationDrawableCallback;
 import com.groundupworks.lib.photobooth.views.CenteredPreview;
 import com.groundupworks.partyphotobooth.R;
@@ -107,6 +111,16 @@ public class CaptureFragment extends Fragment {
      */
     private int mPreviewDisplayOrientation = CameraHelper.CAMERA_SCREEN_ORIENTATION_0;
 
+    /**
+     * The width and height of each frame, from the photo strip resolution.
+     */
+    private int mFrameSize = ImageHelper.IMAGE_SIZE;
+
+    /**
+     * The ring of buffered preview frames to capture from without shutter lag; or null if disabled.
+     */
+    private PreviewFrameRing mFrameRing = null;
+
     //
     // Views.
     //
@@ -122,7 +136,7 @@ public class CaptureFragment extends Fragment {
         super.onAttach(activity);
         mCallbacks = new WeakReference<CaptureFragment.ICallbacks>((CaptureFragment.ICallbacks) activity);
 
-        final Handler handler = new Handler(BaseApplication.getWorkerLooper());
+        final Handler handler = BaseApplication.getScheduler().newHandler(WorkerScheduler.Lane.HIGH_PRIORITY);
         mCameraAudioHelper = new CameraAudioHelper(activity, R.raw.beep_once, handler);
     }
 
@@ -157,6 +171,14 @@ public class CaptureFragment extends Fragment {
         PreferencesHelper preferencesHelper = new PreferencesHelper();
         PhotoBoothMode mode = preferencesHelper.getPhotoBoothMode(appContext);
 
+        // Capture pictures large enough for the photo strip resolution.
+        mFrameSize = preferencesHelper.getSupportedPhotoStripResolution(appContext).getFrameSize();
+
+        // Buffer preview frames to capture from if zero shutter lag is enabled.
+        if (preferencesHelper.getZeroShutterLagEnabled(appContext)) {
+            mFrameRing = new PreviewFrameRing(PreviewFrameRing.DEFAULT_NUM_BUFFERS);
+        }
+
         int cameraPreference = CameraInfo.CAMERA_FACING_FRONT;
         if (PhotoBoothMode.PHOTOGRAPHER.equals(mode)) {
             cameraPreference = CameraInfo.CAMERA_FACING_BACK;
@@ -223,6 +245,7 @@ public class CaptureFragment extends Fragment {
                     mPreview.setOnPreviewListener(new CenteredPreview.OnPreviewListener() {
                         @Override
                         public void onStarted() {
+                            startFrameRing();
                             if (isActivityAlive()) {
                                 mPreview.post(new Runnable() {
                                     @Override
@@ -237,7 +260,7 @@ public class CaptureFragment extends Fragment {
 
                         @Override
                         public void onStopped() {
-                            // Do nothing.
+                            stopFrameRing();
                         }
                     });
                     break;
@@ -328,7 +351,7 @@ public class CaptureFragment extends Fragment {
 
                 // Set optimal size for Jpeg capture.
                 Size pictureSize = CameraHelper.getOptimalPictureSize(params.getSupportedPreviewSizes(),
-                        params.getSupportedPictureSizes(), ImageHelper.IMAGE_SIZE, ImageHelper.IMAGE_SIZE);
+                        params.getSupportedPictureSizes(), mFrameSize, mFrameSize);
                 params.setPictureSize(pictureSize.width, pictureSize.height);
 
                 mCamera.setParameters(params);
@@ -358,6 +381,7 @@ public class CaptureFragment extends Fragment {
     @Override
     public void onPause() {
         if (mCamera != null) {
+            stopFrameRing();
             mPreview.stop();
             mCamera.release();
             mCamera = null;
@@ -487,6 +511,7 @@ public class CaptureFragment extends Fragment {
         mPreview.setOnPreviewListener(new CenteredPreview.OnPreviewListener() {
             @Override
             public void onStarted() {
+                startFrameRing();
                 if (isActivityAlive()) {
                     mStartButton.setEnabled(true);
                 }
@@ -494,6 +519,7 @@ public class CaptureFragment extends Fragment {
 
             @Override
             public void onStopped() {
+                stopFrameRing();
                 if (isActivityAlive()) {
                     mStartButton.setEnabled(false);
                 }
@@ -501,6 +527,25 @@ public class CaptureFragment extends Fragment {
         });
     }
 
+    /**
+     * Starts buffering preview frames if zero shutter lag is enabled. Falls back to capturing with the shutter if the
+     * preview frames cannot be buffered, or are smaller than the frame size and would be upscaled.
+     */
+    private void startFrameRing() {
+        if (mFrameRing != null && mCamera != null && !mFrameRing.start(mCamera, mFrameSize)) {
+            mFrameRing = null;
+        }
+    }
+
+    /**
+     * Stops buffering preview frames.
+     */
+    private void stopFrameRing() {
+        if (mFrameRing != null) {
+            mFrameRing.stop();
+        }
+    }
+
     /**
      * Initiates the capture sequence.
      */
@@ -538,15 +583,39 @@ public class CaptureFragment extends Fragment {
     }
 
     /**
-     * Takes picture.
+     * Takes picture. The buffered preview frame closest to the trigger is used if available, otherwise the picture is
+     * taken with the shutter. The latency from the trigger to the capture is recorded either way.
      */
     private void takePicture() {
         if (isActivityAlive() && mCamera != null) {
+            final long triggerTime = SystemClock.elapsedRealtime();
+            final CaptureLatencyStats latencyStats = BaseApplication.getCaptureLatencyStats();
+
+            // Capture from the preview frame closest to the trigger.
+            if (mFrameRing != null) {
+                PreviewFrameRing.Frame frame = mFrameRing.copyClosest(triggerTime);
+                if (frame != null) {
+                    mFrameRing.stop();
+                    latencyStats.record(CaptureLatencyStats.Method.PREVIEW_FRAME,
+                            Math.abs(frame.timestamp - triggerTime));
+
+                    // Call to client.
+                    ICallbacks callbacks = getCallbacks();
+                    if (callbacks != null) {
+                        callbacks.onPreviewFrameTaken(frame.data, frame.width, frame.height,
+                                mPreviewDisplayOrientation, false);
+                    }
+                    return;
+                }
+            }
+
             try {
                 mCamera.takePicture(new Camera.ShutterCallback() {
                     @Override
                     public void onShutter() {
                         // Setting a listener enables the system shutter sound.
+                        latencyStats.record(CaptureLatencyStats.Method.SHUTTER,
+                                SystemClock.elapsedRealtime() - triggerTime);
                     }
                 }, null, new JpegPictureCallback());
             } catch (RuntimeException e) {
@@ -599,6 +668,17 @@ public class CaptureFragment extends Fragment {
          */
         public void onPictureTaken(byte[] data, float rotation, boolean reflection);
 
+        /**
+         * A picture is taken from a buffered preview frame.
+         *
+         * @param nv21Data   the NV21 data of the preview frame.
+         * @param width      the width of the preview frame.
+         * @param height     the height of the preview frame.
+         * @param rotation   clockwise rotation applied to image in degrees.
+         * @param reflection horizontal reflection applied to image.
+         */
+        public void onPreviewFrameTaken(byte[] nv21Data, int width, int height, float rotation, boolean reflection);
+
         /**
          * No camera.
          */
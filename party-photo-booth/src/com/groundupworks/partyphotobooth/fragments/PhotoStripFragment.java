@@ -42,6 +42,7 @@ import android.widget.TextView;
 
 import com.groundupworks.lib.photobooth.framework.ControllerBackedFragment;
 import com.groundupworks.partyphotobooth.MyApplication;
+import com.groundupworks.partyphotobooth.PersistedBitmapCache;
 import com.groundupworks.partyphotobooth.R;
 import com.groundupworks.partyphotobooth.arrangements.BaseTitleHeader;
 import com.groundupworks.partyphotobooth.controllers.PhotoStripController;
@@ -68,6 +69,8 @@ public class PhotoStripFragment extends ControllerBackedFragment<PhotoStripContr
 
     public static final int PHOTO_STRIP_SUBMIT = 2;
 
+    public static final int PREVIEW_FRAME_READY = 3;
+
     //
     // Message bundle keys.
     //
@@ -78,6 +81,12 @@ public class PhotoStripFragment extends ControllerBackedFragment<PhotoStripContr
 
     public static final String MESSAGE_BUNDLE_KEY_REFLECTION = "reflection";
 
+    public static final String MESSAGE_BUNDLE_KEY_NV21_DATA = "nv21Data";
+
+    public static final String MESSAGE_BUNDLE_KEY_WIDTH = "width";
+
+    public static final String MESSAGE_BUNDLE_KEY_HEIGHT = "height";
+
     /**
      * The duration for the {@link TranslateAnimation} when a new photo is added.
      */
@@ -240,6 +249,25 @@ public class PhotoStripFragment extends ControllerBackedFragment<PhotoStripContr
             mEventLogo.setVisibility(View.VISIBLE);
         } else {
             mEventLogo.setVisibility(View.GONE);
+
+            // Load the logo if it is not in memory yet, and show it when it arrives.
+            if (TextHelper.isValid(eventLogoUri)) {
+                MyApplication.getBitmapCache().asyncGet(BaseTitleHeader.EVENT_LOGO_CACHE_KEY,
+                        new PersistedBitmapCache.IAsyncGetCallbacks() {
+                            @Override
+                            public void onSuccess(String key, Bitmap bitmap) {
+                                if (isActivityAlive()) {
+                                    mEventLogo.setImageBitmap(bitmap);
+                                    mEventLogo.setVisibility(View.VISIBLE);
+                                }
+                            }
+
+                            @Override
+                            public void onFailure(String key) {
+                                // Do nothing.
+                            }
+                        });
+            }
         }
     }
 
@@ -509,6 +537,31 @@ public class PhotoStripFragment extends ControllerBackedFragment<PhotoStripContr
         }
     }
 
+    /**
+     * Adds a new photo to the photo strip from a buffered preview frame.
+     *
+     * @param nv21Data   the NV21 data of the preview frame.
+     * @param width      the width of the preview frame.
+     * @param height     the height of the preview frame.
+     * @param rotation   clockwise rotation applied to image in degrees.
+     * @param reflection horizontal reflection applied to image.
+     */
+    public void addPreviewFrame(byte[] nv21Data, int width, int height, float rotation, boolean reflection) {
+        if (isActivityAlive()) {
+            // Notify controller preview frame is ready.
+            Message msg = Message.obtain();
+            msg.what = PREVIEW_FRAME_READY;
+            Bundle bundle = new Bundle();
+            bundle.putByteArray(MESSAGE_BUNDLE_KEY_NV21_DATA, nv21Data);
+            bundle.putInt(MESSAGE_BUNDLE_KEY_WIDTH, width);
+            bundle.putInt(MESSAGE_BUNDLE_KEY_HEIGHT, height);
+            bundle.putFloat(MESSAGE_BUNDLE_KEY_ROTATION, rotation);
+            bundle.putBoolean(MESSAGE_BUNDLE_KEY_REFLECTION, reflection);
+            msg.setData(bundle);
+            sendEvent(msg);
+        }
+    }
+
     //
     // Interfaces.
     //
@@ -16,11 +16,15 @@
  */
 package com.groundupworks.partyphotobooth.helpers;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.preference.PreferenceManager;
 
+import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.lib.photobooth.raster.Raster;
+
 import java.util.Date;
 
 /**
@@ -90,7 +94,12 @@ public class PreferencesHelper {
         /**
          * Carbon theme.
          */
-        CARBON
+        CARBON,
+
+        /**
+         * Faded film theme.
+         */
+        FADED_FILM
     }
 
     /**
@@ -199,6 +208,79 @@ public class PreferencesHelper {
         BOX
     }
 
+    /**
+     * Photo strip output resolutions.
+     */
+    public enum PhotoStripResolution {
+
+        /**
+         * Standard resolution for screens and sharing.
+         */
+        STANDARD(ImageHelper.IMAGE_SIZE),
+
+        /**
+         * High resolution, twice the standard frame size.
+         */
+        HIGH(ImageHelper.IMAGE_SIZE * 2),
+
+        /**
+         * Print resolution, three times the standard frame size. A vertical photo strip printed 2 inches wide is
+         * about 300 dpi.
+         */
+        PRINT(ImageHelper.IMAGE_SIZE * 3);
+
+        /**
+         * The width and height of each frame.
+         */
+        private final int mFrameSize;
+
+        /**
+         * Constructor.
+         *
+         * @param frameSize the width and height of each frame.
+         */
+        private PhotoStripResolution(int frameSize) {
+            mFrameSize = frameSize;
+        }
+
+        /**
+         * Gets the width and height of each frame.
+         *
+         * @return the frame size.
+         */
+        public int getFrameSize() {
+            return mFrameSize;
+        }
+
+        /**
+         * Gets the memory needed to hold the frames of a photo strip at this resolution.
+         *
+         * @param numFrames the number of frames in the photo strip.
+         * @return the size in bytes.
+         */
+        public long getFramesByteCount(int numFrames) {
+            return (long) mFrameSize * mFrameSize * Raster.BYTES_PER_PIXEL * numFrames;
+        }
+
+        /**
+         * Gets the highest resolution, up to this one, whose frames fit within a memory budget.
+         *
+         * @param maxBytes  the memory budget in bytes for the frames of a photo strip.
+         * @param numFrames the number of frames in the photo strip.
+         * @return the resolution; or {@link #STANDARD} if none fit.
+         */
+        public PhotoStripResolution fit(long maxBytes, int numFrames) {
+            PhotoStripResolution[] resolutions = values();
+            for (int i = ordinal(); i > 0; i--) {
+                if (resolutions[i].getFramesByteCount(numFrames) <= maxBytes) {
+                    return resolutions[i];
+                }
+            }
+
+            return STANDARD;
+        }
+    }
+
     /**
      * Preference value to hide the event date.
      */
@@ -244,6 +326,26 @@ public class PreferencesHelper {
      */
     private static final String KEY_NOTICE_ENABLED = "noticeEnabled";
 
+    /**
+     * Key for the photo strip resolution record.
+     */
+    private static final String KEY_PHOTO_STRIP_RESOLUTION = "photoStripResolution";
+
+    /**
+     * Key for whether photos are captured from buffered preview frames instead of the shutter.
+     */
+    private static final String KEY_ZERO_SHUTTER_LAG_ENABLED = "zeroShutterLagEnabled";
+
+    /**
+     * The fraction of the per-application memory class that the frames of a photo strip may use.
+     */
+    private static final int FRAMES_MEMORY_CLASS_DIVISOR = 4;
+
+    /**
+     * The number of bytes in a megabyte.
+     */
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
     /**
      * The default preferences for the event title.
      */
@@ -449,4 +551,78 @@ public class PreferencesHelper {
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
         return preferences.getBoolean(KEY_NOTICE_ENABLED, false);
     }
+
+    /**
+     * Stores whether photos are captured from buffered preview frames instead of the shutter.
+     *
+     * @param context   the {@link Context}.
+     * @param isEnabled true to enable; false otherwise.
+     */
+    public void storeZeroShutterLagEnabled(Context context, boolean isEnabled) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        preferences.edit().putBoolean(KEY_ZERO_SHUTTER_LAG_ENABLED, isEnabled).apply();
+    }
+
+    /**
+     * Reads whether photos are captured from buffered preview frames instead of the shutter.
+     *
+     * @param context the {@link Context}.
+     * @return true if enabled; false otherwise.
+     */
+    public boolean getZeroShutterLagEnabled(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        return preferences.getBoolean(KEY_ZERO_SHUTTER_LAG_ENABLED, false);
+    }
+
+    /**
+     * Stores the photo strip resolution preference.
+     *
+     * @param context    the {@link Context}.
+     * @param resolution one of {@link PhotoStripResolution}. Must not be null.
+     */
+    public void storePhotoStripResolution(Context context, PhotoStripResolution resolution) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        preferences.edit().putString(KEY_PHOTO_STRIP_RESOLUTION, resolution.name()).apply();
+    }
+
+    /**
+     * Reads the photo strip resolution preference.
+     *
+     * @param context the {@link Context}.
+     * @return the stored {@link PhotoStripResolution}.
+     */
+    public PhotoStripResolution getPhotoStripResolution(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        String resolution = preferences.getString(KEY_PHOTO_STRIP_RESOLUTION, PhotoStripResolution.STANDARD.name());
+        return PhotoStripResolution.valueOf(resolution);
+    }
+
+    /**
+     * Gets the highest photo strip resolution whose frames fit within a fraction of the per-application memory class
+     * of the device.
+     *
+     * @param context  the {@link Context}.
+     * @param template the {@link PhotoStripTemplate}, which sets the number of frames. Must not be null.
+     * @return the highest supported {@link PhotoStripResolution}.
+     */
+    public PhotoStripResolution getMaxSupportedPhotoStripResolution(Context context, PhotoStripTemplate template) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        long maxBytes = activityManager.getMemoryClass() * BYTES_PER_MEGABYTE / FRAMES_MEMORY_CLASS_DIVISOR;
+        PhotoStripResolution[] resolutions = PhotoStripResolution.values();
+        return resolutions[resolutions.length - 1].fit(maxBytes, template.getNumPhotos());
+    }
+
+    /**
+     * Reads the photo strip resolution preference, lowered if the frames of the stored photo strip template would not
+     * fit within a fraction of the per-application memory class of the device.
+     *
+     * @param context the {@link Context}.
+     * @return the {@link PhotoStripResolution} to capture at.
+     */
+    public PhotoStripResolution getSupportedPhotoStripResolution(Context context) {
+        PhotoStripResolution resolution = getPhotoStripResolution(context);
+        PhotoStripResolution maxResolution = getMaxSupportedPhotoStripResolution(context,
+                getPhotoStripTemplate(context));
+        return resolution.compareTo(maxResolution) <= 0 ? resolution : maxResolution;
+    }
 }
@@ -33,16 +33,21 @@ import android.view.animation.AnimationUtils;
 import android.widget.ImageView;
 import android.widget.Toast;
 
+import com.groundupworks.partyphotobooth.MyApplication;
 import com.groundupworks.partyphotobooth.R;
+import com.groundupworks.partyphotobooth.arrangements.BaseTitleHeader;
 import com.groundupworks.partyphotobooth.fragments.CaptureFragment;
 import com.groundupworks.partyphotobooth.fragments.ConfirmationFragment;
 import com.groundupworks.partyphotobooth.fragments.ErrorDialogFragment;
 import com.groundupworks.partyphotobooth.fragments.NoticeFragment;
 import com.groundupworks.partyphotobooth.fragments.PhotoStripFragment;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper;
+import com.groundupworks.partyphotobooth.helpers.TextHelper;
 import com.groundupworks.partyphotobooth.kiosk.KioskModeHelper.State;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * {@link Activity} that puts the device in Kiosk mode. This should only be launched from the {@link KioskService}.
@@ -108,6 +113,9 @@ public class KioskActivity extends FragmentActivity implements KioskSetupFragmen
         mCurrentFrame = 1;
         mTotalFrames = mPreferencesHelper.getPhotoStripTemplate(this).getNumPhotos();
 
+        // Load cached bitmaps into memory in one pass, ahead of the photo booth ui asking for them.
+        warmUpBitmapCache();
+
         // Show on top of lock screen.
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED);
 
@@ -300,6 +308,14 @@ public class KioskActivity extends FragmentActivity implements KioskSetupFragmen
         }
     }
 
+    @Override
+    public void onPreviewFrameTaken(byte[] nv21Data, int width, int height, float rotation, boolean reflection) {
+        if (mPhotoStripFragment != null) {
+            mFlashScreen.setVisibility(View.VISIBLE);
+            mPhotoStripFragment.addPreviewFrame(nv21Data, width, height, rotation, reflection);
+        }
+    }
+
     @Override
     public void onErrorCameraNone() {
         String title = getString(R.string.capture__error_camera_dialog_title);
@@ -369,6 +385,20 @@ public class KioskActivity extends FragmentActivity implements KioskSetupFragmen
     // Private methods.
     //
 
+    /**
+     * Loads the cached bitmaps used by the photo booth ui into the memory cache with a single batch get.
+     */
+    private void warmUpBitmapCache() {
+        List<String> keys = new ArrayList<String>();
+        if (TextHelper.isValid(mPreferencesHelper.getEventLogoUri(this))) {
+            keys.add(BaseTitleHeader.EVENT_LOGO_CACHE_KEY);
+        }
+
+        if (!keys.isEmpty()) {
+            MyApplication.getBitmapCache().asyncGetAll(keys, null);
+        }
+    }
+
     /**
      * Launches the {@link KioskSetupFragment}.
      */
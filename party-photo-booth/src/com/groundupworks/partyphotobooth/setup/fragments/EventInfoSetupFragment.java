@@ -42,6 +42,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.groundupworks.lib.photobooth.framework.WorkerScheduler;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper;
 import com.groundupworks.partyphotobooth.MyApplication;
 import com.groundupworks.partyphotobooth.PersistedBitmapCache;
@@ -305,7 +306,7 @@ public class EventInfoSetupFragment extends Fragment {
     private void newLogo(final Uri srcUri) {
         if (TextHelper.isValid(srcUri.toString())) {
             final ContentResolver resolver = getActivity().getContentResolver();
-            final Handler workerHandler = new Handler(MyApplication.getWorkerLooper());
+            final Handler workerHandler = MyApplication.getScheduler().newHandler(WorkerScheduler.Lane.IO);
             workerHandler.post(new Runnable() {
 
                 @Override
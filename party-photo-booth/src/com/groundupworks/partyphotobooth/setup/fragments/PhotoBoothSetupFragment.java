@@ -27,15 +27,20 @@ import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemSelectedListener;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.Spinner;
 
 import com.groundupworks.partyphotobooth.R;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoBoothMode;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoBoothTheme;
+import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoStripResolution;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoStripTemplate;
 import com.groundupworks.partyphotobooth.setup.model.PhotoBoothModeAdapter;
 import com.groundupworks.partyphotobooth.setup.model.PhotoBoothThemeAdapter;
+import com.groundupworks.partyphotobooth.setup.model.PhotoStripResolutionAdapter;
 import com.groundupworks.partyphotobooth.setup.model.PhotoStripTemplateAdapter;
 
 import java.lang.ref.WeakReference;
@@ -67,6 +72,10 @@ public class PhotoBoothSetupFragment extends Fragment {
 
     private Spinner mTemplate;
 
+    private Spinner mResolution;
+
+    private CheckBox mZeroShutterLag;
+
     private Button mNext;
 
     @Override
@@ -85,6 +94,8 @@ public class PhotoBoothSetupFragment extends Fragment {
         mMode = (Spinner) view.findViewById(R.id.setup_photo_booth_mode);
         mTheme = (Spinner) view.findViewById(R.id.setup_photo_booth_theme);
         mTemplate = (Spinner) view.findViewById(R.id.setup_photo_booth_template);
+        mResolution = (Spinner) view.findViewById(R.id.setup_photo_booth_resolution);
+        mZeroShutterLag = (CheckBox) view.findViewById(R.id.setup_photo_booth_zero_shutter_lag);
         mNext = (Button) view.findViewById(R.id.setup_photo_booth_button_next);
 
         return view;
@@ -134,6 +145,11 @@ public class PhotoBoothSetupFragment extends Fragment {
             }
         });
 
+        // Disable resolutions the device does not support with the selected template.
+        final PhotoStripResolutionAdapter resolutionAdapter = new PhotoStripResolutionAdapter(activity,
+                mPreferencesHelper.getMaxSupportedPhotoStripResolution(appContext,
+                        mPreferencesHelper.getPhotoStripTemplate(appContext)));
+
         final PhotoStripTemplateAdapter templateAdapter = new PhotoStripTemplateAdapter(activity);
         mTemplate.setAdapter(templateAdapter);
         mTemplate.setSelection(mPreferencesHelper.getPhotoStripTemplate(appContext).ordinal());
@@ -143,6 +159,24 @@ public class PhotoBoothSetupFragment extends Fragment {
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 PhotoStripTemplate selectedTemplate = templateAdapter.getPhotoStripTemplate(position);
                 mPreferencesHelper.storePhotoStripTemplate(appContext, selectedTemplate);
+                resolutionAdapter.setMaxResolution(mPreferencesHelper.getMaxSupportedPhotoStripResolution(appContext,
+                        selectedTemplate));
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Do nothing.
+            }
+        });
+
+        mResolution.setAdapter(resolutionAdapter);
+        mResolution.setSelection(mPreferencesHelper.getPhotoStripResolution(appContext).ordinal());
+        mResolution.setOnItemSelectedListener(new OnItemSelectedListener() {
+
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                PhotoStripResolution selectedResolution = resolutionAdapter.getPhotoStripResolution(position);
+                mPreferencesHelper.storePhotoStripResolution(appContext, selectedResolution);
             }
 
             @Override
@@ -151,6 +185,14 @@ public class PhotoBoothSetupFragment extends Fragment {
             }
         });
 
+        mZeroShutterLag.setChecked(mPreferencesHelper.getZeroShutterLagEnabled(appContext));
+        mZeroShutterLag.setOnCheckedChangeListener(new OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                mPreferencesHelper.storeZeroShutterLagEnabled(appContext, isChecked);
+            }
+        });
+
         mNext.setOnClickListener(new OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -0,0 +1,182 @@
+/*
+ * This file is part of Flying PhotoBooth.
+ * 
+ * Flying PhotoBooth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Flying PhotoBooth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Flying PhotoBooth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.groundupworks.partyphotobooth.setup.model;
+
+import android.content.Context;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.TextView;
+
+import com.groundupworks.partyphotobooth.R;
+import com.groundupworks.partyphotobooth.helpers.PreferencesHelper.PhotoStripResolution;
+
+/**
+ * Adapter for the {@link PhotoStripResolution} selection ui. Resolutions above the highest one the device supports
+ * are disabled, and describe the resolution used in their place.
+ *
+ * @author Benedict Lau
+ */
+public class PhotoStripResolutionAdapter extends BaseSpinnerAdapter<PhotoStripResolutionAdapter.Resolution> {
+
+    /**
+     * The {@link Context}.
+     */
+    private final Context mContext;
+
+    /**
+     * The highest supported {@link PhotoStripResolution}.
+     */
+    private PhotoStripResolution mMaxResolution;
+
+    /**
+     * Constructor.
+     *
+     * @param context       the {@link Context}.
+     * @param maxResolution the highest supported {@link PhotoStripResolution}.
+     */
+    public PhotoStripResolutionAdapter(Context context, PhotoStripResolution maxResolution) {
+        super(context, createItems(context));
+        mContext = context;
+        mMaxResolution = maxResolution;
+    }
+
+    @Override
+    protected void bindView(PhotoStripResolutionAdapter.Resolution item, View view) {
+        // Hide unused views.
+        view.findViewById(R.id.spinner_item_icon).setVisibility(View.GONE);
+
+        // Bind data.
+        ((TextView) view.findViewById(R.id.spinner_item_display_name)).setText(item.mDisplayName);
+        if (isSupported(item.mResolution)) {
+            ((TextView) view.findViewById(R.id.spinner_item_description)).setText(item.mDescription);
+        } else {
+            String maxDisplayName = getItem(mMaxResolution.ordinal()).mDisplayName;
+            ((TextView) view.findViewById(R.id.spinner_item_description)).setText(mContext.getString(
+                    R.string.photo_strip_resolution_adapter__unsupported_description, maxDisplayName));
+        }
+    }
+
+    @Override
+    public boolean areAllItemsEnabled() {
+        return isSupported(getItem(getCount() - 1).mResolution);
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return isSupported(getPhotoStripResolution(position));
+    }
+
+    //
+    // Private methods.
+    //
+
+    /**
+     * Checks whether the device supports a resolution.
+     *
+     * @param resolution the {@link PhotoStripResolution}.
+     * @return true if supported; false otherwise.
+     */
+    private boolean isSupported(PhotoStripResolution resolution) {
+        return resolution.compareTo(mMaxResolution) <= 0;
+    }
+
+    /**
+     * Creates the list of {@link PhotoStripResolutionAdapter.Resolution} for the selection ui.
+     *
+     * @param context the {@link Context}.
+     * @return the {@link SparseArray} of {@link PhotoStripResolutionAdapter.Resolution}.
+     */
+    private static SparseArray<PhotoStripResolutionAdapter.Resolution> createItems(Context context) {
+        SparseArray<PhotoStripResolutionAdapter.Resolution> resolutions =
+                new SparseArray<PhotoStripResolutionAdapter.Resolution>();
+
+        // Add standard resolution.
+        PhotoStripResolutionAdapter.Resolution standard = new PhotoStripResolutionAdapter.Resolution();
+        standard.mResolution = PhotoStripResolution.STANDARD;
+        standard.mDisplayName = context.getString(R.string.photo_strip_resolution_adapter__standard_display_name);
+        standard.mDescription = context.getString(R.string.photo_strip_resolution_adapter__standard_description);
+        resolutions.put(PhotoStripResolution.STANDARD.ordinal(), standard);
+
+        // Add high resolution.
+        PhotoStripResolutionAdapter.Resolution high = new PhotoStripResolutionAdapter.Resolution();
+        high.mResolution = PhotoStripResolution.HIGH;
+        high.mDisplayName = context.getString(R.string.photo_strip_resolution_adapter__high_display_name);
+        high.mDescription = context.getString(R.string.photo_strip_resolution_adapter__high_description);
+        resolutions.put(PhotoStripResolution.HIGH.ordinal(), high);
+
+        // Add print resolution.
+        PhotoStripResolutionAdapter.Resolution print = new PhotoStripResolutionAdapter.Resolution();
+        print.mResolution = PhotoStripResolution.PRINT;
+        print.mDisplayName = context.getString(R.string.photo_strip_resolution_adapter__print_display_name);
+        print.mDescription = context.getString(R.string.photo_strip_resolution_adapter__print_description);
+        resolutions.put(PhotoStripResolution.PRINT.ordinal(), print);
+
+        return resolutions;
+    }
+
+    //
+    // Public methods.
+    //
+
+    /**
+     * Gets the {@link PhotoStripResolution} based on the item position.
+     *
+     * @param position position of the item whose data we want within the adapter's data set.
+     * @return the {@link PhotoStripResolution}.
+     */
+    public PhotoStripResolution getPhotoStripResolution(int position) {
+        return getItem(position).mResolution;
+    }
+
+    /**
+     * Sets the highest supported {@link PhotoStripResolution}, such as when the photo strip template changes.
+     *
+     * @param maxResolution the highest supported {@link PhotoStripResolution}.
+     */
+    public void setMaxResolution(PhotoStripResolution maxResolution) {
+        if (mMaxResolution != maxResolution) {
+            mMaxResolution = maxResolution;
+            notifyDataSetChanged();
+        }
+    }
+
+    //
+    // Package private classes.
+    //
+
+    /**
+     * An internal model object used by the adapter representing a {@link PhotoStripResolution} and its data for the
+     * selection ui.
+     */
+    static class Resolution {
+
+        /**
+         * The {@link PhotoStripResolution}.
+         */
+        private PhotoStripResolution mResolution;
+
+        /**
+         * The display name for the {@link PhotoStripResolution}.
+         */
+        private String mDisplayName;
+
+        /**
+         * The description of the {@link PhotoStripResolution}.
+         */
+        private String mDescription;
+    }
+}
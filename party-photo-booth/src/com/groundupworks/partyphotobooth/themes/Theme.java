@@ -20,8 +20,10 @@ import android.content.Context;
 import android.graphics.Typeface;
 
 import com.groundupworks.lib.photobooth.filters.BlackAndWhiteFilter;
+import com.groundupworks.lib.photobooth.filters.ColorLutFilter;
 import com.groundupworks.lib.photobooth.filters.SepiaFilter;
 import com.groundupworks.lib.photobooth.helpers.ImageHelper;
+import com.groundupworks.lib.photobooth.raster.filters.Looks;
 import com.groundupworks.partyphotobooth.R;
 import com.groundupworks.partyphotobooth.helpers.PreferencesHelper;
 
@@ -89,6 +91,8 @@ public abstract class Theme {
             theme = new Vintage(appContext);
         } else if (PreferencesHelper.PhotoBoothTheme.CARBON.equals(themeName)) {
             theme = new Carbon(appContext);
+        } else if (PreferencesHelper.PhotoBoothTheme.FADED_FILM.equals(themeName)) {
+            theme = new FadedFilm(appContext);
         }
         return theme;
     }
@@ -251,4 +255,19 @@ public abstract class Theme {
             mImageFilter = new BlackAndWhiteFilter();
         }
     }
+
+    /**
+     * Faded film theme.
+     */
+    private static class FadedFilm extends Theme {
+
+        private FadedFilm(Context context) {
+            mTheme = PreferencesHelper.PhotoBoothTheme.FADED_FILM;
+            mDisplayName = context.getString(R.string.photo_booth_theme_adapter__faded_film_display_name);
+            mIconResource = RESOURCE_NONE;
+            mBackgroundResource = RESOURCE_NONE;
+            mFont = Typeface.SERIF;
+            mImageFilter = new ColorLutFilter(Looks.FADED_FILM);
+        }
+    }
 }